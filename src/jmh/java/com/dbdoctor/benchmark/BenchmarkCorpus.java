@@ -0,0 +1,104 @@
+package com.dbdoctor.benchmark;
+
+import java.util.Locale;
+
+/**
+ * 基准语料
+ *
+ * 覆盖慢查询日志中常见的几类 SQL，每类生成若干变体（只有常量、关键字大小写和空白不同），
+ * 同一类的变体应得到相同指纹，不同类之间指纹应不同
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class BenchmarkCorpus {
+
+    /**
+     * 每类 SQL 的变体数
+     */
+    public static final int VARIANTS = 16;
+
+    public enum Shape {
+        POINT_LOOKUP,       // 主键点查
+        IN_LIST_50KB,       // 约 50 KB 的 IN 列表
+        MULTI_JOIN,         // 多表关联报表
+        COMMENTED_CHINESE   // 带注释和中文常量
+    }
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * 生成一类 SQL 的全部变体
+     *
+     * @param shape SQL 类别
+     * @return VARIANTS 条 SQL
+     */
+    public static String[] variants(Shape shape) {
+        String[] sqls = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            sqls[i] = sql(shape, i);
+        }
+        return sqls;
+    }
+
+    /**
+     * 生成一条 SQL
+     *
+     * @param shape   SQL 类别
+     * @param variant 变体序号（决定常量、大小写和空白）
+     * @return SQL
+     */
+    public static String sql(Shape shape, int variant) {
+        String sql = switch (shape) {
+            case POINT_LOOKUP -> "SELECT id, user_name, phone, status FROM users WHERE id = " + (10_000 + variant * 37);
+            case IN_LIST_50KB -> inList(variant);
+            case MULTI_JOIN -> multiJoin(variant);
+            case COMMENTED_CHINESE -> commentedChinese(variant);
+        };
+        // 奇数变体改用小写关键字和多余空白
+        return variant % 2 == 0 ? sql : sql.toLowerCase(Locale.ROOT).replace(" ", "  ");
+    }
+
+    private static String inList(int variant) {
+        StringBuilder sb = new StringBuilder(52 * 1024);
+        sb.append("SELECT o.id, o.order_no, o.amount FROM orders o WHERE o.status = 'PAID' AND o.user_id IN (");
+        long id = 1_000_000L + variant;
+        // 每个常量约 9 字节，5600 个约 50 KB（列表长度固定，LEGACY 引擎不折叠 IN 列表）
+        for (int i = 0; i < 5600; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(id + i * 13L);
+        }
+        sb.append(") ORDER BY o.created_at DESC LIMIT 100");
+        return sb.toString();
+    }
+
+    private static String multiJoin(int variant) {
+        return "SELECT d.dept_name, u.user_name, COUNT(o.id) AS order_cnt, SUM(o.amount) AS total_amount, "
+                + "MAX(p.paid_at) AS last_paid "
+                + "FROM orders o "
+                + "INNER JOIN users u ON u.id = o.user_id "
+                + "LEFT JOIN departments d ON d.id = u.dept_id "
+                + "LEFT JOIN payments p ON p.order_id = o.id AND p.status = 'SUCCESS' "
+                + "JOIN (SELECT order_id, SUM(qty) AS qty FROM order_items GROUP BY order_id) oi ON oi.order_id = o.id "
+                + "WHERE o.created_at BETWEEN '2024-0" + (1 + variant % 9) + "-01 00:00:00' AND '2024-12-31 23:59:59' "
+                + "AND o.amount > " + (100 + variant) + ".50 AND u.email LIKE '%@example.com' "
+                + "AND d.region IN ('north', 'south', 'east') "
+                + "GROUP BY d.dept_name, u.user_name HAVING COUNT(o.id) > " + (5 + variant) + " "
+                + "ORDER BY total_amount DESC LIMIT " + (20 + variant) + ", 50";
+    }
+
+    private static String commentedChinese(int variant) {
+        return "/* 订单中心 - 每日对账任务 #" + variant + " */\n"
+                + "SELECT c.customer_name, c.phone, a.address -- 收货地址\n"
+                + "FROM customers c\n"
+                + "JOIN addresses a ON a.customer_id = c.id\n"
+                + "WHERE c.city = '上海市' AND a.detail LIKE '%浦东新区第" + variant + "街道%'\n"
+                + "  AND c.phone = '1381234" + String.format("%04d", variant) + "'\n"
+                + "  AND c.remark <> '测试账号，请勿发货' # 过滤测试数据\n"
+                + "ORDER BY c.id";
+    }
+}
@@ -0,0 +1,80 @@
+package com.dbdoctor.benchmark;
+
+import com.dbdoctor.common.util.PromptUtil;
+import com.dbdoctor.monitoring.TokenEstimator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词热点路径基准：TokenEstimator.estimateInputTokens / PromptUtil.formatUserPrompt
+ *
+ * PromptUtil 不经过 Spring 容器创建，提示词模板直接从类路径加载（与运行时相同的文件）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBenchmark {
+
+    @Param({"POINT_LOOKUP", "IN_LIST_50KB", "MULTI_JOIN", "COMMENTED_CHINESE"})
+    private BenchmarkCorpus.Shape shape;
+
+    private PromptUtil promptUtil;
+    private String[] sqls;
+    private String[] prompts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        promptUtil = new PromptUtil();
+        ReflectionTestUtils.setField(promptUtil, "userPromptTemplateResource",
+                new ClassPathResource("prompts/templates/diagnosis-user.txt"));
+
+        sqls = BenchmarkCorpus.variants(shape);
+        prompts = new String[sqls.length];
+        for (int i = 0; i < sqls.length; i++) {
+            prompts[i] = format(sqls[i]);
+        }
+    }
+
+    private String format(String sql) {
+        return promptUtil.formatUserPrompt("shop", "2024-06-01 12:00:00", 3.215, 0.002,
+                1_250_000L, 50L, sql);
+    }
+
+    private int advance() {
+        int i = next;
+        next = (next + 1) % sqls.length;
+        return i;
+    }
+
+    @Benchmark
+    public int estimateInputTokens() {
+        return TokenEstimator.estimateInputTokens(prompts[advance()]);
+    }
+
+    @Benchmark
+    public String formatUserPrompt() {
+        return format(sqls[advance()]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.dbdoctor.benchmark;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指纹热点路径基准：calculateFingerprint / extractTemplate / cleanSql
+ *
+ * 按引擎（LEXER / LEGACY）和 SQL 类别参数化。每个 trial 开始前先做等价性检查：
+ * 同一类的全部变体必须得到同一个指纹，不同类之间指纹必须不同；检查不通过时基准直接失败，
+ * 更快但不等价的引擎不会产出结果（模板保留原始大小写用于展示，不参与比较）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlFingerprintBenchmark {
+
+    @Param({"LEXER", "LEGACY"})
+    private SqlFingerprintUtil.Engine engine;
+
+    @Param({"POINT_LOOKUP", "IN_LIST_50KB", "MULTI_JOIN", "COMMENTED_CHINESE"})
+    private BenchmarkCorpus.Shape shape;
+
+    private String[] sqls;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SqlFingerprintUtil.setEngine(engine);
+        sqls = BenchmarkCorpus.variants(shape);
+        verifyEquivalence();
+    }
+
+    /**
+     * 等价性检查：变体之间指纹一致，类别之间指纹不同
+     */
+    private void verifyEquivalence() {
+        String fingerprint = SqlFingerprintUtil.calculateFingerprint(sqls[0]);
+        for (String sql : sqls) {
+            if (!fingerprint.equals(SqlFingerprintUtil.calculateFingerprint(sql))) {
+                throw new IllegalStateException("指纹不等价: engine=" + engine + ", shape=" + shape
+                        + ", template=" + SqlFingerprintUtil.extractTemplate(sql));
+            }
+        }
+        Set<String> distinct = new HashSet<>();
+        for (BenchmarkCorpus.Shape other : BenchmarkCorpus.Shape.values()) {
+            distinct.add(SqlFingerprintUtil.calculateFingerprint(BenchmarkCorpus.sql(other, 0)));
+        }
+        if (distinct.size() != BenchmarkCorpus.Shape.values().length) {
+            throw new IllegalStateException("不同类别的 SQL 得到了相同指纹: engine=" + engine);
+        }
+    }
+
+    private String nextSql() {
+        String sql = sqls[next];
+        next = (next + 1) % sqls.length;
+        return sql;
+    }
+
+    @Benchmark
+    public String calculateFingerprint() {
+        return SqlFingerprintUtil.calculateFingerprint(nextSql());
+    }
+
+    @Benchmark
+    public String extractTemplate() {
+        return SqlFingerprintUtil.extractTemplate(nextSql());
+    }
+
+    @Benchmark
+    public String cleanSql() {
+        return SqlFingerprintUtil.cleanSql(nextSql());
+    }
+}
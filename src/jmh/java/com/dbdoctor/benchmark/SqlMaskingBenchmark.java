@@ -0,0 +1,51 @@
+package com.dbdoctor.benchmark;
+
+import com.dbdoctor.common.util.SqlMaskingUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脱敏热点路径基准：maskSensitiveData
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlMaskingBenchmark {
+
+    @Param({"POINT_LOOKUP", "IN_LIST_50KB", "MULTI_JOIN", "COMMENTED_CHINESE"})
+    private BenchmarkCorpus.Shape shape;
+
+    private String[] sqls;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sqls = BenchmarkCorpus.variants(shape);
+    }
+
+    @Benchmark
+    public String maskSensitiveData() {
+        String sql = sqls[next];
+        next = (next + 1) % sqls.length;
+        return SqlMaskingUtil.maskSensitiveData(sql);
+    }
+}
@@ -0,0 +1,54 @@
+package com.dbdoctor.agent;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * 诊断目标库绑定
+ *
+ * DiagnosticToolsImpl 在启动时创建并注册到 Agent，无法按模板切换连接。
+ * LangChain4j 在调用 Agent 的线程上同步执行工具，因此分析开始前把模板所属实例的 JdbcTemplate
+ * 绑定到当前线程，工具执行查询（元数据、USE、EXPLAIN）时使用绑定的连接；未绑定时使用默认目标库
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class DiagnosticTarget {
+
+    private static final ThreadLocal<JdbcTemplate> CURRENT = new ThreadLocal<>();
+
+    private DiagnosticTarget() {
+    }
+
+    /**
+     * 在绑定的目标库上执行分析
+     *
+     * @param jdbcTemplate 模板所属实例的 JdbcTemplate
+     * @param action       分析逻辑
+     * @return 分析结果
+     */
+    public static <T> T callWith(JdbcTemplate jdbcTemplate, Supplier<T> action) {
+        JdbcTemplate previous = CURRENT.get();
+        CURRENT.set(jdbcTemplate);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 当前线程绑定的目标库
+     *
+     * @return JdbcTemplate，未绑定时返回 null
+     */
+    static JdbcTemplate current() {
+        return CURRENT.get();
+    }
+}
@@ -2,6 +2,8 @@ package com.dbdoctor.agent;
 
 import com.alibaba.fastjson2.JSON;
 import com.dbdoctor.common.enums.ErrorCode;
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import com.dbdoctor.model.SqlArtifact;
 import com.dbdoctor.model.ToolResult;
 import dev.langchain4j.agent.tool.Tool;
 import lombok.RequiredArgsConstructor;
@@ -25,6 +27,8 @@ import java.util.Map;
  * 使用方式：
  * 在 AiConfig 中手动创建实例: new DiagnosticToolsImpl(jdbcTemplate)
  *
+ * 多实例：查询发往 DiagnosticTarget 绑定的模板所属实例，未绑定时使用默认目标库
+ *
  * @author DB-Doctor
  * @version 3.0.0
  */
@@ -34,6 +38,14 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
 
     private final JdbcTemplate targetJdbcTemplate;
 
+    /**
+     * 本次查询使用的目标库（分析线程绑定的实例优先）
+     */
+    private JdbcTemplate jdbc() {
+        JdbcTemplate bound = DiagnosticTarget.current();
+        return bound != null ? bound : targetJdbcTemplate;
+    }
+
     /**
      * 获取表结构信息
      *
@@ -80,7 +92,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
                     ORDER BY ORDINAL_POSITION
                     """;
 
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(sql, database, tableName);
+            List<Map<String, Object>> result = jdbc().queryForList(sql, database, tableName);
 
             // 检查结果是否为空
             if (result.isEmpty()) {
@@ -147,7 +159,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
 
             // 先切换到目标数据库
             try {
-                targetJdbcTemplate.execute("USE `" + database + "`");
+                jdbc().execute("USE `" + database + "`");
             } catch (DataAccessException e) {
                 // 数据库不存在
                 if (e.getMessage() != null && e.getMessage().contains("Unknown database")) {
@@ -159,7 +171,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
 
             // 在目标数据库执行 EXPLAIN
             String explainSql = "EXPLAIN " + sql;
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(explainSql);
+            List<Map<String, Object>> result = jdbc().queryForList(explainSql);
 
             long executionTime = System.currentTimeMillis() - startTime;
             log.info("✅ [工具返回] 执行计划包含 {} 步, 耗时 {}ms", result.size(), executionTime);
@@ -213,7 +225,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
                     WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?
                     """;
 
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(sql, database, tableName);
+            List<Map<String, Object>> result = jdbc().queryForList(sql, database, tableName);
 
             // 检查结果是否为空
             if (result.isEmpty()) {
@@ -278,7 +290,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
                     ORDER BY INDEX_NAME, SEQ_IN_INDEX
                     """;
 
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(sql, database, tableName);
+            List<Map<String, Object>> result = jdbc().queryForList(sql, database, tableName);
 
             long executionTime = System.currentTimeMillis() - startTime;
             log.info("✅ [工具返回] 索引选择性查询完成,共 {} 个索引字段, 耗时 {}ms", result.size(), executionTime);
@@ -323,7 +335,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
                     JOIN information_schema.INNODB_TRX r ON r.TRX_ID = w.REQUESTING_TRX_ID
                     """;
 
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(sql);
+            List<Map<String, Object>> result = jdbc().queryForList(sql);
 
             long executionTime = System.currentTimeMillis() - startTime;
             log.info("✅ [工具返回] 锁等待信息查询完成,共 {} 个锁等待, 耗时 {}ms", result.size(), executionTime);
@@ -367,12 +379,12 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
 
             // 执行旧 SQL 并记录性能
             long oldStart = System.currentTimeMillis();
-            List<Map<String, Object>> oldResult = targetJdbcTemplate.queryForList(oldSql);
+            List<Map<String, Object>> oldResult = jdbc().queryForList(oldSql);
             long oldTime = System.currentTimeMillis() - oldStart;
 
             // 执行新 SQL 并记录性能
             long newStart = System.currentTimeMillis();
-            List<Map<String, Object>> newResult = targetJdbcTemplate.queryForList(newSql);
+            List<Map<String, Object>> newResult = jdbc().queryForList(newSql);
             long newTime = System.currentTimeMillis() - newStart;
 
             // 返回对比结果
@@ -436,7 +448,7 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
                     GROUP BY INDEX_NAME, NON_UNIQUE, INDEX_TYPE
                     """;
 
-            List<Map<String, Object>> result = targetJdbcTemplate.queryForList(sql, database, tableName);
+            List<Map<String, Object>> result = jdbc().queryForList(sql, database, tableName);
 
             // 检查结果是否为空（表可能不存在）
             if (result.isEmpty()) {
@@ -486,80 +498,16 @@ public class DiagnosticToolsImpl implements DiagnosticTools {
 
     /**
      * 从 SQL 语句中提取数据库名
-     * 支持格式：database.table 或 `database`.`table`
+     * 支持格式：database.table 或 `database`.`table`（取第一个带数据库名的表，包括 JOIN 和子查询中的表）
      *
      * @param sql SQL 语句
      * @return 数据库名，如果无法提取则返回 null
      */
     private String extractDatabaseFromSql(String sql) {
-        if (sql == null || sql.trim().isEmpty()) {
-            return null;
-        }
-
-        try {
-            // 转大写并移除多余空格，便于解析
-            String normalizedSql = sql.toUpperCase().replaceAll("\\s+", " ");
-
-            // 查找 FROM 子句的位置
-            int fromIndex = normalizedSql.indexOf(" FROM ");
-            if (fromIndex == -1) {
-                // 如果没有 FROM，尝试查找 UPDATE
-                fromIndex = normalizedSql.indexOf(" UPDATE ");
-                if (fromIndex == -1) {
-                    // 如果也没有 UPDATE，尝试查找 INSERT INTO
-                    fromIndex = normalizedSql.indexOf(" INTO ");
-                    if (fromIndex == -1) {
-                        return null;
-                    }
-                    fromIndex += 6; // " INTO ".length()
-                } else {
-                    fromIndex += 7; // " UPDATE ".length()
-                }
-            } else {
-                fromIndex += 6; // " FROM ".length()
-            }
-
-            // 提取 FROM/UPDATE/INTO 之后的部分（到下一个关键字之前）
-            String afterFrom = normalizedSql.substring(fromIndex).trim();
-
-            // 查找第一个表引用（可能带有数据库名前缀）
-            // 匹配模式：`database`.`table` 或 database.table 或 table
-            String firstTableRef;
-            int spaceIndex = afterFrom.indexOf(' ');
-            int commaIndex = afterFrom.indexOf(',');
-            int joinIndex = afterFrom.indexOf(" JOIN ");
-
-            // 取最近的分隔符
-            int endIndex = afterFrom.length();
-            if (spaceIndex > 0 && spaceIndex < endIndex) endIndex = spaceIndex;
-            if (commaIndex > 0 && commaIndex < endIndex) endIndex = commaIndex;
-            if (joinIndex > 0 && joinIndex < endIndex) endIndex = joinIndex;
-
-            firstTableRef = afterFrom.substring(0, endIndex).trim();
-
-            // 移除可能的别名（AS 或空格后的别名）
-            if (firstTableRef.contains(" AS ")) {
-                firstTableRef = firstTableRef.substring(0, firstTableRef.indexOf(" AS ")).trim();
-            }
-
-            // 提取数据库名（支持带反引号和不带反引号）
-            String dbName = null;
-
-            // 匹配 `database`.`table` 或 database.table
-            if (firstTableRef.contains(".")) {
-                String[] parts = firstTableRef.split("\\.");
-                if (parts.length >= 2) {
-                    dbName = parts[0].replaceAll("`", "").trim();
-                }
-            }
-
-            log.debug("🔍 [SQL解析] 从 SQL 中提取数据库名: {} (来源: {})", dbName, firstTableRef);
-
-            return dbName;
-
-        } catch (Exception e) {
-            log.warn("⚠️ [SQL解析] 提取数据库名失败: {}", e.getMessage());
-            return null;
-        }
+        SqlArtifact artifact = SqlFingerprintUtil.analyze(sql);
+        String dbName = artifact != null ? artifact.getDbName() : null;
+        log.debug("🔍 [SQL解析] 从 SQL 中提取数据库名: {} (引用的表: {})",
+                dbName, artifact != null ? artifact.getTables() : null);
+        return dbName;
     }
 }
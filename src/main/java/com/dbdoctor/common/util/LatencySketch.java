@@ -0,0 +1,275 @@
+package com.dbdoctor.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 可合并的耗时分位数草图（DDSketch）
+ *
+ * 平均值会掩盖双峰分布（大部分 10ms、少量 5s），这里为每个模板记录耗时分布，读取时计算 p50 / p95 / p99：
+ * - 对数分桶：值 v 落入下标 ceil(log_γ(v)) 的桶，γ = (1 + α) / (1 - α)，任意分位数的相对误差不超过 α（1%）
+ * - 可合并：两个草图逐桶相加即为合并数据的草图，时间段、实例之间的合并与直接累加全部样本结果一致
+ * - 紧凑：桶数上限 MAX_BINS，超过时合并最低的桶（只影响最低分位数的精度）；1µs ~ 1 小时只需约 1100 个桶
+ * - 小于 MIN_VALUE 的值（包括 0，常见于锁等待时间）单独计数
+ *
+ * 序列化为 Base64 字符串（变长整数编码的桶下标增量和计数），保存在模板行中
+ *
+ * 非线程安全，由调用方同步
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class LatencySketch {
+
+    /**
+     * 相对误差
+     */
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * 桶数上限
+     */
+    private static final int MAX_BINS = 2048;
+
+    /**
+     * 小于该值（秒）按 0 计数
+     */
+    private static final double MIN_VALUE = 1e-6;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LN_GAMMA = Math.log(GAMMA);
+
+    private static final byte FORMAT_VERSION = 1;
+
+    /**
+     * 桶下标 → 计数
+     */
+    private final TreeMap<Integer, Long> bins = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+
+    /**
+     * 记录一个值
+     *
+     * @param value 耗时（秒）
+     */
+    public void add(double value) {
+        add(value, 1L);
+    }
+
+    /**
+     * 记录同一个值的多次出现（预聚合记录代表区间内的多次执行）
+     *
+     * @param value 耗时（秒）
+     * @param n     次数
+     */
+    public void add(double value, long n) {
+        if (n <= 0 || Double.isNaN(value)) {
+            return;
+        }
+        if (value < MIN_VALUE) {
+            zeroCount += n;
+        } else {
+            bins.merge(index(value), n, Long::sum);
+            collapseIfNeeded();
+        }
+        count += n;
+    }
+
+    /**
+     * 合并另一个草图
+     *
+     * @param other 另一个草图
+     * @return 当前草图
+     */
+    public LatencySketch merge(LatencySketch other) {
+        if (other == null || other.count == 0) {
+            return this;
+        }
+        other.bins.forEach((index, n) -> bins.merge(index, n, Long::sum));
+        zeroCount += other.zeroCount;
+        count += other.count;
+        collapseIfNeeded();
+        return this;
+    }
+
+    /**
+     * 复制
+     *
+     * @return 新草图
+     */
+    public LatencySketch copy() {
+        return new LatencySketch().merge(this);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 分位数
+     *
+     * @param q 分位（0 ~ 1）
+     * @return 分位数（秒），没有数据时返回 null
+     */
+    public Double quantile(double q) {
+        if (count == 0) {
+            return null;
+        }
+        double rank = Math.max(0.0, Math.min(1.0, q)) * (count - 1);
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+        for (Map.Entry<Integer, Long> bin : bins.entrySet()) {
+            seen += bin.getValue();
+            if (seen > rank) {
+                return value(bin.getKey());
+            }
+        }
+        return value(bins.lastKey());
+    }
+
+    /**
+     * p50 / p95 / p99
+     *
+     * @return 分位数（没有数据时各项为 null）
+     */
+    public Percentiles percentiles() {
+        return new Percentiles(quantile(0.50), quantile(0.95), quantile(0.99));
+    }
+
+    // ==================== 序列化 ====================
+
+    /**
+     * 编码为 Base64 字符串
+     *
+     * @return 编码结果
+     */
+    public String encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + bins.size() * 3);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, zeroCount);
+        writeVarLong(out, bins.size());
+        int previous = 0;
+        for (Map.Entry<Integer, Long> bin : bins.entrySet()) {
+            int delta = bin.getKey() - previous;
+            writeVarLong(out, ((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+            writeVarLong(out, bin.getValue());
+            previous = bin.getKey();
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * 从 Base64 字符串解码
+     *
+     * @param encoded 编码结果（为空时返回空草图）
+     * @return 草图
+     * @throws IllegalArgumentException 编码格式不正确
+     */
+    public static LatencySketch decode(String encoded) {
+        LatencySketch sketch = new LatencySketch();
+        if (encoded == null || encoded.isBlank()) {
+            return sketch;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+            if (in.get() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("不支持的草图格式");
+            }
+            sketch.zeroCount = readVarLong(in);
+            sketch.count = sketch.zeroCount;
+            long size = readVarLong(in);
+            int index = 0;
+            for (long i = 0; i < size; i++) {
+                int zigzag = (int) readVarLong(in);
+                index += (zigzag >>> 1) ^ -(zigzag & 1);
+                long n = readVarLong(in);
+                sketch.bins.put(index, n);
+                sketch.count += n;
+            }
+            return sketch;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("草图数据不完整", e);
+        }
+    }
+
+    /**
+     * 合并两个编码后的草图
+     *
+     * @param encoded 已编码的草图（可为空）
+     * @param delta   增量草图
+     * @return 合并后的编码结果
+     */
+    public static String mergeEncoded(String encoded, LatencySketch delta) {
+        if (delta == null || delta.isEmpty()) {
+            return encoded;
+        }
+        return decode(encoded).merge(delta).encode();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private static int index(double value) {
+        return (int) Math.ceil(Math.log(value) / LN_GAMMA);
+    }
+
+    /**
+     * 桶的代表值：桶区间 (γ^(i-1), γ^i] 中相对误差最小的点
+     */
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * 桶数超过上限时把最低的桶合并到上一个桶
+     */
+    private void collapseIfNeeded() {
+        while (bins.size() > MAX_BINS) {
+            Map.Entry<Integer, Long> lowest = bins.pollFirstEntry();
+            bins.merge(bins.firstKey(), lowest.getValue(), Long::sum);
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数过长");
+    }
+
+    /**
+     * 分位数
+     *
+     * @param p50 中位数（秒）
+     * @param p95 95 分位（秒）
+     * @param p99 99 分位（秒）
+     */
+    public record Percentiles(Double p50, Double p95, Double p99) {
+
+        public static final Percentiles EMPTY = new Percentiles(null, null, null);
+    }
+}
@@ -0,0 +1,1193 @@
+package com.dbdoctor.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单遍 SQL 指纹词法器
+ *
+ * 替代"正则去注释 + 正则压缩空白 + Druid 解析/重新输出 + 正则参数化 + MD5"的多遍处理链：
+ * 一次从左到右扫描原始 SQL，直接把标准化模板写入可复用的字符缓冲区，再对缓冲区做 Murmur3 x64 128 位哈希
+ *
+ * 标准化规则：
+ * - 注释：-- 注释（后跟空白）、# 注释、块注释整体跳过
+ * - 常量：'字符串'、"字符串"、数字（含小数、科学计数法、0x 十六进制、一元负号）、X'..' / B'..' / N'..'、
+ *   NULL / TRUE / FALSE 统一替换为 ?
+ * - 标识符：去掉反引号，保留原始大小写（模板可读），哈希时按 ASCII 大写折叠（大小写不影响指纹）
+ * - 空白：记号之间统一为一个空格；( . 之后、) , . ; 之前、函数名（非关键字标识符）与 ( 之间不加空格；末尾分号忽略
+ * - 变长列表（控制指纹基数）：IN (?, ?, ...) 与 IN ((?, ?), ...) 统一为 IN (?+)；INSERT ... VALUES 多行只保留第一行
+ * - ORM 生成的别名：Hibernate 5 风格（user0_、id1_0_0_）与 Hibernate 6 风格（u1_0）去掉序号，统一为 user_、id_、u_；
+ *   只改写别名定义（AS 之后、表名之后）和 alias. 限定符，表名、列名等其他标识符保持原样
+ *
+ * 热路径无对象分配：缓冲区按需扩容后复用，哈希直接在缓冲区上计算，只有返回的指纹字符串本身需要分配
+ * 非线程安全，由 SqlFingerprintUtil 按线程持有实例
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SqlFingerprintLexer {
+
+    /**
+     * 初始缓冲区大小（字符）
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * 超过该大小的缓冲区在使用后释放，避免线程长期持有超长 SQL 的内存
+     */
+    private static final int RETAIN_CAPACITY = 64 * 1024;
+
+    // 记号类型
+    private static final int T_NONE = 0;
+    private static final int T_WORD = 1;
+    private static final int T_VALUE = 2;
+    private static final int T_OPEN = 3;
+    private static final int T_CLOSE = 4;
+    private static final int T_COMMA = 5;
+    private static final int T_DOT = 6;
+    private static final int T_OP = 7;
+    private static final int T_SEMI = 8;
+
+    // Murmur3 x64 128 常量
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private char[] buf = new char[INITIAL_CAPACITY];
+    private int len;
+    private int lastType;
+    private int lastWordStart;
+    private int lastWordEnd;
+    private final char[] hex = new char[32];
+
+    // 变长列表折叠状态
+    private static final int V_NONE = 0;
+    private static final int V_EXPECT_ROW = 1; // VALUES 之后，等待第一行
+    private static final int V_IN_ROW = 2;     // 行内
+    private static final int V_AFTER_ROW = 3;  // 行结束，后面可能是 , (
+    private static final int V_AFTER_COMMA = 4;
+
+    private int parenDepth;
+    private int inDepth;
+    private int inStart;
+    private boolean inPure;
+    private int valuesState;
+    private int valuesDepth;
+    private int rowStart;
+    private boolean dropRow;
+
+    // 模板中已输出的 ? 个数，以及 IN 列表、VALUES 行开始时的个数
+    private int valueCount;
+    private int inValueStart;
+    private int rowValueStart;
+
+    private long h1;
+    private long h2;
+
+    /**
+     * 计算 SQL 指纹
+     *
+     * @param sql 原始 SQL
+     * @return 32 位小写十六进制（Murmur3 x64 128），SQL 只包含空白/注释时返回空字符串
+     */
+    public String fingerprint(CharSequence sql) {
+        normalize(sql);
+        if (len == 0) {
+            return "";
+        }
+        hash(true);
+        String result = toHex();
+        release();
+        return result;
+    }
+
+    /**
+     * 提取 SQL 模板（参数化、去注释、空白标准化后的 SQL）
+     *
+     * @param sql 原始 SQL
+     * @return 模板
+     */
+    public String template(CharSequence sql) {
+        normalize(sql);
+        String result = new String(buf, 0, len);
+        release();
+        return result;
+    }
+
+    /**
+     * 对任意字符串计算 Murmur3 x64 128 哈希（不做标准化、不折叠大小写）
+     *
+     * @param text 输入
+     * @return 32 位小写十六进制
+     */
+    public String hashHex(String text) {
+        loadRaw(text);
+        hash(false);
+        String result = toHex();
+        release();
+        return result;
+    }
+
+    /**
+     * 对任意字符串计算 64 位哈希（Murmur3 x64 128 的前 64 位，不做标准化）
+     * 用作原始 SQL 的缓存键
+     *
+     * @param text 输入
+     * @return 64 位哈希
+     */
+    public long hash64(String text) {
+        loadRaw(text);
+        hash(false);
+        release();
+        return h1;
+    }
+
+    private void loadRaw(String text) {
+        len = 0;
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), buf, 0);
+        len = text.length();
+    }
+
+    // ==================== 词法扫描 ====================
+
+    /**
+     * 单遍扫描，把标准化模板写入 buf[0, len)
+     */
+    void normalize(CharSequence sql) {
+        len = 0;
+        lastType = T_NONE;
+        parenDepth = 0;
+        inDepth = -1;
+        valuesState = V_NONE;
+        valueCount = 0;
+        resetStatement();
+        int n = sql.length();
+        ensureCapacity(Math.min(n, RETAIN_CAPACITY));
+
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            // 空白
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+
+            // 注释
+            if (c == '#') {
+                i = skipLine(sql, i + 1, n);
+                continue;
+            }
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-' && (i + 2 >= n || sql.charAt(i + 2) <= ' ')) {
+                i = skipLine(sql, i + 2, n);
+                continue;
+            }
+            if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2, n);
+                continue;
+            }
+
+            // 字符串常量
+            if (c == '\'' || c == '"') {
+                int start = i;
+                i = skipString(sql, i + 1, n, c);
+                emitValue(start, i);
+                continue;
+            }
+
+            // 反引号标识符
+            if (c == '`') {
+                int end = i + 1;
+                while (end < n && sql.charAt(end) != '`') {
+                    end++;
+                }
+                emitWord(sql, i + 1, end, true);
+                i = Math.min(n, end + 1);
+                continue;
+            }
+
+            // 数字（含一元负号/正号）
+            if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(sql.charAt(i + 1)) && lastType != T_WORD)) {
+                i = scanNumber(sql, i, i, n);
+                continue;
+            }
+            if ((c == '-' || c == '+') && i + 1 < n && expectsOperand()
+                    && (isDigit(sql.charAt(i + 1))
+                    || (sql.charAt(i + 1) == '.' && i + 2 < n && isDigit(sql.charAt(i + 2))))) {
+                i = scanNumber(sql, i, i + 1, n);
+                continue;
+            }
+
+            // 标识符 / 关键字
+            if (isWordStart(c)) {
+                int end = i + 1;
+                while (end < n && isWordPart(sql.charAt(end))) {
+                    end++;
+                }
+                // X'0A' / B'01' / N'文本'
+                if (end == i + 1 && end < n && sql.charAt(end) == '\'' && isLiteralPrefix(c)) {
+                    int start = i;
+                    i = skipString(sql, end + 1, n, '\'');
+                    emitValue(start, i);
+                    continue;
+                }
+                emitWord(sql, i, end, false);
+                i = end;
+                continue;
+            }
+
+            // 标点与运算符
+            switch (c) {
+                case '(' -> emitPunct('(', T_OPEN);
+                case ')' -> emitPunct(')', T_CLOSE);
+                case ',' -> emitPunct(',', T_COMMA);
+                case '.' -> emitPunct('.', T_DOT);
+                case ';' -> emitPunct(';', T_SEMI);
+                case '?' -> emitValue(-1, -1);
+                default -> {
+                    i = scanOperator(sql, i, n);
+                    continue;
+                }
+            }
+            i++;
+        }
+
+        // 末尾分号不影响指纹
+        while (len > 0 && (buf[len - 1] == ';' || buf[len - 1] == ' ')) {
+            len--;
+        }
+    }
+
+    static int skipLine(CharSequence sql, int i, int n) {
+        while (i < n && sql.charAt(i) != '\n' && sql.charAt(i) != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    static int skipBlockComment(CharSequence sql, int i, int n) {
+        while (i + 1 < n) {
+            if (sql.charAt(i) == '*' && sql.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * 跳过字符串常量（支持 \ 转义和 '' 双写转义），未闭合时跳到结尾
+     */
+    static int skipString(CharSequence sql, int i, int n, char quote) {
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 扫描数字常量；数字后紧跟字母时按标识符处理（例如 1st_table）
+     *
+     * @param signStart 常量起点（含一元负号/正号）
+     * @param start     第一个数字的位置
+     */
+    private int scanNumber(CharSequence sql, int signStart, int start, int n) {
+        int i = start;
+        if (sql.charAt(i) == '0' && i + 1 < n && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < n && isHexDigit(sql.charAt(i))) {
+                i++;
+            }
+        } else {
+            while (i < n && isDigit(sql.charAt(i))) {
+                i++;
+            }
+            if (i < n && sql.charAt(i) == '.') {
+                i++;
+                while (i < n && isDigit(sql.charAt(i))) {
+                    i++;
+                }
+            }
+            if (i + 1 < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+                int j = i + 1;
+                if (sql.charAt(j) == '+' || sql.charAt(j) == '-') {
+                    j++;
+                }
+                if (j < n && isDigit(sql.charAt(j))) {
+                    i = j;
+                    while (i < n && isDigit(sql.charAt(i))) {
+                        i++;
+                    }
+                }
+            }
+        }
+
+        if (i < n && isWordPart(sql.charAt(i)) && isDigit(sql.charAt(start))) {
+            int end = i;
+            while (end < n && isWordPart(sql.charAt(end))) {
+                end++;
+            }
+            emitWord(sql, start, end, false);
+            return end;
+        }
+        emitValue(signStart, i);
+        return i;
+    }
+
+    /**
+     * 扫描运算符（最长匹配 <=> <= >= <> != := || && -> ->> << >>）
+     */
+    private int scanOperator(CharSequence sql, int i, int n) {
+        char c = sql.charAt(i);
+        int end = i + 1;
+        if (end < n) {
+            char d = sql.charAt(end);
+            boolean pair = switch (c) {
+                case '<' -> d == '=' || d == '>' || d == '<';
+                case '>' -> d == '=' || d == '>';
+                case '!', ':' -> d == '=';
+                case '|' -> d == '|';
+                case '&' -> d == '&';
+                case '-' -> d == '>';
+                default -> false;
+            };
+            if (pair) {
+                end++;
+                if (end < n && ((c == '<' && d == '=' && sql.charAt(end) == '>')
+                        || (c == '-' && sql.charAt(end) == '>'))) {
+                    end++;
+                }
+            }
+        }
+        space(T_OP);
+        for (int k = i; k < end; k++) {
+            append(sql.charAt(k));
+        }
+        lastType = T_OP;
+        inPure = false;
+        endValues();
+        onOther();
+        return end;
+    }
+
+    /**
+     * 下一个记号是否处于操作数位置（用于识别一元负号）
+     */
+    private boolean expectsOperand() {
+        return lastType == T_NONE || lastType == T_OPEN || lastType == T_COMMA || lastType == T_OP;
+    }
+
+    // ==================== 输出 ====================
+
+    private void emitWord(CharSequence sql, int start, int end, boolean quoted) {
+        // NULL / TRUE / FALSE 视为常量（与旧算法一致）
+        int wordLen = end - start;
+        if (!quoted && lastType != T_DOT && (wordLen == 4 || wordLen == 5)
+                && (regionMatches(sql, start, wordLen, "NULL")
+                || regionMatches(sql, start, wordLen, "TRUE")
+                || regionMatches(sql, start, wordLen, "FALSE"))) {
+            emitValue(start, end);
+            return;
+        }
+        // 别名定义：AS 之后，或表名之后的标识符
+        boolean aliasDefinition = !quoted && lastType != T_DOT
+                && (tableState == TS_NAME || (lastType == T_WORD && is(lastWordStart, lastWordEnd, "AS")));
+        space(T_WORD);
+        int wordStart = len;
+        for (int k = start; k < end; k++) {
+            append(sql.charAt(k));
+        }
+        if (aliasDefinition) {
+            len = normalizeOrmAlias(wordStart, len);
+        }
+        inPure = false;
+        if (!quoted && lastType != T_DOT && (is(wordStart, len, "VALUES") || is(wordStart, len, "VALUE"))) {
+            valuesState = V_EXPECT_ROW;
+            valuesDepth = parenDepth;
+        } else {
+            endValues();
+        }
+        lastType = T_WORD;
+        columnStart = wordStart;
+        columnEnd = len;
+        lastWordStart = wordStart;
+        lastWordEnd = quoted ? wordStart : len;
+        onWord(wordStart, len, quoted);
+    }
+
+    /**
+     * 输出常量占位符
+     *
+     * @param srcStart 常量在原始 SQL 中的起点（? 占位符为 -1）
+     * @param srcEnd   常量在原始 SQL 中的终点
+     */
+    private void emitValue(int srcStart, int srcEnd) {
+        if (collect) {
+            // 运算符之前的标识符作为参数对应的列（a = ?、t.pwd = ?）
+            boolean keyed = lastType == T_OP && columnEnd > columnStart;
+            recordParameter(srcStart, srcEnd, keyed ? columnStart : -1, keyed ? columnEnd : -1);
+        }
+        space(T_VALUE);
+        append('?');
+        lastType = T_VALUE;
+        valueCount++;
+        endValues();
+        onOther();
+    }
+
+    private void emitPunct(char c, int type) {
+        boolean dropped = false;
+        if (type == T_OPEN) {
+            openParen();
+        } else if (type == T_CLOSE) {
+            dropped = closeParen();
+        } else if (type == T_COMMA) {
+            if (valuesState == V_AFTER_ROW && parenDepth == valuesDepth) {
+                rowStart = len;
+                rowValueStart = valueCount;
+                valuesState = V_AFTER_COMMA;
+            } else {
+                endValues();
+            }
+        } else {
+            if (type == T_DOT) {
+                normalizeQualifier();
+            }
+            inPure = false;
+            endValues();
+        }
+        if (!dropped) {
+            space(type);
+            append(c);
+        }
+        lastType = type;
+        if (type == T_OPEN && inDepth == parenDepth) {
+            inStart = len;
+        }
+        onPunct(type);
+    }
+
+    // ==================== 变长列表与 ORM 别名 ====================
+
+    private void openParen() {
+        // IN 之后的括号：开始记录常量列表；列表内只允许一层常量元组，例如 (a, b) IN ((1, 2), (3, 4))
+        if (parenDepth != inDepth) {
+            inPure = false;
+        }
+        if (lastType == T_WORD && is(lastWordStart, lastWordEnd, "IN")) {
+            inDepth = parenDepth + 1;
+            inPure = true;
+            inValueStart = valueCount;
+        }
+
+        if (parenDepth == valuesDepth && valuesState == V_EXPECT_ROW) {
+            valuesState = V_IN_ROW;
+            dropRow = false;
+        } else if (parenDepth == valuesDepth && valuesState == V_AFTER_COMMA) {
+            valuesState = V_IN_ROW;
+            dropRow = true;
+        } else {
+            endValues();
+        }
+        parenDepth++;
+    }
+
+    /**
+     * @return 是否丢弃了刚结束的 VALUES 行（此时不再输出右括号）
+     */
+    private boolean closeParen() {
+        // IN (?, ?, ?) → IN (?+)
+        if (inDepth == parenDepth) {
+            if (inPure && len > inStart) {
+                len = inStart;
+                append('?');
+                append('+');
+                collapseParameters(inValueStart);
+            }
+            inDepth = -1;
+            inPure = false;
+        }
+        if (parenDepth > 0) {
+            parenDepth--;
+        }
+        if (valuesState == V_IN_ROW && parenDepth == valuesDepth) {
+            valuesState = V_AFTER_ROW;
+            if (dropRow) {
+                // 第二行及之后：连同前面的逗号一起丢弃
+                len = rowStart;
+                while (refCount > 0 && refs[(refCount - 1) * 4 + 2] >= rowStart) {
+                    refCount--;
+                }
+                dropParameters(rowValueStart);
+                return true;
+            }
+        } else {
+            endValues();
+        }
+        return false;
+    }
+
+    private void endValues() {
+        if (valuesState != V_IN_ROW) {
+            valuesState = V_NONE;
+        }
+    }
+
+    /**
+     * ORM 别名去掉序号：user0_ / id1_0_0_（Hibernate 5）、u1_0（Hibernate 6）
+     * 只对别名位置调用（见 emitWord / normalizeQualifier）
+     *
+     * @return 改写后的结束位置
+     */
+    private int normalizeOrmAlias(int start, int end) {
+        int p = start;
+        while (p < end && (isAsciiLetter(buf[p]) || (buf[p] == '_' && p > start))) {
+            p++;
+        }
+        int prefixEnd = p;
+        if (prefixEnd == start || p == end || !isDigit(buf[p])) {
+            return end;
+        }
+        while (p < end && isDigit(buf[p])) {
+            p++;
+        }
+        if (p == end || buf[p] != '_') {
+            return end;
+        }
+        p++;
+        if (p == end) {
+            // user0_
+            return rewriteAlias(prefixEnd);
+        }
+        // id1_0_0_（每段数字后跟 _）或 u1_0（最后一段数字结尾）
+        boolean hibernate6 = true;
+        for (int k = start; k < prefixEnd; k++) {
+            if (buf[k] == '_') {
+                hibernate6 = false;
+                break;
+            }
+        }
+        while (p < end) {
+            int digits = p;
+            while (p < end && isDigit(buf[p])) {
+                p++;
+            }
+            if (p == digits) {
+                return end;
+            }
+            if (p == end) {
+                return hibernate6 ? rewriteAlias(prefixEnd) : end;
+            }
+            if (buf[p] != '_') {
+                return end;
+            }
+            p++;
+            hibernate6 = false;
+        }
+        return rewriteAlias(prefixEnd);
+    }
+
+    /**
+     * alias. 限定符中的 ORM 别名去掉序号（schema.table 中的 schema 保持原样）
+     */
+    private void normalizeQualifier() {
+        if (lastType != T_WORD || lastWordEnd != len || lastWordEnd == lastWordStart || tableState == TS_NAME) {
+            return;
+        }
+        len = normalizeOrmAlias(lastWordStart, len);
+        lastWordEnd = len;
+        columnEnd = len;
+    }
+
+    private int rewriteAlias(int prefixEnd) {
+        buf[prefixEnd] = '_';
+        return prefixEnd + 1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * 按前后记号类型决定是否插入分隔空格
+     */
+    private void space(int type) {
+        if (lastType == T_NONE || lastType == T_OPEN || lastType == T_DOT) {
+            return;
+        }
+        if (type == T_CLOSE || type == T_COMMA || type == T_DOT || type == T_SEMI) {
+            return;
+        }
+        if (type == T_OPEN && lastType == T_WORD && !isSpacedKeyword(lastWordStart, lastWordEnd)) {
+            return;
+        }
+        append(' ');
+    }
+
+    private void append(char c) {
+        if (len == buf.length) {
+            ensureCapacity(len + 1);
+        }
+        buf[len++] = c;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            char[] grown = new char[Math.max(capacity, buf.length * 2)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+    }
+
+    private void release() {
+        if (buf.length > RETAIN_CAPACITY) {
+            buf = new char[INITIAL_CAPACITY];
+        }
+        len = 0;
+    }
+
+    // ==================== 语句分析 ====================
+
+    /**
+     * 单遍分析：在生成模板的同时识别语句类型和引用的全部表
+     *
+     * 表识别规则：FROM / JOIN / INTO / UPDATE / TABLE 之后的标识符（支持 schema.table），
+     * FROM 列表中逗号分隔的多个表，子查询中的表；CTE 名称与派生表别名会被当作表名（已知限制）
+     *
+     * @param sql 原始 SQL
+     * @return 分析结果；SQL 只包含空白/注释时模板与指纹为空字符串
+     */
+    public Statement analyze(CharSequence sql) {
+        collect = true;
+        source = sql;
+        try {
+            normalize(sql);
+            String template = new String(buf, 0, len);
+            String fingerprint = "";
+            if (len > 0) {
+                hash(true);
+                fingerprint = toHex();
+            }
+            return new Statement(statementType(), tables(), template, fingerprint, parameters());
+        } finally {
+            collect = false;
+            source = null;
+            release();
+        }
+    }
+
+    /**
+     * 语句分析结果
+     *
+     * @param type        语句类型（第一个关键字大写，WITH 语句取主语句的关键字；无法识别时为 UNKNOWN）
+     * @param tables      引用的表（schema.table 或 table，按出现顺序去重）
+     * @param template    标准化模板
+     * @param fingerprint 指纹（LEXER 引擎）
+     * @param parameters  被替换为 ? 的常量（最多 MAX_PARAMETERS 个；未脱敏）
+     */
+    public record Statement(String type, List<String> tables, String template, String fingerprint,
+                            List<Parameter> parameters) {
+    }
+
+    /**
+     * 被参数化的常量
+     *
+     * @param position 对应模板中第几个 ?（从 0 开始；IN (?+) 中的所有常量对应同一个位置）
+     * @param column   运算符之前的标识符（a = 1 中的 a），没有时为 null
+     * @param value    常量原文（字符串保留引号，超过 MAX_PARAMETER_LENGTH 时截断）
+     */
+    public record Parameter(int position, String column, String value) {
+    }
+
+    // ==================== 参数提取 ====================
+
+    /**
+     * 每条 SQL 最多记录的常量个数
+     */
+    static final int MAX_PARAMETERS = 64;
+
+    /**
+     * 单个常量最多记录的字符数
+     */
+    static final int MAX_PARAMETER_LENGTH = 64;
+
+    private CharSequence source;
+    private int columnStart;
+    private int columnEnd;
+
+    /**
+     * 每个常量 5 个 int：原文起点、原文终点、位置、列名起点、列名终点（列名位于 buf）
+     */
+    private int[] params = new int[MAX_PARAMETERS * 5];
+    private int paramCount;
+
+    private void recordParameter(int srcStart, int srcEnd, int keyStart, int keyEnd) {
+        if (srcStart < 0 || paramCount >= MAX_PARAMETERS) {
+            return;
+        }
+        int p = paramCount * 5;
+        params[p] = srcStart;
+        params[p + 1] = srcEnd;
+        params[p + 2] = valueCount;
+        params[p + 3] = keyStart;
+        params[p + 4] = keyEnd;
+        paramCount++;
+    }
+
+    /**
+     * IN 列表折叠：列表内的常量都对应折叠后的同一个位置
+     */
+    private void collapseParameters(int position) {
+        for (int k = paramCount - 1; k >= 0 && params[k * 5 + 2] >= position; k--) {
+            params[k * 5 + 2] = position;
+        }
+        valueCount = position + 1;
+    }
+
+    /**
+     * VALUES 多行折叠：丢弃的行中的常量不再记录
+     */
+    private void dropParameters(int position) {
+        while (paramCount > 0 && params[(paramCount - 1) * 5 + 2] >= position) {
+            paramCount--;
+        }
+        valueCount = position;
+    }
+
+    private List<Parameter> parameters() {
+        List<Parameter> result = new ArrayList<>(paramCount);
+        for (int k = 0; k < paramCount; k++) {
+            int p = k * 5;
+            int end = Math.min(params[p + 1], params[p] + MAX_PARAMETER_LENGTH);
+            String value = source.subSequence(params[p], end).toString();
+            String column = params[p + 3] >= 0 ? new String(buf, params[p + 3], params[p + 4] - params[p + 3]) : null;
+            result.add(new Parameter(params[p + 2], column, value));
+        }
+        return result;
+    }
+
+    // 表识别状态
+    private static final int TS_NONE = 0;
+    private static final int TS_EXPECT = 1;   // 下一个标识符是表名
+    private static final int TS_NAME = 2;     // 刚读到表名（后面可能是 . 或别名）
+    private static final int TS_NAME_DOT = 3; // schema. 之后
+    private static final int TS_AFTER = 4;    // 表名之后（别名、索引提示等）
+
+    // 是否提取参数；表识别总是进行（ORM 别名改写依赖表名位置，fingerprint 与 analyze 结果一致）
+    private boolean collect;
+    private int depth;
+    private long fromListMask;
+    private int tableState;
+    private int typeStart;
+    private int typeEnd;
+    private boolean pendingWith;
+    private int[] refs = new int[32];
+    private int refCount;
+
+    private void resetStatement() {
+        depth = 0;
+        fromListMask = 0L;
+        tableState = TS_NONE;
+        typeStart = -1;
+        typeEnd = -1;
+        pendingWith = false;
+        refCount = 0;
+        paramCount = 0;
+        columnStart = 0;
+        columnEnd = 0;
+    }
+
+    private void onWord(int start, int end, boolean quoted) {
+        // 语句类型
+        if (typeStart < 0 || (pendingWith && depth == 0 && !quoted && isMainKeyword(start, end))) {
+            boolean first = typeStart < 0;
+            typeStart = start;
+            typeEnd = end;
+            if (first && is(start, end, "WITH")) {
+                pendingWith = true;
+                return;
+            }
+            pendingWith = false;
+            if (is(start, end, "UPDATE")) {
+                expectTables(true);
+            }
+            return;
+        }
+
+        if (tableState == TS_NAME_DOT) {
+            // schema.table：上一个记录的表名其实是 schema
+            int r = (refCount - 1) * 4;
+            refs[r] = refs[r + 2];
+            refs[r + 1] = refs[r + 3];
+            refs[r + 2] = start;
+            refs[r + 3] = end;
+            tableState = TS_NAME;
+            return;
+        }
+
+        if (tableState == TS_EXPECT) {
+            if (!quoted && isTableModifier(start, end)) {
+                return;
+            }
+            if (!quoted && buf[start] == '@') {
+                // SELECT ... INTO @var
+                tableState = TS_NONE;
+                return;
+            }
+            if (quoted || !isClauseKeyword(start, end)) {
+                addRef(start, end);
+                tableState = TS_NAME;
+                return;
+            }
+        }
+        if (quoted) {
+            if (tableState == TS_NAME) {
+                tableState = TS_AFTER;
+            }
+            return;
+        }
+
+        if (is(start, end, "FROM")) {
+            expectTables(true);
+        } else if (is(start, end, "JOIN") || is(start, end, "STRAIGHT_JOIN")
+                || is(start, end, "INTO") || is(start, end, "TABLE")) {
+            tableState = TS_EXPECT;
+        } else if (is(start, end, "TABLES")) {
+            expectTables(true);
+        } else if (isClauseKeyword(start, end)) {
+            clearFromList();
+            tableState = TS_NONE;
+        } else if (tableState == TS_NAME) {
+            tableState = TS_AFTER;
+        }
+    }
+
+    private void onPunct(int type) {
+        switch (type) {
+            case T_OPEN -> {
+                // FROM (子查询) 别名：括号内按新层级处理，结束后回到别名状态
+                tableState = TS_NONE;
+                depth++;
+            }
+            case T_CLOSE -> {
+                clearFromList();
+                if (depth > 0) {
+                    depth--;
+                }
+                tableState = inFromList() ? TS_AFTER : TS_NONE;
+            }
+            case T_COMMA -> {
+                if ((tableState == TS_NAME || tableState == TS_AFTER) && inFromList()) {
+                    tableState = TS_EXPECT;
+                }
+            }
+            case T_DOT -> {
+                if (tableState == TS_NAME) {
+                    tableState = TS_NAME_DOT;
+                }
+            }
+            default -> onOther();
+        }
+    }
+
+    private void onOther() {
+        if (tableState == TS_EXPECT || tableState == TS_NAME_DOT) {
+            tableState = TS_NONE;
+        }
+    }
+
+    private void expectTables(boolean list) {
+        tableState = TS_EXPECT;
+        if (list && depth < 64) {
+            fromListMask |= 1L << depth;
+        }
+    }
+
+    private boolean inFromList() {
+        return depth < 64 && (fromListMask & (1L << depth)) != 0;
+    }
+
+    private void clearFromList() {
+        if (depth < 64) {
+            fromListMask &= ~(1L << depth);
+        }
+    }
+
+    private void addRef(int start, int end) {
+        if (refCount * 4 + 4 > refs.length) {
+            int[] grown = new int[refs.length * 2];
+            System.arraycopy(refs, 0, grown, 0, refCount * 4);
+            refs = grown;
+        }
+        int r = refCount * 4;
+        refs[r] = -1;
+        refs[r + 1] = -1;
+        refs[r + 2] = start;
+        refs[r + 3] = end;
+        refCount++;
+    }
+
+    private String statementType() {
+        if (typeStart < 0 || pendingWith) {
+            return typeStart < 0 ? "UNKNOWN" : "SELECT";
+        }
+        char[] type = new char[typeEnd - typeStart];
+        for (int k = 0; k < type.length; k++) {
+            char c = buf[typeStart + k];
+            type[k] = c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+        }
+        return new String(type);
+    }
+
+    private List<String> tables() {
+        List<String> tables = new ArrayList<>(refCount);
+        for (int t = 0; t < refCount; t++) {
+            int r = t * 4;
+            String table = refs[r] >= 0
+                    ? new String(buf, refs[r], refs[r + 1] - refs[r]) + "." + new String(buf, refs[r + 2], refs[r + 3] - refs[r + 2])
+                    : new String(buf, refs[r + 2], refs[r + 3] - refs[r + 2]);
+            boolean duplicate = false;
+            for (String existing : tables) {
+                if (existing.equalsIgnoreCase(table)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * WITH 之后决定语句类型的关键字
+     */
+    private boolean isMainKeyword(int start, int end) {
+        return is(start, end, "SELECT") || is(start, end, "INSERT") || is(start, end, "UPDATE")
+                || is(start, end, "DELETE") || is(start, end, "REPLACE");
+    }
+
+    /**
+     * 表名之前可能出现的修饰词
+     */
+    private boolean isTableModifier(int start, int end) {
+        return is(start, end, "LOW_PRIORITY") || is(start, end, "HIGH_PRIORITY") || is(start, end, "DELAYED")
+                || is(start, end, "IGNORE") || is(start, end, "QUICK") || is(start, end, "IF")
+                || is(start, end, "NOT") || is(start, end, "EXISTS") || is(start, end, "ONLY")
+                || is(start, end, "LATERAL");
+    }
+
+    /**
+     * 结束表列表的子句关键字
+     */
+    private boolean isClauseKeyword(int start, int end) {
+        return is(start, end, "WHERE") || is(start, end, "ON") || is(start, end, "USING")
+                || is(start, end, "SET") || is(start, end, "GROUP") || is(start, end, "ORDER")
+                || is(start, end, "LIMIT") || is(start, end, "HAVING") || is(start, end, "VALUES")
+                || is(start, end, "VALUE") || is(start, end, "UNION") || is(start, end, "SELECT")
+                || is(start, end, "WINDOW") || is(start, end, "FOR") || is(start, end, "LOCK")
+                || is(start, end, "INNER") || is(start, end, "LEFT") || is(start, end, "RIGHT")
+                || is(start, end, "CROSS") || is(start, end, "NATURAL") || is(start, end, "FULL")
+                || is(start, end, "OUTER") || is(start, end, "PARTITION");
+    }
+
+    /**
+     * 后面紧跟 ( 时保留空格的关键字（其余标识符视为函数名，与 ( 之间不加空格）
+     */
+    private boolean isSpacedKeyword(int start, int end) {
+        return is(start, end, "IN") || is(start, end, "AS") || is(start, end, "FROM") || is(start, end, "JOIN")
+                || is(start, end, "ON") || is(start, end, "WHERE") || is(start, end, "AND") || is(start, end, "OR")
+                || is(start, end, "NOT") || is(start, end, "EXISTS") || is(start, end, "UNION") || is(start, end, "ALL")
+                || is(start, end, "USING") || is(start, end, "VALUES") || is(start, end, "SELECT") || is(start, end, "INTO")
+                || is(start, end, "ANY") || is(start, end, "SOME") || is(start, end, "WHEN") || is(start, end, "THEN")
+                || is(start, end, "ELSE") || is(start, end, "SET") || is(start, end, "BY") || is(start, end, "HAVING");
+    }
+
+    /**
+     * buf[start, end) 是否等于关键字（ASCII 忽略大小写）
+     */
+    private boolean is(int start, int end, String keyword) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int k = 0; k < keyword.length(); k++) {
+            char c = buf[start + k];
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - 32);
+            }
+            if (c != keyword.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== Murmur3 x64 128 ====================
+
+    /**
+     * 对 buf[0, len) 计算 Murmur3 x64 128（每个字符按 UTF-16 小端两字节输入）
+     *
+     * @param foldCase 是否把 ASCII 小写字母折叠为大写
+     */
+    private void hash(boolean foldCase) {
+        long a = 0;
+        long b = 0;
+        int blocks = len >>> 3;
+
+        for (int blk = 0; blk < blocks; blk++) {
+            int p = blk << 3;
+            long k1 = pack(p, foldCase);
+            long k2 = pack(p + 4, foldCase);
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            a ^= k1;
+            a = Long.rotateLeft(a, 27);
+            a += b;
+            a = a * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            b ^= k2;
+            b = Long.rotateLeft(b, 31);
+            b += a;
+            b = b * 5 + 0x38495ab5;
+        }
+
+        int tail = blocks << 3;
+        int rest = len - tail;
+        if (rest > 4) {
+            long k2 = packPartial(tail + 4, rest - 4, foldCase);
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            b ^= k2;
+        }
+        if (rest > 0) {
+            long k1 = packPartial(tail, Math.min(rest, 4), foldCase);
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            a ^= k1;
+        }
+
+        long byteLength = (long) len << 1;
+        a ^= byteLength;
+        b ^= byteLength;
+        a += b;
+        b += a;
+        a = fmix(a);
+        b = fmix(b);
+        a += b;
+        b += a;
+
+        h1 = a;
+        h2 = b;
+    }
+
+    private long pack(int p, boolean foldCase) {
+        return (long) ch(p, foldCase)
+                | (long) ch(p + 1, foldCase) << 16
+                | (long) ch(p + 2, foldCase) << 32
+                | (long) ch(p + 3, foldCase) << 48;
+    }
+
+    private long packPartial(int p, int count, boolean foldCase) {
+        long k = 0;
+        for (int j = 0; j < count; j++) {
+            k |= (long) ch(p + j, foldCase) << (16 * j);
+        }
+        return k;
+    }
+
+    private char ch(int p, boolean foldCase) {
+        char c = buf[p];
+        return foldCase && c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private String toHex() {
+        writeHex(h1, 0);
+        writeHex(h2, 16);
+        return new String(hex);
+    }
+
+    private void writeHex(long v, int offset) {
+        for (int j = 15; j >= 0; j--) {
+            hex[offset + j] = HEX[(int) (v & 0xF)];
+            v >>>= 4;
+        }
+    }
+
+    long getH1() {
+        return h1;
+    }
+
+    long getH2() {
+        return h2;
+    }
+
+    // ==================== 字符分类 ====================
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    static boolean isWordStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '@' || c >= 0x80;
+    }
+
+    static boolean isWordPart(char c) {
+        return isWordStart(c) || isDigit(c);
+    }
+
+    private static boolean isLiteralPrefix(char c) {
+        return c == 'x' || c == 'X' || c == 'b' || c == 'B' || c == 'n' || c == 'N';
+    }
+
+    private static boolean regionMatches(CharSequence sql, int start, int length, String word) {
+        if (length != word.length()) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            char c = sql.charAt(start + k);
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - 32);
+            }
+            if (c != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
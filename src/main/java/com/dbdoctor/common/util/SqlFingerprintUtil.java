@@ -3,23 +3,30 @@ package com.dbdoctor.common.util;
 import com.alibaba.druid.sql.SQLUtils;
 import com.alibaba.druid.sql.ast.SQLStatement;
 import com.alibaba.druid.util.JdbcConstants;
+import com.dbdoctor.model.SqlArtifact;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * SQL 指纹工具类
- * 用于计算 SQL 指纹（MD5）和提取 SQL 模板
+ * 用于计算 SQL 指纹和提取 SQL 模板
  *
  * 核心功能：
- * 1. 计算 SQL 指纹（MD5 哈希值）
+ * 1. 计算 SQL 指纹（32 位十六进制）
  * 2. 提取 SQL 模板（参数化后的 SQL）
  *
+ * 指纹引擎（V3.3.0）：
+ * - LEGACY（默认）：正则 + Druid + MD5，与 3.3.0 之前的版本生成相同指纹
+ * - LEXER（需显式启用）：单遍词法扫描 + Murmur3 128 位哈希，见 {@link SqlFingerprintLexer}；
+ *   指纹与 LEGACY 不同，已有历史数据的部署切换后模板会分叉，只建议新部署使用
+ *
  * 标准化处理（V2.1.0）：
  * - 大小写统一：SELECT / select → SELECT
  * - 移除反引号：`table` → table
@@ -33,9 +40,298 @@ import java.util.regex.Pattern;
 @Slf4j
 public class SqlFingerprintUtil {
 
+    /**
+     * 指纹引擎
+     */
+    public enum Engine {
+        LEXER,  // 单遍词法扫描 + Murmur3（需显式启用，指纹与旧版本不同）
+        LEGACY  // 正则 + Druid + MD5（默认，兼容已有数据的指纹）
+    }
+
+    /**
+     * 当前指纹引擎（启动时由 FingerprintConfig 按配置设置）
+     */
+    private static volatile Engine engine = Engine.LEGACY;
+
+    /**
+     * 超长 SQL 阈值、参与分析的前缀长度、脱敏样本长度（字符，启动时由 FingerprintConfig 按配置设置）
+     */
+    private static volatile int oversizeThreshold = 16384;
+    private static volatile int oversizePrefixLength = 8192;
+    private static volatile int oversizeSampleLength = 2048;
+
+    /**
+     * 超长 SQL 脱敏样本末尾的截断标记
+     */
+    static final String TRUNCATED_MARKER = " /* … 超长 SQL 已截断 */";
+
+    /**
+     * 每个线程复用一个词法器（内部缓冲区随之复用）
+     */
+    private static final ThreadLocal<SqlFingerprintLexer> LEXER_HOLDER = ThreadLocal.withInitial(SqlFingerprintLexer::new);
+
+    public static Engine getEngine() {
+        return engine;
+    }
+
+    public static void setEngine(Engine engine) {
+        SqlFingerprintUtil.engine = engine != null ? engine : Engine.LEGACY;
+    }
+
+    public static void setOversize(int threshold, int prefixLength, int sampleLength) {
+        oversizeThreshold = Math.max(1, threshold);
+        oversizePrefixLength = Math.max(1, prefixLength);
+        oversizeSampleLength = Math.max(1, sampleLength);
+    }
+
+    /**
+     * 是否按超长 SQL 处理
+     *
+     * @param rawSql 原始 SQL
+     * @return 长度超过阈值时返回 true
+     */
+    public static boolean isOversize(String rawSql) {
+        return rawSql != null && rawSql.length() > oversizeThreshold;
+    }
+
+    /**
+     * 分析 SQL：一次词法扫描得到指纹、模板、语句类型和引用的全部表，并完成清洗和脱敏
+     *
+     * LEGACY 引擎下指纹和模板仍按旧算法计算，语句类型和表名同样来自词法扫描
+     *
+     * @param rawSql 原始 SQL
+     * @return 预处理产物，SQL 为空（或只有注释）时返回 null
+     */
+    public static SqlArtifact analyze(String rawSql) {
+        if (isOversize(rawSql)) {
+            return analyzeOversize(rawSql);
+        }
+        String cleanedSql = cleanSql(rawSql);
+        if (cleanedSql.isBlank()) {
+            return null;
+        }
+
+        SqlFingerprintLexer.Statement statement = LEXER_HOLDER.get().analyze(rawSql);
+        String fingerprint;
+        String template;
+        if (engine == Engine.LEGACY) {
+            fingerprint = calculateLegacyFingerprint(cleanedSql);
+            template = extractTemplate(cleanedSql);
+        } else {
+            fingerprint = statement.fingerprint();
+            template = statement.template();
+        }
+        return buildArtifact(statement, cleanedSql, SqlMaskingUtil.maskSensitiveData(cleanedSql),
+                fingerprint, template, false);
+    }
+
+    /**
+     * 分析超长 SQL（数 MB 的批量 INSERT、超长 IN 列表等）
+     *
+     * 只对前 prefixLength 个字符做词法扫描；前缀在末尾往往停在半行 VALUES、半个 IN 列表或半个字符串上，
+     * 截断位置不同模板就不同，因此先把原始前缀截到稳定位置（见 stablePrefix），再用当前引擎计算指纹和模板：
+     * 同一结构的批量 INSERT 无论截断在哪里都归入同一个模板，LEXER 引擎下与未超长的同结构 SQL 指纹一致，
+     * LEGACY 引擎下与对截断后的 SQL 走 LEGACY 路径得到的指纹一致。
+     * 清洗后的 SQL 只保留前缀，脱敏 SQL 截断到 sampleLength 并带截断标记
+     *
+     * @param rawSql 原始 SQL（长度超过阈值）
+     * @return 预处理产物，前缀为空（或只有注释）时返回 null
+     */
+    private static SqlArtifact analyzeOversize(String rawSql) {
+        String prefix = rawSql.substring(0, Math.min(rawSql.length(), oversizePrefixLength));
+        String cleanedSql = cleanSql(prefix);
+        if (cleanedSql.isBlank()) {
+            return null;
+        }
+
+        SqlFingerprintLexer lexer = LEXER_HOLDER.get();
+        SqlFingerprintLexer.Statement statement = lexer.analyze(prefix);
+        boolean cut = prefix.length() < rawSql.length();
+        String stable = cut ? stablePrefix(prefix) : prefix;
+        if (cleanSql(stable).isBlank()) {
+            stable = prefix;
+        }
+
+        String fingerprint;
+        String template;
+        if (engine == Engine.LEGACY) {
+            String cleanedStable = cleanSql(stable);
+            fingerprint = calculateLegacyFingerprint(cleanedStable);
+            template = extractTemplate(cleanedStable);
+        } else {
+            fingerprint = lexer.fingerprint(stable);
+            template = lexer.template(stable);
+        }
+
+        String maskedSql = SqlMaskingUtil.maskSensitiveData(cleanedSql);
+        if (maskedSql.length() > oversizeSampleLength) {
+            maskedSql = maskedSql.substring(0, oversizeSampleLength);
+        }
+        return buildArtifact(statement, cleanedSql, maskedSql + TRUNCATED_MARKER, fingerprint,
+                cut ? template + " …" : template, true);
+    }
+
+    /**
+     * 截断 SQL 的稳定前缀（在原始文本上计算，字符串常量、反引号标识符和注释中的括号不计入）
+     *
+     * - 有未闭合的括号时，截到最外层未闭合的 '(' 之前（丢弃半行 VALUES、半个 IN 列表或子查询）
+     * - 括号都已闭合、末尾有未闭合的字符串或注释时，截到其开始位置之前
+     * - 否则丢弃末尾可能被截断的单词
+     * - 去掉末尾的空白和逗号
+     *
+     * @param sql 被截断的原始 SQL
+     * @return 稳定前缀
+     */
+    static String stablePrefix(String sql) {
+        int n = sql.length();
+        int depth = 0;
+        int outermostOpen = -1;
+        int unclosed = -1;
+        int i = 0;
+        while (i < n && unclosed < 0) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = skipQuoted(sql, i + 1, n, c);
+                if (end < 0) {
+                    unclosed = i;
+                }
+                i = end;
+            } else if (c == '#' || (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-'
+                    && (i + 2 >= n || sql.charAt(i + 2) <= ' '))) {
+                int end = SqlFingerprintLexer.skipLine(sql, i + 1, n);
+                if (end >= n) {
+                    unclosed = i;
+                }
+                i = end;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    unclosed = i;
+                }
+                i = end + 2;
+            } else {
+                if (c == '(') {
+                    if (depth++ == 0) {
+                        outermostOpen = i;
+                    }
+                } else if (c == ')' && depth > 0) {
+                    depth--;
+                }
+                i++;
+            }
+        }
+
+        int end;
+        if (depth > 0) {
+            end = outermostOpen;
+        } else if (unclosed >= 0) {
+            end = unclosed;
+        } else {
+            end = n;
+            while (end > 0 && SqlFingerprintLexer.isWordPart(sql.charAt(end - 1))) {
+                end--;
+            }
+            if (end == 0) {
+                end = n;
+            }
+        }
+        while (end > 0 && (sql.charAt(end - 1) <= ' ' || sql.charAt(end - 1) == ',')) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
+
+    /**
+     * 跳过引号内容（支持 \ 转义和双写转义，反引号只支持双写）
+     *
+     * @return 闭合引号之后的位置，未闭合时返回 -1
+     */
+    private static int skipQuoted(String sql, int i, int n, char quote) {
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static SqlArtifact buildArtifact(SqlFingerprintLexer.Statement statement, String cleanedSql,
+                                             String maskedSql, String fingerprint, String template,
+                                             boolean oversize) {
+        // 主表与数据库名
+        String tableName = "unknown";
+        String dbName = null;
+        for (String table : statement.tables()) {
+            int dot = table.indexOf('.');
+            if (tableName.equals("unknown")) {
+                tableName = truncate(dot > 0 ? table.substring(dot + 1) : table, 64);
+            }
+            if (dbName == null && dot > 0) {
+                dbName = truncate(table.substring(0, dot), 64);
+            }
+        }
+
+        return SqlArtifact.builder()
+                .cleanedSql(cleanedSql)
+                .fingerprint(fingerprint)
+                .sqlTemplate(template)
+                .maskedSql(maskedSql)
+                .statementType(statement.type())
+                .tables(statement.tables())
+                .tableName(tableName)
+                .dbName(dbName)
+                .parameters(maskParameters(statement.parameters()))
+                .oversize(oversize)
+                .build();
+    }
+
+    /**
+     * 参数值脱敏（参数画像只保存脱敏后的值）
+     */
+    private static List<SqlFingerprintLexer.Parameter> maskParameters(List<SqlFingerprintLexer.Parameter> parameters) {
+        if (parameters.isEmpty()) {
+            return List.of();
+        }
+        List<SqlFingerprintLexer.Parameter> masked = new ArrayList<>(parameters.size());
+        for (SqlFingerprintLexer.Parameter parameter : parameters) {
+            masked.add(new SqlFingerprintLexer.Parameter(parameter.position(), parameter.column(),
+                    SqlMaskingUtil.maskParameter(parameter.value(), parameter.column())));
+        }
+        return masked;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
     /**
      * 计算 SQL 指纹
      *
+     * @param rawSql 原始 SQL
+     * @return 32 位小写十六进制字符串（LEXER 为 Murmur3 128，LEGACY 为 MD5）
+     */
+    public static String calculateFingerprint(String rawSql) {
+        if (rawSql == null || rawSql.isBlank()) {
+            return "";
+        }
+        if (engine == Engine.LEGACY) {
+            return calculateLegacyFingerprint(rawSql);
+        }
+        return LEXER_HOLDER.get().fingerprint(rawSql);
+    }
+
+    /**
+     * 计算 SQL 指纹（兼容模式）
+     *
      * 标准化步骤：
      * 1. 移除 SQL 注释（单行注释和多行注释）
      * 2. 压缩空白字符（多个空格→一个，换行→空格）
@@ -46,11 +342,7 @@ public class SqlFingerprintUtil {
      * @param rawSql 原始 SQL
      * @return MD5 哈希值（32位小写十六进制字符串）
      */
-    public static String calculateFingerprint(String rawSql) {
-        if (rawSql == null || rawSql.isBlank()) {
-            return "";
-        }
-
+    static String calculateLegacyFingerprint(String rawSql) {
         try {
             // 1. 移除 SQL 注释
             String normalized = removeSqlComments(rawSql);
@@ -100,10 +392,13 @@ public class SqlFingerprintUtil {
         if (rawSql == null || rawSql.isBlank()) {
             return "";
         }
+        if (engine == Engine.LEXER) {
+            return LEXER_HOLDER.get().template(rawSql);
+        }
 
         try {
-            // 先标准化
-            String normalized = normalizeWhitespace(rawSql.trim());
+            // 先移除注释并标准化（Druid 会把注释原样输出到模板中）
+            String normalized = normalizeWhitespace(removeSqlComments(rawSql).trim());
 
             // 解析 SQL 语句
             List<SQLStatement> statements = SQLUtils.parseStatements(normalized, JdbcConstants.MYSQL);
@@ -239,8 +534,8 @@ public class SqlFingerprintUtil {
         // 移除 SQL 注释（单行注释 --、多行注释 /* */、MySQL 注释 #）
         cleaned = removeSqlComments(cleaned);
 
-        // 去除多余空格（多个连续空格替换为一个）
-        cleaned = cleaned.replaceAll("\\s+", " ");
+        // 去除多余空格（多个连续空格替换为一个），注释移除后可能残留首尾空白
+        cleaned = cleaned.replaceAll("\\s+", " ").trim();
 
         return cleaned;
     }
@@ -258,6 +553,52 @@ public class SqlFingerprintUtil {
         return fingerprint1.equals(fingerprint2);
     }
 
+    /**
+     * 计算原始 SQL 文本的 64 位哈希（不做任何标准化，用作预处理结果缓存的键）
+     *
+     * @param rawSql 原始 SQL
+     * @return 64 位哈希
+     */
+    public static long rawHash64(String rawSql) {
+        return LEXER_HOLDER.get().hash64(rawSql);
+    }
+
+    /**
+     * 将指纹限定到指定数据库实例（多实例监控）
+     *
+     * 同一条 SQL 在不同实例上应归入不同的模板，因此对 "实例ID/指纹" 再做一次哈希（与当前引擎一致），
+     * 结果仍是 32 位十六进制，可直接作为 sqlFingerprint 使用（保持唯一索引不变）
+     *
+     * @param fingerprint 原始指纹
+     * @param instanceId  数据库实例 ID（为空时原样返回）
+     * @return 限定到实例的指纹
+     */
+    public static String scopeToInstance(String fingerprint, Long instanceId) {
+        if (instanceId == null || fingerprint == null) {
+            return fingerprint;
+        }
+        String scoped = instanceId + "/" + fingerprint;
+        return engine == Engine.LEGACY ? calculateMD5(scoped) : LEXER_HOLDER.get().hashHex(scoped);
+    }
+
+    /**
+     * 将指纹限定到指定数据库（schema）
+     *
+     * performance_schema 的 DIGEST 不包含数据库名，同一条语句在不同库上执行时 DIGEST 相同；
+     * 对 "数据库名/指纹" 再做一次哈希（与当前引擎一致），使其归入不同的模板
+     *
+     * @param fingerprint 原始指纹
+     * @param schema      数据库名（为空时原样返回）
+     * @return 限定到数据库的指纹
+     */
+    public static String scopeToSchema(String fingerprint, String schema) {
+        if (schema == null || schema.isBlank() || fingerprint == null) {
+            return fingerprint;
+        }
+        String scoped = schema + "/" + fingerprint;
+        return engine == Engine.LEGACY ? calculateMD5(scoped) : LEXER_HOLDER.get().hashHex(scoped);
+    }
+
     /**
      * 计算 MD5 哈希值（使用 Java 标准库）
      *
@@ -0,0 +1,463 @@
+package com.dbdoctor.common.util;
+
+import java.util.List;
+
+/**
+ * 单遍 SQL 脱敏扫描器
+ *
+ * 替代对整条 SQL 依次执行九个正则 replaceAll 的做法：复用 SqlFingerprintLexer 的字符串/注释识别，
+ * 从左到右扫描一次，只在字符串常量和数字常量内部应用脱敏规则，结果写入一个可复用的输出缓冲区
+ * （标识符、关键字、注释原样保留，表名/列名中的数字不会被误伤）
+ *
+ * 内置规则：
+ * - 手机号（11 位，1[3-9] 开头）：138****5678
+ * - 身份证号（18 位，出生日期合法）：110101********1234
+ * - 银行卡号（16-19 位）：622202*******0123
+ * - 固定电话（0 开头区号-7/8 位号码）：010-****5678
+ * - IP 地址：192.168.1.***
+ * - 邮箱：u***@example.com
+ * - password / pwd / token / api_key / secret 等字段 = '值'：整个值替换为 ******
+ * - host / server / hostname = '值'：整个值替换为 ***.***.**.*
+ *
+ * 自定义规则（正则）只作用于字符串常量内容，不会扫描整条 SQL
+ *
+ * 非线程安全，由 SqlMaskingUtil 按线程持有实例
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+final class SqlMaskingScanner {
+
+    private static final int RETAIN_CAPACITY = 64 * 1024;
+
+    // 字段名对应的整体脱敏方式
+    private static final int KEY_NONE = 0;
+    private static final int KEY_SECRET = 1;
+    private static final int KEY_HOST = 2;
+
+    private StringBuilder out = new StringBuilder(1024);
+
+    /**
+     * 最近的字段名类型，以及之后是否已经出现 = / :
+     */
+    private int keyKind;
+    private boolean keyArmed;
+
+    /**
+     * 脱敏
+     *
+     * @param sql         SQL
+     * @param customRules 自定义规则（作用于字符串常量内容）
+     * @return 脱敏后的 SQL
+     */
+    String mask(String sql, List<SqlMaskingUtil.MaskingRule> customRules) {
+        return mask(sql, customRules, KEY_NONE);
+    }
+
+    /**
+     * 脱敏单个常量（参数画像中保存的值）
+     *
+     * @param literal     常量原文（字符串带引号）
+     * @param column      常量对应的列名（用于 password / host 等字段整体替换），可以为 null
+     * @param customRules 自定义规则
+     * @return 脱敏后的常量
+     */
+    String maskParameter(String literal, String column, List<SqlMaskingUtil.MaskingRule> customRules) {
+        int kind = column != null ? keyKind(column, 0, column.length()) : KEY_NONE;
+        return mask(literal, customRules, kind);
+    }
+
+    private String mask(String sql, List<SqlMaskingUtil.MaskingRule> customRules, int initialKeyKind) {
+        out.setLength(0);
+        keyKind = initialKeyKind;
+        keyArmed = initialKeyKind != KEY_NONE;
+
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            // 空白：不影响字段名上下文
+            if (c <= ' ') {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            // 注释：原样保留
+            int commentEnd = commentEnd(sql, i, n);
+            if (commentEnd > i) {
+                out.append(sql, i, commentEnd);
+                i = commentEnd;
+                continue;
+            }
+
+            // 字符串常量
+            if (c == '\'' || c == '"') {
+                int end = SqlFingerprintLexer.skipString(sql, i + 1, n, c);
+                boolean closed = end > i + 1 && sql.charAt(end - 1) == c && end - 1 > i;
+                int contentEnd = closed ? end - 1 : end;
+                out.append(c);
+                int contentStart = out.length();
+                if (keyArmed && keyKind == KEY_SECRET) {
+                    out.append("******");
+                } else if (keyArmed && keyKind == KEY_HOST) {
+                    out.append("***.***.**.*");
+                } else {
+                    maskText(sql, i + 1, contentEnd);
+                    applyCustomRules(contentStart, customRules);
+                }
+                if (closed) {
+                    out.append(c);
+                }
+                resetKey();
+                i = end;
+                continue;
+            }
+
+            // 反引号标识符：原样保留，可作为字段名
+            if (c == '`') {
+                int end = i + 1;
+                while (end < n && sql.charAt(end) != '`') {
+                    end++;
+                }
+                onKey(sql, i + 1, end);
+                end = Math.min(n, end + 1);
+                out.append(sql, i, end);
+                i = end;
+                continue;
+            }
+
+            // 数字常量
+            if (SqlFingerprintLexer.isDigit(c) && (i == 0 || !SqlFingerprintLexer.isWordPart(sql.charAt(i - 1)))) {
+                int end = i;
+                while (end < n && SqlFingerprintLexer.isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                if (end < n && SqlFingerprintLexer.isWordPart(sql.charAt(end))) {
+                    // 1st_col 之类的标识符
+                    while (end < n && SqlFingerprintLexer.isWordPart(sql.charAt(end))) {
+                        end++;
+                    }
+                    out.append(sql, i, end);
+                    resetKey();
+                } else if (keyArmed && keyKind == KEY_SECRET) {
+                    out.append("******");
+                    resetKey();
+                } else {
+                    maskDigits(sql, i, end);
+                    resetKey();
+                }
+                i = end;
+                continue;
+            }
+
+            // 标识符 / 关键字
+            if (SqlFingerprintLexer.isWordStart(c)) {
+                int end = i + 1;
+                while (end < n && SqlFingerprintLexer.isWordPart(sql.charAt(end))) {
+                    end++;
+                }
+                out.append(sql, i, end);
+                onKey(sql, i, end);
+                i = end;
+                continue;
+            }
+
+            // 运算符与标点
+            out.append(c);
+            if ((c == '=' || c == ':') && keyKind != KEY_NONE) {
+                keyArmed = true;
+            } else if (c != '.') {
+                resetKey();
+            }
+            i++;
+        }
+
+        String result = out.toString();
+        if (out.capacity() > RETAIN_CAPACITY) {
+            out = new StringBuilder(1024);
+        }
+        return result;
+    }
+
+    private static int commentEnd(String sql, int i, int n) {
+        char c = sql.charAt(i);
+        if (c == '#') {
+            return SqlFingerprintLexer.skipLine(sql, i + 1, n);
+        }
+        if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-' && (i + 2 >= n || sql.charAt(i + 2) <= ' ')) {
+            return SqlFingerprintLexer.skipLine(sql, i + 2, n);
+        }
+        if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+            return SqlFingerprintLexer.skipBlockComment(sql, i + 2, n);
+        }
+        return i;
+    }
+
+    // ==================== 字段名上下文 ====================
+
+    private void onKey(String sql, int start, int end) {
+        keyArmed = false;
+        keyKind = keyKind(sql, start, end);
+    }
+
+    private void resetKey() {
+        keyKind = KEY_NONE;
+        keyArmed = false;
+    }
+
+    private static int keyKind(String sql, int start, int end) {
+        int len = end - start;
+        if (len < 3 || len > 13) {
+            return KEY_NONE;
+        }
+        if (matches(sql, start, end, "password") || matches(sql, start, end, "pwd")
+                || matches(sql, start, end, "passwd") || matches(sql, start, end, "token")
+                || matches(sql, start, end, "api_key") || matches(sql, start, end, "apikey")
+                || matches(sql, start, end, "access_token") || matches(sql, start, end, "secret_key")
+                || matches(sql, start, end, "secret")) {
+            return KEY_SECRET;
+        }
+        if (matches(sql, start, end, "host") || matches(sql, start, end, "server")
+                || matches(sql, start, end, "hostname")) {
+            return KEY_HOST;
+        }
+        return KEY_NONE;
+    }
+
+    private static boolean matches(String sql, int start, int end, String lowerKeyword) {
+        return end - start == lowerKeyword.length() && sql.regionMatches(true, start, lowerKeyword, 0, end - start);
+    }
+
+    // ==================== 常量内容 ====================
+
+    /**
+     * 数字常量：手机号、身份证号（纯数字）、银行卡号
+     */
+    private void maskDigits(String sql, int start, int end) {
+        int len = end - start;
+        if (isPhone(sql, start, len)) {
+            appendMasked(sql, start, end, 3, 4);
+        } else if (len == 18 && isIdCardDate(sql, start)) {
+            appendMasked(sql, start, end, 6, 4);
+        } else if (len >= 16 && len <= 19) {
+            appendMasked(sql, start, end, 6, 4);
+        } else {
+            out.append(sql, start, end);
+        }
+    }
+
+    /**
+     * 字符串常量内容：数字规则 + IP + 固定电话 + 邮箱
+     */
+    private void maskText(String sql, int from, int to) {
+        int localStart = -1;
+        int localOut = -1;
+
+        int k = from;
+        while (k < to) {
+            char c = sql.charAt(k);
+            boolean boundary = k == from || !SqlFingerprintLexer.isWordPart(sql.charAt(k - 1));
+
+            // 邮箱局部（用于遇到 @ 时回退）
+            if (isLocalChar(c) && (k == from || !isLocalChar(sql.charAt(k - 1)))) {
+                localStart = k;
+                localOut = out.length();
+            }
+
+            if (c == '@' && localStart >= 0 && localStart < k) {
+                int domainEnd = emailDomainEnd(sql, k + 1, to);
+                if (domainEnd > 0) {
+                    out.setLength(localOut);
+                    out.append(sql.charAt(localStart)).append("***@");
+                    out.append(sql, k + 1, domainEnd);
+                    localStart = -1;
+                    k = domainEnd;
+                    continue;
+                }
+            }
+
+            if (SqlFingerprintLexer.isDigit(c) && boundary) {
+                int end = k;
+                while (end < to && SqlFingerprintLexer.isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                int len = end - k;
+
+                // IP 地址
+                int ipEnd = len <= 3 ? ipEnd(sql, k, to) : -1;
+                if (ipEnd > 0) {
+                    int lastDot = k;
+                    for (int p = k; p < ipEnd; p++) {
+                        if (sql.charAt(p) == '.') {
+                            lastDot = p;
+                        }
+                    }
+                    out.append(sql, k, lastDot + 1).append("***");
+                    k = ipEnd;
+                    continue;
+                }
+
+                // 固定电话：0 开头区号 - 7/8 位号码
+                if (c == '0' && (len == 3 || len == 4) && end < to && sql.charAt(end) == '-') {
+                    int numEnd = end + 1;
+                    while (numEnd < to && SqlFingerprintLexer.isDigit(sql.charAt(numEnd))) {
+                        numEnd++;
+                    }
+                    int numLen = numEnd - end - 1;
+                    if ((numLen == 7 || numLen == 8) && isEnd(sql, numEnd, to)) {
+                        out.append(sql, k, end + 1).append("****").append(sql, numEnd - 4, numEnd);
+                        k = numEnd;
+                        continue;
+                    }
+                }
+
+                // 身份证号（末位 X）
+                if (len == 17 && end < to && (sql.charAt(end) == 'X' || sql.charAt(end) == 'x')
+                        && isEnd(sql, end + 1, to) && isIdCardDate(sql, k)) {
+                    appendMasked(sql, k, end + 1, 6, 4);
+                    k = end + 1;
+                    continue;
+                }
+
+                if (isEnd(sql, end, to)) {
+                    maskDigits(sql, k, end);
+                } else {
+                    out.append(sql, k, end);
+                }
+                k = end;
+                continue;
+            }
+
+            out.append(c);
+            k++;
+        }
+    }
+
+    private void applyCustomRules(int contentStart, List<SqlMaskingUtil.MaskingRule> customRules) {
+        if (customRules.isEmpty() || out.length() == contentStart) {
+            return;
+        }
+        String content = out.substring(contentStart);
+        String masked = content;
+        for (SqlMaskingUtil.MaskingRule rule : customRules) {
+            masked = rule.pattern().matcher(masked).replaceAll(rule.replacement());
+        }
+        if (!masked.equals(content)) {
+            out.setLength(contentStart);
+            out.append(masked);
+        }
+    }
+
+    /**
+     * 保留前 keepHead 位和后 keepTail 位，中间替换为 *
+     */
+    private void appendMasked(String sql, int start, int end, int keepHead, int keepTail) {
+        out.append(sql, start, start + keepHead);
+        for (int p = start + keepHead; p < end - keepTail; p++) {
+            out.append('*');
+        }
+        out.append(sql, end - keepTail, end);
+    }
+
+    private static boolean isPhone(String sql, int start, int len) {
+        if (len != 11 || sql.charAt(start) != '1') {
+            return false;
+        }
+        char second = sql.charAt(start + 1);
+        return second >= '3' && second <= '9';
+    }
+
+    /**
+     * 身份证出生日期：(19|20)yy + 01-12 + 01-31
+     */
+    private static boolean isIdCardDate(String sql, int start) {
+        if (sql.charAt(start) == '0') {
+            return false;
+        }
+        int century = twoDigits(sql, start + 6);
+        int month = twoDigits(sql, start + 10);
+        int day = twoDigits(sql, start + 12);
+        return (century == 19 || century == 20) && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    private static int twoDigits(String sql, int p) {
+        return (sql.charAt(p) - '0') * 10 + (sql.charAt(p + 1) - '0');
+    }
+
+    /**
+     * 从 start 开始匹配 d{1,3}.d{1,3}.d{1,3}.d{1,3}，返回结束位置，不匹配返回 -1
+     */
+    private static int ipEnd(String sql, int start, int to) {
+        int p = start;
+        for (int part = 0; part < 4; part++) {
+            int digits = 0;
+            while (p < to && digits < 4 && SqlFingerprintLexer.isDigit(sql.charAt(p))) {
+                p++;
+                digits++;
+            }
+            if (digits == 0 || digits > 3) {
+                return -1;
+            }
+            if (part < 3) {
+                if (p >= to || sql.charAt(p) != '.') {
+                    return -1;
+                }
+                p++;
+            }
+        }
+        return isEnd(sql, p, to) && (p >= to || sql.charAt(p) != '.') ? p : -1;
+    }
+
+    /**
+     * 邮箱域名：[A-Za-z0-9.-]+ 且最后一段为 2 位以上字母，返回结束位置，不匹配返回 -1
+     */
+    private static int emailDomainEnd(String sql, int start, int to) {
+        int p = start;
+        int lastDot = -1;
+        while (p < to) {
+            char c = sql.charAt(p);
+            if (c == '.') {
+                lastDot = p;
+            } else if (!(Character.isLetterOrDigit(c) && c < 0x80) && c != '-') {
+                break;
+            }
+            p++;
+        }
+        // 去掉末尾的点（例如句尾）
+        while (p > start && sql.charAt(p - 1) == '.') {
+            p--;
+        }
+        if (lastDot >= p - 1) {
+            lastDot = -1;
+            for (int q = p - 1; q > start; q--) {
+                if (sql.charAt(q) == '.') {
+                    lastDot = q;
+                    break;
+                }
+            }
+        }
+        if (lastDot <= start || p - lastDot - 1 < 2) {
+            return -1;
+        }
+        for (int q = lastDot + 1; q < p; q++) {
+            char c = sql.charAt(q);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return -1;
+            }
+        }
+        return p;
+    }
+
+    private static boolean isLocalChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || SqlFingerprintLexer.isDigit(c)
+                || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isEnd(String sql, int p, int to) {
+        return p >= to || !SqlFingerprintLexer.isWordPart(sql.charAt(p));
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.dbdoctor.common.util;
 
 import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -11,11 +13,14 @@ import java.util.regex.Pattern;
  * 1. 手机号：13812345678 → 138****5678
  * 2. 身份证：110101199001011234 → 110101********1234
  * 3. 固定电话：010-12345678 → 010-****5678
- * 4. IP 地址：192.168.1.1 → 192.168.*.*
+ * 4. IP 地址：192.168.1.1 → 192.168.1.***
  * 5. 邮箱：user@example.com → u***@example.com
- * 6. 银行卡号：6222021234567890123 → 622202*******890123
- * 7. 密码/Token：password → ******
- * 8. 数据库连接字符串：host=127.0.0.1 → host=***.***.**.*
+ * 6. 银行卡号：6222021234567890123 → 622202*********0123
+ * 7. 密码/Token：password = '123456' → password = '******'
+ * 8. 数据库连接字符串：host = '127.0.0.1' → host = '***.***.**.*'
+ * 9. 自定义规则（db-doctor.slow-log-monitor.masking.custom-rules）
+ *
+ * 脱敏由 SqlMaskingScanner 单遍扫描完成，只作用于字符串常量和数字常量（表名、列名、注释不受影响）
  *
  * @author DB-Doctor
  * @version 2.1.0
@@ -23,7 +28,7 @@ import java.util.regex.Pattern;
 @Slf4j
 public class SqlMaskingUtil {
 
-    // ==================== 正则表达式模式 ====================
+    // ==================== 正则表达式模式（用于敏感数据检测） ====================
 
     /**
      * 中国手机号（1开头，11位）
@@ -41,14 +46,6 @@ public class SqlMaskingUtil {
         "\\b([1-9]\\d{5})(19|20)\\d{2}(0[1-9]|1[0-2])(0[1-9]|[12]\\d|3[01])\\d{3}[0-9Xx]\\b"
     );
 
-    /**
-     * 固定电话（区号-号码）
-     * 匹配：010-12345678, 0755-1234567
-     */
-    private static final Pattern LANDLINE_PATTERN = Pattern.compile(
-        "\\b(0\\d{2,3}-?)\\d{3,4}(\\d{4})\\b"
-    );
-
     /**
      * IP 地址
      * 匹配：192.168.1.1, 10.0.0.1
@@ -65,14 +62,6 @@ public class SqlMaskingUtil {
         "\\b([a-zA-Z0-9])[a-zA-Z0-9._%+-]*@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}\\b"
     );
 
-    /**
-     * 银行卡号（16-19位）
-     * 匹配：6222021234567890123
-     */
-    private static final Pattern BANK_CARD_PATTERN = Pattern.compile(
-        "\\b(\\d{4})(\\d{6,})(\\d{4,6})\\b"
-    );
-
     /**
      * 密码字段
      * 匹配：password='123456', pwd="abc123"
@@ -91,20 +80,62 @@ public class SqlMaskingUtil {
         Pattern.CASE_INSENSITIVE
     );
 
+    // ==================== 单遍脱敏引擎 ====================
+
     /**
-     * 数据库连接字符串中的 IP
-     * 匹配：host=192.168.1.1, server=10.0.0.1
+     * 每个线程一个扫描器（复用输出缓冲区）
      */
-    private static final Pattern DB_HOST_PATTERN = Pattern.compile(
-        "(host|server|hostname)\\s*[=:]\\s*[\"']?(\\d{1,3}\\.\\d{1,3}\\.)(\\d{1,3}\\.)?(\\d{1,3})[\"']?",
-        Pattern.CASE_INSENSITIVE
-    );
+    private static final ThreadLocal<SqlMaskingScanner> SCANNER_HOLDER =
+        ThreadLocal.withInitial(SqlMaskingScanner::new);
+
+    /**
+     * 自定义脱敏规则（启动时由 MaskingConfig 设置，作用于字符串常量内容）
+     */
+    private static volatile List<MaskingRule> customRules = List.of();
+
+    /**
+     * 自定义脱敏规则
+     *
+     * @param name        规则名称
+     * @param pattern     匹配字符串常量内容的正则
+     * @param replacement 替换内容（支持 $1 等分组引用）
+     */
+    public record MaskingRule(String name, Pattern pattern, String replacement) {
+
+        /**
+         * 编译规则
+         *
+         * @param name        规则名称
+         * @param regex       正则表达式
+         * @param replacement 替换内容，为空时替换为 ******
+         * @return 规则
+         */
+        public static MaskingRule of(String name, String regex, String replacement) {
+            return new MaskingRule(name, Pattern.compile(regex),
+                replacement != null ? replacement : "******");
+        }
+    }
+
+    /**
+     * 设置自定义脱敏规则
+     *
+     * @param rules 规则列表（null 表示清空）
+     */
+    public static void setCustomRules(List<MaskingRule> rules) {
+        customRules = rules != null ? List.copyOf(rules) : List.of();
+    }
+
+    public static List<MaskingRule> getCustomRules() {
+        return customRules;
+    }
 
     // ==================== 脱敏方法 ====================
 
     /**
      * 脱敏 SQL 中的敏感信息
      *
+     * 单遍扫描：识别字符串、数字常量、注释和字段名，只在常量内部应用内置规则和自定义规则
+     *
      * @param sql 原始 SQL
      * @return 脱敏后的 SQL
      */
@@ -113,69 +144,44 @@ public class SqlMaskingUtil {
             return sql;
         }
 
-        String masked = sql;
-
         try {
-            // 1. 手机号脱敏
-            masked = PHONE_PATTERN.matcher(masked).replaceAll("$1****$2");
-
-            // 2. 身份证号脱敏
-            masked = ID_CARD_PATTERN.matcher(masked).replaceAll("$1************$4");
-
-            // 3. 固定电话脱敏
-            masked = LANDLINE_PATTERN.matcher(masked).replaceAll("$1****$2");
-
-            // 4. IP 地址脱敏
-            masked = IP_PATTERN.matcher(masked).replaceAll("$1***");
-
-            // 5. 邮箱脱敏
-            masked = EMAIL_PATTERN.matcher(masked).replaceAll("$1***@$2");
-
-            // 6. 银行卡号脱敏
-            masked = BANK_CARD_PATTERN.matcher(masked).replaceAll("$1*******$3");
-
-            // 7. 密码脱敏
-            masked = PASSWORD_PATTERN.matcher(masked).replaceAll("$1='******'");
-
-            // 8. Token/API Key 脱敏
-            masked = TOKEN_PATTERN.matcher(masked).replaceAll("$1='******'");
-
-            // 9. 数据库连接 IP 脱敏
-            masked = DB_HOST_PATTERN.matcher(masked).replaceAll("$1='***.***.**.*'");
-
+            return SCANNER_HOLDER.get().mask(sql, customRules);
         } catch (Exception e) {
             log.error("SQL 脱敏失败: {}", sql, e);
             return sql; // 失败时返回原始 SQL
         }
-
-        return masked;
     }
 
     /**
-     * 快速脱敏（仅处理最常见的敏感数据）
+     * 脱敏单个常量（SQL 参数画像中保存的参数值）
      *
-     * @param sql 原始 SQL
-     * @return 脱敏后的 SQL
+     * @param literal 常量原文（字符串带引号）
+     * @param column  常量对应的列名（password / token / host 等字段整体替换），可以为 null
+     * @return 脱敏后的常量
      */
-    public static String quickMask(String sql) {
-        if (sql == null || sql.isBlank()) {
-            return sql;
+    public static String maskParameter(String literal, String column) {
+        if (literal == null || literal.isEmpty()) {
+            return literal;
         }
 
-        String masked = sql;
-
         try {
-            // 仅处理手机号和 IP（最常见的敏感数据）
-            masked = PHONE_PATTERN.matcher(masked).replaceAll("$1****$2");
-            masked = IP_PATTERN.matcher(masked).replaceAll("$1***");
-            masked = EMAIL_PATTERN.matcher(masked).replaceAll("$1***@$2");
-
+            return SCANNER_HOLDER.get().maskParameter(literal, column, customRules);
         } catch (Exception e) {
-            log.error("快速脱敏失败: {}", sql, e);
-            return sql;
+            log.error("参数脱敏失败: column={}", column, e);
+            return "******";
         }
+    }
 
-        return masked;
+    /**
+     * 快速脱敏
+     *
+     * 单遍扫描引擎下与 maskSensitiveData 开销相同，保留该方法用于兼容
+     *
+     * @param sql 原始 SQL
+     * @return 脱敏后的 SQL
+     */
+    public static String quickMask(String sql) {
+        return maskSensitiveData(sql);
     }
 
     /**
@@ -95,6 +95,38 @@ public class DbDoctorProperties {
         @Min(value = 1, message = "最大并发分析数量至少为 1")
         @Max(value = 50, message = "最大并发分析数量最多为 50")
         private Integer maxConcurrentAnalysis = 4;
+
+        /**
+         * 相似模板报告复用
+         */
+        private TemplateFamilyConfig templateFamily = new TemplateFamilyConfig();
+    }
+
+    /**
+     * 相似模板报告复用配置
+     * 新模板与最近分析过的模板涉及同一组表且足够相似时，复用已有报告，不再调用 AI
+     */
+    @Data
+    public static class TemplateFamilyConfig {
+        /**
+         * 是否启用
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 最低相似度（MinHash 估算的词集合 Jaccard 相似度，0-1）
+         */
+        private Double minSimilarity = 0.75;
+
+        /**
+         * 可复用的报告时效（小时）：只复用该时间内分析的报告
+         */
+        private Integer reuseWindowHours = 24;
+
+        /**
+         * 索引最多记录的模板数（LRU）
+         */
+        private Integer maxMembers = 10000;
     }
 
     /**
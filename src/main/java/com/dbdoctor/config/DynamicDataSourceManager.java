@@ -13,6 +13,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -45,6 +47,11 @@ public class DynamicDataSourceManager {
     private final AtomicReference<HikariDataSource> targetDataSource = new AtomicReference<>();
     private final AtomicReference<JdbcTemplate> targetJdbcTemplate = new AtomicReference<>();
 
+    /**
+     * 多实例模式下各实例的 JdbcTemplate（由 MultiInstanceMonitor 注册，key: instanceId）
+     */
+    private final Map<Long, JdbcTemplate> instanceJdbcTemplates = new ConcurrentHashMap<>();
+
     /**
      * 初始化动态数据源（从数据库读取配置）
      *
@@ -137,6 +144,39 @@ public class DynamicDataSourceManager {
         return targetJdbcTemplate.get();
     }
 
+    /**
+     * 获取指定实例的 JdbcTemplate（AI 诊断按模板所属实例路由）
+     *
+     * @param instanceId 实例ID（为空表示默认目标库）
+     * @return JdbcTemplate；实例当前没有可用连接时返回 null
+     */
+    public JdbcTemplate getJdbcTemplate(Long instanceId) {
+        if (instanceId == null) {
+            return targetJdbcTemplate.get();
+        }
+        return instanceJdbcTemplates.get(instanceId);
+    }
+
+    /**
+     * 注册实例的 JdbcTemplate
+     *
+     * @param instanceId   实例ID
+     * @param jdbcTemplate 实例连接池上的 JdbcTemplate
+     */
+    public void registerInstance(Long instanceId, JdbcTemplate jdbcTemplate) {
+        instanceJdbcTemplates.put(instanceId, jdbcTemplate);
+    }
+
+    /**
+     * 注销实例的 JdbcTemplate（实例停用、删除或配置变化时）
+     *
+     * @param instanceId   实例ID
+     * @param jdbcTemplate 注册时的 JdbcTemplate（已被新运行时替换时不注销）
+     */
+    public void unregisterInstance(Long instanceId, JdbcTemplate jdbcTemplate) {
+        instanceJdbcTemplates.remove(instanceId, jdbcTemplate);
+    }
+
     /**
      * 热更新数据源（配置修改后调用）
      *
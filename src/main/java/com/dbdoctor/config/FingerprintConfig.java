@@ -0,0 +1,45 @@
+package com.dbdoctor.config;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * SQL 指纹引擎配置
+ *
+ * SqlFingerprintUtil 是静态工具类，启动时按 db-doctor.slow-log-monitor.fingerprint.engine 设置引擎，
+ * 按 db-doctor.slow-log-monitor.fingerprint.oversize 设置超长 SQL 处理
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class FingerprintConfig {
+
+    private final SlowLogMonitorProperties properties;
+
+    @PostConstruct
+    public void applyEngine() {
+        SqlFingerprintUtil.setEngine(properties.getFingerprint().getEngine());
+        log.info("🔑 SQL 指纹引擎: {}", SqlFingerprintUtil.getEngine());
+        if (SqlFingerprintUtil.getEngine() == SqlFingerprintUtil.Engine.LEXER) {
+            log.warn("⚠️ LEXER 指纹与 LEGACY 不同：已有模板不会再合并新数据，每个模板都会作为新模板重新触发 AI 分析");
+        }
+
+        SlowLogMonitorProperties.Fingerprint.Oversize oversize = properties.getFingerprint().getOversize();
+        if (Boolean.TRUE.equals(oversize.getEnabled())) {
+            // 被 max-sql-length 截断的 SQL 长度等于 max-sql-length，阈值必须小于它
+            int threshold = Math.min(oversize.getThreshold(), Math.max(1, properties.getMaxSqlLength()) - 1);
+            SqlFingerprintUtil.setOversize(threshold, oversize.getPrefixLength(), oversize.getSampleLength());
+            log.info("✂️ 超长 SQL: 阈值 {} 字符，前缀 {} 字符，样本 {} 字符",
+                    threshold, oversize.getPrefixLength(), oversize.getSampleLength());
+        } else {
+            SqlFingerprintUtil.setOversize(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+    }
+}
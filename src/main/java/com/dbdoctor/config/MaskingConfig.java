@@ -0,0 +1,47 @@
+package com.dbdoctor.config;
+
+import com.dbdoctor.common.util.SqlMaskingUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQL 脱敏规则配置
+ *
+ * SqlMaskingUtil 是静态工具类，启动时按 db-doctor.slow-log-monitor.masking.custom-rules 编译自定义规则；
+ * 正则无效的规则跳过并记录错误，不影响启动
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class MaskingConfig {
+
+    private final SlowLogMonitorProperties properties;
+
+    @PostConstruct
+    public void applyCustomRules() {
+        List<SqlMaskingUtil.MaskingRule> rules = new ArrayList<>();
+        for (SlowLogMonitorProperties.Masking.Rule rule : properties.getMasking().getCustomRules()) {
+            if (rule.getPattern() == null || rule.getPattern().isBlank()) {
+                continue;
+            }
+            try {
+                rules.add(SqlMaskingUtil.MaskingRule.of(rule.getName(), rule.getPattern(), rule.getReplacement()));
+            } catch (Exception e) {
+                log.error("❌ 自定义脱敏规则无效，已跳过: name={}, pattern={}", rule.getName(), rule.getPattern(), e);
+            }
+        }
+        SqlMaskingUtil.setCustomRules(rules);
+        if (!rules.isEmpty()) {
+            log.info("🔒 已加载自定义脱敏规则: {} 条", rules.size());
+        }
+    }
+}
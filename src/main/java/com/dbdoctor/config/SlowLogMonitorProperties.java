@@ -1,9 +1,13 @@
 package com.dbdoctor.config;
 
+import com.dbdoctor.common.util.SqlFingerprintUtil;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 慢查询监控配置属性
  *
@@ -15,17 +19,110 @@ import org.springframework.stereotype.Component;
 @ConfigurationProperties(prefix = "db-doctor.slow-log-monitor")
 public class SlowLogMonitorProperties {
 
+    /**
+     * 慢查询采集来源
+     * 默认值：TABLE（轮询 mysql.slow_log 表，要求 log_output=TABLE）
+     */
+    private Source source = Source.TABLE;
+
     /**
      * 每次查询的最大记录数
-     * 验证范围：1-1000
+     * 验证范围：1-10000（流式读取，不会一次性加载到内存）
      */
     private Integer maxRecordsPerPoll = 100;
 
+    /**
+     * 单条 SQL 读取的最大字符数
+     * 超过部分在 MySQL 端截断（LEFT），避免数 MB 的 sql_text 整体传输和驻留内存
+     * 默认值：65536
+     */
+    private Integer maxSqlLength = 65536;
+
     /**
      * 自动清理配置
      */
     private AutoCleanup autoCleanup = new AutoCleanup();
 
+    /**
+     * 慢查询日志文件增量读取配置（source=FILE 时生效）
+     */
+    private FileTail file = new FileTail();
+
+    /**
+     * performance_schema 语句摘要增量采集配置（source=DIGEST 时生效）
+     */
+    private Digest digest = new Digest();
+
+    /**
+     * 采集流水线配置（轮询 → 有界队列 → 并行预处理 → 单线程批量写入）
+     */
+    private Pipeline pipeline = new Pipeline();
+
+    /**
+     * 多实例监控配置（同时监控 database_instances 表中所有已启用的实例）
+     */
+    private MultiInstance multiInstance = new MultiInstance();
+
+    /**
+     * 自适应轮询配置（基于到达速率 EWMA 的连续间隔）
+     */
+    private Adaptive adaptive = new Adaptive();
+
+    /**
+     * 收割模式配置（轮转 mysql.slow_log 表，每行只读取一次）
+     */
+    private Harvest harvest = new Harvest();
+
+    /**
+     * 历史慢日志批量导入配置（REST / 命令行触发）
+     */
+    private BulkImport bulkImport = new BulkImport();
+
+    /**
+     * 推送接入配置（Fluent Bit / Vector 等日志采集器推送 NDJSON 事件）
+     */
+    private Push push = new Push();
+
+    /**
+     * SQL 指纹配置
+     */
+    private Fingerprint fingerprint = new Fingerprint();
+
+    /**
+     * 原始 SQL → 预处理产物缓存配置
+     */
+    private ArtifactCache artifactCache = new ArtifactCache();
+
+    /**
+     * SQL 脱敏配置
+     */
+    private Masking masking = new Masking();
+
+    /**
+     * SQL 参数画像配置
+     */
+    private ParameterProfile parameterProfile = new ParameterProfile();
+
+    /**
+     * 模板统计写后合并配置
+     */
+    private TemplateStats templateStats = new TemplateStats();
+
+    /**
+     * 样本保留策略配置
+     */
+    private SampleRetention sampleRetention = new SampleRetention();
+
+    /**
+     * 慢查询采集来源枚举
+     */
+    public enum Source {
+        TABLE,  // 轮询 mysql.slow_log 表（log_output=TABLE）
+        FILE,   // 增量读取慢查询日志文件（log_output=FILE）
+        DIGEST, // 采集 performance_schema.events_statements_summary_by_digest 的增量（预聚合）
+        PUSH    // 不主动采集，只接收日志采集器推送的事件（POST /api/ingest/events）
+    }
+
     @Data
     public static class AutoCleanup {
         /**
@@ -62,4 +159,411 @@ public class SlowLogMonitorProperties {
          */
         private Boolean allowTruncate = false;
     }
+
+    @Data
+    public static class FileTail {
+        /**
+         * 慢查询日志文件路径（对应 MySQL 的 slow_query_log_file）
+         * 示例：/var/lib/mysql/mysql-slow.log
+         */
+        private String path;
+
+        /**
+         * 读取间隔（毫秒）
+         * 默认值：2000
+         */
+        private Long pollIntervalMs = 2000L;
+
+        /**
+         * 每次最多映射读取的字节数
+         * 默认值：8MB（分批读取保护，防止一次映射过大的区域）
+         */
+        private Integer maxBytesPerPoll = 8 * 1024 * 1024;
+
+        /**
+         * 首次读取（没有持久化游标）时是否从文件末尾开始
+         * 默认值：true（与表轮询一致：不补发历史数据）
+         */
+        private Boolean startFromEnd = true;
+    }
+
+    @Data
+    public static class Digest {
+        /**
+         * 快照间隔（毫秒）
+         * 默认值：60000（每分钟计算一次增量）
+         */
+        private Long pollIntervalMs = 60000L;
+
+        /**
+         * 慢查询阈值（秒）
+         * 区间内平均耗时或新出现的最大耗时达到该值的 digest 才会被采集
+         * 默认值：1.0（与 MySQL long_query_time 默认值 10 秒相比更敏感）
+         */
+        private Double minQueryTimeSeconds = 1.0;
+    }
+
+    @Data
+    public static class Pipeline {
+        /**
+         * 待处理队列容量（条）
+         * 队列满时采集线程阻塞等待（背压），不丢弃数据
+         * 默认值：10000
+         */
+        private Integer queueCapacity = 10000;
+
+        /**
+         * 预处理 worker 线程数（清洗、指纹、脱敏）
+         * 默认值：0（自动：CPU 核数，最多 4 个）
+         */
+        private Integer workerThreads = 0;
+
+        /**
+         * 单次批量写入的最大条数
+         * 默认值：200
+         */
+        private Integer batchSize = 200;
+
+        /**
+         * 凑批等待的最长时间（毫秒）
+         * 默认值：100
+         */
+        private Long maxBatchWaitMs = 100L;
+    }
+
+    @Data
+    public static class MultiInstance {
+        /**
+         * 是否启用多实例监控
+         * 默认值：false（只监控默认目标数据源）
+         * 启用后每个已启用的数据库实例拥有独立的连接池、游标、轮询间隔和指标，
+         * 单实例的 slow_log 表轮询自动停用
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 轮询线程数（所有实例共享）
+         * 默认值：8（数百个实例也不需要每个实例一个线程）
+         */
+        private Integer pollThreads = 8;
+
+        /**
+         * 每个实例连接池的最大连接数
+         * 默认值：2
+         */
+        private Integer maxPoolSize = 2;
+
+        /**
+         * 实例列表刷新间隔（毫秒），用于感知实例的新增、停用和修改
+         * 默认值：60000
+         */
+        private Long refreshIntervalMs = 60000L;
+    }
+
+    @Data
+    public static class Adaptive {
+        /**
+         * 最短轮询间隔（毫秒）
+         * 默认值：1000
+         */
+        private Long minIntervalMs = 1000L;
+
+        /**
+         * 最长轮询间隔（毫秒）
+         * 默认值：60000（与原低负载档位一致）
+         */
+        private Long maxIntervalMs = 60000L;
+
+        /**
+         * EWMA 平滑系数（0-1，越大对突发越敏感）
+         * 默认值：0.3
+         */
+        private Double ewmaAlpha = 0.3;
+
+        /**
+         * 每次轮询的目标填充率（期望读取 max-records-per-poll × target-fill 条）
+         * 默认值：0.5
+         */
+        private Double targetFill = 0.5;
+    }
+
+    @Data
+    public static class Harvest {
+        /**
+         * 是否启用收割模式
+         * 启用后定期执行 CREATE TABLE slow_log_new LIKE slow_log + RENAME TABLE 原子轮转，
+         * 对轮转出来的旧表只做一次流式读取，写入完成后 DROP
+         * 需要目标库账号对 mysql 库有 CREATE、DROP、ALTER 权限；权限不足时自动回退到轮询模式
+         * 默认值：false
+         */
+        private Boolean enabled = false;
+    }
+
+    @Data
+    public static class BulkImport {
+        /**
+         * 并行解析线程数（ForkJoinPool 并行度）
+         * 默认值：0（自动：CPU 核数）
+         */
+        private Integer parallelism = 0;
+
+        /**
+         * 分块大小（字节），文件按日志块边界切分成约为该大小的块并行解析
+         * 默认值：8388608（8 MB）
+         */
+        private Integer chunkSizeBytes = 8 * 1024 * 1024;
+
+        /**
+         * 单个写入事务的最大条数
+         * 默认值：5000
+         */
+        private Integer batchSize = 5000;
+
+        /**
+         * 允许通过 REST 接口导入的目录
+         * 通过 REST 接口导入时，文件必须位于该目录下（按真实路径比较）；为空时拒绝 REST 导入，命令行导入不受限制
+         * 默认值：空
+         */
+        private String allowedDirectory;
+    }
+
+    @Data
+    public static class Push {
+        /**
+         * 是否启用推送接口（与 source 无关，可与任意采集来源同时使用）
+         * 默认值：false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 访问令牌（必填，未配置时推送接口拒绝所有请求）
+         * 请求需携带 Authorization: Bearer &lt;token&gt;
+         */
+        private String token;
+
+        /**
+         * 单次请求最多包含的事件数，超过返回 413
+         * 整批准入要求队列有足够的剩余容量，应小于 pipeline.queue-capacity（超过队列容量的部分不生效）
+         * 默认值：5000
+         */
+        private Integer maxEventsPerRequest = 5000;
+    }
+
+    @Data
+    public static class Fingerprint {
+        /**
+         * 指纹引擎：LEGACY（正则 + Druid + MD5，默认）/ LEXER（单遍词法扫描 + Murmur3，需显式启用）
+         * 两种引擎的指纹不同：切换到 LEXER 后已有模板不再合并新数据，每个模板都会作为新模板重新触发 AI 分析，
+         * 只建议新部署（或清空历史数据后）启用
+         * 默认值：LEGACY
+         */
+        private SqlFingerprintUtil.Engine engine = SqlFingerprintUtil.Engine.LEGACY;
+
+        /**
+         * 指纹爆炸保护
+         */
+        private ExplosionGuard explosionGuard = new ExplosionGuard();
+
+        /**
+         * 超长 SQL 处理
+         */
+        private Oversize oversize = new Oversize();
+
+        @Data
+        public static class ExplosionGuard {
+            /**
+             * 是否启用
+             * 默认值：true
+             */
+            private Boolean enabled = true;
+
+            /**
+             * 同一张表每分钟新出现的指纹数超过该值时触发保护
+             * 默认值：20
+             */
+            private Integer maxNewPerMinute = 20;
+
+            /**
+             * 触发后持续合并的时间（分钟）
+             * 默认值：10
+             */
+            private Integer cooldownMinutes = 10;
+
+            /**
+             * 用于合并的近似模板最多记录数（LRU）
+             * 默认值：10000
+             */
+            private Integer maxTrackedTemplates = 10000;
+        }
+
+        @Data
+        public static class Oversize {
+            /**
+             * 是否启用（超长 SQL 只分析前缀，不进入预处理缓存）
+             * 默认值：true
+             */
+            private Boolean enabled = true;
+
+            /**
+             * 超过该长度（字符）的 SQL 按超长 SQL 处理；被 max-sql-length 截断的 SQL 总是按超长处理
+             * 默认值：16384
+             */
+            private Integer threshold = 16384;
+
+            /**
+             * 参与指纹计算的前缀长度（字符）：指纹取前缀模板的稳定结构（去掉末尾未闭合的常量列表/VALUES 行）
+             * 默认值：8192
+             */
+            private Integer prefixLength = 8192;
+
+            /**
+             * Sample 中保存的脱敏 SQL 最大长度（字符）
+             * 默认值：2048
+             */
+            private Integer sampleLength = 2048;
+        }
+    }
+
+    @Data
+    public static class ArtifactCache {
+        /**
+         * 是否启用缓存
+         * 默认值：true
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 最多缓存的不同 SQL 文本数
+         * 默认值：10000
+         */
+        private Integer maxEntries = 10000;
+
+        /**
+         * 缓存内容估算内存上限（字节）
+         * 默认值：64MB
+         */
+        private Long maxWeightBytes = 64L * 1024 * 1024;
+    }
+
+    @Data
+    public static class ParameterProfile {
+        /**
+         * 是否启用参数画像
+         * 默认值：true
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 最多保留画像的模板数（LRU，超过后淘汰最久未出现的模板）
+         * 默认值：2000
+         */
+        private Integer maxTemplates = 2000;
+
+        /**
+         * 每个模板最多画像的参数位置数（模板中前 N 个 ?）
+         * 默认值：16
+         */
+        private Integer maxPositions = 16;
+
+        /**
+         * 每个参数位置跟踪的高频值个数（Space-Saving 计数器数）
+         * 默认值：32
+         */
+        private Integer heavyHitters = 32;
+    }
+
+    @Data
+    public static class TemplateStats {
+        /**
+         * 是否启用写后合并（统计先在内存中累加，定时原子累加到模板表）
+         * 默认值：true（关闭时每批样本的增量在写入事务内原子累加到模板）
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 合并间隔（毫秒），崩溃时最多丢失这一窗口的统计
+         * 默认值：5000
+         */
+        private Long flushIntervalMs = 5000L;
+
+        /**
+         * 待合并的模板数达到该值时提前合并
+         * 默认值：5000
+         */
+        private Integer maxPendingTemplates = 5000;
+
+        /**
+         * 预写日志文件路径（为空时不启用）
+         * 启用后增量先追加到该文件，进程崩溃后启动时重放（至少一次：合并提交后、删除日志前崩溃会重复计入一个窗口）
+         * 默认值：空
+         */
+        private String walPath = "";
+    }
+
+    @Data
+    public static class SampleRetention {
+        /**
+         * 是否启用按指纹的样本保留策略（关闭时每条慢查询都保留一条样本）
+         * 默认值：false（清理会删除样本，不可恢复，需手动启用）
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 均匀蓄水池样本数（按执行次数加权的等概率抽样）
+         * 默认值：20
+         */
+        private Integer reservoirSize = 20;
+
+        /**
+         * 保留耗时最长的样本数
+         * 默认值：10
+         */
+        private Integer slowest = 10;
+
+        /**
+         * 保留最近的样本数
+         * 默认值：10
+         */
+        private Integer recent = 10;
+
+        /**
+         * 清理余量：某指纹新增的样本数达到该值时清理一次，样本数最多为 reservoir-size + slowest + recent + prune-slack
+         * 默认值：50
+         */
+        private Integer pruneSlack = 50;
+
+        /**
+         * 是否同时清理启用保留策略之前写入的历史样本（retention_managed 为空的行）
+         * 默认值：false（只清理启用后写入的样本，历史样本原样保留）
+         */
+        private Boolean pruneLegacySamples = false;
+    }
+
+    @Data
+    public static class Masking {
+        /**
+         * 自定义脱敏规则（在内置规则之后执行，只作用于字符串常量内容）
+         * 默认值：空
+         */
+        private List<Rule> customRules = new ArrayList<>();
+
+        @Data
+        public static class Rule {
+            /**
+             * 规则名称
+             */
+            private String name;
+
+            /**
+             * 正则表达式（Java 语法）
+             */
+            private String pattern;
+
+            /**
+             * 替换内容（支持 $1 等分组引用）
+             * 默认值：******
+             */
+            private String replacement = "******";
+        }
+    }
 }
@@ -142,6 +142,12 @@ public class TargetDataSourceConfig {
             return getLatestDelegate().queryForObject(sql, requiredType);
         }
 
+        @Override
+        public void query(org.springframework.jdbc.core.PreparedStatementCreator psc,
+                          org.springframework.jdbc.core.RowCallbackHandler rch) {
+            getLatestDelegate().query(psc, rch);
+        }
+
         /**
          * 获取最新的 JdbcTemplate 委托对象
          */
@@ -1,5 +1,6 @@
 package com.dbdoctor.config;
 
+import com.dbdoctor.ingest.IngestPipeline;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +9,8 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
@@ -39,7 +42,7 @@ public class ThreadPoolConfig {
      * 用于异步处理慢查询分析任务
      *
      * 优化点：
-     * 1. 拒绝策略：CallerRunsPolicy（背压机制）
+     * 1. 拒绝策略：调用者运行（背压机制）；采集流水线写入线程除外，被拒绝时由流水线延后提交
      * 2. 优雅停机：等待任务完成后才关闭
      */
     @Bean("analysisExecutor")
@@ -59,7 +62,8 @@ public class ThreadPoolConfig {
         executor.setThreadNamePrefix("db-doctor-analysis-");
 
         // 【关键配置 1】拒绝策略：调用者运行（背压机制）
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // 采集流水线写入线程不能执行 AI 分析（会阻塞全部采集），抛出异常由 IngestPipeline 延后提交
+        executor.setRejectedExecutionHandler(new CallerRunsExceptIngestPolicy());
 
         // 【关键配置 2】停机时等待任务完成
         executor.setWaitForTasksToCompleteOnShutdown(true);
@@ -74,4 +78,20 @@ public class ThreadPoolConfig {
 
         return executor;
     }
+
+    /**
+     * 调用者运行策略，采集流水线写入线程除外
+     */
+    static class CallerRunsExceptIngestPolicy implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (IngestPipeline.isWriterThread()) {
+                throw new RejectedExecutionException("AI 分析线程池队列已满");
+            }
+            callerRuns.rejectedExecution(task, pool);
+        }
+    }
 }
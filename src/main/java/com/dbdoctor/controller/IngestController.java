@@ -0,0 +1,144 @@
+package com.dbdoctor.controller;
+
+import com.dbdoctor.common.Result;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.ingest.BulkImportJob;
+import com.dbdoctor.ingest.BulkImportService;
+import com.dbdoctor.ingest.PushIngestService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 采集管理 API 控制器
+ *
+ * <p>提供历史慢日志批量导入、慢查询事件推送相关的 REST API</p>
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/ingest")
+@RequiredArgsConstructor
+public class IngestController {
+
+    private final BulkImportService bulkImportService;
+    private final PushIngestService pushIngestService;
+    private final SlowLogMonitorProperties properties;
+
+    /**
+     * 接收日志采集器推送的慢查询事件（NDJSON，每行一个 JSON 对象）
+     *
+     * POST /api/ingest/events
+     * Content-Type: application/x-ndjson（可选 Content-Encoding: gzip）
+     *
+     * 返回：
+     * - 202：整批已接收
+     * - 429：采集队列已满，按 Retry-After 重试整批
+     * - 413：单次请求事件数超过 push.max-events-per-request 或采集队列容量（pipeline.queue-capacity）
+     * - 400：请求体不是合法的 NDJSON
+     * - 401 / 403：令牌错误 / 推送接口未启用或未配置令牌
+     *
+     * @param request HTTP 请求（直接读取请求体输入流，不整体缓存）
+     * @return 处理结果
+     */
+    @PostMapping("/events")
+    public ResponseEntity<Result<Object>> pushEvents(HttpServletRequest request) {
+        SlowLogMonitorProperties.Push config = properties.getPush();
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Result.error("推送接口未启用"));
+        }
+        if (config.getToken() == null || config.getToken().isBlank()) {
+            // 推送接口可以写入任意慢查询，不允许无令牌开放
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Result.error("推送接口未配置访问令牌"));
+        }
+        if (!isAuthorized(config.getToken(), request.getHeader(HttpHeaders.AUTHORIZATION))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Result.error("令牌无效"));
+        }
+
+        boolean gzip = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+        try {
+            PushIngestService.PushResult result = pushIngestService.ingest(request.getInputStream(), gzip);
+            Map<String, Object> data = Map.of("accepted", result.accepted(), "invalid", result.invalid());
+
+            return switch (result.outcome()) {
+                case ACCEPTED -> ResponseEntity.status(HttpStatus.ACCEPTED).body(Result.success("已接收", data));
+                case BUSY -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(result.retryAfterSeconds()))
+                        .body(Result.error("采集队列已满，请稍后重试", data));
+                case TOO_LARGE -> ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(Result.error("单次请求事件数超过上限: " + config.getMaxEventsPerRequest()));
+            };
+        } catch (IOException e) {
+            log.warn("[采集API] 推送事件格式错误: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Result.error("请求体不是合法的 NDJSON: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 校验 Authorization: Bearer 令牌
+     */
+    private boolean isAuthorized(String token, String authorization) {
+        String expected = "Bearer " + token;
+        return authorization != null && MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), authorization.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 启动历史慢日志批量导入（后台执行）
+     *
+     * POST /api/ingest/import
+     * 请求体：{"paths": ["/data/slow-2024-01.log.gz"], "instanceId": 1, "analyze": true}
+     * 文件必须位于 bulk-import.allowed-directory 下，未配置该目录时拒绝导入
+     *
+     * @param requestBody 请求参数
+     * @return 导入任务
+     */
+    @PostMapping("/import")
+    @SuppressWarnings("unchecked")
+    public Result<Object> startImport(@RequestBody Map<String, Object> requestBody) {
+        log.info("[采集API] 启动批量导入: {}", requestBody.get("paths"));
+
+        try {
+            List<String> paths = (List<String>) requestBody.get("paths");
+            Object instanceId = requestBody.get("instanceId");
+            Object analyze = requestBody.get("analyze");
+
+            BulkImportJob job = bulkImportService.submit(paths,
+                    instanceId != null ? Long.valueOf(instanceId.toString()) : null,
+                    analyze == null || Boolean.parseBoolean(analyze.toString()));
+            return Result.success("导入任务已启动", job.snapshot());
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("[采集API] 启动批量导入失败", e);
+            return Result.error("启动失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询当前（或最近一次）导入任务进度
+     *
+     * GET /api/ingest/import
+     *
+     * @return 任务进度（行数、条/秒等）
+     */
+    @GetMapping("/import")
+    public Result<Object> getImportStatus() {
+        return bulkImportService.getLastJob()
+                .map(job -> Result.<Object>success("查询成功", job.snapshot()))
+                .orElseGet(() -> Result.error("暂无导入任务"));
+    }
+}
@@ -1,8 +1,17 @@
 package com.dbdoctor.controller;
 
 import com.dbdoctor.common.Result;
+import com.dbdoctor.ingest.IngestPipeline;
+import com.dbdoctor.ingest.MultiInstanceMonitor;
+import com.dbdoctor.ingest.PushIngestService;
 import com.dbdoctor.monitoring.health.HealthCheckService;
 import com.dbdoctor.monitoring.metrics.MetricsCollector;
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter;
+import com.dbdoctor.service.FingerprintExplosionGuard;
+import com.dbdoctor.service.SampleRetentionPolicy;
+import com.dbdoctor.service.SqlArtifactCache;
+import com.dbdoctor.service.TemplateFamilyIndex;
+import com.dbdoctor.service.TemplateStatsAccumulator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -26,6 +35,15 @@ public class MonitoringController {
 
     private final HealthCheckService healthCheckService;
     private final MetricsCollector metricsCollector;
+    private final IngestPipeline ingestPipeline;
+    private final MultiInstanceMonitor multiInstanceMonitor;
+    private final PushIngestService pushIngestService;
+    private final SqlArtifactCache sqlArtifactCache;
+    private final FingerprintExplosionGuard fingerprintExplosionGuard;
+    private final TemplateFamilyIndex templateFamilyIndex;
+    private final TemplateStatsAccumulator templateStatsAccumulator;
+    private final SlowQuerySampleBatchWriter sampleBatchWriter;
+    private final SampleRetentionPolicy sampleRetentionPolicy;
 
     /**
      * 获取系统健康状态
@@ -141,4 +159,56 @@ public class MonitoringController {
             return Result.error("查询失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 获取慢查询采集流水线指标
+     *
+     * GET /api/monitoring/ingest
+     *
+     * @return 队列深度、各阶段吞吐量、预处理缓存命中率
+     */
+    @GetMapping("/ingest")
+    public Result<Object> getIngestMetrics() {
+        log.info("[监控API] 查询采集流水线指标");
+
+        try {
+            Map<String, Object> metrics = ingestPipeline.getMetrics();
+            metrics.put("push", Map.of(
+                "acceptedEvents", pushIngestService.getAcceptedEvents(),
+                "rejectedRequests", pushIngestService.getRejectedRequests()));
+            metrics.put("artifactCache", sqlArtifactCache.getMetrics());
+            metrics.put("fingerprintGuard", fingerprintExplosionGuard.getMetrics());
+            metrics.put("templateFamily", templateFamilyIndex.getMetrics());
+            metrics.put("templateStats", templateStatsAccumulator.getMetrics());
+            metrics.put("sampleWriter", sampleBatchWriter.getMetrics());
+            metrics.put("sampleRetention", sampleRetentionPolicy.getMetrics());
+            return Result.success("查询成功", metrics);
+        } catch (Exception e) {
+            log.error("[监控API] 查询采集流水线指标失败", e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取多实例监控指标（每个实例的游标、轮询间隔、采集量、错误）
+     *
+     * GET /api/monitoring/instances
+     *
+     * @return 实例指标列表
+     */
+    @GetMapping("/instances")
+    public Result<Object> getInstanceMetrics() {
+        log.info("[监控API] 查询多实例监控指标");
+
+        try {
+            var data = Map.of(
+                "enabled", multiInstanceMonitor.isEnabled(),
+                "instances", multiInstanceMonitor.getInstanceMetrics()
+            );
+            return Result.success("查询成功", data);
+        } catch (Exception e) {
+            log.error("[监控API] 查询多实例监控指标失败", e);
+            return Result.error("查询失败: " + e.getMessage());
+        }
+    }
 }
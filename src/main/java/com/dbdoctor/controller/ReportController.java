@@ -134,6 +134,31 @@ public class ReportController {
         }
     }
 
+    /**
+     * 获取 SQL 参数画像：每个参数位置的高频值及其耗时，用于定位数据倾斜
+     *
+     * @param id 模板 ID
+     * @return 参数画像
+     */
+    @GetMapping("/{id}/parameters")
+    public Map<String, Object> getParameters(@PathVariable Long id) {
+        log.info("查询参数画像: id={}", id);
+
+        try {
+            return Map.of(
+                    "code", 200,
+                    "message", "success",
+                    "data", reportService.getParameterProfile(id)
+            );
+        } catch (IllegalArgumentException e) {
+            return Map.of(
+                    "code", 404,
+                    "message", e.getMessage(),
+                    "data", Map.of()
+            );
+        }
+    }
+
     /**
      * 获取慢查询趋势数据（按小时统计）
      *
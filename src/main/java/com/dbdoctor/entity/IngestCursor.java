@@ -0,0 +1,79 @@
+package com.dbdoctor.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 慢查询采集游标实体
+ * 持久化各采集来源的读取位置，保证重启后从上次位置继续读取
+ *
+ * 核心职责：
+ * - 按采集来源（sourceKey）记录读取进度（1:1关系）
+ * - 文件来源：记录文件标识（inode）和已读取的字节偏移量，用于检测日志轮转
+ * - 表来源：记录 (start_time, thread_id) 键集游标，只在对应数据写入 H2 后推进
+ * - 模板统计预写日志：filePosition 记录已合并提交的日志段序号（见 TemplateStatsAccumulator）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingest_cursor",
+       indexes = {
+           @Index(name = "idx_ingest_cursor_source", columnList = "sourceKey", unique = true)
+       })
+public class IngestCursor {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 采集来源标识（唯一）
+     * 例如：file:/var/lib/mysql/mysql-slow.log、table:jdbc:mysql://127.0.0.1:3306/、instance:3、template-stats-wal:/data/template-stats.wal
+     */
+    @Column(length = 255, unique = true, nullable = false)
+    private String sourceKey;
+
+    // === 文件来源 ===
+
+    /**
+     * 文件标识（inode 或 fileKey）
+     * 标识变化说明日志文件已被轮转（mv + FLUSH SLOW LOGS）
+     */
+    @Column(length = 128)
+    private String fileKey;
+
+    /**
+     * 已处理到的字节偏移量
+     */
+    private Long filePosition;
+
+    // === 表来源（mysql.slow_log 键集游标）===
+
+    /**
+     * 已落库的最后一条记录的 start_time
+     */
+    private LocalDateTime cursorTime;
+
+    /**
+     * 已落库的最后一条记录的 thread_id（与 cursorTime 组成键集游标）
+     */
+    private Long cursorThreadId;
+
+    // === 时间信息 ===
+
+    /**
+     * 游标最后更新时间
+     */
+    private LocalDateTime updatedAt;
+}
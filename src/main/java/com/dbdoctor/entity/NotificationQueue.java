@@ -88,6 +88,12 @@ public class NotificationQueue {
     @Column(name = "rows_examined")
     private Long rowsExamined;
 
+    /**
+     * 查询耗时分布草图（入队时的快照，用于通知中展示 P50 / P95 / P99）
+     */
+    @Column(name = "query_time_sketch", columnDefinition = "TEXT")
+    private String queryTimeSketch;
+
     /**
      * 分析完成时间
      */
@@ -17,7 +17,7 @@ import java.time.LocalDateTime;
  * - 存储每次捕获的原始SQL（脱敏后）
  * - 存储每次的性能数据（查询耗时、锁时间、行数等）
  * - 用于实时计算统计信息
- * - 保留完整的历史样本
+ * - 按指纹保留有代表性的样本（蓄水池 + 最慢 K 条 + 最近 N 条），精确统计在 slow_query_template 中
  *
  * 索引策略：
  * - idx_fingerprint_time: (sqlFingerprint, capturedAt) - 用于查询某SQL的所有样本
@@ -50,6 +50,11 @@ public class SlowQuerySample {
     @Column(length = 64, nullable = false)
     private String sqlFingerprint;
 
+    /**
+     * 数据库实例 ID（多实例监控时设置；为空表示默认目标数据源）
+     */
+    private Long instanceId;
+
     // === SQL信息 ===
 
     /**
@@ -60,6 +65,16 @@ public class SlowQuerySample {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String originalSql;
 
+    /**
+     * SQL 原始长度（字节，来源未提供时为空）
+     */
+    private Long sqlLength;
+
+    /**
+     * originalSql 是否已截断（读取时超过 max-sql-length，或按超长 SQL 只保留了前缀）
+     */
+    private Boolean sqlTruncated;
+
     /**
      * 执行用户@主机
      */
@@ -100,6 +115,20 @@ public class SlowQuerySample {
     @Column(nullable = false)
     private LocalDateTime capturedAt;
 
+    // === 保留策略 ===
+
+    /**
+     * 均匀蓄水池槽位（为空表示不在蓄水池中）
+     * 不在蓄水池、也不属于耗时最长的 K 条或最近的 N 条的样本会被清理，见 SampleRetentionPolicy
+     */
+    private Integer reservoirSlot;
+
+    /**
+     * 是否在启用保留策略后写入（为空表示升级前或关闭保留策略时写入的历史样本）
+     * 历史样本默认不参与清理，除非开启 sample-retention.prune-legacy-samples
+     */
+    private Boolean retentionManaged;
+
     /**
      * 记录创建时间（自动填充）
      */
@@ -1,5 +1,6 @@
 package com.dbdoctor.entity;
 
+import com.dbdoctor.common.util.LatencySketch;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -30,7 +31,8 @@ import java.time.LocalDateTime;
 @Table(name = "slow_query_template",
        indexes = {
            @Index(name = "idx_slowq_fingerprint", columnList = "sqlFingerprint", unique = true),
-           @Index(name = "idx_slowq_status_time", columnList = "status, lastSeenTime")
+           @Index(name = "idx_slowq_status_time", columnList = "status, lastSeenTime"),
+           @Index(name = "idx_slowq_instance", columnList = "instanceId")
        })
 public class SlowQueryTemplate {
 
@@ -57,6 +59,11 @@ public class SlowQueryTemplate {
 
     // === 基本信息 ===
 
+    /**
+     * 所属数据库实例 ID（多实例监控时设置；为空表示默认目标数据源）
+     */
+    private Long instanceId;
+
     /**
      * 所属数据库
      */
@@ -69,6 +76,12 @@ public class SlowQueryTemplate {
     @Column(length = 64)
     private String tableName;
 
+    /**
+     * 涉及的全部表（逗号分隔，schema.table 或 table，包括 JOIN 和子查询中的表）
+     */
+    @Column(length = 1000)
+    private String tableNames;
+
     // === AI 分析结果 ===
 
     /**
@@ -78,6 +91,17 @@ public class SlowQueryTemplate {
     @Column(columnDefinition = "TEXT")
     private String aiAnalysisReport;
 
+    /**
+     * 报告生成时间（AI 分析完成或复用报告的时间）
+     */
+    private LocalDateTime analyzedTime;
+
+    /**
+     * 报告复用来源的模板指纹（报告由相似模板复用而来时设置，独立分析时为 null）
+     */
+    @Column(length = 64)
+    private String reportSourceFingerprint;
+
     // === 状态管理 ===
 
     /**
@@ -96,7 +120,9 @@ public class SlowQueryTemplate {
 
     /**
      * 最近发现时间
+     * 只在插入时和原子增量更新（SlowQueryTemplateRepository.addStatistics / updateLastSeenTime）中写入
      */
+    @Column(updatable = false)
     private LocalDateTime lastSeenTime;
 
     /**
@@ -131,52 +157,101 @@ public class SlowQueryTemplate {
     private String lastExplainJson;
 
     // === 统计信息（从 SlowQuerySample 聚合） ===
+    // 持久化次数、总和与最大值，平均值读取时由总和 / 次数得出
+    // 统计列只在插入时和原子增量更新（SlowQueryTemplateRepository.addStatistics）中写入，
+    // 整行保存（报告生成、重新分析）不会覆盖并发采集写入的统计
 
     /**
      * 该SQL指纹出现的总次数
      */
+    @Column(updatable = false)
     private Long occurrenceCount;
 
     /**
-     * 平均查询耗时（秒）
+     * 查询耗时总和（秒）
      */
-    private Double avgQueryTime;
+    @Column(updatable = false)
+    private Double sumQueryTime;
 
     /**
      * 最大查询耗时（秒）
      */
+    @Column(updatable = false)
     private Double maxQueryTime;
 
     /**
-     * 平均锁等待时间（秒）
+     * 锁等待时间总和（秒）
      */
-    private Double avgLockTime;
+    @Column(updatable = false)
+    private Double sumLockTime;
 
     /**
      * 最大锁等待时间（秒）
      */
+    @Column(updatable = false)
     private Double maxLockTime;
 
     /**
-     * 平均返回行数
+     * 返回行数总和
      */
-    private Double avgRowsSent;
+    @Column(updatable = false)
+    private Long sumRowsSent;
 
     /**
      * 最大返回行数
      */
+    @Column(updatable = false)
     private Long maxRowsSent;
 
     /**
-     * 平均扫描行数
+     * 扫描行数总和
      */
-    private Double avgRowsExamined;
+    @Column(updatable = false)
+    private Long sumRowsExamined;
 
     /**
      * 最大扫描行数
      */
+    @Column(updatable = false)
     private Long maxRowsExamined;
 
+    /**
+     * 查询耗时分布（LatencySketch 编码，用于计算 p50 / p95 / p99）
+     */
+    @Column(columnDefinition = "TEXT", updatable = false)
+    private String queryTimeSketch;
+
+    /**
+     * 锁等待时间分布（LatencySketch 编码）
+     */
+    @Column(columnDefinition = "TEXT", updatable = false)
+    private String lockTimeSketch;
+
+    /**
+     * 平均查询耗时（秒）
+     * 不持久化：有总和时由总和 / 次数得出，只有临时对象（例如由通知队列转换的模板）直接设置
+     */
+    @Transient
+    private Double avgQueryTime;
+
+    /**
+     * 平均锁等待时间（秒，不持久化）
+     */
+    @Transient
+    private Double avgLockTime;
+
+    /**
+     * 平均返回行数（不持久化）
+     */
+    @Transient
+    private Double avgRowsSent;
+
+    /**
+     * 平均扫描行数（不持久化）
+     */
+    @Transient
+    private Double avgRowsExamined;
+
     /**
      * 严重程度
      * 根据平均查询耗时动态计算
@@ -260,4 +335,54 @@ public class SlowQueryTemplate {
         this.lastNotifiedTime = LocalDateTime.now();
         this.lastNotifiedAvgTime = notifiedAvgTime;
     }
+
+    // === 派生统计（平均值 = 总和 / 次数） ===
+
+    public Double getAvgQueryTime() {
+        return average(sumQueryTime, avgQueryTime);
+    }
+
+    public Double getAvgLockTime() {
+        return average(sumLockTime, avgLockTime);
+    }
+
+    public Double getAvgRowsSent() {
+        return average(sumRowsSent, avgRowsSent);
+    }
+
+    public Double getAvgRowsExamined() {
+        return average(sumRowsExamined, avgRowsExamined);
+    }
+
+    /**
+     * 查询耗时的 p50 / p95 / p99（尚无分布数据时各项为 null）
+     */
+    public LatencySketch.Percentiles queryTimePercentiles() {
+        return percentiles(queryTimeSketch);
+    }
+
+    /**
+     * 锁等待时间的 p50 / p95 / p99（尚无分布数据时各项为 null）
+     */
+    public LatencySketch.Percentiles lockTimePercentiles() {
+        return percentiles(lockTimeSketch);
+    }
+
+    private static LatencySketch.Percentiles percentiles(String sketch) {
+        try {
+            return LatencySketch.decode(sketch).percentiles();
+        } catch (IllegalArgumentException e) {
+            return LatencySketch.Percentiles.EMPTY;
+        }
+    }
+
+    /**
+     * 由总和计算平均值；没有总和（临时对象）时返回直接设置的值
+     */
+    private Double average(Number sum, Double fallback) {
+        if (sum == null || occurrenceCount == null || occurrenceCount <= 0) {
+            return fallback;
+        }
+        return sum.doubleValue() / occurrenceCount;
+    }
 }
@@ -0,0 +1,131 @@
+package com.dbdoctor.ingest;
+
+/**
+ * 自适应轮询控制器（基于到达速率 EWMA）
+ *
+ * 替代原先按"最近 10 分钟模板数"划分的三档固定间隔：
+ * 1. 每次轮询后用 rows / 距上次轮询的时间 估算到达速率，并做指数加权移动平均（EWMA）
+ * 2. 下次间隔 = 目标每页行数 / 到达速率，在 [minInterval, maxInterval] 之间连续取值
+ * 3. 上一页读满（命中 LIMIT）说明还有积压：下次立即轮询，并使用最大批量
+ * 4. 分析侧积压（流水线队列、analysisExecutor 队列）越高，间隔越长，避免读得越快堆得越多
+ *
+ * 纯内存计算，不访问数据库；非线程安全，每个轮询者持有一个实例
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public class AdaptivePollController {
+
+    /**
+     * 分析侧积压超过该比例后开始拉长间隔
+     */
+    private static final double PRESSURE_THRESHOLD = 0.5;
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final int maxBatchSize;
+    private final double alpha;
+    private final double targetFill;
+
+    private double ewmaRate;
+    private double ewmaRows;
+    private boolean initialized;
+    private boolean rateInitialized;
+    private boolean lastPageFull;
+    private long lastPollAt;
+
+    /**
+     * @param minIntervalMs 最短间隔（毫秒）
+     * @param maxIntervalMs 最长间隔（毫秒）
+     * @param maxBatchSize  单次最多读取条数（即 max-records-per-poll）
+     * @param alpha         EWMA 平滑系数（0-1，越大越敏感）
+     * @param targetFill    每次轮询的目标填充率（期望读取 maxBatchSize * targetFill 条）
+     */
+    public AdaptivePollController(long minIntervalMs, long maxIntervalMs, int maxBatchSize,
+                                  double alpha, double targetFill) {
+        this.minIntervalMs = Math.max(0L, minIntervalMs);
+        this.maxIntervalMs = Math.max(this.minIntervalMs, maxIntervalMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.alpha = Math.min(1.0, Math.max(0.01, alpha));
+        this.targetFill = Math.min(1.0, Math.max(0.05, targetFill));
+    }
+
+    /**
+     * 记录一次轮询结果
+     *
+     * @param rows  本次读取的行数
+     * @param limit 本次使用的 LIMIT
+     * @param now   当前时间（毫秒）
+     */
+    public void onPoll(int rows, int limit, long now) {
+        lastPageFull = rows >= limit;
+
+        double elapsedSeconds = lastPollAt > 0 ? Math.max(0.001, (now - lastPollAt) / 1000.0) : 0;
+        lastPollAt = now;
+
+        ewmaRows = initialized ? alpha * rows + (1 - alpha) * ewmaRows : rows;
+        initialized = true;
+
+        if (elapsedSeconds > 0) {
+            // 第一个速率样本直接作为初值，避免从 0 开始被低估
+            double rate = rows / elapsedSeconds;
+            ewmaRate = rateInitialized ? alpha * rate + (1 - alpha) * ewmaRate : rate;
+            rateInitialized = true;
+        }
+    }
+
+    /**
+     * 计算下一次轮询的间隔
+     *
+     * @param pressure 分析侧积压比例（0-1，队列深度 / 队列容量）
+     * @return 间隔（毫秒），0 表示立即轮询
+     */
+    public long nextIntervalMs(double pressure) {
+        if (lastPageFull && pressure < PRESSURE_THRESHOLD) {
+            return 0L;
+        }
+
+        double interval;
+        if (ewmaRate <= 0) {
+            interval = maxIntervalMs;
+        } else {
+            interval = (maxBatchSize * targetFill / ewmaRate) * 1000.0;
+        }
+
+        if (pressure > PRESSURE_THRESHOLD) {
+            // 积压 50% → 1 倍，100% → 5 倍
+            interval = Math.max(interval, minIntervalMs) * (1 + 8 * (pressure - PRESSURE_THRESHOLD));
+        }
+
+        return (long) Math.min(maxIntervalMs, Math.max(minIntervalMs, interval));
+    }
+
+    /**
+     * 计算下一次轮询的批量大小
+     * 期望读取量 = 到达速率 × 间隔，留 2 倍余量；上一页读满时使用最大批量
+     *
+     * @param intervalMs 下一次轮询的间隔（毫秒）
+     * @return 批量大小（1 - maxBatchSize）
+     */
+    public int nextBatchSize(long intervalMs) {
+        if (lastPageFull || !initialized) {
+            return maxBatchSize;
+        }
+        double expected = ewmaRate * Math.max(intervalMs, minIntervalMs) / 1000.0;
+        int batch = (int) Math.ceil(Math.max(expected, ewmaRows) * 2);
+        return Math.min(maxBatchSize, Math.max(Math.min(maxBatchSize, 10), batch));
+    }
+
+    public double getEwmaRate() {
+        return ewmaRate;
+    }
+
+    public double getEwmaRows() {
+        return ewmaRows;
+    }
+
+    public boolean isLastPageFull() {
+        return lastPageFull;
+    }
+}
@@ -0,0 +1,129 @@
+package com.dbdoctor.ingest;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 历史慢日志批量导入任务（进度与统计）
+ *
+ * 计数器由导入线程和解析线程并发更新，snapshot() 随时可读
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Getter
+public class BulkImportJob {
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        RUNNING,    // 导入中
+        ANALYZING,  // 写入完成，正在提交 AI 分析
+        COMPLETED,  // 已完成
+        FAILED      // 失败
+    }
+
+    private final String jobId;
+    private final List<String> files;
+    private final Long instanceId;
+    private final boolean analyze;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startedNanos = System.nanoTime();
+
+    private volatile Status status = Status.RUNNING;
+    private volatile String currentFile;
+    private volatile LocalDateTime finishedAt;
+    private volatile long finishedNanos;
+    private volatile String error;
+
+    final AtomicLong bytesRead = new AtomicLong();
+    final AtomicLong chunks = new AtomicLong();
+    final AtomicLong entriesParsed = new AtomicLong();
+    final AtomicLong rowsWritten = new AtomicLong();
+    final AtomicLong rowsFailed = new AtomicLong();
+    final AtomicLong templates = new AtomicLong();
+
+    BulkImportJob(String jobId, List<String> files, Long instanceId, boolean analyze) {
+        this.jobId = jobId;
+        this.files = List.copyOf(files);
+        this.instanceId = instanceId;
+        this.analyze = analyze;
+    }
+
+    void setCurrentFile(String currentFile) {
+        this.currentFile = currentFile;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void finish(Status status, String error) {
+        this.finishedNanos = System.nanoTime();
+        this.finishedAt = LocalDateTime.now();
+        this.error = error;
+        this.status = status;
+    }
+
+    public boolean isRunning() {
+        return status == Status.RUNNING || status == Status.ANALYZING;
+    }
+
+    /**
+     * 已耗时（秒）
+     */
+    public double getElapsedSeconds() {
+        long end = finishedNanos > 0 ? finishedNanos : System.nanoTime();
+        return Math.max(1, end - startedNanos) / 1_000_000_000.0;
+    }
+
+    /**
+     * 写入速率（条/秒）
+     */
+    public double getRowsPerSecond() {
+        return rowsWritten.get() / getElapsedSeconds();
+    }
+
+    /**
+     * 读取速率（MB/秒，按解压后的字节数）
+     */
+    public double getMegabytesPerSecond() {
+        return bytesRead.get() / 1024.0 / 1024.0 / getElapsedSeconds();
+    }
+
+    /**
+     * 任务快照（用于 REST 返回和日志）
+     *
+     * @return 快照数据
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("jobId", jobId);
+        data.put("status", status);
+        data.put("files", files);
+        data.put("currentFile", currentFile);
+        data.put("instanceId", instanceId);
+        data.put("analyze", analyze);
+        data.put("startedAt", startedAt);
+        data.put("finishedAt", finishedAt);
+        data.put("elapsed", Duration.ofMillis((long) (getElapsedSeconds() * 1000)).toString());
+        data.put("bytesRead", bytesRead.get());
+        data.put("chunks", chunks.get());
+        data.put("entriesParsed", entriesParsed.get());
+        data.put("rowsWritten", rowsWritten.get());
+        data.put("rowsFailed", rowsFailed.get());
+        data.put("templates", templates.get());
+        data.put("rowsPerSecond", Math.round(getRowsPerSecond()));
+        data.put("megabytesPerSecond", Math.round(getMegabytesPerSecond() * 10) / 10.0);
+        data.put("error", error);
+        return data;
+    }
+}
@@ -0,0 +1,69 @@
+package com.dbdoctor.ingest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 历史慢日志批量导入命令行入口
+ *
+ * 用法：
+ * <pre>
+ * java -jar db-doctor.jar --import=/data/slow-2024-01.log.gz,/data/slow-2024-02.log.gz [--import-instance=1] [--import-no-analyze] [--import-exit]
+ * </pre>
+ * - --import：要导入的文件（逗号分隔，可重复指定）
+ * - --import-instance：归属的数据库实例 ID（可选）
+ * - --import-no-analyze：导入完成后不提交 AI 分析
+ * - --import-exit：导入完成后退出进程（退出码 0 成功，1 失败；此时不提交 AI 分析）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkImportRunner implements ApplicationRunner {
+
+    private final BulkImportService bulkImportService;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("import")) {
+            return;
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (String value : args.getOptionValues("import")) {
+            Arrays.stream(value.split(",")).filter(s -> !s.isBlank()).forEach(paths::add);
+        }
+        boolean exit = args.containsOption("import-exit");
+        boolean analyze = !args.containsOption("import-no-analyze") && !exit;
+        Long instanceId = args.containsOption("import-instance")
+                ? Long.valueOf(args.getOptionValues("import-instance").get(0))
+                : null;
+
+        BulkImportJob job;
+        try {
+            job = bulkImportService.runImport(paths, instanceId, analyze);
+        } catch (Exception e) {
+            log.error("❌ 命令行批量导入失败: {}", e.getMessage());
+            job = null;
+        }
+
+        if (exit) {
+            int code = job != null && job.getStatus() == BulkImportJob.Status.COMPLETED ? 0 : 1;
+            log.info("🛑 批量导入结束，退出进程（退出码 {}）", code);
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.model.PreparedSlowQuery;
+import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.service.AnalysisService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 历史慢日志批量导入服务（离线导入 .log / .gz 归档）
+ *
+ * 与实时采集（IngestPipeline）的区别：
+ * <pre>
+ * 导入线程：流式读取（.gz 流式解压）→ 按日志块边界切成约 chunk-size 的块
+ *     │ 每块提交一个任务
+ *     ▼
+ * ForkJoinPool（并行度 = CPU 核数）：解析 + 清洗 + 指纹 + 脱敏，纯 CPU
+ *     │ 按提交顺序取回结果（在途块数有上限，内存有界）
+ *     ▼
+ * 导入线程：补全跨块的 use 数据库 → 每 batch-size 条一个事务写入 Template / Sample
+ *     │
+ *     ▼
+ * 全部写入后，按模板统一提交 AI 分析（而不是每批触发一次）
+ * </pre>
+ *
+ * 注意：
+ * - 同一时刻只允许一个导入任务
+ * - 导入的慢查询与实时采集写入同一批模板表，写入冲突时自动逐条重试
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkImportService {
+
+    private static final byte[] TIME_PREFIX = "# Time:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] USER_HOST_PREFIX = "# User@Host:".getBytes(StandardCharsets.US_ASCII);
+
+    private final AnalysisService analysisService;
+    private final SlowLogMonitorProperties properties;
+
+    /**
+     * 当前（或最近一次）导入任务
+     */
+    private final AtomicReference<BulkImportJob> lastJob = new AtomicReference<>();
+
+    /**
+     * 后台启动导入任务（REST 触发）
+     *
+     * @param paths      文件路径（.log 或 .gz）
+     * @param instanceId 归属的数据库实例（可为空）
+     * @param analyze    导入完成后是否提交 AI 分析
+     * @return 导入任务
+     */
+    public BulkImportJob submit(List<String> paths, Long instanceId, boolean analyze) {
+        List<Path> files = resolve(paths, true);
+        BulkImportJob job = begin(files, instanceId, analyze);
+
+        Thread thread = new Thread(() -> execute(job, files), "bulk-import-" + job.getJobId().substring(0, 8));
+        thread.setDaemon(true);
+        thread.start();
+        return job;
+    }
+
+    /**
+     * 在当前线程执行导入任务（命令行触发）
+     *
+     * @param paths      文件路径（.log 或 .gz）
+     * @param instanceId 归属的数据库实例（可为空）
+     * @param analyze    导入完成后是否提交 AI 分析
+     * @return 导入任务
+     */
+    public BulkImportJob runImport(List<String> paths, Long instanceId, boolean analyze) {
+        List<Path> files = resolve(paths, false);
+        BulkImportJob job = begin(files, instanceId, analyze);
+        execute(job, files);
+        return job;
+    }
+
+    /**
+     * 获取当前（或最近一次）导入任务
+     */
+    public Optional<BulkImportJob> getLastJob() {
+        return Optional.ofNullable(lastJob.get());
+    }
+
+    private BulkImportJob begin(List<Path> files, Long instanceId, boolean analyze) {
+        List<String> names = files.stream().map(Path::toString).toList();
+        BulkImportJob job = new BulkImportJob(UUID.randomUUID().toString(), names, instanceId, analyze);
+
+        BulkImportJob previous = lastJob.get();
+        if ((previous != null && previous.isRunning()) || !lastJob.compareAndSet(previous, job)) {
+            throw new IllegalStateException("已有导入任务正在执行: " + (previous != null ? previous.getJobId() : ""));
+        }
+        return job;
+    }
+
+    /**
+     * 校验文件路径
+     *
+     * REST 触发时文件必须位于 allowed-directory 下（按真实路径比较，符号链接不能指向目录之外）；
+     * 未配置 allowed-directory 时拒绝 REST 导入，命令行导入不受限制
+     *
+     * @param restrictDirectory 是否限制在 allowed-directory 下（REST 触发时）
+     */
+    List<Path> resolve(List<String> paths, boolean restrictDirectory) {
+        if (paths == null || paths.isEmpty()) {
+            throw new IllegalArgumentException("请指定要导入的文件");
+        }
+
+        Path allowedDir = restrictDirectory ? allowedDirectory() : null;
+
+        List<Path> files = new ArrayList<>();
+        for (String value : paths) {
+            Path path = Paths.get(value.trim()).toAbsolutePath().normalize();
+            if (allowedDir != null && !path.startsWith(allowedDir)) {
+                throw new IllegalArgumentException("文件不在允许导入的目录下: " + path);
+            }
+            if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+                throw new IllegalArgumentException("文件不存在或不可读: " + path);
+            }
+            if (allowedDir != null && !realPath(path).startsWith(allowedDir)) {
+                throw new IllegalArgumentException("文件不在允许导入的目录下: " + path);
+            }
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * 允许通过 REST 导入的目录（真实路径）
+     *
+     * @throws IllegalStateException 未配置或目录不存在
+     */
+    private Path allowedDirectory() {
+        String allowed = properties.getBulkImport().getAllowedDirectory();
+        if (allowed == null || allowed.isBlank()) {
+            throw new IllegalStateException("未配置允许导入的目录（db-doctor.slow-log-monitor.bulk-import.allowed-directory），"
+                    + "REST 导入已禁用；请配置目录或使用命令行导入");
+        }
+        Path dir = Paths.get(allowed.trim()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalStateException("允许导入的目录不存在: " + dir);
+        }
+        return realPath(dir);
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法解析文件路径: " + path);
+        }
+    }
+
+    // ==================== 导入流程 ====================
+
+    private void execute(BulkImportJob job, List<Path> files) {
+        SlowLogMonitorProperties.BulkImport config = properties.getBulkImport();
+        int parallelism = config.getParallelism() != null && config.getParallelism() > 0
+                ? config.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+
+        log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        log.info("📥 开始批量导入历史慢日志: jobId={}, 文件数={}, 并行度={}", job.getJobId(), files.size(), parallelism);
+        log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        BatchWriter writer = new BatchWriter(job, Math.max(1, config.getBatchSize()));
+        try {
+            for (Path file : files) {
+                job.setCurrentFile(file.toString());
+                importFile(job, file, pool, parallelism * 2, writer);
+                log.info("📄 文件导入完成: {}，累计 {} 条，{} 条/秒", file, job.rowsWritten.get(), Math.round(job.getRowsPerSecond()));
+            }
+            writer.flush();
+            job.setCurrentFile(null);
+
+            if (job.isAnalyze()) {
+                job.setStatus(BulkImportJob.Status.ANALYZING);
+                writer.triggerAnalysis();
+            }
+            job.finish(BulkImportJob.Status.COMPLETED, null);
+
+            log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            log.info("✅ 批量导入完成: jobId={}", job.getJobId());
+            log.info("   📊 写入 {} 条（失败 {} 条），涉及模板 {} 个", job.rowsWritten.get(), job.rowsFailed.get(), job.templates.get());
+            log.info("   ⏱️  耗时 {} 秒，{} 条/秒，{} MB/秒",
+                    Math.round(job.getElapsedSeconds()), Math.round(job.getRowsPerSecond()),
+                    String.format("%.1f", job.getMegabytesPerSecond()));
+            log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        } catch (Exception e) {
+            job.finish(BulkImportJob.Status.FAILED, e.getMessage());
+            log.error("❌ 批量导入失败: jobId={}, file={}", job.getJobId(), job.getCurrentFile(), e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 导入单个文件：读取线程切块，ForkJoinPool 并行解析，按顺序写入
+     *
+     * @param maxInFlight 同时在途的最大块数（限制内存）
+     */
+    private void importFile(BulkImportJob job, Path file, ForkJoinPool pool, int maxInFlight,
+                            BatchWriter writer) throws IOException {
+        int chunkSize = Math.max(64 * 1024, properties.getBulkImport().getChunkSizeBytes());
+        Deque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+        String inheritedDb = null;
+
+        try (InputStream in = open(file)) {
+            byte[] buf = new byte[chunkSize];
+            int len = 0;
+
+            while (true) {
+                int read = in.readNBytes(buf, len, buf.length - len);
+                job.bytesRead.addAndGet(read);
+                len += read;
+                boolean eof = len < buf.length;
+
+                int cut = eof ? len : lastEntryBoundary(buf, len);
+                if (cut <= 0) {
+                    if (eof) {
+                        break;
+                    }
+                    // 单条日志超过分块大小：扩大缓冲区继续读取
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+
+                byte[] chunk = Arrays.copyOfRange(buf, 0, cut);
+                System.arraycopy(buf, cut, buf, 0, len - cut);
+                len -= cut;
+
+                inFlight.addLast(CompletableFuture.supplyAsync(() -> parseChunk(job, chunk), pool));
+                job.chunks.incrementAndGet();
+
+                while (inFlight.size() >= maxInFlight) {
+                    inheritedDb = writer.write(inFlight.removeFirst().join(), inheritedDb);
+                }
+                if (eof) {
+                    break;
+                }
+            }
+        }
+
+        while (!inFlight.isEmpty()) {
+            inheritedDb = writer.write(inFlight.removeFirst().join(), inheritedDb);
+        }
+    }
+
+    private InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    /**
+     * 解析一个块（在 ForkJoinPool 中执行）
+     * 块总是从日志块边界开始，解析器不知道上一块的 use 数据库，由写入阶段按顺序补全
+     */
+    private ParsedChunk parseChunk(BulkImportJob job, byte[] chunk) {
+        SlowLogFileParser parser = new SlowLogFileParser(properties.getMaxSqlLength());
+        List<SlowQueryLog> entries = parser.parseAll(ByteBuffer.wrap(chunk)).entries();
+        job.entriesParsed.addAndGet(entries.size());
+
+        List<PreparedSlowQuery> prepared = new ArrayList<>(entries.size());
+        for (SlowQueryLog entry : entries) {
+            entry.setInstanceId(job.getInstanceId());
+            try {
+                PreparedSlowQuery result = analysisService.prepare(entry);
+                if (result != null) {
+                    prepared.add(result);
+                }
+            } catch (Exception e) {
+                job.rowsFailed.incrementAndGet();
+                log.debug("预处理慢查询失败: {}", e.getMessage());
+            }
+        }
+        return new ParsedChunk(prepared, parser.getCurrentDb());
+    }
+
+    /**
+     * 在 [0, len) 中找最后一个日志块的起始位置（"# Time:" 行，或没有 Time 行时的 "# User@Host:" 行）
+     *
+     * @return 起始位置；找不到（或只有一个从 0 开始的日志块）时返回 -1
+     */
+    static int lastEntryBoundary(byte[] buf, int len) {
+        for (int i = len - USER_HOST_PREFIX.length; i > 0; i--) {
+            if (buf[i - 1] != '\n' || !startsWith(buf, i, len, USER_HOST_PREFIX)) {
+                continue;
+            }
+            int start = i;
+            int previousLine = i - 1;
+            while (previousLine > 0 && buf[previousLine - 1] != '\n') {
+                previousLine--;
+            }
+            if (previousLine < i - 1 && startsWith(buf, previousLine, len, TIME_PREFIX)) {
+                start = previousLine;
+            }
+            if (start > 0) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buf, int pos, int len, byte[] prefix) {
+        if (pos + prefix.length > len) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析结果
+     *
+     * @param prepared 预处理后的慢查询（按日志顺序）
+     * @param lastDb   块末尾的当前数据库（块内没有 use 语句时为 null）
+     */
+    private record ParsedChunk(List<PreparedSlowQuery> prepared, String lastDb) {
+    }
+
+    /**
+     * 批量写入器（只由导入线程访问）
+     */
+    private class BatchWriter {
+
+        private final BulkImportJob job;
+        private final int batchSize;
+        private final List<PreparedSlowQuery> batch;
+
+        /**
+         * 导入涉及的模板（按 ID 去重，保留最新统计），导入完成后统一提交 AI 分析
+         */
+        private final Map<Long, SlowQueryTemplate> touched = new LinkedHashMap<>();
+
+        BatchWriter(BulkImportJob job, int batchSize) {
+            this.job = job;
+            this.batchSize = batchSize;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        /**
+         * 写入一个块的结果
+         *
+         * @param chunk       解析结果
+         * @param inheritedDb 上一块末尾的当前数据库
+         * @return 本块末尾的当前数据库
+         */
+        String write(ParsedChunk chunk, String inheritedDb) {
+            for (PreparedSlowQuery item : chunk.prepared()) {
+                if (item.getSlowLog().getDbName() == null) {
+                    item.getSlowLog().setDbName(inheritedDb);
+                }
+                batch.add(item);
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            }
+            return chunk.lastDb() != null ? chunk.lastDb() : inheritedDb;
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                remember(analysisService.persistBatch(batch));
+                job.rowsWritten.addAndGet(batch.size());
+            } catch (Exception e) {
+                log.warn("⚠️ 批量写入失败，改为逐条写入: size={}, error={}", batch.size(), e.getMessage());
+                for (PreparedSlowQuery item : batch) {
+                    try {
+                        remember(analysisService.persistBatch(List.of(item)));
+                        job.rowsWritten.incrementAndGet();
+                    } catch (Exception ex) {
+                        job.rowsFailed.incrementAndGet();
+                        log.debug("写入慢查询失败: fingerprint={}, error={}", item.getFingerprint(), ex.getMessage());
+                    }
+                }
+            }
+            batch.clear();
+        }
+
+        private void remember(List<SlowQueryTemplate> templates) {
+            for (SlowQueryTemplate template : templates) {
+                touched.put(template.getId(), template);
+            }
+            job.templates.set(touched.size());
+        }
+
+        /**
+         * 导入完成后按模板提交 AI 分析（异步执行，线程池满时由导入线程执行）
+         */
+        void triggerAnalysis() {
+            log.info("🤖 导入完成，提交 {} 个模板的 AI 分析", touched.size());
+            for (SlowQueryTemplate template : touched.values()) {
+                try {
+                    analysisService.generateReportAndNotify(template);
+                } catch (Exception e) {
+                    log.error("触发报告生成失败: fingerprint={}", template.getSqlFingerprint(), e);
+                }
+            }
+        }
+    }
+}
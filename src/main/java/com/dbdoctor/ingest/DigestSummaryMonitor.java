@@ -0,0 +1,254 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import com.dbdoctor.config.DynamicDataSourceManager;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.lifecycle.ShutdownManager;
+import com.dbdoctor.model.SlowQueryLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * performance_schema 语句摘要增量采集服务（source=DIGEST）
+ *
+ * 核心机制：
+ * 1. 定期快照 events_statements_summary_by_digest，在内存中按 (SCHEMA_NAME, DIGEST) 计算区间增量
+ * 2. 每个 digest 每个区间只产生一条预聚合记录（平均耗时 + 执行次数），输入规模取决于 digest 数量而不是执行次数
+ * 3. DIGEST 即服务端计算好的指纹，DIGEST_TEXT 即参数化模板，跳过 SqlFingerprintUtil 的指纹计算
+ *
+ * 增量计算：
+ * - 首次快照只作为基线，不产生记录（与表轮询一致：不补发历史数据）
+ * - 后续快照只读取 LAST_SEEN >= 上次水位线 的 digest（未执行过的 digest 不会变化）
+ * - COUNT_STAR 变小说明计数器被重置（TRUNCATE 或 digest 被淘汰后重新出现），当前值即为增量
+ *
+ * 注意：
+ * - performance_schema 的计时单位是皮秒
+ * - MAX_TIMER_WAIT 是累计最大值，只有在本区间内变大时才作为本区间的最大耗时
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Service
+public class DigestSummaryMonitor {
+
+    private static final double PICOSECONDS_PER_SECOND = 1_000_000_000_000.0;
+
+    private static final String SNAPSHOT_SQL = """
+            SELECT
+                SCHEMA_NAME,
+                DIGEST,
+                DIGEST_TEXT,
+                COUNT_STAR,
+                SUM_TIMER_WAIT,
+                MAX_TIMER_WAIT,
+                SUM_LOCK_TIME,
+                SUM_ROWS_SENT,
+                SUM_ROWS_EXAMINED,
+                LAST_SEEN
+            FROM performance_schema.events_statements_summary_by_digest
+            WHERE DIGEST IS NOT NULL
+              AND (SCHEMA_NAME IS NULL
+                   OR SCHEMA_NAME NOT IN ('mysql', 'performance_schema', 'information_schema', 'sys'))
+            """;
+
+    @Qualifier("targetJdbcTemplate")
+    @Autowired
+    private JdbcTemplate targetJdbcTemplate;
+
+    @Autowired
+    private IngestPipeline ingestPipeline;
+
+    @Autowired
+    private SlowLogMonitorProperties properties;
+
+    @Autowired
+    private DynamicDataSourceManager dynamicDataSourceManager;
+
+    /**
+     * 上一次快照的计数器（key: SCHEMA_NAME + DIGEST）
+     * 规模受 performance_schema_digests_size 限制（默认 10000）
+     */
+    private final Map<String, DigestCounters> previous = new HashMap<>();
+
+    /**
+     * LAST_SEEN 水位线（使用服务端时间，避免时钟偏差）
+     * 为空表示尚未建立基线
+     */
+    private Timestamp lastSeenWatermark;
+
+    /**
+     * 定时任务：快照并计算增量
+     */
+    @Scheduled(fixedDelayString = "${db-doctor.slow-log-monitor.digest.poll-interval-ms:60000}")
+    public synchronized void poll() {
+        if (properties.getSource() != SlowLogMonitorProperties.Source.DIGEST) {
+            return;
+        }
+        if (ShutdownManager.isShuttingDown) {
+            log.debug("正在停机中，跳过本次 digest 快照");
+            return;
+        }
+        if (!dynamicDataSourceManager.isInitialized()) {
+            log.debug("目标数据源未初始化，跳过本次 digest 快照（请先配置数据库连接）");
+            return;
+        }
+
+        try {
+            boolean baseline = lastSeenWatermark == null;
+            List<Map<String, Object>> rows = baseline
+                    ? targetJdbcTemplate.queryForList(SNAPSHOT_SQL)
+                    : targetJdbcTemplate.queryForList(SNAPSHOT_SQL + "  AND LAST_SEEN >= ?", lastSeenWatermark);
+
+            int emitted = processSnapshot(rows, baseline);
+
+            if (baseline) {
+                log.info("📸 [digest] 已建立基线快照: {} 个 digest", previous.size());
+            } else if (emitted > 0) {
+                log.info("🔍 [digest] 本区间捕获 {} 个慢查询 digest（变化 digest: {}）", emitted, rows.size());
+            }
+        } catch (Exception e) {
+            if (!ShutdownManager.isShuttingDown) {
+                log.error("❌ 采集 events_statements_summary_by_digest 失败", e);
+            }
+        }
+    }
+
+    /**
+     * 处理一次快照
+     *
+     * @param rows     快照行
+     * @param baseline 是否为基线快照
+     * @return 产生的预聚合记录数
+     */
+    private int processSnapshot(List<Map<String, Object>> rows, boolean baseline) {
+        double threshold = properties.getDigest().getMinQueryTimeSeconds();
+        Timestamp watermark = lastSeenWatermark;
+        int emitted = 0;
+
+        for (Map<String, Object> row : rows) {
+            String schema = (String) row.get("SCHEMA_NAME");
+            String digest = (String) row.get("DIGEST");
+            Timestamp lastSeen = toTimestamp(row.get("LAST_SEEN"));
+            DigestCounters current = DigestCounters.of(row);
+
+            DigestCounters prev = previous.put(schema + '\u0001' + digest, current);
+
+            if (lastSeen != null && (watermark == null || lastSeen.after(watermark))) {
+                watermark = lastSeen;
+            }
+            if (baseline) {
+                continue;
+            }
+
+            // 新 digest 或计数器被重置：当前值即为增量
+            boolean reset = prev == null || current.countStar < prev.countStar;
+            DigestCounters delta = reset ? current : current.minus(prev);
+            if (delta.countStar <= 0) {
+                continue;
+            }
+
+            double avgQueryTime = delta.sumTimerWait / delta.countStar / PICOSECONDS_PER_SECOND;
+            double maxQueryTime = reset || current.maxTimerWait > prev.maxTimerWait
+                    ? current.maxTimerWait / PICOSECONDS_PER_SECOND
+                    : avgQueryTime;
+            if (avgQueryTime < threshold && maxQueryTime < threshold) {
+                continue;
+            }
+
+            String digestText = (String) row.get("DIGEST_TEXT");
+            if (digestText == null || digestText.isBlank()) {
+                continue;
+            }
+
+            SlowQueryLog record = SlowQueryLog.builder()
+                    .startTime(lastSeen != null ? lastSeen.toLocalDateTime() : LocalDateTime.now())
+                    .dbName(schema)
+                    .sqlText(digestText)
+                    // DIGEST 不含数据库名：不同库上的同一语句按 (schema, digest) 归入不同模板，与增量的跟踪粒度一致
+                    .sqlFingerprint(SqlFingerprintUtil.scopeToSchema(digest, schema))
+                    .sqlTemplate(digestText)
+                    .executionCount(delta.countStar)
+                    .queryTime(avgQueryTime)
+                    .maxQueryTime(Math.max(maxQueryTime, avgQueryTime))
+                    .lockTime(delta.sumLockTime / delta.countStar / PICOSECONDS_PER_SECOND)
+                    .rowsSent(Math.round((double) delta.sumRowsSent / delta.countStar))
+                    .rowsExamined(Math.round((double) delta.sumRowsExamined / delta.countStar))
+                    .build();
+
+            // 发布到采集流水线（队列满时阻塞等待，不丢弃数据）
+            if (ingestPipeline.publish(record)) {
+                emitted++;
+            }
+        }
+
+        lastSeenWatermark = watermark != null ? watermark : new Timestamp(0L);
+        return emitted;
+    }
+
+    /**
+     * 重置基线（切换目标数据库后使用，对应 SlowLogTableMonitor.resetCursor）
+     */
+    public synchronized void resetBaseline() {
+        previous.clear();
+        lastSeenWatermark = null;
+        log.info("🔄 [digest] 基线已重置，下次快照将重新建立基线");
+    }
+
+    private static Timestamp toTimestamp(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp;
+        }
+        if (value instanceof LocalDateTime localDateTime) {
+            return Timestamp.valueOf(localDateTime);
+        }
+        return null;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static double toDouble(Object value) {
+        // SUM_TIMER_WAIT 为 BIGINT UNSIGNED（皮秒），长期累计可能超过 long 范围
+        return value instanceof Number number ? number.doubleValue() : 0.0;
+    }
+
+    /**
+     * digest 计数器快照
+     */
+    private record DigestCounters(long countStar, double sumTimerWait, double maxTimerWait,
+                                  double sumLockTime, long sumRowsSent, long sumRowsExamined) {
+
+        static DigestCounters of(Map<String, Object> row) {
+            return new DigestCounters(
+                    toLong(row.get("COUNT_STAR")),
+                    toDouble(row.get("SUM_TIMER_WAIT")),
+                    toDouble(row.get("MAX_TIMER_WAIT")),
+                    toDouble(row.get("SUM_LOCK_TIME")),
+                    toLong(row.get("SUM_ROWS_SENT")),
+                    toLong(row.get("SUM_ROWS_EXAMINED")));
+        }
+
+        DigestCounters minus(DigestCounters other) {
+            return new DigestCounters(
+                    countStar - other.countStar,
+                    sumTimerWait - other.sumTimerWait,
+                    maxTimerWait,
+                    sumLockTime - other.sumLockTime,
+                    sumRowsSent - other.sumRowsSent,
+                    sumRowsExamined - other.sumRowsExamined);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.model.SlowQueryLog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 采集检查点（至少一次语义的游标提交）
+ *
+ * 问题：采集线程读到的位置 ≠ 已经落库的位置。数据还在流水线队列里时就持久化游标，
+ * 重启后队列中的数据会丢失；只在内存中保存游标，重启后整段停机窗口的数据会丢失。
+ *
+ * 机制：
+ * 1. 采集线程每读一页，把这一页发布的记录挂到同一个 Page 上（track）
+ * 2. 流水线处理完一条记录后通过 SlowQueryLog.acknowledge() 释放 Page 的计数
+ * 3. 这一页读完后用读到的最后位置封口（seal）
+ * 4. completed() 按读取顺序找出连续已处理完的页，返回最后一页的位置 —— 这是可以安全持久化的游标
+ *
+ * 重启后从持久化的游标继续读取：已落库但游标未来得及保存的少量记录会被重复采集，不会丢失
+ *
+ * @param <P> 位置类型（例如 slow_log 的键集位置）
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public class IngestCheckpoint<P> {
+
+    private final Deque<Page<P>> pages = new ArrayDeque<>();
+    private Page<P> current;
+    private P committed;
+
+    /**
+     * 记录一条即将发布到流水线的数据（归入当前页）
+     *
+     * @param slowLog 慢查询日志
+     */
+    public synchronized void track(SlowQueryLog slowLog) {
+        Page<P> page = currentPage();
+        page.pending.incrementAndGet();
+        slowLog.setIngestAck(page::release);
+    }
+
+    /**
+     * 当前页读取完毕，用读到的最后位置封口
+     *
+     * @param position 最后位置（null 表示本页没有推进位置）
+     */
+    public synchronized void seal(P position) {
+        Page<P> page = currentPage();
+        page.position = position;
+        page.sealed = true;
+        current = null;
+    }
+
+    /**
+     * 已全部处理完毕的最新位置
+     *
+     * @return 位置（还没有完成的页时返回上一次的结果，可能为 null）
+     */
+    public synchronized P completed() {
+        while (!pages.isEmpty()) {
+            Page<P> head = pages.peekFirst();
+            if (!head.sealed || head.pending.get() > 0) {
+                break;
+            }
+            if (head.position != null) {
+                committed = head.position;
+            }
+            pages.removeFirst();
+        }
+        return committed;
+    }
+
+    /**
+     * 是否所有已封口的页都已处理完毕
+     */
+    public synchronized boolean isDrained() {
+        completed();
+        return pages.isEmpty();
+    }
+
+    /**
+     * 清空（游标被重置时调用，未完成的页不再提交）
+     */
+    public synchronized void reset() {
+        pages.clear();
+        current = null;
+        committed = null;
+    }
+
+    private Page<P> currentPage() {
+        if (current == null) {
+            current = new Page<>();
+            pages.addLast(current);
+        }
+        return current;
+    }
+
+    private static class Page<P> {
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean sealed;
+        private volatile P position;
+
+        private void release() {
+            pending.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.model.PreparedSlowQuery;
+import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.service.AnalysisService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 慢查询采集流水线
+ *
+ * 流水线结构：
+ * <pre>
+ * 采集线程（slow_log 轮询 / 文件读取 / digest 快照）
+ *     │ publish（队列满时阻塞 = 背压）
+ *     ▼
+ * 有界环形队列（ArrayBlockingQueue）
+ *     │
+ *     ▼
+ * N 个预处理 worker（清洗、指纹、脱敏，纯 CPU，无数据库访问）
+ *     │
+ *     ▼
+ * 有界队列
+ *     │
+ *     ▼
+ * 单线程写入（按批次在一个事务内写入 H2，事务提交后按模板触发 AI 分析；分析线程池满时延后提交，不在写入线程上执行）
+ * </pre>
+ *
+ * 设计要点：
+ * 1. 采集线程只负责读取，不再被单条慢查询的 Druid 解析、脱敏和 JPA 往返拖慢
+ * 2. 写入阶段单线程批量提交，减少事务开销（模板统计为原子增量更新、新模板插入可合并并发冲突，写入本身允许并发）
+ * 3. 背压：队列满时采集线程阻塞等待（publish），或立即返回由采集来源稍后从游标继续读取（offer），不丢弃数据
+ * 4. 同一批次内同一模板只触发一次 AI 分析（通过 Spring 代理调用，@Async 生效）
+ * 5. 每条记录处理完毕（写入、过滤或失败放弃）后回执给采集来源，采集来源据此提交持久化游标
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestPipeline {
+
+    private static final long POLL_TIMEOUT_MS = 200L;
+    private static final long SHUTDOWN_DRAIN_TIMEOUT_MS = 10_000L;
+
+    private static final String WRITER_THREAD_NAME = "ingest-writer";
+
+    /**
+     * 写入线程标记（analysisExecutor 队列满时不在该线程上执行 AI 分析，见 ThreadPoolConfig）
+     */
+    private static final ThreadLocal<Boolean> WRITER_THREAD = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * 等待 AI 分析线程池空出队列的模板上限，超出时放弃提交（模板保持 PENDING，由 PendingTaskRetryService 补扫）
+     */
+    private static final int MAX_DEFERRED_ANALYSIS = 10_000;
+
+    private final AnalysisService analysisService;
+    private final SlowLogMonitorProperties properties;
+
+    /**
+     * AI 分析线程池（用于计算分析侧积压）
+     * 按 Executor 注入：ThreadPoolConfig 声明的返回类型是 Executor，按 ThreadPoolTaskExecutor 注入时
+     * 取决于该 Bean 是否已先创建，启动顺序变化就会找不到 Bean
+     */
+    private final Executor analysisExecutor;
+
+    private BlockingQueue<SlowQueryLog> inbound;
+    private BlockingQueue<PreparedSlowQuery> prepared;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private Thread writer;
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private volatile boolean running;
+
+    /**
+     * 因 AI 分析线程池队列已满而延后提交的模板（按指纹去重，只由写入线程访问）
+     */
+    private final Map<String, SlowQueryTemplate> deferredAnalysis = new LinkedHashMap<>();
+
+    // ==================== 指标 ====================
+
+    private final StageMeter publishMeter = new StageMeter();
+    private final StageMeter prepareMeter = new StageMeter();
+    private final StageMeter persistMeter = new StageMeter();
+    private final LongAdder persistBatches = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder analysisDeferrals = new LongAdder();
+    private final LongAdder analysisDrops = new LongAdder();
+    private volatile int deferredAnalysisCount;
+
+    /**
+     * 启动流水线线程
+     */
+    @PostConstruct
+    public void start() {
+        SlowLogMonitorProperties.Pipeline config = properties.getPipeline();
+        int capacity = Math.max(1, config.getQueueCapacity());
+        int workerCount = config.getWorkerThreads() != null && config.getWorkerThreads() > 0
+                ? config.getWorkerThreads()
+                : Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        this.inbound = new ArrayBlockingQueue<>(capacity);
+        this.prepared = new ArrayBlockingQueue<>(capacity);
+        this.running = true;
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::prepareLoop, "ingest-prepare-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            liveWorkers.incrementAndGet();
+            worker.start();
+        }
+
+        writer = new Thread(this::persistLoop, WRITER_THREAD_NAME);
+        writer.setDaemon(true);
+        writer.start();
+
+        log.info("🚀 慢查询采集流水线已启动: 队列容量={}, 预处理线程={}, 批量大小={}",
+                capacity, workerCount, config.getBatchSize());
+    }
+
+    /**
+     * 停止流水线：停止接收新数据，尽量写完已入队的数据
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_TIMEOUT_MS;
+
+        try {
+            for (Thread worker : workers) {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            if (writer != null) {
+                writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int remaining = inbound.size() + prepared.size();
+        if (remaining > 0) {
+            log.warn("⚠️ 采集流水线停止时仍有 {} 条慢查询未写入", remaining);
+        }
+        workers.forEach(Thread::interrupt);
+        if (writer != null) {
+            writer.interrupt();
+        }
+        log.info("🛑 慢查询采集流水线已停止");
+    }
+
+    /**
+     * 发布一条慢查询到流水线
+     * 队列满时阻塞等待（背压），直到有空位或流水线停止
+     *
+     * @param slowLog 慢查询日志
+     * @return true-已入队，false-流水线已停止或线程被中断
+     */
+    public boolean publish(SlowQueryLog slowLog) {
+        try {
+            if (!inbound.offer(slowLog)) {
+                backpressureWaits.increment();
+                while (!inbound.offer(slowLog, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (!running) {
+                        slowLog.acknowledge();
+                        return false;
+                    }
+                }
+            }
+            publishMeter.record(1);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slowLog.acknowledge();
+            return false;
+        }
+    }
+
+    /**
+     * 非阻塞地发布一条慢查询到流水线
+     * 队列满时立即返回 false，不等待：供持有目标库流式结果集的读取线程使用（见 SlowLogTableReader），
+     * 调用方停止读取，下一次从游标继续
+     *
+     * @param slowLog 慢查询日志
+     * @return true-已入队，false-队列已满或流水线已停止
+     */
+    public boolean offer(SlowQueryLog slowLog) {
+        if (!running) {
+            slowLog.acknowledge();
+            return false;
+        }
+        if (!inbound.offer(slowLog)) {
+            backpressureWaits.increment();
+            slowLog.acknowledge();
+            return false;
+        }
+        publishMeter.record(1);
+        return true;
+    }
+
+    // ==================== 流水线阶段 ====================
+
+    /**
+     * 预处理阶段：清洗、指纹、脱敏
+     */
+    private void prepareLoop() {
+        try {
+            while (running || !inbound.isEmpty()) {
+                SlowQueryLog slowLog = inbound.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (slowLog == null) {
+                    continue;
+                }
+
+                try {
+                    PreparedSlowQuery result = analysisService.prepare(slowLog);
+                    if (result != null) {
+                        prepared.put(result);
+                    } else {
+                        slowLog.acknowledge();
+                    }
+                    prepareMeter.record(1);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    prepareMeter.recordFailure(1);
+                    slowLog.acknowledge();
+                    log.error("预处理慢查询失败", e);
+                    // 继续处理下一条，不中断整个流程
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            liveWorkers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 写入阶段：单线程凑批写入
+     */
+    private void persistLoop() {
+        WRITER_THREAD.set(true);
+        SlowLogMonitorProperties.Pipeline config = properties.getPipeline();
+        int batchSize = Math.max(1, config.getBatchSize());
+        long maxWaitMs = Math.max(0L, config.getMaxBatchWaitMs());
+        List<PreparedSlowQuery> batch = new ArrayList<>(batchSize);
+
+        try {
+            while (running || liveWorkers.get() > 0 || !prepared.isEmpty()) {
+                PreparedSlowQuery first = prepared.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    submitDeferredAnalysis();
+                    continue;
+                }
+                batch.add(first);
+
+                // 凑批：先取已就绪的，不够再等待一小段时间
+                long deadline = System.currentTimeMillis() + maxWaitMs;
+                while (batch.size() < batchSize) {
+                    prepared.drainTo(batch, batchSize - batch.size());
+                    long waitMs = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || waitMs <= 0) {
+                        break;
+                    }
+                    PreparedSlowQuery next = prepared.poll(waitMs, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                persist(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 批量写入；失败时逐条重试，避免一条坏数据拖垮整个批次
+     */
+    private void persist(List<PreparedSlowQuery> batch) {
+        try {
+            List<SlowQueryTemplate> templates = analysisService.persistBatch(batch);
+            persistMeter.record(batch.size());
+            persistBatches.increment();
+            batch.forEach(item -> item.getSlowLog().acknowledge());
+            triggerAnalysis(templates);
+        } catch (Exception e) {
+            log.warn("⚠️ 批量写入失败，改为逐条写入: size={}, error={}", batch.size(), e.getMessage());
+            for (PreparedSlowQuery item : batch) {
+                try {
+                    triggerAnalysis(analysisService.persistBatch(List.of(item)));
+                    persistMeter.record(1);
+                } catch (Exception ex) {
+                    persistMeter.recordFailure(1);
+                    log.error("写入慢查询失败: fingerprint={}", item.getFingerprint(), ex);
+                } finally {
+                    item.getSlowLog().acknowledge();
+                }
+            }
+            persistBatches.increment();
+        }
+    }
+
+    /**
+     * 触发 AI 分析
+     *
+     * 写入线程不能执行 AI 分析：analysisExecutor 队列满时提交被拒绝（不会在调用线程上执行），
+     * 模板进入延后队列，等线程池有空位时再提交，采集不会被 AI 调用阻塞
+     */
+    private void triggerAnalysis(List<SlowQueryTemplate> templates) {
+        for (SlowQueryTemplate template : templates) {
+            if (deferredAnalysis.size() >= MAX_DEFERRED_ANALYSIS
+                    && !deferredAnalysis.containsKey(template.getSqlFingerprint())) {
+                analysisDrops.increment();
+                log.warn("⚠️ AI 分析积压过多，暂不提交（保持 PENDING 等待补扫）: fingerprint={}", template.getSqlFingerprint());
+                continue;
+            }
+            deferredAnalysis.put(template.getSqlFingerprint(), template);
+        }
+        submitDeferredAnalysis();
+    }
+
+    /**
+     * 按提交顺序提交延后的模板，线程池拒绝时停止，下次写入或空闲时继续
+     */
+    private void submitDeferredAnalysis() {
+        var iterator = deferredAnalysis.values().iterator();
+        while (iterator.hasNext()) {
+            SlowQueryTemplate template = iterator.next();
+            try {
+                analysisService.generateReportAndNotify(template);
+                iterator.remove();
+            } catch (TaskRejectedException e) {
+                analysisDeferrals.increment();
+                break;
+            } catch (Exception e) {
+                iterator.remove();
+                log.error("触发报告生成失败: fingerprint={}", template.getSqlFingerprint(), e);
+            }
+        }
+        deferredAnalysisCount = deferredAnalysis.size();
+    }
+
+    // ==================== 指标 ====================
+
+    /**
+     * 获取流水线指标（队列深度、各阶段吞吐）
+     *
+     * @return 指标数据
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("running", running);
+        metrics.put("workerThreads", workers.size());
+        metrics.put("inboundQueue", Map.of(
+                "depth", inbound.size(),
+                "capacity", inbound.size() + inbound.remainingCapacity()));
+        metrics.put("preparedQueue", Map.of(
+                "depth", prepared.size(),
+                "capacity", prepared.size() + prepared.remainingCapacity()));
+        metrics.put("backpressureWaits", backpressureWaits.sum());
+        metrics.put("analysis", Map.of(
+                "deferred", deferredAnalysisCount,
+                "deferrals", analysisDeferrals.sum(),
+                "dropped", analysisDrops.sum()));
+
+        long batches = persistBatches.sum();
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put("publish", stageMetrics(publishMeter));
+        stages.put("prepare", stageMetrics(prepareMeter));
+        Map<String, Object> persist = stageMetrics(persistMeter);
+        persist.put("batches", batches);
+        persist.put("avgBatchSize", batches > 0 ? (double) persistMeter.getTotal() / batches : 0.0);
+        stages.put("persist", persist);
+        metrics.put("stages", stages);
+        return metrics;
+    }
+
+    /**
+     * 当前积压条数（两个队列之和）
+     *
+     * @return 积压条数
+     */
+    public int getBacklog() {
+        return inbound.size() + prepared.size();
+    }
+
+    /**
+     * 当前线程是否为流水线写入线程
+     *
+     * @return 是写入线程时返回 true
+     */
+    public static boolean isWriterThread() {
+        return WRITER_THREAD.get();
+    }
+
+    /**
+     * 采集队列总容量（条）
+     *
+     * @return 配置的 queue-capacity
+     */
+    public int getCapacity() {
+        return Math.max(1, properties.getPipeline().getQueueCapacity());
+    }
+
+    /**
+     * 采集队列剩余容量（推送接口据此决定整批接收或返回 429）
+     *
+     * @return 剩余容量（条）
+     */
+    public int getRemainingCapacity() {
+        return running ? inbound.remainingCapacity() : 0;
+    }
+
+    /**
+     * 按当前写入速率估算排空积压所需的秒数
+     *
+     * @return 秒数（至少 1 秒）
+     */
+    public long estimateDrainSeconds() {
+        double rate = persistMeter.getRatePerSecond();
+        if (rate <= 0) {
+            return 1L;
+        }
+        return Math.max(1L, (long) Math.ceil(getBacklog() / rate));
+    }
+
+    /**
+     * 分析侧积压比例（0-1）
+     * 取采集队列和 AI 分析线程池队列中较高的填充率，供自适应轮询放慢读取速度
+     *
+     * @return 积压比例
+     */
+    public double getPressure() {
+        double pressure = 0.0;
+        if (inbound != null) {
+            pressure = Math.max(ratio(inbound.size(), inbound.remainingCapacity()),
+                    ratio(prepared.size(), prepared.remainingCapacity()));
+        }
+        if (analysisExecutor instanceof ThreadPoolTaskExecutor taskExecutor) {
+            var pool = taskExecutor.getThreadPoolExecutor();
+            pressure = Math.max(pressure, ratio(pool.getQueue().size(), pool.getQueue().remainingCapacity()));
+        }
+        return pressure;
+    }
+
+    private static double ratio(int depth, int remaining) {
+        long capacity = (long) depth + remaining;
+        return capacity > 0 ? (double) depth / capacity : 0.0;
+    }
+
+    private Map<String, Object> stageMetrics(StageMeter meter) {
+        Map<String, Object> stage = new LinkedHashMap<>();
+        stage.put("total", meter.getTotal());
+        stage.put("failures", meter.getFailures());
+        stage.put("perSecond", meter.getRatePerSecond());
+        return stage;
+    }
+}
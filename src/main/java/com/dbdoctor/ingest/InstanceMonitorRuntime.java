@@ -0,0 +1,478 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.DatabaseInstance;
+import com.dbdoctor.model.SlowQueryLog;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个数据库实例的监控运行时
+ *
+ * 每个实例独立持有：
+ * - 连接池（小容量、空闲连接自动回收）
+ * - 键集游标（start_time, thread_id），持久化到 ingest_cursor 表，重启后追赶停机期间的积压
+ * - 收割模式状态（在本实例上轮转 mysql.slow_log，权限不足时只对本实例回退到轮询）
+ * - 自动清理：只删除本实例已持久化游标之前的行
+ * - 自适应轮询控制器（与 SlowLogTableMonitor 相同的 EWMA 策略，按本实例的到达速率计算间隔和批量）
+ * - 指标（轮询次数、采集行数、失败次数、最近错误）
+ *
+ * 线程模型：同一实例同一时刻最多只有一个轮询任务（polling 标志），运行时本身不占用线程
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+public class InstanceMonitorRuntime {
+
+    /**
+     * 持久化游标的最短间隔：5秒
+     */
+    private static final long CHECKPOINT_INTERVAL_MS = 5000L;
+
+    /**
+     * 收割表等待流水线写完时的重试间隔：1秒
+     */
+    private static final long HARVEST_DRAIN_RETRY_MS = 1000L;
+
+    /**
+     * 采集流水线队列已满时的重试间隔：1秒
+     */
+    private static final long BACKPRESSURE_RETRY_MS = 1000L;
+
+    @Getter
+    private final Long instanceId;
+    @Getter
+    private final String instanceName;
+
+    /**
+     * 创建运行时所依据的实例配置（用于检测配置变化）
+     */
+    private final String url;
+    private final String username;
+    private final String encryptedPassword;
+
+    private final HikariDataSource dataSource;
+    @Getter
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+    private volatile SlowLogTableReader.Position cursor;
+    private volatile long nextPollAt;
+    private volatile long intervalMs;
+    private volatile int batchSize;
+
+    /**
+     * 自适应轮询控制器（只由轮询任务访问）
+     */
+    private final AdaptivePollController pollController;
+    private final long failureBackoffMs;
+    private final int maxBatchSize;
+
+    /**
+     * 游标持久化（只提交流水线已写入的位置）
+     */
+    private final SlowLogCursorStore cursorStore;
+    private final String sourceKey;
+    private final IngestCheckpoint<SlowLogTableReader.Position> checkpoint = new IngestCheckpoint<>();
+    private SlowLogTableReader.Position lastSavedPosition;
+    private long lastCheckpointAt;
+
+    /**
+     * 追赶模式：重启或故障恢复后以最大批量连续读取，直到读不满一页
+     */
+    private volatile boolean catchingUp;
+
+    /**
+     * 收割模式：是否启用、本实例是否不支持（权限不足）、旧表是否已读完等待删除、是否正在分页读取旧表（只由轮询任务访问）
+     */
+    private final boolean harvestEnabled;
+    private volatile boolean harvestUnsupported;
+    private boolean harvestPendingDrop;
+    private boolean harvestReading;
+
+    // ==================== 指标 ====================
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final StageMeter rowMeter = new StageMeter();
+    private volatile LocalDateTime lastPollAt;
+    private volatile String lastError;
+
+    public InstanceMonitorRuntime(DatabaseInstance instance, String password, int maxPoolSize,
+                                  int maxBatchSize, SlowLogMonitorProperties.Adaptive adaptive,
+                                  boolean harvestEnabled, SlowLogCursorStore cursorStore) {
+        this.instanceId = instance.getId();
+        this.instanceName = instance.getInstanceName();
+        this.url = instance.getUrl();
+        this.username = instance.getUsername();
+        this.encryptedPassword = instance.getPassword();
+
+        // 连接池延迟初始化：第一次轮询时才建立连接
+        this.dataSource = new HikariDataSource();
+        dataSource.setPoolName("db-doctor-instance-" + instanceId);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        dataSource.setMaximumPoolSize(Math.max(1, maxPoolSize));
+        dataSource.setMinimumIdle(0);
+        dataSource.setConnectionTimeout(10000); // 10秒
+        dataSource.setIdleTimeout(60000); // 1分钟
+        dataSource.setMaxLifetime(1800000); // 30分钟
+
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // ✅ 优先使用持久化游标（追赶停机期间的积压）；首次接入从当前时间开始（不补发历史数据）
+        this.cursorStore = cursorStore;
+        this.sourceKey = SlowLogCursorStore.instanceSourceKey(instanceId);
+        var saved = cursorStore.load(sourceKey);
+        if (saved.isPresent()) {
+            this.cursor = saved.get();
+            this.catchingUp = true;
+            log.info("📍 [实例 {}] 已恢复持久化游标 {}，进入追赶模式", instanceName, cursor.startTime());
+        } else {
+            this.cursor = SlowLogTableReader.Position.startingAt(Timestamp.valueOf(LocalDateTime.now()));
+            cursorStore.save(sourceKey, cursor);
+        }
+        this.lastSavedPosition = cursor;
+        this.nextPollAt = System.currentTimeMillis();
+        this.maxBatchSize = maxBatchSize;
+
+        this.pollController = new AdaptivePollController(
+                adaptive.getMinIntervalMs(), adaptive.getMaxIntervalMs(), maxBatchSize,
+                adaptive.getEwmaAlpha(), adaptive.getTargetFill());
+        this.failureBackoffMs = adaptive.getMaxIntervalMs();
+        this.batchSize = maxBatchSize;
+        this.harvestEnabled = harvestEnabled;
+    }
+
+    /**
+     * 实例配置是否已变化（需要重建运行时）
+     */
+    public boolean isStale(DatabaseInstance instance) {
+        return !Objects.equals(url, instance.getUrl())
+                || !Objects.equals(username, instance.getUsername())
+                || !Objects.equals(encryptedPassword, instance.getPassword());
+    }
+
+    /**
+     * 是否到达轮询时间且当前没有正在执行的轮询；满足时占用轮询标志
+     */
+    public boolean tryBeginPoll(long now) {
+        return now >= nextPollAt && polling.compareAndSet(false, true);
+    }
+
+    /**
+     * 释放轮询标志（任务未能提交时调用）
+     */
+    public void cancelPoll() {
+        polling.set(false);
+    }
+
+    /**
+     * 执行一次轮询（由共享线程池调用）
+     *
+     * @param reader   slow_log 流式读取器
+     * @param pipeline 采集流水线
+     */
+    public void poll(SlowLogTableReader reader, IngestPipeline pipeline) {
+        try {
+            if (isHarvestMode()) {
+                harvest(reader, pipeline);
+            } else {
+                pollPage(reader, pipeline);
+            }
+        } catch (Exception e) {
+            failures.increment();
+            lastError = e.getMessage();
+            lastPollAt = LocalDateTime.now();
+            intervalMs = failureBackoffMs;
+            nextPollAt = System.currentTimeMillis() + intervalMs;
+            // 恢复后追赶故障期间的积压；收割表重新确认是否存在
+            catchingUp = true;
+            harvestReading = false;
+            log.warn("⚠️ [实例 {}] 轮询 mysql.slow_log 失败: {}", instanceName, e.getMessage());
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    /**
+     * 读取一页 mysql.slow_log
+     */
+    private void pollPage(SlowLogTableReader reader, IngestPipeline pipeline) {
+        // 流式读取期间回调不能阻塞：LIMIT 不超过流水线剩余容量，队列已满时稍后再读
+        int capacity = pipeline.getRemainingCapacity();
+        if (capacity <= 0) {
+            nextPollAt = System.currentTimeMillis() + BACKPRESSURE_RETRY_MS;
+            return;
+        }
+        int limit = Math.min(catchingUp ? maxBatchSize : batchSize, capacity);
+        SlowLogTableReader.ReadResult result;
+        try {
+            result = reader.read(jdbcTemplate, cursor, limit, slowLog -> publish(pipeline, slowLog));
+        } finally {
+            checkpoint.seal(cursor);
+        }
+
+        if (result.last() != null) {
+            cursor = result.last();
+        }
+
+        polls.increment();
+        rowMeter.record(result.rows());
+        lastPollAt = LocalDateTime.now();
+        lastError = null;
+
+        if (catchingUp) {
+            onCatchUpPage(result.rows(), limit);
+        } else {
+            scheduleNext(result.rows(), limit, pipeline.getPressure());
+        }
+        saveCheckpoint(false);
+
+        if (result.rows() > 0) {
+            log.info("🔍 [实例 {}] 捕获到 {} 条新的慢查询日志", instanceName, result.rows());
+        }
+    }
+
+    private boolean isHarvestMode() {
+        return harvestEnabled && !harvestUnsupported;
+    }
+
+    /**
+     * 收割一次本实例的 mysql.slow_log（与 SlowLogTableMonitor 的收割流程相同）
+     *
+     * 1. 上一轮的收割表写入 H2 后删除（未写完时稍后重试）
+     * 2. 收割表不存在时原子轮转，已存在（上次停机前没有读完）时直接重新读取，游标之前的行被过滤
+     * 3. 按流水线剩余容量分页流式读取收割表，读完后在下一轮收割前删除
+     */
+    private void harvest(SlowLogTableReader reader, IngestPipeline pipeline) {
+        long now = System.currentTimeMillis();
+        if (harvestPendingDrop) {
+            if (!checkpoint.isDrained()) {
+                nextPollAt = now + HARVEST_DRAIN_RETRY_MS;
+                return;
+            }
+            saveCheckpoint(true);
+            SlowLogTableMaintenance.dropHarvestTable(jdbcTemplate);
+            harvestPendingDrop = false;
+        }
+
+        int capacity = pipeline.getRemainingCapacity();
+        if (capacity <= 0) {
+            nextPollAt = now + BACKPRESSURE_RETRY_MS;
+            return;
+        }
+        if (!harvestReading && !SlowLogTableMaintenance.harvestTableExists(jdbcTemplate) && !rotate()) {
+            nextPollAt = now;
+            return;
+        }
+        harvestReading = true;
+
+        SlowLogTableReader.ReadResult result;
+        try {
+            result = reader.readHarvest(jdbcTemplate, cursor, capacity, slowLog -> publish(pipeline, slowLog));
+        } finally {
+            checkpoint.seal(cursor);
+        }
+        if (result.last() != null) {
+            cursor = result.last();
+        }
+
+        polls.increment();
+        rowMeter.record(result.rows());
+        lastPollAt = LocalDateTime.now();
+        lastError = null;
+
+        if (result.rows() > 0) {
+            log.info("🔍 [实例 {}] 收割到 {} 条新的慢查询日志", instanceName, result.rows());
+        }
+        if (result.rows() >= capacity || result.accepted() < result.rows()) {
+            // 收割表还没读完（或队列已满）：保留收割表，稍后从游标继续
+            nextPollAt = result.accepted() < result.rows() ? now + BACKPRESSURE_RETRY_MS : now;
+            return;
+        }
+
+        harvestReading = false;
+        harvestPendingDrop = true;
+        catchingUp = false;
+        pollController.onPoll(result.rows(), Integer.MAX_VALUE, now);
+        intervalMs = pollController.nextIntervalMs(pipeline.getPressure());
+        nextPollAt = now + intervalMs;
+        saveCheckpoint(false);
+    }
+
+    /**
+     * 原子轮转本实例的 mysql.slow_log
+     *
+     * @return true-轮转成功；false-权限不足等原因无法轮转（本实例回退到轮询模式）
+     */
+    private boolean rotate() {
+        try {
+            SlowLogTableMaintenance.rotate(jdbcTemplate);
+            return true;
+        } catch (RuntimeException e) {
+            if (SlowLogTableMaintenance.isConnectionError(e)) {
+                throw e;
+            }
+            harvestUnsupported = true;
+            log.warn("⚠️ [实例 {}] 无法轮转 mysql.slow_log 表，已回退到轮询模式: {}", instanceName, e.getMessage());
+            log.warn("💡 收割模式需要目标库账号对 mysql 库有 CREATE、DROP、ALTER 权限：{}",
+                    SlowLogTableMaintenance.HARVEST_GRANT);
+            return false;
+        }
+    }
+
+    /**
+     * 安全清理本实例的 mysql.slow_log：只删除已持久化游标（已写入 H2）之前的行
+     *
+     * 只支持 InnoDB 引擎；CSV 引擎不回退到 TRUNCATE（会丢失未处理的数据）。收割模式下表由轮转维护，不清理
+     */
+    public void cleanUp() {
+        if (isHarvestMode()) {
+            return;
+        }
+        SlowLogTableReader.Position done = getSavedPosition();
+        if (done == null) {
+            return;
+        }
+        String engine = SlowLogTableMaintenance.tableEngine(jdbcTemplate);
+        if (!"InnoDB".equals(engine)) {
+            log.warn("⚠️ [实例 {}] mysql.slow_log 表引擎为 {}，不支持安全清理（请改为 InnoDB 引擎）", instanceName, engine);
+            return;
+        }
+        int deleted = SlowLogTableMaintenance.deleteBefore(jdbcTemplate, done.startTime());
+        log.info("🧹 [实例 {}] 安全清理完成: 删除 {} 条，游标 {}", instanceName, deleted, done.startTime());
+    }
+
+    private synchronized SlowLogTableReader.Position getSavedPosition() {
+        return lastSavedPosition;
+    }
+
+    private boolean publish(IngestPipeline pipeline, SlowQueryLog slowLog) {
+        slowLog.setInstanceId(instanceId);
+        checkpoint.track(slowLog);
+        // 流式结果集仍在读取：队列满时不等待，停止接收，下次从游标继续
+        if (!pipeline.offer(slowLog)) {
+            return false;
+        }
+
+        cursor = new SlowLogTableReader.Position(Timestamp.valueOf(slowLog.getStartTime()),
+                slowLog.getThreadId() != null ? slowLog.getThreadId() : -1L);
+        return true;
+    }
+
+    /**
+     * 追赶模式下处理一页的结果：读不满一页说明积压已排空，回到自适应轮询
+     */
+    private void onCatchUpPage(int rows, int limit) {
+        long now = System.currentTimeMillis();
+        if (rows >= limit) {
+            intervalMs = 0L;
+            nextPollAt = now;
+            return;
+        }
+        catchingUp = false;
+        batchSize = maxBatchSize;
+        intervalMs = pollController.nextIntervalMs(0.0);
+        nextPollAt = now + intervalMs;
+        log.info("✅ [实例 {}] 追赶完成，回到自适应轮询", instanceName);
+        saveCheckpoint(true);
+    }
+
+    /**
+     * 持久化已写入 H2 的游标位置
+     *
+     * @param force 是否忽略最短间隔
+     */
+    private synchronized void saveCheckpoint(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastCheckpointAt < CHECKPOINT_INTERVAL_MS) {
+            return;
+        }
+        SlowLogTableReader.Position done = checkpoint.completed();
+        if (done == null || done.equals(lastSavedPosition)) {
+            return;
+        }
+        cursorStore.save(sourceKey, done);
+        lastSavedPosition = done;
+        lastCheckpointAt = now;
+    }
+
+    /**
+     * 流水线是否已写完本实例读取的所有数据
+     */
+    public boolean isDrained() {
+        return checkpoint.isDrained();
+    }
+
+    /**
+     * 持久化已写入的游标位置（停机时调用）
+     */
+    public void flushCursor() {
+        saveCheckpoint(true);
+    }
+
+    /**
+     * 计算下一次轮询时间和批量大小（自适应）
+     *
+     * @param rows     本次采集行数
+     * @param limit    本次使用的 LIMIT
+     * @param pressure 分析侧积压比例
+     */
+    private void scheduleNext(int rows, int limit, double pressure) {
+        long now = System.currentTimeMillis();
+        pollController.onPoll(rows, limit, now);
+        intervalMs = pollController.nextIntervalMs(pressure);
+        batchSize = pollController.nextBatchSize(intervalMs);
+        nextPollAt = now + intervalMs;
+    }
+
+    /**
+     * 关闭连接池
+     */
+    public void close() {
+        if (!dataSource.isClosed()) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * 获取实例指标
+     *
+     * @return 指标数据
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("instanceId", instanceId);
+        metrics.put("instanceName", instanceName);
+        metrics.put("cursor", cursor != null ? cursor.startTime().toLocalDateTime() : null);
+        metrics.put("catchingUp", catchingUp);
+        metrics.put("intervalMs", intervalMs);
+        metrics.put("polling", polling.get());
+        metrics.put("polls", polls.sum());
+        metrics.put("rowsTotal", rowMeter.getTotal());
+        metrics.put("rowsPerSecond", rowMeter.getRatePerSecond());
+        metrics.put("batchSize", batchSize);
+        metrics.put("arrivalRatePerSecond", pollController.getEwmaRate());
+        metrics.put("failures", failures.sum());
+        metrics.put("lastPollAt", lastPollAt);
+        metrics.put("lastError", lastError);
+        var pool = dataSource.getHikariPoolMXBean();
+        metrics.put("activeConnections", pool != null ? pool.getActiveConnections() : 0);
+        return metrics;
+    }
+}
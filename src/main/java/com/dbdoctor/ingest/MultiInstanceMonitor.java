@@ -0,0 +1,258 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.common.util.EncryptionService;
+import com.dbdoctor.config.DynamicDataSourceManager;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.DatabaseInstance;
+import com.dbdoctor.lifecycle.ShutdownManager;
+import com.dbdoctor.service.DatabaseInstanceService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多实例慢查询监控服务
+ *
+ * 核心机制：
+ * 1. 为 database_instances 表中每个已启用的实例创建一个 InstanceMonitorRuntime（独立连接池、游标、间隔、指标）
+ * 2. 调度线程每秒检查一次哪些实例到期，把到期实例的轮询任务提交到共享的固定大小线程池
+ * 3. 实例数量与线程数解耦：数百个实例只需要 poll-threads 个线程
+ * 4. 定期刷新实例列表：新增实例自动接入，停用/删除的实例关闭连接池，配置变化的实例重建运行时
+ *
+ * 采集到的慢查询带上 instanceId 后发布到同一条 IngestPipeline，模板和样本按实例区分
+ *
+ * 按实例隔离的操作：
+ * - 游标、收割模式（轮转 mysql.slow_log）和自动清理都只作用于各自实例的连接
+ * - 实例的 JdbcTemplate 注册到 DynamicDataSourceManager，AI 诊断按模板所属实例查询元数据和执行计划
+ *
+ * 注意：启用后单实例的 SlowLogTableMonitor 自动停用，避免默认实例被重复采集
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MultiInstanceMonitor {
+
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 5000L;
+
+    private final SlowLogMonitorProperties properties;
+    private final DatabaseInstanceService databaseInstanceService;
+    private final EncryptionService encryptionService;
+    private final SlowLogTableReader slowLogTableReader;
+    private final IngestPipeline ingestPipeline;
+    private final SlowLogCursorStore cursorStore;
+    private final DynamicDataSourceManager dynamicDataSourceManager;
+
+    /**
+     * 实例运行时（key: instanceId）
+     */
+    private final Map<Long, InstanceMonitorRuntime> runtimes = new ConcurrentHashMap<>();
+
+    /**
+     * 共享轮询线程池（首次调度时创建）
+     */
+    private volatile ThreadPoolExecutor pollExecutor;
+
+    private long lastRefreshAt;
+
+    /**
+     * 调度任务：刷新实例列表并提交到期的轮询任务
+     */
+    @Scheduled(fixedDelay = 1000L)
+    public void dispatch() {
+        if (!isEnabled() || ShutdownManager.isShuttingDown) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshAt >= properties.getMultiInstance().getRefreshIntervalMs()) {
+            refreshInstances();
+            lastRefreshAt = now;
+        }
+
+        ThreadPoolExecutor executor = getExecutor();
+
+        for (InstanceMonitorRuntime runtime : runtimes.values()) {
+            if (!runtime.tryBeginPoll(now)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> runtime.poll(slowLogTableReader, ingestPipeline));
+            } catch (RejectedExecutionException e) {
+                runtime.cancelPoll();
+            }
+        }
+    }
+
+    /**
+     * 刷新实例列表
+     */
+    private void refreshInstances() {
+        List<DatabaseInstance> instances;
+        try {
+            instances = databaseInstanceService.findAllEnabled();
+        } catch (Exception e) {
+            log.warn("⚠️ [多实例监控] 读取实例列表失败: {}", e.getMessage());
+            return;
+        }
+
+        Set<Long> enabledIds = new HashSet<>();
+        for (DatabaseInstance instance : instances) {
+            enabledIds.add(instance.getId());
+
+            InstanceMonitorRuntime existing = runtimes.get(instance.getId());
+            if (existing != null && !existing.isStale(instance)) {
+                continue;
+            }
+            if (existing != null) {
+                log.info("🔄 [多实例监控] 实例配置已变化，重建运行时: {}", instance.getInstanceName());
+                runtimes.remove(instance.getId());
+                close(existing);
+            }
+
+            try {
+                String password = encryptionService.decrypt(instance.getPassword());
+                int maxPoolSize = properties.getMultiInstance().getMaxPoolSize();
+                InstanceMonitorRuntime runtime = new InstanceMonitorRuntime(instance, password, maxPoolSize,
+                        properties.getMaxRecordsPerPoll(), properties.getAdaptive(),
+                        Boolean.TRUE.equals(properties.getHarvest().getEnabled()), cursorStore);
+                runtimes.put(instance.getId(), runtime);
+                dynamicDataSourceManager.registerInstance(instance.getId(), runtime.getJdbcTemplate());
+                log.info("➕ [多实例监控] 接入实例: id={}, name={}", instance.getId(), instance.getInstanceName());
+            } catch (Exception e) {
+                log.error("❌ [多实例监控] 创建实例运行时失败: {}", instance.getInstanceName(), e);
+            }
+        }
+
+        for (Long id : new ArrayList<>(runtimes.keySet())) {
+            if (!enabledIds.contains(id)) {
+                InstanceMonitorRuntime removed = runtimes.remove(id);
+                if (removed != null) {
+                    log.info("➖ [多实例监控] 实例已停用或删除，关闭运行时: {}", removed.getInstanceName());
+                    close(removed);
+                }
+            }
+        }
+    }
+
+    private void close(InstanceMonitorRuntime runtime) {
+        dynamicDataSourceManager.unregisterInstance(runtime.getInstanceId(), runtime.getJdbcTemplate());
+        runtime.close();
+    }
+
+    /**
+     * 定时清理任务：每个实例按自己已持久化的游标安全清理 mysql.slow_log（与单实例清理共用 cron 配置）
+     * 清理在轮询线程池中执行，不占用调度线程
+     */
+    @Scheduled(cron = "${db-doctor.slow-log-monitor.auto-cleanup.cron-expression:0 0 3 * * ?}")
+    public void cleanUpSlowLogTables() {
+        if (!isEnabled() || ShutdownManager.isShuttingDown
+                || !Boolean.TRUE.equals(properties.getAutoCleanup().getEnabled())) {
+            return;
+        }
+        ThreadPoolExecutor executor = getExecutor();
+        for (InstanceMonitorRuntime runtime : runtimes.values()) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        runtime.cleanUp();
+                    } catch (Exception e) {
+                        log.error("❌ [多实例监控] 清理实例 {} 的 mysql.slow_log 失败", runtime.getInstanceName(), e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("⚠️ [多实例监控] 线程池已关闭，跳过实例 {} 的清理", runtime.getInstanceName());
+            }
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor executor = pollExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = pollExecutor;
+                if (executor == null) {
+                    int threads = Math.max(1, properties.getMultiInstance().getPollThreads());
+                    AtomicInteger counter = new AtomicInteger();
+                    // 每个实例同一时刻最多一个任务，队列长度天然不超过实例数
+                    executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                                Thread thread = new Thread(r, "instance-poller-" + counter.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    pollExecutor = executor;
+                    log.info("🚀 [多实例监控] 轮询线程池已创建: 线程数={}", threads);
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 是否启用多实例监控（仅对 TABLE 来源生效）
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(properties.getMultiInstance().getEnabled())
+                && properties.getSource() == SlowLogMonitorProperties.Source.TABLE;
+    }
+
+    /**
+     * 获取所有实例的监控指标
+     *
+     * @return 指标列表
+     */
+    public List<Map<String, Object>> getInstanceMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (InstanceMonitorRuntime runtime : runtimes.values()) {
+            metrics.add(runtime.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 停止所有实例的监控
+     * 先等待流水线写完已读取的数据（最多 5 秒），再持久化各实例的游标
+     */
+    @PreDestroy
+    public void shutdown() {
+        ThreadPoolExecutor executor = pollExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_TIMEOUT_MS;
+        try {
+            while (System.currentTimeMillis() < deadline
+                    && !runtimes.values().stream().allMatch(InstanceMonitorRuntime::isDrained)) {
+                Thread.sleep(50L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        runtimes.values().forEach(runtime -> {
+            runtime.flushCursor();
+            close(runtime);
+        });
+        runtimes.clear();
+    }
+}
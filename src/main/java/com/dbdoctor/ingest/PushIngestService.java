@@ -0,0 +1,286 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.SlowQueryLog;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 推送接入服务（NDJSON 慢查询事件）
+ *
+ * 日志采集器（Fluent Bit、Vector 等）在数据库主机上读取慢日志，把事件批量推送到 DB-Doctor，
+ * DB-Doctor 不需要目标库的 SQL 访问权限，也不需要轮询，事件进入与轮询相同的 IngestPipeline
+ *
+ * 处理流程：
+ * 1. 队列已满：不读取请求体，直接返回 429（Retry-After = 按当前写入速率估算的排空时间）
+ * 2. 流式解析 NDJSON（每行一个 JSON 对象，可 gzip 压缩），逐行转换为 SlowQueryLog
+ * 3. 整批准入：队列剩余容量不足以容纳整批时返回 429，不会只接收一半（采集器会整批重试，避免重复）
+ *    单批事件数超过队列总容量时永远无法整批接收，直接返回 413（上限取 max-events-per-request 与 queue-capacity 的较小值）
+ *    检查容量和入队在同一把锁内完成，并发请求不会同时通过检查；入队使用阻塞的 publish，
+ *    其他采集来源抢先占用的空位只会让本批稍等，不会中途失败。只有流水线停止时才可能只接收一部分，
+ *    此时返回 429 并在 accepted 中报告已接收的前缀条数
+ *
+ * 支持的字段（下划线或驼峰均可）：
+ * - sql_text / sql / query（必填）
+ * - start_time / timestamp / time：ISO-8601 字符串或 Unix 秒/毫秒（缺省为接收时间）
+ * - query_time、lock_time（秒）、rows_sent、rows_examined
+ * - db / schema、user_host / user、instance_id
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PushIngestService {
+
+    private final IngestPipeline ingestPipeline;
+    private final SlowLogMonitorProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    /**
+     * 启动时校验单批上限与队列容量
+     */
+    @PostConstruct
+    public void validate() {
+        int configured = properties.getPush().getMaxEventsPerRequest();
+        if (configured > ingestPipeline.getCapacity()) {
+            log.warn("⚠️ push.max-events-per-request（{}）大于采集队列容量 pipeline.queue-capacity（{}），"
+                    + "超过队列容量的请求将返回 413", configured, ingestPipeline.getCapacity());
+        }
+    }
+
+    /**
+     * 整批准入锁（只保护容量检查和入队，不包括请求体解析）
+     */
+    private final Object admissionLock = new Object();
+
+    /**
+     * 接收一批推送事件
+     *
+     * @param body 请求体
+     * @param gzip 请求体是否 gzip 压缩（Content-Encoding: gzip）
+     * @return 处理结果
+     * @throws IOException 请求体读取失败或 JSON 格式错误
+     */
+    public PushResult ingest(InputStream body, boolean gzip) throws IOException {
+        // 1. 队列已满：不解析请求体
+        if (ingestPipeline.getRemainingCapacity() == 0) {
+            return busy(0, 0);
+        }
+
+        // 2. 流式解析
+        // 超过队列总容量的批次永远无法整批准入，按 413 拒绝，避免采集器收到 429 后无限重试
+        int maxEvents = Math.max(1, Math.min(properties.getPush().getMaxEventsPerRequest(),
+                ingestPipeline.getCapacity()));
+        List<SlowQueryLog> events = new ArrayList<>();
+        int invalid = 0;
+
+        InputStream in = gzip ? new GZIPInputStream(body, 1 << 16) : body;
+        try (MappingIterator<JsonNode> it = objectMapper.readerFor(JsonNode.class).readValues(in)) {
+            while (it.hasNextValue()) {
+                JsonNode node = it.nextValue();
+                if (events.size() >= maxEvents) {
+                    return new PushResult(Outcome.TOO_LARGE, 0, invalid, 0L);
+                }
+                SlowQueryLog event = toSlowQueryLog(node);
+                if (event != null) {
+                    events.add(event);
+                } else {
+                    invalid++;
+                }
+            }
+        }
+
+        // 3. 整批准入（容量检查和入队不能被其他推送请求穿插）
+        synchronized (admissionLock) {
+            if (ingestPipeline.getRemainingCapacity() < events.size()) {
+                return busy(0, invalid);
+            }
+            int published = 0;
+            for (SlowQueryLog event : events) {
+                if (!ingestPipeline.publish(event)) {
+                    // 流水线正在停止：报告已接收的前缀
+                    acceptedEvents.add(published);
+                    return busy(published, invalid);
+                }
+                published++;
+            }
+        }
+        acceptedEvents.add(events.size());
+
+        if (invalid > 0) {
+            log.debug("推送事件中有 {} 条格式错误，已跳过", invalid);
+        }
+        return new PushResult(Outcome.ACCEPTED, events.size(), invalid, 0L);
+    }
+
+    private PushResult busy(int accepted, int invalid) {
+        rejectedRequests.increment();
+        long retryAfter = Math.min(60L, ingestPipeline.estimateDrainSeconds());
+        return new PushResult(Outcome.BUSY, accepted, invalid, retryAfter);
+    }
+
+    /**
+     * 累计接收的事件数
+     */
+    public long getAcceptedEvents() {
+        return acceptedEvents.sum();
+    }
+
+    /**
+     * 累计因背压被拒绝的请求数
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    // ==================== 字段映射 ====================
+
+    /**
+     * 将一个 JSON 事件转换为 SlowQueryLog
+     *
+     * @return 转换结果；缺少 SQL 时返回 null
+     */
+    SlowQueryLog toSlowQueryLog(JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+
+        String sql = text(node, "sql_text", "sqlText", "sql", "query");
+        if (sql == null || sql.isBlank()) {
+            return null;
+        }
+
+        int maxSqlLength = Math.max(1, properties.getMaxSqlLength());
+        long sqlLength = sql.getBytes(StandardCharsets.UTF_8).length;
+        boolean truncated = sql.length() > maxSqlLength;
+        if (truncated) {
+            sql = sql.substring(0, maxSqlLength);
+        }
+
+        Double queryTime = number(node, "query_time", "queryTime");
+        Double lockTime = number(node, "lock_time", "lockTime");
+        Long rowsSent = longValue(node, "rows_sent", "rowsSent");
+        Long rowsExamined = longValue(node, "rows_examined", "rowsExamined");
+
+        return SlowQueryLog.builder()
+                .startTime(time(node, "start_time", "startTime", "timestamp", "time"))
+                .userHost(text(node, "user_host", "userHost", "user"))
+                .dbName(text(node, "db", "db_name", "dbName", "schema"))
+                .sqlText(sql)
+                .queryTime(queryTime != null ? queryTime : 0.0)
+                .lockTime(lockTime != null ? lockTime : 0.0)
+                .rowsSent(rowsSent != null ? rowsSent : 0L)
+                .rowsExamined(rowsExamined != null ? rowsExamined : 0L)
+                .sqlLength(sqlLength)
+                .sqlTruncated(truncated)
+                .instanceId(longValue(node, "instance_id", "instanceId"))
+                .build();
+    }
+
+    private static JsonNode field(JsonNode node, String... names) {
+        for (String name : names) {
+            JsonNode value = node.get(name);
+            if (value != null && !value.isNull()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String text(JsonNode node, String... names) {
+        JsonNode value = field(node, names);
+        return value != null ? value.asText() : null;
+    }
+
+    private static Double number(JsonNode node, String... names) {
+        JsonNode value = field(node, names);
+        if (value == null) {
+            return null;
+        }
+        if (value.isNumber()) {
+            return value.asDouble();
+        }
+        try {
+            return Double.parseDouble(value.asText().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long longValue(JsonNode node, String... names) {
+        Double value = number(node, names);
+        return value != null ? value.longValue() : null;
+    }
+
+    /**
+     * 解析时间：ISO-8601（带或不带时区）、"yyyy-MM-dd HH:mm:ss[.SSSSSS]"、Unix 秒或毫秒
+     * 缺省或无法解析时使用接收时间
+     */
+    private static LocalDateTime time(JsonNode node, String... names) {
+        JsonNode value = field(node, names);
+        if (value == null) {
+            return LocalDateTime.now();
+        }
+        if (value.isNumber()) {
+            double epoch = value.asDouble();
+            long millis = epoch > 1e11 ? (long) epoch : (long) (epoch * 1000);
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        }
+
+        String text = value.asText().trim();
+        try {
+            return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            // 不带时区：按本地时间处理
+        }
+        try {
+            return LocalDateTime.parse(text.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 处理结果
+     */
+    public enum Outcome {
+        ACCEPTED,   // 已整批接收
+        BUSY,       // 队列已满，稍后重试（429）
+        TOO_LARGE   // 单次请求事件数超过上限（413）
+    }
+
+    /**
+     * 推送处理结果
+     *
+     * @param outcome           结果
+     * @param accepted          接收的事件数（BUSY 时为已接收的前缀条数，通常为 0）
+     * @param invalid           格式错误被跳过的事件数
+     * @param retryAfterSeconds 建议的重试等待时间（秒，仅 BUSY）
+     */
+    public record PushResult(Outcome outcome, int accepted, int invalid, long retryAfterSeconds) {
+    }
+}
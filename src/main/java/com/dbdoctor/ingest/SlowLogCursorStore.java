@@ -0,0 +1,96 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.entity.IngestCursor;
+import com.dbdoctor.repository.IngestCursorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * mysql.slow_log 键集游标的持久化存储
+ *
+ * 游标保存在 ingest_cursor 表中（与慢日志文件游标共用），按采集来源区分：
+ * - 单实例：table:&lt;JDBC URL&gt;（切换目标库后自动使用新的游标）
+ * - 多实例：instance:&lt;instanceId&gt;
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SlowLogCursorStore {
+
+    private static final int MAX_SOURCE_KEY_LENGTH = 255;
+
+    private final IngestCursorRepository cursorRepository;
+
+    /**
+     * 单实例目标库的采集来源标识
+     *
+     * @param jdbcUrl 目标库 JDBC URL
+     * @return 采集来源标识
+     */
+    public static String tableSourceKey(String jdbcUrl) {
+        String url = jdbcUrl != null ? jdbcUrl : "";
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            url = url.substring(0, query);
+        }
+        String key = "table:" + url;
+        return key.length() > MAX_SOURCE_KEY_LENGTH ? key.substring(0, MAX_SOURCE_KEY_LENGTH) : key;
+    }
+
+    /**
+     * 多实例监控中某个实例的采集来源标识
+     *
+     * @param instanceId 实例 ID
+     * @return 采集来源标识
+     */
+    public static String instanceSourceKey(Long instanceId) {
+        return "instance:" + instanceId;
+    }
+
+    /**
+     * 加载游标
+     *
+     * @param sourceKey 采集来源标识
+     * @return 游标位置（没有保存过时为空）
+     */
+    public Optional<SlowLogTableReader.Position> load(String sourceKey) {
+        try {
+            return cursorRepository.findBySourceKey(sourceKey)
+                    .filter(cursor -> cursor.getCursorTime() != null)
+                    .map(cursor -> new SlowLogTableReader.Position(
+                            Timestamp.valueOf(cursor.getCursorTime()),
+                            cursor.getCursorThreadId() != null ? cursor.getCursorThreadId() : -1L));
+        } catch (Exception e) {
+            log.warn("⚠️ 加载采集游标失败: sourceKey={}, error={}", sourceKey, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 保存游标
+     *
+     * @param sourceKey 采集来源标识
+     * @param position  游标位置
+     */
+    public void save(String sourceKey, SlowLogTableReader.Position position) {
+        try {
+            IngestCursor cursor = cursorRepository.findBySourceKey(sourceKey)
+                    .orElseGet(() -> IngestCursor.builder().sourceKey(sourceKey).build());
+            cursor.setCursorTime(position.startTime().toLocalDateTime());
+            cursor.setCursorThreadId(position.threadId());
+            cursor.setUpdatedAt(LocalDateTime.now());
+            cursorRepository.save(cursor);
+        } catch (Exception e) {
+            log.warn("⚠️ 保存采集游标失败: sourceKey={}, error={}", sourceKey, e.getMessage());
+        }
+    }
+}
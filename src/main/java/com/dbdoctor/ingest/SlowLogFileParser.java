@@ -0,0 +1,528 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.model.SlowQueryLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 慢查询日志文件解析器（log_output=FILE 格式）
+ *
+ * 解析的日志块格式：
+ * <pre>
+ * # Time: 2024-01-15T10:23:45.123456Z
+ * # User@Host: app[app] @ 10.0.0.5 [10.0.0.5]  Id:    42
+ * # Query_time: 3.000234  Lock_time: 0.000012 Rows_sent: 1  Rows_examined: 1000000
+ * use shop;
+ * SET timestamp=1705314225;
+ * SELECT * FROM orders WHERE user_id = 1;
+ * </pre>
+ *
+ * 设计要点：
+ * 1. 直接在 ByteBuffer（通常是 MappedByteBuffer）上按字节扫描，不为每一行构造 String
+ * 2. 只为每条日志的 SQL / User@Host 等必要字段解码字符串
+ * 3. 只返回完整的日志块，末尾未写完的日志块留给下一次读取（通过 consumed 告知调用方）
+ * 4. MySQL 只在数据库发生变化时写入 use 语句，因此当前数据库在日志块之间（以及多次调用之间）延续
+ * 5. 超长 SQL 只解码前 maxSqlLength 个字符对应的字节（在 UTF-8 字符边界处截断），数 MB 的 SQL 不会整体解码
+ *
+ * 注意：解析器有状态（当前数据库），每个采集来源使用独立实例，非线程安全
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+public class SlowLogFileParser {
+
+    private static final byte[] TIME_PREFIX = ascii("# Time:");
+    private static final byte[] USER_HOST_PREFIX = ascii("# User@Host:");
+    private static final byte[] QUERY_TIME_PREFIX = ascii("# Query_time:");
+    private static final byte[] ID_KEY = ascii("Id:");
+    private static final byte[] QUERY_TIME_KEY = ascii("Query_time:");
+    private static final byte[] LOCK_TIME_KEY = ascii("Lock_time:");
+    private static final byte[] ROWS_SENT_KEY = ascii("Rows_sent:");
+    private static final byte[] ROWS_EXAMINED_KEY = ascii("Rows_examined:");
+    private static final byte[] SCHEMA_KEY = ascii("Schema:");
+    private static final byte[] USE_PREFIX = ascii("use ");
+    private static final byte[] SET_TIMESTAMP_PREFIX = ascii("SET timestamp=");
+    private static final byte[] TCP_PORT_PREFIX = ascii("Tcp port:");
+    private static final byte[] BANNER_COLUMNS_PREFIX = ascii("Time                 Id Command");
+    private static final byte[] BANNER_VERSION_KEY = ascii(", Version: ");
+
+    /**
+     * MySQL 5.6 及更早版本的时间格式：240115 10:23:45
+     */
+    private static final DateTimeFormatter LEGACY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyMMdd H:mm:ss");
+
+    /**
+     * UTF-8 单个字符的最大字节数
+     */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    /**
+     * SQL 最大长度（字符），超过则截断
+     */
+    private final int maxSqlLength;
+
+    /**
+     * 当前数据库（由 use 语句设置，在日志块之间延续）
+     */
+    private String currentDb;
+
+    /**
+     * 解码 SQL 用的复用缓冲区（避免每条日志分配新的 byte[]）
+     */
+    private byte[] scratch = new byte[8192];
+
+    /**
+     * 不限制 SQL 长度
+     */
+    public SlowLogFileParser() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSqlLength SQL 最大长度（字符，与 db-doctor.slow-log-monitor.max-sql-length 一致）
+     */
+    public SlowLogFileParser(int maxSqlLength) {
+        this.maxSqlLength = Math.max(1, maxSqlLength);
+    }
+
+    /**
+     * 解析 ByteBuffer 中 [position, limit) 区域的日志
+     *
+     * @param buf        日志内容（不会修改 position / limit）
+     * @param forceFlush 区域已达到单次读取上限：区域内没有任何完整日志块时强制输出末尾的日志块，避免游标停滞；
+     *                   否则停在最后一个完整日志块之后，末尾的日志块留给下一次读取
+     * @return 解析结果（完整日志块 + 已消费字节数）
+     */
+    public ParseResult parse(ByteBuffer buf, boolean forceFlush) {
+        return parse(buf, forceFlush, false);
+    }
+
+    /**
+     * 解析一段完整的输入（整个文件，或按日志块边界切分的块），末尾的日志块视为已写完
+     *
+     * @param buf 日志内容（不会修改 position / limit）
+     * @return 解析结果
+     */
+    public ParseResult parseAll(ByteBuffer buf) {
+        return parse(buf, false, true);
+    }
+
+    private ParseResult parse(ByteBuffer buf, boolean forceFlush, boolean endOfInput) {
+        final int base = buf.position();
+        final int end = buf.limit();
+
+        List<SlowQueryLog> entries = new ArrayList<>();
+        List<Integer> entryEnds = new ArrayList<>();
+        EntryState cur = null;
+        int consumedEnd = base;
+        int pos = base;
+        boolean lastSqlLineTerminated = false;
+
+        while (pos < end) {
+            int lineEnd = indexOf(buf, (byte) '\n', pos, end);
+            if (lineEnd < 0) {
+                // 末尾不完整的行：留给下一次读取
+                break;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > pos && buf.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            int next = lineEnd + 1;
+
+            if (startsWith(buf, pos, contentEnd, TIME_PREFIX)) {
+                if (cur != null && cur.hasSql()) {
+                    emit(buf, cur, entries, entryEnds, pos - base);
+                    consumedEnd = pos;
+                }
+                cur = new EntryState(pos);
+                cur.timeStart = skipSpaces(buf, pos + TIME_PREFIX.length, contentEnd);
+                cur.timeEnd = contentEnd;
+            } else if (startsWith(buf, pos, contentEnd, USER_HOST_PREFIX)) {
+                if (cur != null && (cur.hasSql() || cur.queryTime != null)) {
+                    if (cur.hasSql()) {
+                        emit(buf, cur, entries, entryEnds, pos - base);
+                    }
+                    consumedEnd = pos;
+                    cur = null;
+                }
+                if (cur == null) {
+                    cur = new EntryState(pos);
+                }
+                int valueStart = skipSpaces(buf, pos + USER_HOST_PREFIX.length, contentEnd);
+                int idIndex = indexOf(buf, ID_KEY, valueStart, contentEnd);
+                cur.userHost = decodeTrimmed(buf, valueStart, idIndex > 0 ? idIndex : contentEnd);
+            } else if (startsWith(buf, pos, contentEnd, QUERY_TIME_PREFIX)) {
+                if (cur == null) {
+                    cur = new EntryState(pos);
+                }
+                cur.queryTime = parseDoubleValue(buf, QUERY_TIME_KEY, pos, contentEnd);
+                cur.lockTime = parseDoubleValue(buf, LOCK_TIME_KEY, pos, contentEnd);
+                cur.rowsSent = parseLongValue(buf, ROWS_SENT_KEY, pos, contentEnd);
+                cur.rowsExamined = parseLongValue(buf, ROWS_EXAMINED_KEY, pos, contentEnd);
+            } else if (pos < contentEnd && buf.get(pos) == '#') {
+                // 其他注释行（Percona 扩展字段、administrator command 等）：只关心 Schema
+                int schemaIndex = indexOf(buf, SCHEMA_KEY, pos, contentEnd);
+                if (cur != null && schemaIndex > 0) {
+                    int valueStart = skipSpaces(buf, schemaIndex + SCHEMA_KEY.length, contentEnd);
+                    int valueEnd = indexOf(buf, (byte) ' ', valueStart, contentEnd);
+                    String schema = decodeTrimmed(buf, valueStart, valueEnd > 0 ? valueEnd : contentEnd);
+                    if (!schema.isEmpty()) {
+                        cur.db = schema;
+                    }
+                }
+            } else if (isBannerLine(buf, pos, contentEnd)) {
+                // mysqld 重启 / FLUSH LOGS 时写入的文件头，视为日志块边界
+                if (cur != null && cur.hasSql()) {
+                    emit(buf, cur, entries, entryEnds, pos - base);
+                }
+                cur = null;
+                currentDb = null;
+                consumedEnd = next;
+            } else if (cur == null) {
+                // 第一个日志块之前的内容（文件头或空行）：直接跳过
+                consumedEnd = next;
+            } else if (!cur.hasSql() && startsWithIgnoreCase(buf, pos, contentEnd, USE_PREFIX)) {
+                int dbEnd = contentEnd;
+                if (dbEnd > pos && buf.get(dbEnd - 1) == ';') {
+                    dbEnd--;
+                }
+                String db = decodeTrimmed(buf, pos + USE_PREFIX.length, dbEnd).replace("`", "");
+                cur.db = db;
+                currentDb = db;
+            } else if (!cur.hasSql() && startsWith(buf, pos, contentEnd, SET_TIMESTAMP_PREFIX)) {
+                cur.timestamp = parseLong(buf, pos + SET_TIMESTAMP_PREFIX.length, contentEnd);
+            } else if (contentEnd > pos || cur.hasSql()) {
+                // SQL 正文（可能跨多行）
+                if (!cur.hasSql()) {
+                    cur.sqlStart = pos;
+                }
+                cur.sqlEnd = contentEnd;
+                lastSqlLineTerminated = contentEnd > pos && buf.get(contentEnd - 1) == ';';
+            }
+
+            pos = next;
+        }
+
+        if (cur == null) {
+            consumedEnd = Math.max(consumedEnd, pos);
+        } else if (cur.hasSql() && (endOfInput || (forceFlush && consumedEnd == base)
+                || (pos == end && lastSqlLineTerminated))) {
+            // 最后一个日志块：以分号 + 换行结尾视为已写完；区域内没有完整日志块时强制输出（可能被截断）
+            emit(buf, cur, entries, entryEnds, pos - base);
+            consumedEnd = pos;
+        } else if (forceFlush && consumedEnd == base) {
+            // 单个日志块超过单次读取上限且仍不完整：丢弃已读部分，避免游标停滞
+            log.warn("⚠️ [慢日志文件] 日志块超过单次读取上限，已跳过 {} 字节", pos - base);
+            consumedEnd = pos;
+        } else {
+            consumedEnd = Math.max(consumedEnd, cur.start);
+        }
+
+        return new ParseResult(entries, entryEnds, consumedEnd - base);
+    }
+
+    /**
+     * 重置解析器状态（日志文件轮转后调用）
+     */
+    public void reset() {
+        this.currentDb = null;
+    }
+
+    /**
+     * 当前数据库（最近一次 use 语句设置的值，可能为 null）
+     * 分块并行解析时，下一块开头没有 use 语句的日志继承上一块的当前数据库
+     */
+    public String getCurrentDb() {
+        return currentDb;
+    }
+
+    // ==================== 日志块输出 ====================
+
+    /**
+     * 输出一条日志块
+     *
+     * @param entryEnd 该日志块结束处相对于解析起点的字节数（调用方只处理了部分日志时据此推进游标）
+     */
+    private void emit(ByteBuffer buf, EntryState cur, List<SlowQueryLog> entries, List<Integer> entryEnds, int entryEnd) {
+        int sqlStart = cur.sqlStart;
+        int sqlEnd = sqlContentEnd(buf, sqlStart, cur.sqlEnd);
+        while (sqlStart < sqlEnd && isWhitespace(buf.get(sqlStart))) {
+            sqlStart++;
+        }
+        int sqlBytes = sqlEnd - sqlStart;
+        if (sqlBytes <= 0) {
+            return;
+        }
+
+        // 超长 SQL：只解码足够得到 maxSqlLength + 1 个字符的字节（用于判断是否截断）
+        long maxBytes = (maxSqlLength + 1L) * MAX_BYTES_PER_CHAR;
+        int decodeEnd = sqlBytes > maxBytes ? utf8Boundary(buf, sqlStart, sqlStart + (int) maxBytes) : sqlEnd;
+        String sql = decodeTrimmed(buf, sqlStart, decodeEnd);
+        if (sql.isBlank()) {
+            return;
+        }
+        boolean truncated = sql.length() > maxSqlLength;
+        if (truncated) {
+            sql = sql.substring(0, maxSqlLength);
+        }
+
+        String db = cur.db != null ? cur.db : currentDb;
+
+        entryEnds.add(entryEnd);
+        entries.add(SlowQueryLog.builder()
+                .startTime(resolveStartTime(buf, cur))
+                .userHost(cur.userHost)
+                .dbName(db)
+                .sqlText(sql)
+                .sqlLength((long) sqlBytes)
+                .sqlTruncated(truncated)
+                .queryTime(cur.queryTime != null ? cur.queryTime : 0.0)
+                .lockTime(cur.lockTime != null ? cur.lockTime : 0.0)
+                .rowsSent(cur.rowsSent != null ? cur.rowsSent : 0L)
+                .rowsExamined(cur.rowsExamined != null ? cur.rowsExamined : 0L)
+                .build());
+    }
+
+    /**
+     * 解析开始时间
+     * 优先使用 SET timestamp（语句开始时间，与 mysql.slow_log.start_time 含义一致），
+     * 否则使用 # Time 行
+     */
+    private LocalDateTime resolveStartTime(ByteBuffer buf, EntryState cur) {
+        if (cur.timestamp != null && cur.timestamp > 0) {
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(cur.timestamp), ZoneId.systemDefault());
+        }
+
+        if (cur.timeStart >= 0 && cur.timeEnd > cur.timeStart) {
+            String text = decodeTrimmed(buf, cur.timeStart, cur.timeEnd);
+            try {
+                if (text.indexOf('T') > 0) {
+                    // MySQL 5.7+：2024-01-15T10:23:45.123456Z / 2024-01-15T18:23:45.123456+08:00
+                    return OffsetDateTime.parse(text)
+                            .atZoneSameInstant(ZoneId.systemDefault())
+                            .toLocalDateTime();
+                }
+                // MySQL 5.6：240115 10:23:45（小时可能只有一位，前面多一个空格）
+                return LocalDateTime.parse(text.replaceAll("\\s+", " "), LEGACY_TIME_FORMAT);
+            } catch (Exception e) {
+                log.debug("解析慢日志时间失败: {}", text);
+            }
+        }
+
+        return LocalDateTime.now();
+    }
+
+    /**
+     * SQL 正文的结束位置（去除末尾空白和分号）
+     */
+    private static int sqlContentEnd(ByteBuffer buf, int start, int end) {
+        while (end > start && isWhitespace(buf.get(end - 1))) {
+            end--;
+        }
+        if (end > start && buf.get(end - 1) == ';') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 向前回退到 UTF-8 字符边界（end 处不是续字节 10xxxxxx）
+     */
+    private static int utf8Boundary(ByteBuffer buf, int start, int end) {
+        while (end > start && (buf.get(end) & 0xC0) == 0x80) {
+            end--;
+        }
+        return end;
+    }
+
+    private String decodeTrimmed(ByteBuffer buf, int start, int end) {
+        while (start < end && isWhitespace(buf.get(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(buf.get(end - 1))) {
+            end--;
+        }
+        int len = end - start;
+        if (len <= 0) {
+            return "";
+        }
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        buf.get(start, scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // ==================== 字节级辅助方法 ====================
+
+    private static boolean isBannerLine(ByteBuffer buf, int from, int to) {
+        if (startsWith(buf, from, to, TCP_PORT_PREFIX) || startsWith(buf, from, to, BANNER_COLUMNS_PREFIX)) {
+            return true;
+        }
+        return from < to && buf.get(from) == '/' && indexOf(buf, BANNER_VERSION_KEY, from, to) > 0;
+    }
+
+    private static Double parseDoubleValue(ByteBuffer buf, byte[] key, int from, int to) {
+        int index = indexOf(buf, key, from, to);
+        if (index < 0) {
+            return null;
+        }
+        int i = skipSpaces(buf, index + key.length, to);
+        long intPart = 0;
+        boolean any = false;
+        while (i < to && isDigit(buf.get(i))) {
+            intPart = intPart * 10 + (buf.get(i) - '0');
+            i++;
+            any = true;
+        }
+        double value = intPart;
+        if (i < to && buf.get(i) == '.') {
+            i++;
+            double scale = 0.1;
+            while (i < to && isDigit(buf.get(i))) {
+                value += (buf.get(i) - '0') * scale;
+                scale /= 10;
+                i++;
+                any = true;
+            }
+        }
+        return any ? value : null;
+    }
+
+    private static Long parseLongValue(ByteBuffer buf, byte[] key, int from, int to) {
+        int index = indexOf(buf, key, from, to);
+        if (index < 0) {
+            return null;
+        }
+        return parseLong(buf, skipSpaces(buf, index + key.length, to), to);
+    }
+
+    private static Long parseLong(ByteBuffer buf, int from, int to) {
+        long value = 0;
+        boolean any = false;
+        for (int i = from; i < to && isDigit(buf.get(i)); i++) {
+            value = value * 10 + (buf.get(i) - '0');
+            any = true;
+        }
+        return any ? value : null;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (matchesAt(buf, i, pattern, false)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int from, int to, byte[] prefix) {
+        return to - from >= prefix.length && matchesAt(buf, from, prefix, false);
+    }
+
+    private static boolean startsWithIgnoreCase(ByteBuffer buf, int from, int to, byte[] prefix) {
+        return to - from >= prefix.length && matchesAt(buf, from, prefix, true);
+    }
+
+    private static boolean matchesAt(ByteBuffer buf, int at, byte[] pattern, boolean ignoreCase) {
+        for (int j = 0; j < pattern.length; j++) {
+            byte b = buf.get(at + j);
+            if (ignoreCase && b >= 'A' && b <= 'Z') {
+                b = (byte) (b + 32);
+            }
+            if (b != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // ==================== 内部类型 ====================
+
+    /**
+     * 正在解析的日志块（只记录字节区间，输出时才解码）
+     */
+    private static class EntryState {
+        final int start;
+        int timeStart = -1;
+        int timeEnd = -1;
+        int sqlStart = -1;
+        int sqlEnd = -1;
+        String userHost;
+        String db;
+        Long timestamp;
+        Double queryTime;
+        Double lockTime;
+        Long rowsSent;
+        Long rowsExamined;
+
+        EntryState(int start) {
+            this.start = start;
+        }
+
+        boolean hasSql() {
+            return sqlStart >= 0;
+        }
+    }
+
+    /**
+     * 解析结果
+     *
+     * @param entries   完整的慢查询日志
+     * @param entryEnds 每条日志结束处已消费的字节数（与 entries 一一对应）
+     * @param consumed  已消费的字节数（调用方据此推进游标）
+     */
+    public record ParseResult(List<SlowQueryLog> entries, List<Integer> entryEnds, int consumed) {
+
+        /**
+         * 处理完前 count 条日志时已消费的字节数
+         *
+         * @param count 已处理的日志条数
+         * @return 字节数，count 为 0 时返回 0
+         */
+        public int consumedThrough(int count) {
+            return count > 0 ? entryEnds.get(count - 1) : 0;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.IngestCursor;
+import com.dbdoctor.lifecycle.ShutdownManager;
+import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.repository.IngestCursorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+
+/**
+ * 慢查询日志文件增量读取服务（source=FILE）
+ *
+ * 核心机制：
+ * 1. 持久化游标：ingest_cursor 表记录文件标识（inode）+ 已处理的字节偏移量，重启后继续读取
+ * 2. 增量映射：每次只 mmap 新增的字节区域（最多 maxBytesPerPoll），不重新读取整个文件
+ * 3. 轮转检测：inode 变化或文件变小（mv + FLUSH SLOW LOGS / logrotate copytruncate）时从头读取新文件
+ * 4. 完整性保证：只处理完整的日志块，末尾未写完的部分留到下一次读取
+ *
+ * 注意：
+ * - 轮转时旧文件中尚未读取的尾部内容不会补读（与表轮询一致：以实时监控为主）
+ * - 解析结果发布到 IngestPipeline，与表轮询共用去重和统计逻辑
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SlowLogFileTailer {
+
+    private static final String SOURCE_KEY_PREFIX = "file:";
+
+    private final SlowLogMonitorProperties properties;
+    private final IngestCursorRepository cursorRepository;
+    private final IngestPipeline ingestPipeline;
+
+    /**
+     * 日志解析器（有状态：记录当前数据库；首次读取时按 max-sql-length 创建）
+     */
+    private SlowLogFileParser parser;
+
+    /**
+     * 当前游标（首次读取时从数据库加载）
+     */
+    private IngestCursor cursor;
+
+    /**
+     * 定时任务：增量读取慢查询日志文件
+     */
+    @Scheduled(fixedDelayString = "${db-doctor.slow-log-monitor.file.poll-interval-ms:2000}")
+    public void poll() {
+        if (properties.getSource() != SlowLogMonitorProperties.Source.FILE) {
+            return;
+        }
+        if (ShutdownManager.isShuttingDown) {
+            log.debug("正在停机中，跳过本次慢日志文件读取");
+            return;
+        }
+
+        String pathValue = properties.getFile().getPath();
+        if (pathValue == null || pathValue.isBlank()) {
+            log.debug("未配置慢查询日志文件路径（db-doctor.slow-log-monitor.file.path），跳过");
+            return;
+        }
+
+        Path path = Paths.get(pathValue);
+        if (!Files.isReadable(path)) {
+            log.debug("慢查询日志文件不存在或不可读: {}", path);
+            return;
+        }
+
+        try {
+            tail(path);
+        } catch (Exception e) {
+            if (!ShutdownManager.isShuttingDown) {
+                log.error("❌ 读取慢查询日志文件失败: {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * 读取文件新增内容
+     */
+    private void tail(Path path) throws IOException {
+        if (parser == null) {
+            parser = new SlowLogFileParser(properties.getMaxSqlLength());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            String fileKey = readFileKey(path);
+            long size = channel.size();
+
+            IngestCursor current = loadCursor(path, fileKey, size);
+            long position = current.getFilePosition() != null ? current.getFilePosition() : 0L;
+
+            // 轮转检测：文件标识变化，或文件被截断
+            boolean replaced = fileKey != null && current.getFileKey() != null && !fileKey.equals(current.getFileKey());
+            if (replaced || size < position) {
+                log.info("🔄 [慢日志文件] 检测到日志轮转，从头读取新文件: {}", path);
+                position = 0L;
+                parser.reset();
+                saveCursor(current, fileKey, position);
+            }
+
+            int maxBytes = Math.max(4096, properties.getFile().getMaxBytesPerPoll());
+            int total = 0;
+
+            while (position < size && !ShutdownManager.isShuttingDown) {
+                long length = Math.min(size - position, maxBytes);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                // 窗口已满仍没有完整日志块时强制输出，避免游标停滞
+                SlowLogFileParser.ParseResult result = parser.parse(buffer, length == maxBytes);
+
+                int published = 0;
+                for (SlowQueryLog entry : result.entries()) {
+                    // 发布到采集流水线（队列满时阻塞等待，不丢弃数据）
+                    if (!ingestPipeline.publish(entry)) {
+                        // 流水线已停止：游标只推进到最后一条发布成功的日志之后，避免重启后重复计数
+                        if (published > 0) {
+                            saveCursor(current, fileKey, position + result.consumedThrough(published));
+                        }
+                        return;
+                    }
+                    published++;
+                }
+                total += result.entries().size();
+
+                if (result.consumed() == 0) {
+                    break;
+                }
+                position += result.consumed();
+                saveCursor(current, fileKey, position);
+
+                if (length < maxBytes) {
+                    // 已读到文件末尾（剩余部分是未写完的日志块）
+                    break;
+                }
+            }
+
+            if (total > 0) {
+                log.info("🔍 [慢日志文件] 捕获到 {} 条新的慢查询日志，当前偏移量: {}", total, position);
+            }
+        }
+    }
+
+    /**
+     * 加载游标（不存在时按配置创建）
+     */
+    private IngestCursor loadCursor(Path path, String fileKey, long size) {
+        if (cursor != null) {
+            return cursor;
+        }
+
+        String sourceKey = SOURCE_KEY_PREFIX + path.toAbsolutePath();
+        cursor = cursorRepository.findBySourceKey(sourceKey).orElseGet(() -> {
+            long start = Boolean.TRUE.equals(properties.getFile().getStartFromEnd()) ? size : 0L;
+            log.info("📍 [慢日志文件] 首次读取 {}，起始偏移量: {}", path, start);
+            return cursorRepository.save(IngestCursor.builder()
+                    .sourceKey(sourceKey)
+                    .fileKey(fileKey)
+                    .filePosition(start)
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        });
+        return cursor;
+    }
+
+    private void saveCursor(IngestCursor current, String fileKey, long position) {
+        current.setFileKey(fileKey);
+        current.setFilePosition(position);
+        current.setUpdatedAt(LocalDateTime.now());
+        cursor = cursorRepository.save(current);
+    }
+
+    /**
+     * 读取文件标识：优先使用 inode（Linux / macOS），否则使用文件系统提供的 fileKey
+     */
+    private String readFileKey(Path path) {
+        try {
+            Object inode = Files.getAttribute(path, "unix:ino");
+            if (inode != null) {
+                return inode.toString();
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            // 非 Unix 文件系统，回退到 fileKey
+        }
+
+        try {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return key != null ? key.toString() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.dbdoctor.ingest;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+
+/**
+ * mysql.slow_log 表维护操作（收割轮转、基于游标的清理）
+ *
+ * 单实例（SlowLogTableMonitor）和多实例（InstanceMonitorRuntime）共用，每次调用只作用于传入的目标库连接
+ *
+ * 所需权限：
+ * - 收割轮转：对 mysql 库的 CREATE、DROP、ALTER（CREATE TABLE ... LIKE、RENAME TABLE、DROP TABLE）
+ * - 清理：对 mysql.slow_log 的 DELETE（仅 InnoDB 引擎）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SlowLogTableMaintenance {
+
+    /**
+     * 收割模式所需权限的授权语句（日志提示用）
+     */
+    public static final String HARVEST_GRANT = "GRANT CREATE, DROP, ALTER ON mysql.* TO 'your_user'@'%';";
+
+    private SlowLogTableMaintenance() {
+    }
+
+    /**
+     * 原子轮转 mysql.slow_log：新建空表并与 mysql.slow_log 互换（RENAME TABLE 对日志表是原子的，日志写入不中断）
+     *
+     * @param jdbcTemplate 目标库
+     */
+    public static void rotate(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS mysql.slow_log_new");
+        jdbcTemplate.execute("CREATE TABLE mysql.slow_log_new LIKE mysql.slow_log");
+        jdbcTemplate.execute("RENAME TABLE mysql.slow_log TO " + SlowLogTableReader.HARVEST_TABLE
+                + ", mysql.slow_log_new TO mysql.slow_log");
+    }
+
+    /**
+     * 收割表是否存在
+     *
+     * @param jdbcTemplate 目标库
+     * @return 是否存在
+     */
+    public static boolean harvestTableExists(JdbcTemplate jdbcTemplate) {
+        String sql = """
+            SELECT COUNT(*)
+            FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = 'mysql'
+            AND TABLE_NAME = 'slow_log_harvest'
+            """;
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 删除收割表（调用方需确认其中的数据已全部写入 H2）
+     *
+     * @param jdbcTemplate 目标库
+     */
+    public static void dropHarvestTable(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + SlowLogTableReader.HARVEST_TABLE);
+    }
+
+    /**
+     * mysql.slow_log 表的引擎
+     *
+     * @param jdbcTemplate 目标库
+     * @return 表引擎（InnoDB/CSV）
+     */
+    public static String tableEngine(JdbcTemplate jdbcTemplate) {
+        String sql = """
+            SELECT ENGINE
+            FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = 'mysql'
+            AND TABLE_NAME = 'slow_log'
+            """;
+        return jdbcTemplate.queryForObject(sql, String.class);
+    }
+
+    /**
+     * 删除游标之前的慢日志（只适用于 InnoDB 引擎）
+     *
+     * @param jdbcTemplate 目标库
+     * @param before       已写入 H2 的游标位置
+     * @return 删除的行数
+     */
+    public static int deleteBefore(JdbcTemplate jdbcTemplate, Timestamp before) {
+        return jdbcTemplate.update("DELETE FROM mysql.slow_log WHERE start_time < ?", before);
+    }
+
+    /**
+     * 判断异常是否为连接错误
+     *
+     * @param e 异常
+     * @return 是否为连接错误
+     */
+    public static boolean isConnectionError(Exception e) {
+        String message = e.getMessage();
+        if (message == null) {
+            return false;
+        }
+
+        return message.contains("CommunicationsException") ||
+               message.contains("UnknownHostException") ||
+               message.contains("Connection refused") ||
+               message.contains("Communications link failure") ||
+               message.contains("placeholder") ||
+               message.contains("could not create connection to database server") ||
+               message.contains("No operations allowed after connection closed");
+    }
+}
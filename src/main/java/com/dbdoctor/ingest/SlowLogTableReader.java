@@ -0,0 +1,232 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.SlowQueryLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.function.Predicate;
+
+/**
+ * mysql.slow_log 表流式读取器
+ *
+ * 与 queryForList 的区别：
+ * 1. 流式读取：fetchSize = Integer.MIN_VALUE（MySQL Connector/J 的逐行流式模式），结果集不在客户端整体缓存
+ * 2. 逐行解码：按列序号直接读取基本类型，不为每行构造 HashMap 和装箱数值
+ * 3. 超长 SQL 截断：在 MySQL 端先按字节 SUBSTRING 再解码、LEFT(...) 截断，数 MB 的 SQL 既不会整体传输到客户端，
+ *    服务端也不会为整段 BLOB 做字符集转换
+ * 4. 键集分页：按 (start_time, thread_id) 排序和比较，同一微秒内的多条记录被 LIMIT 切开时不会漏读
+ *
+ * 因此把 max-records-per-poll 从 100 调到 10000 也不会造成堆内存尖峰
+ *
+ * 注意：流式读取期间该连接和服务端的读取一直被占用，回调不能阻塞：
+ * - 调用方使用 IngestPipeline.offer（队列满时立即返回 false），不能使用会等待背压的 publish
+ * - 回调返回 false 后停止接收，剩余行只被跳过；调用方按流水线剩余容量限制 LIMIT，被跳过的行有界，
+ *   下一次从已接收的最后位置（游标）继续读取
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SlowLogTableReader {
+
+    /**
+     * 查询语句（占位符为表名）
+     * - TIME_TO_SEC()：直接将时间转换为秒数
+     * - CONVERT(SUBSTRING(sql_text, 1, ?) USING utf8)：解决 BLOB 乱码问题；只转换前 (maxSqlLength + 1) * 4 个字节
+     *   （utf8mb4 每个字符最多 4 字节，足够得到 maxSqlLength + 1 个完整字符，被切开的末尾字符落在 LEFT 之外）
+     * - LEFT(..., maxSqlLength + 1)：多取一个字符用于判断是否截断
+     * - LENGTH(sql_text)：原始字节长度
+     * - (start_time, thread_id)：键集游标
+     */
+    private static final String SELECT_SQL_TEMPLATE = """
+            SELECT
+                start_time,
+                user_host,
+                TIME_TO_SEC(query_time) + MICROSECOND(query_time)/1000000.0 as query_time_sec,
+                TIME_TO_SEC(lock_time) + MICROSECOND(lock_time)/1000000.0 as lock_time_sec,
+                rows_sent,
+                rows_examined,
+                db,
+                LEFT(CONVERT(SUBSTRING(sql_text, 1, ?) USING utf8), ?) AS sql_content,
+                LENGTH(sql_text) AS sql_length,
+                thread_id
+            FROM %s
+            WHERE start_time > ? OR (start_time = ? AND thread_id > ?)
+            ORDER BY start_time ASC, thread_id ASC
+            LIMIT ?
+            """;
+
+    /**
+     * 慢查询日志表
+     */
+    public static final String SLOW_LOG_TABLE = "mysql.slow_log";
+
+    /**
+     * 收割模式下被轮转出来的旧表（见 SlowLogTableMonitor 的 HARVEST 模式）
+     */
+    public static final String HARVEST_TABLE = "mysql.slow_log_harvest";
+
+    /**
+     * UTF-8 单个字符的最大字节数
+     */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private static final String SELECT_SQL = SELECT_SQL_TEMPLATE.formatted(SLOW_LOG_TABLE);
+    private static final String SELECT_HARVEST_SQL = SELECT_SQL_TEMPLATE.formatted(HARVEST_TABLE);
+
+    private final SlowLogMonitorProperties properties;
+
+    /**
+     * 流式读取键集游标之后的慢查询日志
+     *
+     * @param jdbcTemplate 目标库 JdbcTemplate
+     * @param since        游标（不包含）
+     * @param limit        最多读取条数
+     * @param sink         每行回调（不能阻塞），返回 false 表示停止接收（剩余行会被跳过）
+     * @return 读取结果（行数、已接收的最后位置）
+     */
+    public ReadResult read(JdbcTemplate jdbcTemplate, Position since, int limit, Predicate<SlowQueryLog> sink) {
+        return read(jdbcTemplate, false, since, limit, sink);
+    }
+
+    /**
+     * 流式读取收割表（mysql.slow_log_harvest）中游标之后的一页记录
+     * 游标之前的记录（轮询模式已读取过的、或首次启动前的历史数据）被过滤；读不满一页且全部被接收时收割表已读完
+     *
+     * @param jdbcTemplate 目标库 JdbcTemplate
+     * @param since        游标（不包含）
+     * @param limit        最多读取条数
+     * @param sink         每行回调，返回 false 表示停止接收
+     * @return 读取结果
+     */
+    public ReadResult readHarvest(JdbcTemplate jdbcTemplate, Position since, int limit, Predicate<SlowQueryLog> sink) {
+        return read(jdbcTemplate, true, since, limit, sink);
+    }
+
+    private ReadResult read(JdbcTemplate jdbcTemplate, boolean harvest, Position since, int limit,
+                            Predicate<SlowQueryLog> sink) {
+        int maxSqlLength = Math.max(1, properties.getMaxSqlLength());
+        RowDecoder decoder = new RowDecoder(maxSqlLength, sink);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(harvest ? SELECT_HARVEST_SQL : SELECT_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, (maxSqlLength + 1L) * MAX_BYTES_PER_CHAR);
+            ps.setInt(2, maxSqlLength + 1);
+            ps.setTimestamp(3, since.startTime());
+            ps.setTimestamp(4, since.startTime());
+            ps.setLong(5, since.threadId());
+            ps.setInt(6, limit);
+            return ps;
+        }, decoder);
+
+        return new ReadResult(decoder.rows, decoder.accepted, decoder.last);
+    }
+
+    /**
+     * 逐行解码器（按列序号读取，不构造 Map）
+     */
+    private static class RowDecoder implements RowCallbackHandler {
+
+        private final int maxSqlLength;
+        private final Predicate<SlowQueryLog> sink;
+
+        private int rows;
+        private int accepted;
+        private Position last;
+        private boolean stopped;
+
+        RowDecoder(int maxSqlLength, Predicate<SlowQueryLog> sink) {
+            this.maxSqlLength = maxSqlLength;
+            this.sink = sink;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            rows++;
+            if (stopped) {
+                // 流式结果集必须读完才能释放连接，停止后只跳过
+                return;
+            }
+
+            Timestamp startTime = rs.getTimestamp(1);
+            long threadId = rs.getLong(10);
+            String sqlContent = rs.getString(8);
+
+            if (sqlContent == null || sqlContent.isBlank()) {
+                log.warn("发现空 SQL 记录，跳过处理。start_time: {}", startTime);
+                last = new Position(startTime, threadId);
+                return;
+            }
+
+            boolean truncated = sqlContent.length() > maxSqlLength;
+            if (truncated) {
+                sqlContent = sqlContent.substring(0, maxSqlLength);
+            }
+
+            SlowQueryLog slowLog = SlowQueryLog.builder()
+                    .startTime(startTime.toLocalDateTime())
+                    .userHost(rs.getString(2))
+                    .queryTime(rs.getDouble(3))
+                    .lockTime(rs.getDouble(4))
+                    .rowsSent(rs.getLong(5))
+                    .rowsExamined(rs.getLong(6))
+                    .dbName(rs.getString(7))
+                    .sqlText(sqlContent)
+                    .sqlLength(rs.getLong(9))
+                    .sqlTruncated(truncated)
+                    .threadId(threadId)
+                    .build();
+
+            if (truncated) {
+                log.debug("✂️ 超长 SQL 已截断: start_time={}, 原始长度={} 字节", startTime, slowLog.getSqlLength());
+            }
+
+            if (sink.test(slowLog)) {
+                accepted++;
+                last = new Position(startTime, threadId);
+            } else {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * 键集游标位置
+     * 排序键为 (start_time, thread_id)，读取严格位于该位置之后的记录
+     *
+     * @param startTime 开始时间
+     * @param threadId  线程 ID（-1 表示该时间点之前）
+     */
+    public record Position(Timestamp startTime, long threadId) {
+
+        /**
+         * 从某个时间点开始（包含该时间点的所有记录）
+         */
+        public static Position startingAt(Timestamp startTime) {
+            return new Position(startTime, -1L);
+        }
+    }
+
+    /**
+     * 读取结果
+     *
+     * @param rows     读取的行数
+     * @param accepted 被接收的行数
+     * @param last     已处理的最后位置（没有则为 null）
+     */
+    public record ReadResult(int rows, int accepted, Position last) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.dbdoctor.ingest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流水线阶段吞吐计量器
+ *
+ * 使用 60 个 1 秒的环形桶统计最近一分钟的吞吐量，记录时无锁
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public class StageMeter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray bucketSeconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    /**
+     * 记录处理成功的条数
+     *
+     * @param count 条数
+     */
+    public void record(long count) {
+        total.add(count);
+
+        long second = System.currentTimeMillis() / 1000;
+        int index = (int) (second % WINDOW_SECONDS);
+        long stamp = bucketSeconds.get(index);
+        if (stamp != second && bucketSeconds.compareAndSet(index, stamp, second)) {
+            // 桶已过期：重置计数（并发下可能丢失极少量计数，仅影响吞吐展示）
+            bucketCounts.set(index, 0);
+        }
+        bucketCounts.addAndGet(index, count);
+    }
+
+    /**
+     * 记录处理失败的条数
+     *
+     * @param count 条数
+     */
+    public void recordFailure(long count) {
+        failures.add(count);
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * 最近一分钟的平均吞吐量（条/秒）
+     *
+     * @return 吞吐量
+     */
+    public double getRatePerSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        long sum = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (now - bucketSeconds.get(i) < WINDOW_SECONDS) {
+                sum += bucketCounts.get(i);
+            }
+        }
+        return (double) sum / WINDOW_SECONDS;
+    }
+}
@@ -17,6 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
  * 1. 将所有旧的 PENDING 记录改为 ABANDONED（已放弃）
  * 2. 防止重启后误处理历史数据
  * 3. 保证 PENDING 状态只代表"本次运行中正在处理的任务"
+ * 4. 旧版本只保存平均值的模板回填统计总和（平均值改为由总和 / 次数得出）
  *
  * 设计理念：
  * - 不补发历史数据，重启后放弃上次运行中断的任务
@@ -51,6 +52,8 @@ public class StartupHousekeeper implements ApplicationRunner {
                 log.info("✅ 无遗留的 PENDING 记录");
             }
 
+            backfillStatisticSums();
+
             log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
             log.info("🎉 启动自检完成，监控系统已就绪");
             log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
@@ -60,4 +63,17 @@ public class StartupHousekeeper implements ApplicationRunner {
             // 不抛出异常，允许应用继续启动
         }
     }
+
+    /**
+     * 回填统计总和（只在存在旧版本平均值列时执行，已回填的模板不会重复处理）
+     */
+    private void backfillStatisticSums() {
+        if (templateRepo.countLegacyAverageColumns() == 0) {
+            return;
+        }
+        int backfilled = templateRepo.backfillSumsFromAverages();
+        if (backfilled > 0) {
+            log.info("📐 已为 {} 个旧版本模板回填统计总和", backfilled);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.dbdoctor.model;
+
+import com.dbdoctor.common.util.SqlFingerprintLexer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 预处理后的慢查询
+ * 由采集流水线的 worker 并行生成（清洗、指纹、脱敏），再交给单线程写入阶段批量持久化
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PreparedSlowQuery {
+
+    /**
+     * 原始慢查询日志
+     */
+    private SlowQueryLog slowLog;
+
+    /**
+     * 清洗后的 SQL
+     */
+    private String cleanedSql;
+
+    /**
+     * SQL 指纹
+     */
+    private String fingerprint;
+
+    /**
+     * 脱敏后的 SQL（用于 Sample 表存储）
+     */
+    private String maskedSql;
+
+    /**
+     * SQL 模板（参数化后的 SQL）
+     */
+    private String sqlTemplate;
+
+    /**
+     * 主表名
+     */
+    private String tableName;
+
+    /**
+     * 引用的全部表（逗号分隔，schema.table 或 table）
+     */
+    private String tableNames;
+
+    /**
+     * 被参数化的常量（已脱敏；预聚合记录没有原始常量，为空）
+     */
+    private List<SqlFingerprintLexer.Parameter> parameters;
+
+    /**
+     * 是否按超长 SQL 处理（脱敏 SQL 已截断）
+     */
+    private boolean oversize;
+}
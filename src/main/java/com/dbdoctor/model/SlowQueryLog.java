@@ -3,7 +3,9 @@ package com.dbdoctor.model;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
@@ -20,6 +22,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class SlowQueryLog {
 
+    /**
+     * 数据库实例 ID（多实例监控时设置；为空表示默认目标数据源）
+     */
+    private Long instanceId;
+
     /**
      * 查询开始时间
      */
@@ -61,6 +68,75 @@ public class SlowQueryLog {
      */
     private Long rowsExamined;
 
+    /**
+     * SQL 原始长度（字节）
+     * 超长 SQL 在读取时会被截断，此字段保留原始长度
+     */
+    private Long sqlLength;
+
+    /**
+     * SQL 是否被截断（超过 max-sql-length）
+     */
+    private boolean sqlTruncated;
+
+    /**
+     * 执行线程 ID（mysql.slow_log.thread_id，与 start_time 组成键集游标）
+     */
+    private Long threadId;
+
+    /**
+     * 采集回执：流水线处理完这条记录（写入成功、被过滤或失败放弃）后调用
+     * 采集来源据此判断哪些位置已经落库，可以安全持久化游标（见 IngestCheckpoint）
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Runnable ingestAck;
+
+    /**
+     * 通知采集来源本条记录已处理完毕
+     */
+    public void acknowledge() {
+        Runnable ack = ingestAck;
+        if (ack != null) {
+            ingestAck = null;
+            ack.run();
+        }
+    }
+
+    // === 预聚合记录（digest 来源）===
+
+    /**
+     * 预先计算的 SQL 指纹
+     * 不为空时直接使用，跳过 SqlFingerprintUtil.calculateFingerprint（例如 performance_schema 的 DIGEST）
+     */
+    private String sqlFingerprint;
+
+    /**
+     * 预先参数化的 SQL 模板（例如 performance_schema 的 DIGEST_TEXT）
+     */
+    private String sqlTemplate;
+
+    /**
+     * 本记录代表的执行次数
+     * 为空表示单次执行（slow_log 表 / 慢日志文件）；预聚合记录中 queryTime 等字段为平均值
+     */
+    private Long executionCount;
+
+    /**
+     * 最大查询耗时（秒）
+     * 为空时使用 queryTime
+     */
+    private Double maxQueryTime;
+
+    /**
+     * 获取本记录代表的执行次数（默认 1）
+     *
+     * @return 执行次数
+     */
+    public long effectiveExecutionCount() {
+        return executionCount != null && executionCount > 0 ? executionCount : 1L;
+    }
+
     /**
      * 判断是否为严重慢查询
      *
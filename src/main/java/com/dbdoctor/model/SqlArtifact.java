@@ -0,0 +1,108 @@
+package com.dbdoctor.model;
+
+import com.dbdoctor.common.util.SqlFingerprintLexer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * SQL 预处理产物（一次词法扫描得到的语句信息）
+ *
+ * 由 SqlFingerprintUtil.analyze 生成，指纹、模板、语句类型、表名、数据库名均来自同一次扫描；
+ * 只由 SQL 文本决定（与实例、耗时等无关），同一条原始 SQL 的产物可以在多条慢查询之间复用，
+ * 由 SqlArtifactCache 缓存；缓存中的实例被多个线程共享，创建后不要修改
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SqlArtifact {
+
+    /**
+     * 清洗后的 SQL
+     */
+    private String cleanedSql;
+
+    /**
+     * SQL 指纹（未限定实例）
+     */
+    private String fingerprint;
+
+    /**
+     * SQL 模板（参数化后的 SQL）
+     */
+    private String sqlTemplate;
+
+    /**
+     * 脱敏后的 SQL
+     */
+    private String maskedSql;
+
+    /**
+     * 语句类型（SELECT / INSERT / UPDATE / DELETE / ...，无法识别时为 UNKNOWN）
+     */
+    private String statementType;
+
+    /**
+     * 引用的全部表（schema.table 或 table，按出现顺序去重，包括 JOIN 和子查询中的表）
+     */
+    private List<String> tables;
+
+    /**
+     * 主表名（第一个引用的表，不含 schema；无法识别时为 unknown）
+     */
+    private String tableName;
+
+    /**
+     * SQL 中显式指定的数据库名（第一个带 schema 的表，未指定时为 null）
+     */
+    private String dbName;
+
+    /**
+     * 被参数化的常量（已脱敏，用于参数画像）
+     */
+    private List<SqlFingerprintLexer.Parameter> parameters;
+
+    /**
+     * 是否按超长 SQL 处理（只分析了前缀：模板为前缀的稳定结构，清洗/脱敏后的 SQL 已截断）
+     */
+    private boolean oversize;
+
+    /**
+     * 引用的全部表（逗号分隔）
+     */
+    public String joinedTables() {
+        return tables != null ? String.join(",", tables) : "";
+    }
+
+    /**
+     * 估算的内存占用（字节，用于缓存容量控制）
+     */
+    public long weight() {
+        return 64L + 2L * (length(cleanedSql) + length(fingerprint) + length(sqlTemplate)
+                + length(maskedSql) + length(tableName) + length(dbName) + length(statementType)
+                + length(joinedTables())) + parametersWeight();
+    }
+
+    private long parametersWeight() {
+        if (parameters == null) {
+            return 0;
+        }
+        long weight = 0;
+        for (SqlFingerprintLexer.Parameter parameter : parameters) {
+            weight += 32L + 2L * (length(parameter.column()) + length(parameter.value()));
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,27 @@
+package com.dbdoctor.repository;
+
+import com.dbdoctor.entity.IngestCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * 慢查询采集游标Repository
+ * 操作 ingest_cursor 表
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Repository
+public interface IngestCursorRepository extends JpaRepository<IngestCursor, Long> {
+
+    /**
+     * 根据采集来源标识查询游标
+     *
+     * @param sourceKey 采集来源标识
+     * @return 游标
+     */
+    Optional<IngestCursor> findBySourceKey(String sourceKey);
+}
@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -50,6 +51,16 @@ public interface SlowQueryTemplateRepository extends JpaRepository<SlowQueryTemp
      */
     List<SlowQueryTemplate> findByStatus(SlowQueryTemplate.AnalysisStatus status);
 
+    /**
+     * 查询指定时间之后分析完成的记录（用于相似模板索引预热）
+     *
+     * @param status       状态
+     * @param analyzedTime 分析时间下限
+     * @return 记录列表
+     */
+    List<SlowQueryTemplate> findByStatusAndAnalyzedTimeAfter(SlowQueryTemplate.AnalysisStatus status,
+                                                             LocalDateTime analyzedTime);
+
     /**
      * 查询需要重试的PENDING任务
      *
@@ -93,6 +104,7 @@ public interface SlowQueryTemplateRepository extends JpaRepository<SlowQueryTemp
      * @param lastSeenTime 最后见到时间
      * @return 影响的行数
      */
+    @Transactional
     @Modifying
     @Query("""
         UPDATE SlowQueryTemplate t
@@ -104,6 +116,118 @@ public interface SlowQueryTemplateRepository extends JpaRepository<SlowQueryTemp
         @Param("lastSeenTime") LocalDateTime lastSeenTime
     );
 
+    /**
+     * 原子累加模板统计（次数、总和累加，最大值和最后见到时间取较大者）
+     *
+     * 在数据库中计算，不需要先读出模板：多个采集线程同时更新同一模板不会丢失更新
+     *
+     * @param fingerprint     SQL指纹
+     * @param count           执行次数
+     * @param sumQueryTime    查询耗时总和
+     * @param maxQueryTime    最大查询耗时
+     * @param sumLockTime     锁等待时间总和
+     * @param maxLockTime     最大锁等待时间
+     * @param sumRowsSent     返回行数总和
+     * @param maxRowsSent     最大返回行数
+     * @param sumRowsExamined 扫描行数总和
+     * @param maxRowsExamined 最大扫描行数
+     * @param lastSeenTime    最后见到时间
+     * @return 影响的行数（模板已被清理时为 0）
+     */
+    @Modifying
+    @Query("""
+        UPDATE SlowQueryTemplate t
+        SET t.occurrenceCount = COALESCE(t.occurrenceCount, 0L) + :count,
+            t.sumQueryTime = COALESCE(t.sumQueryTime, 0.0) + :sumQueryTime,
+            t.maxQueryTime = GREATEST(COALESCE(t.maxQueryTime, :maxQueryTime), :maxQueryTime),
+            t.sumLockTime = COALESCE(t.sumLockTime, 0.0) + :sumLockTime,
+            t.maxLockTime = GREATEST(COALESCE(t.maxLockTime, :maxLockTime), :maxLockTime),
+            t.sumRowsSent = COALESCE(t.sumRowsSent, 0L) + :sumRowsSent,
+            t.maxRowsSent = GREATEST(COALESCE(t.maxRowsSent, :maxRowsSent), :maxRowsSent),
+            t.sumRowsExamined = COALESCE(t.sumRowsExamined, 0L) + :sumRowsExamined,
+            t.maxRowsExamined = GREATEST(COALESCE(t.maxRowsExamined, :maxRowsExamined), :maxRowsExamined),
+            t.lastSeenTime = GREATEST(COALESCE(t.lastSeenTime, :lastSeenTime), :lastSeenTime)
+        WHERE t.sqlFingerprint = :fingerprint
+        """)
+    int addStatistics(
+        @Param("fingerprint") String fingerprint,
+        @Param("count") long count,
+        @Param("sumQueryTime") double sumQueryTime,
+        @Param("maxQueryTime") double maxQueryTime,
+        @Param("sumLockTime") double sumLockTime,
+        @Param("maxLockTime") double maxLockTime,
+        @Param("sumRowsSent") long sumRowsSent,
+        @Param("maxRowsSent") long maxRowsSent,
+        @Param("sumRowsExamined") long sumRowsExamined,
+        @Param("maxRowsExamined") long maxRowsExamined,
+        @Param("lastSeenTime") LocalDateTime lastSeenTime
+    );
+
+    /**
+     * 查询模板的耗时分布草图（在 addStatistics 之后调用：同一事务已持有该行的写锁，读到的是最新值）
+     *
+     * @param fingerprint SQL指纹
+     * @return [queryTimeSketch, lockTimeSketch]（模板不存在时为空列表）
+     */
+    @Query("""
+        SELECT t.queryTimeSketch, t.lockTimeSketch FROM SlowQueryTemplate t
+        WHERE t.sqlFingerprint = :fingerprint
+        """)
+    List<Object[]> findSketches(@Param("fingerprint") String fingerprint);
+
+    /**
+     * 更新模板的耗时分布草图
+     *
+     * @param fingerprint     SQL指纹
+     * @param queryTimeSketch 查询耗时分布
+     * @param lockTimeSketch  锁等待时间分布
+     * @return 影响的行数
+     */
+    @Modifying
+    @Query("""
+        UPDATE SlowQueryTemplate t
+        SET t.queryTimeSketch = :queryTimeSketch,
+            t.lockTimeSketch = :lockTimeSketch
+        WHERE t.sqlFingerprint = :fingerprint
+        """)
+    int updateSketches(
+        @Param("fingerprint") String fingerprint,
+        @Param("queryTimeSketch") String queryTimeSketch,
+        @Param("lockTimeSketch") String lockTimeSketch
+    );
+
+    /**
+     * 旧版本平均值列（avg_query_time）是否存在
+     *
+     * @return 存在时大于 0
+     */
+    @Query(value = """
+        SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS
+        WHERE UPPER(TABLE_NAME) = 'SLOW_QUERY_TEMPLATE'
+          AND UPPER(COLUMN_NAME) = 'AVG_QUERY_TIME'
+        """, nativeQuery = true)
+    long countLegacyAverageColumns();
+
+    /**
+     * 由旧版本的平均值列回填总和列（总和 = 平均值 * 次数），回填后清空平均值列，每行只处理一次
+     *
+     * @return 影响的行数
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE slow_query_template
+        SET sum_query_time = avg_query_time * COALESCE(occurrence_count, 0),
+            sum_lock_time = COALESCE(avg_lock_time, 0) * COALESCE(occurrence_count, 0),
+            sum_rows_sent = ROUND(COALESCE(avg_rows_sent, 0) * COALESCE(occurrence_count, 0)),
+            sum_rows_examined = ROUND(COALESCE(avg_rows_examined, 0) * COALESCE(occurrence_count, 0)),
+            avg_query_time = NULL,
+            avg_lock_time = NULL,
+            avg_rows_sent = NULL,
+            avg_rows_examined = NULL
+        WHERE avg_query_time IS NOT NULL
+        """, nativeQuery = true)
+    int backfillSumsFromAverages();
+
     // === 通知相关查询方法 ===
 
     /**
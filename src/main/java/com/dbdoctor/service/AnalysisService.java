@@ -1,27 +1,37 @@
 package com.dbdoctor.service;
 
 import com.dbdoctor.agent.DBAgent;
+import com.dbdoctor.agent.DiagnosticTarget;
 import com.dbdoctor.common.util.SqlFingerprintUtil;
-import com.dbdoctor.common.util.SqlMaskingUtil;
 import com.dbdoctor.config.DbDoctorProperties;
+import com.dbdoctor.config.DynamicDataSourceManager;
+import com.dbdoctor.model.PreparedSlowQuery;
 import com.dbdoctor.model.QueryStatisticsDTO;
 import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.model.SqlArtifact;
 import com.dbdoctor.model.AnalysisContext;
 import com.dbdoctor.entity.NotificationQueue;
 import com.dbdoctor.entity.SlowQuerySample;
 import com.dbdoctor.entity.SlowQueryTemplate;
 import com.dbdoctor.repository.NotificationQueueRepository;
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter;
 import com.dbdoctor.repository.SlowQuerySampleRepository;
 import com.dbdoctor.repository.SlowQueryTemplateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 分析服务（V2.3.0 - 使用 Template + Sample 架构 + 多 Agent 协作）
@@ -55,143 +65,264 @@ public class AnalysisService {
     private final NotifyService notifyService;
     private final SlowQueryTemplateRepository templateRepo;
     private final SlowQuerySampleRepository sampleRepo;
+    private final SlowQuerySampleBatchWriter sampleWriter;  // 样本 JDBC 批量写入
+    private final SampleRetentionPolicy sampleRetention;  // 样本保留策略
     private final NotificationQueueRepository notificationQueueRepo;
     private final DbDoctorProperties properties;
     private final DBAgent dbAgent;  // 主治医生（单 Agent 模式，保留用于兼容）
     private final MultiAgentCoordinator multiAgentCoordinator;  // 多 Agent 协调器
+    private final SqlArtifactCache artifactCache;  // 原始 SQL → 预处理产物缓存
+    private final FingerprintExplosionGuard explosionGuard;  // 指纹爆炸保护
+    private final ParameterProfiler parameterProfiler;  // SQL 参数画像
+    private final TemplateFamilyIndex familyIndex;  // 相似模板索引（报告复用）
+    private final TemplateStatsAccumulator statsAccumulator;  // 模板统计写后合并
+    private final TemplateInserter templateInserter;  // 新模板独立事务插入
+    private final DynamicDataSourceManager dynamicDataSourceManager;  // 按实例路由诊断查询
 
     /**
      * 处理慢查询日志（入口方法）
      *
+     * 单条处理：预处理 + 持久化 + 报告生成；批量场景请使用采集流水线（IngestPipeline）
+     *
      * @param slowLog 慢查询日志对象
      */
     @Transactional
     public void processSlowQuery(SlowQueryLog slowLog) {
-        String rawSql = slowLog.getSqlText();
-        String dbName = slowLog.getDbName();
+        PreparedSlowQuery prepared = prepare(slowLog);
+        if (prepared == null) {
+            return;
+        }
+
+        for (SlowQueryTemplate template : persistBatch(List.of(prepared))) {
+            generateReportAndNotify(template);
+        }
+    }
 
-        // 1. 数据清洗
-        String cleanedSql = SqlFingerprintUtil.cleanSql(rawSql);
-        if (cleanedSql.isBlank()) {
+    /**
+     * 预处理慢查询（CPU 密集：清洗、指纹、脱敏）
+     *
+     * 不访问数据库，可由多个 worker 线程并行调用（SqlArtifactCache 线程安全）
+     *
+     * @param slowLog 慢查询日志对象
+     * @return 预处理结果，SQL 为空时返回 null
+     */
+    public PreparedSlowQuery prepare(SlowQueryLog slowLog) {
+        // 1. 一次词法分析得到指纹、模板、表名、数据库名，并完成清洗和脱敏（相同原始 SQL 直接复用缓存结果）
+        SqlArtifact artifact = artifactCache.get(slowLog.getSqlText());
+        if (artifact == null) {
             log.warn("SQL 为空，跳过处理");
-            return;
+            return null;
         }
 
-        // 2. 计算 SQL 指纹
-        String fingerprint = SqlFingerprintUtil.calculateFingerprint(cleanedSql);
+        // 2. SQL 指纹（预聚合记录已自带指纹，例如 performance_schema 的 DIGEST）
+        String fingerprint = slowLog.getSqlFingerprint() != null
+                ? slowLog.getSqlFingerprint()
+                : artifact.getFingerprint();
 
-        // 3. 查询 H2 数据库：是否已存在？
-        Optional<SlowQueryTemplate> templateOpt = templateRepo.findBySqlFingerprint(fingerprint);
+        // 多实例监控：同一条 SQL 在不同实例上归入不同模板
+        fingerprint = SqlFingerprintUtil.scopeToInstance(fingerprint, slowLog.getInstanceId());
 
-        if (templateOpt.isPresent()) {
-            // === 情况 A：老面孔（已分析过） ===
-            SlowQueryTemplate template = templateOpt.get();
-            handleExistingQuery(template, slowLog, cleanedSql);
-        } else {
-            // === 情况 B：新面孔（首次发现） ===
-            handleNewQuery(fingerprint, cleanedSql, dbName, slowLog);
+        // 3. 跨库查询：db 字段为空时使用 SQL 中显式指定的数据库名
+        if ((slowLog.getDbName() == null || slowLog.getDbName().isBlank()) && artifact.getDbName() != null) {
+            slowLog.setDbName(artifact.getDbName());
         }
+
+        String tableNames = artifact.joinedTables();
+        return PreparedSlowQuery.builder()
+                .slowLog(slowLog)
+                .cleanedSql(artifact.getCleanedSql())
+                .fingerprint(fingerprint)
+                .maskedSql(artifact.getMaskedSql())
+                .sqlTemplate(slowLog.getSqlTemplate() != null ? slowLog.getSqlTemplate() : artifact.getSqlTemplate())
+                .tableName(artifact.getTableName())
+                .tableNames(tableNames.length() > 1000 ? tableNames.substring(0, 1000) : tableNames)
+                // 预聚合记录（自带模板）没有原始常量
+                .parameters(slowLog.getSqlTemplate() == null ? artifact.getParameters() : null)
+                .oversize(artifact.isOversize())
+                .build();
     }
 
     /**
-     * 处理已存在的慢查询（老面孔）
+     * 批量持久化预处理后的慢查询（单事务）
      *
      * 核心逻辑：
-     * - 新增一条 Sample 记录（保留完整历史）
-     * - 更新 Template 的统计字段和 lastSeenTime
-     * - 触发通知判断
+     * - 同一批次内相同指纹的模板只查询、保存一次
+     * - 新指纹先经过指纹爆炸保护，保护期间近似模板合并到已有模板
+     * - 新面孔：在独立事务中插入不带统计的 Template，并发插入同一指纹时改为合并到已提交的模板
+     * - 统计：每条记录的增量按指纹累加，事务提交后交给 TemplateStatsAccumulator 合并
+     *   （未启用写后合并时在事务内原子累加），统计不通过整行保存写入，多个采集线程并发写入不会丢失更新
+     * - 每条记录新增一条 Sample（整个批次一次 JDBC 批量插入），按指纹的保留策略在写入时增量清理多余样本
+     * - 参数画像在事务提交后记录，批次回滚后逐条重试不会重复记录
      *
-     * @param template 模板记录
-     * @param slowLog 慢查询日志
-     * @param cleanedSql 清洗后的 SQL
+     * 注意：报告生成不在事务内触发，由调用方在事务提交后按返回的模板触发
+     *
+     * @param batch 预处理结果
+     * @return 本批次涉及的模板（按指纹去重）
      */
-    private void handleExistingQuery(SlowQueryTemplate template, SlowQueryLog slowLog, String cleanedSql) {
-        String fingerprint = template.getSqlFingerprint();
+    @Transactional
+    public List<SlowQueryTemplate> persistBatch(List<PreparedSlowQuery> batch) {
+        Map<String, SlowQueryTemplate> touched = new LinkedHashMap<>();
+        Map<String, TemplateStatsAccumulator.Delta> deltas = new HashMap<>();
+        List<SlowQuerySample> samples = new ArrayList<>(batch.size());
+        SampleRetentionPolicy.Batch retention = sampleRetention.newBatch();
+        List<ParameterProfiler.Observation> observations = new ArrayList<>(batch.size());
+
+        for (PreparedSlowQuery prepared : batch) {
+            String fingerprint = prepared.getFingerprint();
+
+            // 查询 H2 数据库：是否已存在？（同一批次内复用）
+            SlowQueryTemplate template = touched.get(fingerprint);
+            if (template == null) {
+                template = templateRepo.findBySqlFingerprint(fingerprint).orElse(null);
+            }
+            if (template == null) {
+                template = mergeIntoExisting(prepared, touched);
+                fingerprint = prepared.getFingerprint();
+            }
 
-        // 1. SQL 脱敏处理（保护敏感数据）
-        String maskedSql = SqlMaskingUtil.maskSensitiveData(cleanedSql);
+            if (template == null) {
+                // 新面孔（首次发现）：插入不带统计的模板；老面孔只需累加下面的统计增量
+                template = insertOrMerge(prepared);
+            }
+            touched.put(fingerprint, template);
+            deltas.merge(fingerprint, TemplateStatsAccumulator.Delta.of(prepared.getSlowLog()),
+                    TemplateStatsAccumulator.Delta::merge);
+
+            SlowQuerySample sample = buildSample(prepared);
+            retention.offer(sample, prepared.getSlowLog().effectiveExecutionCount(), template);
+            samples.add(sample);
+            observations.add(new ParameterProfiler.Observation(fingerprint, prepared.getParameters(),
+                    prepared.getSlowLog().getQueryTime()));
+        }
 
-        // 2. 新增 Sample 记录
-        SlowQuerySample sample = SlowQuerySample.builder()
-                .sqlFingerprint(fingerprint)
-                .originalSql(maskedSql)  // 存储脱敏后的 SQL
-                .userHost(slowLog.getUserHost())
-                .queryTime(slowLog.getQueryTime())
-                .lockTime(slowLog.getLockTime())
-                .rowsSent(slowLog.getRowsSent())
-                .rowsExamined(slowLog.getRowsExamined())
-                .capturedAt(slowLog.getStartTime())
-                .build();
-        sampleRepo.save(sample);
+        // IDENTITY 主键无法合并为 Hibernate 批量插入，样本改用 JDBC 批量写入（同一事务、一次提交）
+        retention.beforeInsert();
+        sampleWriter.insertAll(samples);
+        retention.afterInsert();
 
-        // 3. 增量更新 Template 的统计字段和时间信息
-        updateTemplateStatistics(template, slowLog);
+        // 内存中的模板同步本批次的增量（统计列不可更新，不会被下面的保存写回）
+        double severityThreshold = properties.getNotify().getSeverityThreshold();
+        deltas.forEach((fingerprint, delta) -> delta.applyTo(touched.get(fingerprint), severityThreshold));
+        if (statsAccumulator.isEnabled()) {
+            statsAccumulator.recordAfterCommit(deltas);
+        } else {
+            statsAccumulator.apply(deltas);
+        }
+        parameterProfiler.recordAfterCommit(observations);
 
-        // 4. 保存更新后的 Template
-        templateRepo.save(template);
+        // 模板的非统计字段未修改时不会产生 UPDATE
+        return templateRepo.saveAll(touched.values());
+    }
 
-        log.debug("📋 更新重复 SQL: fingerprint={}, db={}", fingerprint, slowLog.getDbName());
+    /**
+     * 新指纹：在独立事务中插入模板；其他线程已插入同一指纹时读取已提交的模板
+     *
+     * @param prepared 预处理后的慢查询
+     * @return 已提交的模板
+     */
+    private SlowQueryTemplate insertOrMerge(PreparedSlowQuery prepared) {
+        try {
+            return templateInserter.insert(handleNewQuery(prepared));
+        } catch (DataIntegrityViolationException e) {
+            SlowQueryTemplate existing = templateRepo.findBySqlFingerprint(prepared.getFingerprint())
+                    .orElseThrow(() -> e);
+            log.debug("📋 指纹已被并发插入，合并到已有模板: fingerprint={}", prepared.getFingerprint());
+            return existing;
+        }
+    }
 
-        // 5. 触发报告生成和通知（异步，使用智能通知策略判断）
-        generateReportAndNotify(template);
+    /**
+     * 指纹爆炸保护：新指纹的近似模板已存在且保护已触发时，改用已有模板的指纹
+     *
+     * @param prepared 预处理后的慢查询（合并时指纹会被改写）
+     * @param touched  本批次已涉及的模板
+     * @return 合并到的已有模板，不合并时返回 null
+     */
+    private SlowQueryTemplate mergeIntoExisting(PreparedSlowQuery prepared, Map<String, SlowQueryTemplate> touched) {
+        String canonical = explosionGuard.resolve(prepared);
+        if (canonical.equals(prepared.getFingerprint())) {
+            return null;
+        }
+        SlowQueryTemplate template = touched.get(canonical);
+        if (template == null) {
+            template = templateRepo.findBySqlFingerprint(canonical).orElse(null);
+        }
+        if (template == null) {
+            // 已有模板已被清理，由当前指纹代表该近似模板
+            explosionGuard.register(prepared);
+            return null;
+        }
+        prepared.setFingerprint(canonical);
+        return template;
     }
 
     /**
      * 处理新发现的慢查询（新面孔）
      *
      * 核心逻辑：
-     * - 创建一条 Template 记录（包含初始统计信息）
-     * - 创建第一条 Sample 记录
-     * - 触发通知
+     * - 创建一条 Template 记录（统计从零开始，第一条样本与其他样本一样通过增量累加）
+     * - Sample 记录由 persistBatch 统一保存
      *
-     * @param fingerprint SQL 指纹
-     * @param cleanedSql 清洗后的 SQL
-     * @param dbName 数据库名
-     * @param slowLog 慢查询日志
+     * @param prepared 预处理后的慢查询
+     * @return 新建的模板（尚未保存）
      */
-    private void handleNewQuery(String fingerprint, String cleanedSql, String dbName, SlowQueryLog slowLog) {
-        // 提取表名（可选）
-        String tableName = extractTableName(cleanedSql);
+    private SlowQueryTemplate handleNewQuery(PreparedSlowQuery prepared) {
+        SlowQueryLog slowLog = prepared.getSlowLog();
+        String fingerprint = prepared.getFingerprint();
+        String dbName = slowLog.getDbName();
 
-        // 1. 提取 SQL 模板（Druid 参数化，把真实值替换成 ?）
-        String sqlTemplate = SqlFingerprintUtil.extractTemplate(cleanedSql);
+        // 表名与 SQL 模板已在预处理阶段提取（预聚合记录自带模板）
+        String tableName = prepared.getTableName();
+        String tableNames = prepared.getTableNames();
 
-        // 2. SQL 脱敏处理（用于 Sample 表存储）
-        String maskedSql = SqlMaskingUtil.maskSensitiveData(cleanedSql);
+        // 1. SQL 模板（把真实值替换成 ?）
+        String sqlTemplate = prepared.getSqlTemplate();
 
-        // 3. 计算初始严重程度（基于查询耗时）
+        // 2. 计算初始严重程度（基于查询耗时）
         double severityThreshold = properties.getNotify().getSeverityThreshold();
         com.dbdoctor.common.enums.SeverityLevel initialSeverity =
                 com.dbdoctor.common.enums.SeverityLevel.fromQueryTime(slowLog.getQueryTime(), severityThreshold);
 
-        // 4. 创建 Template 记录（初始化统计字段）
+        // 3. 创建 Template 记录（初始化统计字段）
         SlowQueryTemplate template = SlowQueryTemplate.builder()
                 .sqlFingerprint(fingerprint)
                 .sqlTemplate(sqlTemplate)  // ← 存储参数化后的模板（全是 ?）
+                .instanceId(slowLog.getInstanceId())
                 .dbName(dbName)
                 .tableName(tableName)
+                .tableNames(tableNames)
                 .severityLevel(initialSeverity)  // ← 设置初始严重程度
                 .firstSeenTime(LocalDateTime.now())
                 .lastSeenTime(LocalDateTime.now())
                 .status(SlowQueryTemplate.AnalysisStatus.PENDING)
-                // 初始化统计字段（首次出现，所有值都来自第一条样本）
-                .occurrenceCount(1L)
-                .avgQueryTime(slowLog.getQueryTime())
-                .maxQueryTime(slowLog.getQueryTime())
-                .avgLockTime(slowLog.getLockTime())
-                .maxLockTime(slowLog.getLockTime())
-                .avgRowsSent(slowLog.getRowsSent() != null ? slowLog.getRowsSent().doubleValue() : 0.0)
-                .maxRowsSent(slowLog.getRowsSent())
-                .avgRowsExamined(slowLog.getRowsExamined() != null ? slowLog.getRowsExamined().doubleValue() : 0.0)
-                .maxRowsExamined(slowLog.getRowsExamined())
+                // 统计从零开始（最大值为空，由第一次原子更新写入）
+                .occurrenceCount(0L)
+                .sumQueryTime(0.0)
+                .sumLockTime(0.0)
+                .sumRowsSent(0L)
+                .sumRowsExamined(0L)
                 .build();
 
-        template = templateRepo.save(template);
+        log.info("✨ 新发现慢查询: fingerprint={}, db={}, table={}",
+                fingerprint, dbName, tableName);
 
-        // 4. 创建第一条 Sample 记录
-        SlowQuerySample sample = SlowQuerySample.builder()
-                .sqlFingerprint(fingerprint)
-                .originalSql(maskedSql)  // ← 存储脱敏后的原始 SQL
+        return template;
+    }
+
+    /**
+     * 构建 Sample 记录
+     *
+     * @param prepared 预处理后的慢查询
+     * @return Sample 记录（尚未保存）
+     */
+    private SlowQuerySample buildSample(PreparedSlowQuery prepared) {
+        SlowQueryLog slowLog = prepared.getSlowLog();
+        return SlowQuerySample.builder()
+                .sqlFingerprint(prepared.getFingerprint())
+                .instanceId(slowLog.getInstanceId())
+                .originalSql(prepared.getMaskedSql())  // ← 存储脱敏后的原始 SQL
+                .sqlLength(slowLog.getSqlLength())
+                .sqlTruncated(slowLog.isSqlTruncated() || prepared.isOversize())
                 .userHost(slowLog.getUserHost())
                 .queryTime(slowLog.getQueryTime())
                 .lockTime(slowLog.getLockTime())
@@ -199,44 +330,65 @@ public class AnalysisService {
                 .rowsExamined(slowLog.getRowsExamined())
                 .capturedAt(slowLog.getStartTime())
                 .build();
-        sampleRepo.save(sample);
-
-        log.info("✨ 新发现慢查询: fingerprint={}, db={}, table={}",
-                fingerprint, dbName, tableName);
-
-        // 5. 触发报告生成和通知（异步）
-        generateReportAndNotify(template);
     }
 
     /**
      * 异步生成报告并发送通知（V2.3.0 - 使用多 Agent 协调器）
      *
+     * 相似模板（同一组表、只差列顺序/条件/LIMIT）最近分析过时直接复用其报告
+     *
      * @param template 模板记录
      */
     @Async("analysisExecutor")
     @Transactional
     public void generateReportAndNotify(SlowQueryTemplate template) {
+        doGenerateReport(template, true);
+    }
+
+    /**
+     * 异步生成报告并发送通知
+     *
+     * @param template   模板记录
+     * @param allowReuse 是否允许复用相似模板的报告（手动重新分析时为 false）
+     */
+    @Async("analysisExecutor")
+    @Transactional
+    public void generateReportAndNotify(SlowQueryTemplate template, boolean allowReuse) {
+        doGenerateReport(template, allowReuse);
+    }
+
+    private void doGenerateReport(SlowQueryTemplate template, boolean allowReuse) {
         String fingerprint = template.getSqlFingerprint();
         long startTime = System.currentTimeMillis();
 
         try {
-            log.info("📋 开始多 Agent 协作分析: fingerprint={}, db={}, table={}",
-                    fingerprint, template.getDbName(), template.getTableName());
+            // 0. 相似模板最近分析过：复用报告，不调用 AI
+            ReusedReport reused = allowReuse ? reuseFamilyReport(template) : null;
+            String aiReport = reused != null ? reused.report() : null;
 
-            // 1. 创建数据快照（AnalysisContext）
-            AnalysisContext context = buildAnalysisContext(template);
-            log.info("📸 数据快照创建完成: triggerTime={}, analysisTime={}, dataRange={}",
-                    context.getTriggerTime(), context.getAnalysisTime(), context.getTimeRangeDescription());
+            if (aiReport == null) {
+                log.info("📋 开始多 Agent 协作分析: fingerprint={}, db={}, table={}",
+                        fingerprint, template.getDbName(), template.getTableName());
 
-            // 2. 调用多 Agent 协调器进行协作分析
-            log.info("🤖 调用多 Agent 协调器进行协作分析...");
-            String aiReport = multiAgentCoordinator.analyze(context);
+                // 1. 创建数据快照（AnalysisContext）
+                AnalysisContext context = buildAnalysisContext(template);
+                log.info("📸 数据快照创建完成: triggerTime={}, analysisTime={}, dataRange={}",
+                        context.getTriggerTime(), context.getAnalysisTime(), context.getTimeRangeDescription());
 
-            log.info("✅ 多 Agent 协作分析完成: fingerprint={}, 报告长度={} 字符", fingerprint, aiReport.length());
+                // 2. 调用多 Agent 协调器进行协作分析（诊断查询发往模板所属实例）
+                log.info("🤖 调用多 Agent 协调器进行协作分析...");
+                aiReport = analyzeOnInstance(template, context);
+                template.setReportSourceFingerprint(null);
+
+                log.info("✅ 多 Agent 协作分析完成: fingerprint={}, 报告长度={} 字符", fingerprint, aiReport.length());
+            }
 
             // 3. 保存报告到 Template
             template.setAiAnalysisReport(aiReport);
             template.setStatus(SlowQueryTemplate.AnalysisStatus.SUCCESS);
+            template.setAnalyzedTime(LocalDateTime.now());
+            // 复用的报告按来源报告的分析时间登记，连续复用不会延长其时效
+            familyIndex.recordAnalysis(template, reused != null ? reused.analyzedTime() : template.getAnalyzedTime());
 
             // 3.5 【新增】插入通知队列（事件驱动，解决状态覆盖问题）
             insertNotificationQueue(template);
@@ -269,6 +421,70 @@ public class AnalysisService {
         }
     }
 
+    /**
+     * 在模板所属实例上执行多 Agent 分析
+     *
+     * 默认实例（instanceId 为空）使用默认目标库；其他实例必须有可用连接（多实例监控运行中），
+     * 否则拒绝诊断：发往默认目标库的元数据/EXPLAIN 查询会得出错误的结论
+     *
+     * @param template 模板
+     * @param context  分析上下文
+     * @return 诊断报告
+     */
+    private String analyzeOnInstance(SlowQueryTemplate template, AnalysisContext context) {
+        Long instanceId = template.getInstanceId();
+        if (instanceId == null) {
+            return multiAgentCoordinator.analyze(context);
+        }
+        JdbcTemplate target = dynamicDataSourceManager.getJdbcTemplate(instanceId);
+        if (target == null) {
+            throw new IllegalStateException("实例 " + instanceId + " 当前没有可用连接，拒绝在默认目标库上诊断该实例的慢查询");
+        }
+        return DiagnosticTarget.callWith(target, () -> multiAgentCoordinator.analyze(context));
+    }
+
+    /**
+     * 复用相似模板的报告
+     *
+     * @param template 待分析的模板
+     * @return 复用的报告（带复用说明）及来源报告的分析时间，没有可复用的报告时返回 null
+     */
+    private ReusedReport reuseFamilyReport(SlowQueryTemplate template) {
+        TemplateFamilyIndex.Match match = familyIndex.findReusable(template).orElse(null);
+        if (match == null) {
+            return null;
+        }
+        SlowQueryTemplate source = templateRepo.findBySqlFingerprint(match.reportFingerprint()).orElse(null);
+        if (source == null || source.getStatus() != SlowQueryTemplate.AnalysisStatus.SUCCESS
+                || source.getAiAnalysisReport() == null) {
+            return null;
+        }
+        // 来源报告本身已超过复用时效（例如预热时按复用者的时间登记）：重新分析
+        if (!familyIndex.isFresh(source.getAnalyzedTime())) {
+            return null;
+        }
+
+        template.setReportSourceFingerprint(source.getSqlFingerprint());
+        log.info("♻️ 复用相似模板报告: fingerprint={}, source={}, similarity={}",
+                template.getSqlFingerprint(), source.getSqlFingerprint(), match.similarity());
+
+        String report = "> ♻️ 本报告复用自相似 SQL 模板（ID: " + source.getId()
+                + "，相似度约 " + Math.round(match.similarity() * 100) + "%，涉及相同的表），未重新调用 AI 分析。\n"
+                + "> 原模板：`" + source.getSqlTemplate() + "`\n"
+                + "> 如需针对本 SQL 单独分析，请使用「重新分析」。\n\n"
+                + source.getAiAnalysisReport();
+        return new ReusedReport(report, source.getAnalyzedTime());
+    }
+
+    /**
+     * 复用的报告
+     *
+     * @param report       报告内容（带复用说明）
+     * @param analyzedTime 来源报告由 AI 生成的时间
+     */
+    private record ReusedReport(String report, LocalDateTime analyzedTime) {
+    }
+
     /**
      * 构建分析上下文（数据快照）
      *
@@ -341,52 +557,6 @@ public class AnalysisService {
         return template.shouldNotify(coolDownHours, degradationMultiplier, stats.getAvgQueryTime());
     }
 
-    /**
-     * 提取表名（简单实现）
-     *
-     * @param sql SQL 语句
-     * @return 表名
-     */
-    private String extractTableName(String sql) {
-        try {
-            String upperSql = sql.toUpperCase().replaceAll("\\s+", " ");
-
-            // FROM table_name
-            int fromIndex = upperSql.indexOf(" FROM ");
-            if (fromIndex > 0) {
-                int start = fromIndex + 6;
-                int end = upperSql.indexOf(' ', start);
-                if (end == -1) end = upperSql.indexOf('(', start);
-                if (end == -1) end = upperSql.length();
-                return sql.substring(start, end).trim().replaceAll("[`;\"]", "");
-            }
-
-            // UPDATE table_name
-            int updateIndex = upperSql.indexOf("UPDATE ");
-            if (updateIndex == 0) {
-                int start = 7;
-                int end = upperSql.indexOf(' ', start);
-                if (end == -1) end = upperSql.length();
-                return sql.substring(start, end).trim().replaceAll("[`;\"]", "");
-            }
-
-            // INSERT INTO table_name
-            int insertIndex = upperSql.indexOf("INSERT INTO ");
-            if (insertIndex == 0) {
-                int start = 12;
-                int end = upperSql.indexOf(' ', start);
-                if (end == -1) end = upperSql.indexOf('(', start);
-                if (end == -1) end = upperSql.length();
-                return sql.substring(start, end).trim().replaceAll("[`;\"]", "");
-            }
-
-        } catch (Exception e) {
-            log.debug("提取表名失败: {}", e.getMessage());
-        }
-
-        return "unknown";
-    }
-
     /**
      * 格式化时间
      *
@@ -400,111 +570,6 @@ public class AnalysisService {
         return time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
     }
 
-    /**
-     * 增量更新 Template 的统计字段
-     *
-     * 核心逻辑：
-     * - 使用增量算法更新平均值：新平均值 = (旧平均值 * 旧数量 + 新值) / (旧数量 + 1)
-     * - 更新最大值：如果新值 > 旧最大值，则更新
-     * - 更新出现次数：旧数量 + 1
-     *
-     * @param template 模板记录
-     * @param slowLog 新的慢查询日志
-     */
-    private void updateTemplateStatistics(SlowQueryTemplate template, SlowQueryLog slowLog) {
-        // 更新时间信息
-        template.setLastSeenTime(LocalDateTime.now());
-
-        // 获取当前统计值
-        Long oldCount = template.getOccurrenceCount();
-        if (oldCount == null) {
-            oldCount = 0L;
-        }
-
-        // 1. 更新出现次数
-        template.setOccurrenceCount(oldCount + 1);
-
-        // 2. 更新查询耗时统计
-        Double oldAvgQueryTime = template.getAvgQueryTime();
-        Double oldMaxQueryTime = template.getMaxQueryTime();
-        double newQueryTime = slowLog.getQueryTime();
-
-        if (oldAvgQueryTime != null && oldCount > 0) {
-            // 增量更新平均值
-            template.setAvgQueryTime((oldAvgQueryTime * oldCount + newQueryTime) / (oldCount + 1));
-        } else {
-            // 首次设置
-            template.setAvgQueryTime(newQueryTime);
-        }
-
-        // 更新最大值
-        if (oldMaxQueryTime == null || newQueryTime > oldMaxQueryTime) {
-            template.setMaxQueryTime(newQueryTime);
-        }
-
-        // 3. 更新锁等待时间统计
-        Double oldAvgLockTime = template.getAvgLockTime();
-        Double oldMaxLockTime = template.getMaxLockTime();
-        double newLockTime = slowLog.getLockTime();
-
-        if (oldAvgLockTime != null && oldCount > 0) {
-            template.setAvgLockTime((oldAvgLockTime * oldCount + newLockTime) / (oldCount + 1));
-        } else {
-            template.setAvgLockTime(newLockTime);
-        }
-
-        if (oldMaxLockTime == null || newLockTime > oldMaxLockTime) {
-            template.setMaxLockTime(newLockTime);
-        }
-
-        // 4. 更新返回行数统计
-        Double oldAvgRowsSent = template.getAvgRowsSent();
-        Long oldMaxRowsSent = template.getMaxRowsSent();
-        Long newRowsSent = slowLog.getRowsSent();
-
-        if (newRowsSent != null) {
-            if (oldAvgRowsSent != null && oldCount > 0) {
-                template.setAvgRowsSent((oldAvgRowsSent * oldCount + newRowsSent) / (oldCount + 1));
-            } else {
-                template.setAvgRowsSent(newRowsSent.doubleValue());
-            }
-
-            if (oldMaxRowsSent == null || newRowsSent > oldMaxRowsSent) {
-                template.setMaxRowsSent(newRowsSent);
-            }
-        }
-
-        // 5. 更新扫描行数统计
-        Double oldAvgRowsExamined = template.getAvgRowsExamined();
-        Long oldMaxRowsExamined = template.getMaxRowsExamined();
-        Long newRowsExamined = slowLog.getRowsExamined();
-
-        if (newRowsExamined != null) {
-            if (oldAvgRowsExamined != null && oldCount > 0) {
-                template.setAvgRowsExamined((oldAvgRowsExamined * oldCount + newRowsExamined) / (oldCount + 1));
-            } else {
-                template.setAvgRowsExamined(newRowsExamined.doubleValue());
-            }
-
-            if (oldMaxRowsExamined == null || newRowsExamined > oldMaxRowsExamined) {
-                template.setMaxRowsExamined(newRowsExamined);
-            }
-        }
-
-        // 6. 更新严重程度（如果为 NULL 或根据最新的平均耗时重新计算）
-        if (template.getSeverityLevel() == null) {
-            double severityThreshold = properties.getNotify().getSeverityThreshold();
-            Double avgQueryTime = template.getAvgQueryTime();
-            if (avgQueryTime != null) {
-                com.dbdoctor.common.enums.SeverityLevel newSeverity =
-                        com.dbdoctor.common.enums.SeverityLevel.fromQueryTime(avgQueryTime, severityThreshold);
-                template.setSeverityLevel(newSeverity);
-                log.debug("🔄 更新 severityLevel: fingerprint={}, severity={}, avgQueryTime={}",
-                        template.getSqlFingerprint(), newSeverity, avgQueryTime);
-            }
-        }
-    }
-
     /**
      * 从 Template 构建 QueryStatisticsDTO 对象
      *
@@ -559,6 +624,7 @@ public class AnalysisService {
                     .queryTime(template.getAvgQueryTime())
                     .lockTime(template.getAvgLockTime())
                     .rowsExamined(template.getMaxRowsExamined())
+                    .queryTimeSketch(template.getQueryTimeSketch())
                     .analyzedTime(LocalDateTime.now())
                     .status(NotificationQueue.NotificationStatus.PENDING)
                     .build();
@@ -0,0 +1,211 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.PreparedSlowQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 指纹爆炸保护
+ *
+ * 词法器已经折叠了 IN 列表、VALUES 多行和 ORM 别名，但动态拼接的 SQL（列顺序、生成的标识符等）
+ * 仍可能让同一张表在短时间内产生大量新指纹；每个新指纹都会新建模板并触发一次多 Agent 分析
+ *
+ * 处理方式：
+ * - 按（实例, 主表）统计每分钟新出现的指纹数
+ * - 超过阈值后进入保护状态（持续 cooldownMinutes 分钟）
+ * - 保护期间，新指纹的近似模板（忽略大小写、空白、标识符中的数字、常量列表长度）与已有模板相同时，
+ *   合并到最早出现的那个模板，不再新建模板
+ *
+ * 只在写入阶段（新模板创建前）调用，由一把锁保护
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+public class FingerprintExplosionGuard {
+
+    private final boolean enabled;
+    private final int maxNewPerMinute;
+    private final int cooldownMinutes;
+    private final int maxTrackedTemplates;
+    private final LongSupplier clock;
+
+    private final Object lock = new Object();
+
+    /**
+     * 近似模板键 → 最早出现的指纹（LRU）
+     */
+    private final LinkedHashMap<Long, String> canonical;
+
+    /**
+     * 实例/表 → 每分钟新指纹计数
+     */
+    private final Map<String, TableCounter> counters = new HashMap<>();
+
+    private long lastCleanupMinute;
+    private long mergedTotal;
+    private long tripCount;
+
+    @Autowired
+    public FingerprintExplosionGuard(SlowLogMonitorProperties properties) {
+        this(properties, System::currentTimeMillis);
+    }
+
+    FingerprintExplosionGuard(SlowLogMonitorProperties properties, LongSupplier clock) {
+        SlowLogMonitorProperties.Fingerprint.ExplosionGuard config = properties.getFingerprint().getExplosionGuard();
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.maxNewPerMinute = Math.max(1, config.getMaxNewPerMinute());
+        this.cooldownMinutes = Math.max(1, config.getCooldownMinutes());
+        this.maxTrackedTemplates = Math.max(16, config.getMaxTrackedTemplates());
+        this.clock = clock;
+        this.canonical = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > FingerprintExplosionGuard.this.maxTrackedTemplates;
+            }
+        };
+    }
+
+    /**
+     * 新指纹即将创建模板前调用
+     *
+     * @param prepared 预处理后的慢查询（指纹尚未存在于模板表）
+     * @return 应使用的指纹：保护期间返回已有近似模板的指纹，否则返回原指纹
+     */
+    public String resolve(PreparedSlowQuery prepared) {
+        String fingerprint = prepared.getFingerprint();
+        if (!enabled || prepared.getSqlTemplate() == null) {
+            return fingerprint;
+        }
+
+        Long instanceId = prepared.getSlowLog() != null ? prepared.getSlowLog().getInstanceId() : null;
+        String table = instanceId + "/" + prepared.getTableName();
+        long key = coarseKey(instanceId, prepared.getSqlTemplate());
+        long minute = clock.getAsLong() / 60_000L;
+
+        synchronized (lock) {
+            if (minute != lastCleanupMinute) {
+                // 清理长时间没有新指纹的表
+                counters.values().removeIf(counter -> counter.minute < minute - cooldownMinutes
+                        && counter.trippedUntil < minute);
+                lastCleanupMinute = minute;
+            }
+            TableCounter counter = counters.computeIfAbsent(table, k -> new TableCounter());
+            if (counter.minute != minute) {
+                counter.minute = minute;
+                counter.count = 0;
+            }
+            counter.count++;
+            if (counter.count > maxNewPerMinute && counter.trippedUntil < minute) {
+                counter.trippedUntil = minute + cooldownMinutes;
+                tripCount++;
+                log.warn("⚠️ 指纹爆炸: table={}, 每分钟新指纹 {} 个，未来 {} 分钟合并近似模板",
+                        table, counter.count, cooldownMinutes);
+            }
+
+            String existing = canonical.get(key);
+            if (existing == null) {
+                canonical.put(key, fingerprint);
+                return fingerprint;
+            }
+            if (counter.trippedUntil >= minute && !existing.equals(fingerprint)) {
+                mergedTotal++;
+                log.debug("🔗 合并近似模板: {} → {}", fingerprint, existing);
+                return existing;
+            }
+            return fingerprint;
+        }
+    }
+
+    /**
+     * 近似模板对应的已有模板不存在（例如已被清理）时，改由当前指纹代表该近似模板
+     *
+     * @param prepared 预处理后的慢查询
+     */
+    public void register(PreparedSlowQuery prepared) {
+        if (!enabled || prepared.getSqlTemplate() == null) {
+            return;
+        }
+        Long instanceId = prepared.getSlowLog() != null ? prepared.getSlowLog().getInstanceId() : null;
+        long key = coarseKey(instanceId, prepared.getSqlTemplate());
+        synchronized (lock) {
+            canonical.put(key, prepared.getFingerprint());
+        }
+    }
+
+    /**
+     * 近似模板键：忽略大小写与空白，去掉数字（标识符中的序号），? 列表统一为一个 ?
+     */
+    static long coarseKey(Long instanceId, String template) {
+        StringBuilder sb = new StringBuilder(template.length() + 8);
+        if (instanceId != null) {
+            sb.append(instanceId).append('/');
+        }
+        int n = template.length();
+        for (int i = 0; i < n; i++) {
+            char c = template.charAt(i);
+            if (c <= ' ' || (c >= '0' && c <= '9') || c == '+') {
+                continue;
+            }
+            if (c == ',' && endsWithValue(sb)) {
+                // ?, ?, ? → ?
+                int j = i + 1;
+                while (j < n && template.charAt(j) == ' ') {
+                    j++;
+                }
+                if (j < n && template.charAt(j) == '?') {
+                    i = j;
+                    continue;
+                }
+            }
+            sb.append(c >= 'a' && c <= 'z' ? (char) (c - 32) : c);
+        }
+        return SqlFingerprintUtil.rawHash64(sb.toString());
+    }
+
+    private static boolean endsWithValue(StringBuilder sb) {
+        return sb.length() > 0 && sb.charAt(sb.length() - 1) == '?';
+    }
+
+    /**
+     * 保护指标
+     *
+     * @return 记录的近似模板数、合并次数、触发次数、当前处于保护状态的表
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long minute = clock.getAsLong() / 60_000L;
+        synchronized (lock) {
+            List<String> tripped = new ArrayList<>();
+            counters.forEach((table, counter) -> {
+                if (counter.trippedUntil >= minute) {
+                    tripped.add(table);
+                }
+            });
+            metrics.put("enabled", enabled);
+            metrics.put("trackedTemplates", canonical.size());
+            metrics.put("mergedTotal", mergedTotal);
+            metrics.put("tripCount", tripCount);
+            metrics.put("trippedTables", tripped);
+        }
+        return metrics;
+    }
+
+    private static final class TableCounter {
+        private long minute = -1;
+        private int count;
+        private long trippedUntil = -1;
+    }
+}
@@ -296,6 +296,7 @@ public class NotificationScheduler {
         template.setAvgQueryTime(queue.getQueryTime());
         template.setAvgLockTime(queue.getLockTime());
         template.setMaxRowsExamined(queue.getRowsExamined());
+        template.setQueryTimeSketch(queue.getQueryTimeSketch());
         template.setFirstSeenTime(queue.getAnalyzedTime());
         template.setLastSeenTime(queue.getAnalyzedTime());
         template.setOccurrenceCount(1L); // 队列中每条记录代表一次分析
@@ -1,6 +1,7 @@
 package com.dbdoctor.service;
 
 import com.dbdoctor.common.enums.SeverityLevel;
+import com.dbdoctor.common.util.LatencySketch;
 import com.dbdoctor.entity.SlowQueryTemplate;
 import com.dbdoctor.model.NotificationBatchReport;
 import com.dbdoctor.model.QueryStatisticsDTO;
@@ -401,6 +402,12 @@ public class NotifyService {
           .append("<strong>平均耗时：</strong>").append(String.format("%.3f 秒", avgQueryTime)).append("<br>")
           .append("<strong>最大耗时：</strong>").append(String.format("%.3f 秒", maxQueryTime));
 
+        LatencySketch.Percentiles percentiles = template.queryTimePercentiles();
+        if (percentiles.p50() != null) {
+            sb.append("<br><strong>P50 / P95 / P99：</strong>").append(String.format("%.3f / %.3f / %.3f 秒",
+                    percentiles.p50(), percentiles.p95(), percentiles.p99()));
+        }
+
         if (template.getAvgLockTime() != null && template.getAvgLockTime() > 0) {
             sb.append("<br><strong>平均锁时间：</strong>").append(String.format("%.3f 秒", template.getAvgLockTime()));
         }
@@ -0,0 +1,271 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.util.SqlFingerprintLexer;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL 参数画像
+ *
+ * 指纹把常量替换成 ? 之后，同一个模板 30ms 和 30s 的执行就无法区分了；慢往往由参数值决定
+ * （大租户、热点主键、数据倾斜）。这里按模板、按参数位置记录高频参数值及其耗时：
+ * - 每个位置一个 Space-Saving 结构（固定 k 个计数器），在有限内存内找出出现最多的值，计数误差不超过 error
+ * - 每个计数器同时累计该值的总耗时、最大耗时，与整个位置的平均耗时对比得到倾斜系数
+ * - 模板数量受 LRU 上限约束；数据只在内存中，重启后重新累计
+ * - 只在写入事务提交后记录：批量写入失败改为逐条重试时不会重复记录
+ *
+ * 参数值在预处理阶段已按脱敏规则处理
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Component
+public class ParameterProfiler {
+
+    private final boolean enabled;
+    private final int maxPositions;
+    private final int heavyHitters;
+
+    private final LinkedHashMap<String, TemplateProfile> profiles;
+
+    public ParameterProfiler(SlowLogMonitorProperties properties) {
+        SlowLogMonitorProperties.ParameterProfile config = properties.getParameterProfile();
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.maxPositions = Math.max(1, config.getMaxPositions());
+        this.heavyHitters = Math.max(1, config.getHeavyHitters());
+        int maxTemplates = Math.max(1, config.getMaxTemplates());
+        this.profiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TemplateProfile> eldest) {
+                return size() > maxTemplates;
+            }
+        };
+    }
+
+    /**
+     * 在当前写入事务提交后记录参数值（没有事务时立即记录）
+     *
+     * @param observations 本批次的参数观测
+     */
+    public void recordAfterCommit(List<Observation> observations) {
+        if (!enabled || observations.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            observations.forEach(this::record);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                observations.forEach(ParameterProfiler.this::record);
+            }
+        });
+    }
+
+    private void record(Observation observation) {
+        record(observation.fingerprint(), observation.parameters(), observation.queryTime());
+    }
+
+    /**
+     * 记录一次执行的参数值
+     *
+     * @param fingerprint 模板指纹
+     * @param parameters  参数值（已脱敏）
+     * @param queryTime   执行耗时（秒）
+     */
+    public void record(String fingerprint, List<SqlFingerprintLexer.Parameter> parameters, Double queryTime) {
+        if (!enabled || fingerprint == null || parameters == null || parameters.isEmpty()) {
+            return;
+        }
+        double time = queryTime != null ? queryTime : 0.0;
+
+        TemplateProfile profile;
+        synchronized (profiles) {
+            profile = profiles.computeIfAbsent(fingerprint, k -> new TemplateProfile());
+        }
+        synchronized (profile) {
+            profile.executions++;
+            profile.sumQueryTime += time;
+            for (SqlFingerprintLexer.Parameter parameter : parameters) {
+                if (parameter.position() >= maxPositions) {
+                    continue;
+                }
+                PositionProfile position = profile.positions.computeIfAbsent(parameter.position(),
+                        k -> new PositionProfile(parameter.column(), heavyHitters));
+                position.offer(parameter.value(), time);
+            }
+        }
+    }
+
+    /**
+     * 模板的参数画像
+     *
+     * 每个位置的高频值按总耗时降序排列（最能解释耗时的值排在前面）：
+     * - count / errorBound：出现次数及其上界误差（Space-Saving 保证真实次数在 [count - errorBound, count] 内）
+     * - share：出现次数占该位置全部观测的比例
+     * - avgQueryTime / maxQueryTime：该值对应执行的平均/最大耗时
+     * - queryTimeShare：该值的总耗时占该位置全部耗时的比例
+     * - skew：该值的平均耗时 / 该位置的平均耗时（明显大于 1 说明该值更慢）
+     *
+     * @param fingerprint 模板指纹
+     * @return 画像，没有记录时返回 null
+     */
+    public Map<String, Object> snapshot(String fingerprint) {
+        TemplateProfile profile;
+        synchronized (profiles) {
+            profile = profiles.get(fingerprint);
+        }
+        if (profile == null) {
+            return null;
+        }
+
+        synchronized (profile) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("executions", profile.executions);
+            result.put("avgQueryTime", round(profile.executions > 0 ? profile.sumQueryTime / profile.executions : 0.0));
+
+            List<Map<String, Object>> positions = new ArrayList<>();
+            profile.positions.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> positions.add(entry.getValue().snapshot(entry.getKey())));
+            result.put("positions", positions);
+            return result;
+        }
+    }
+
+    public int size() {
+        synchronized (profiles) {
+            return profiles.size();
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    private static final class TemplateProfile {
+        private long executions;
+        private double sumQueryTime;
+        private final Map<Integer, PositionProfile> positions = new LinkedHashMap<>();
+    }
+
+    /**
+     * 单个参数位置：Space-Saving 高频值 + 耗时
+     */
+    private static final class PositionProfile {
+
+        private final String column;
+        private final Counter[] counters;
+        private int size;
+        private long observations;
+        private double sumQueryTime;
+
+        PositionProfile(String column, int capacity) {
+            this.column = column;
+            this.counters = new Counter[capacity];
+        }
+
+        void offer(String value, double queryTime) {
+            observations++;
+            sumQueryTime += queryTime;
+
+            for (int k = 0; k < size; k++) {
+                if (counters[k].value.equals(value)) {
+                    counters[k].add(queryTime);
+                    return;
+                }
+            }
+            if (size < counters.length) {
+                Counter counter = new Counter(value, 0);
+                counter.add(queryTime);
+                counters[size++] = counter;
+                return;
+            }
+
+            // 替换计数最小的值：新值继承其计数作为误差上界，耗时只累计新值自己的观测
+            int min = 0;
+            for (int k = 1; k < size; k++) {
+                if (counters[k].count < counters[min].count) {
+                    min = k;
+                }
+            }
+            Counter counter = new Counter(value, counters[min].count);
+            counter.add(queryTime);
+            counters[min] = counter;
+        }
+
+        Map<String, Object> snapshot(int position) {
+            double avg = observations > 0 ? sumQueryTime / observations : 0.0;
+            List<Counter> sorted = new ArrayList<>(size);
+            for (int k = 0; k < size; k++) {
+                sorted.add(counters[k]);
+            }
+            sorted.sort(Comparator.comparingDouble((Counter c) -> c.sumQueryTime).reversed());
+
+            List<Map<String, Object>> values = new ArrayList<>(sorted.size());
+            for (Counter counter : sorted) {
+                double valueAvg = counter.observed > 0 ? counter.sumQueryTime / counter.observed : 0.0;
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("value", counter.value);
+                item.put("count", counter.count);
+                item.put("errorBound", counter.error);
+                item.put("share", round((double) counter.count / observations));
+                item.put("avgQueryTime", round(valueAvg));
+                item.put("maxQueryTime", round(counter.maxQueryTime));
+                item.put("queryTimeShare", round(sumQueryTime > 0 ? counter.sumQueryTime / sumQueryTime : 0.0));
+                item.put("skew", round(avg > 0 ? valueAvg / avg : 0.0));
+                values.add(item);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("position", position);
+            result.put("column", column);
+            result.put("observations", observations);
+            result.put("avgQueryTime", round(avg));
+            result.put("topValues", values);
+            return result;
+        }
+    }
+
+    private static final class Counter {
+        private final String value;
+        private long count;
+        private final long error;
+        private long observed;
+        private double sumQueryTime;
+        private double maxQueryTime;
+
+        Counter(String value, long error) {
+            this.value = value;
+            this.count = error;
+            this.error = error;
+        }
+
+        void add(double queryTime) {
+            count++;
+            observed++;
+            sumQueryTime += queryTime;
+            maxQueryTime = Math.max(maxQueryTime, queryTime);
+        }
+    }
+
+    /**
+     * 一次执行的参数观测
+     *
+     * @param fingerprint 模板指纹
+     * @param parameters  参数值（已脱敏）
+     * @param queryTime   执行耗时（秒）
+     */
+    public record Observation(String fingerprint, List<SqlFingerprintLexer.Parameter> parameters, Double queryTime) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.dbdoctor.service;
 
 import com.dbdoctor.common.enums.SeverityLevel;
+import com.dbdoctor.common.util.LatencySketch;
 import com.dbdoctor.entity.SlowQueryTemplate;
 import com.dbdoctor.repository.SlowQuerySampleRepository;
 import com.dbdoctor.repository.SlowQueryTemplateRepository;
@@ -34,6 +35,7 @@ public class ReportService {
     private final SlowQueryTemplateRepository templateRepository;
     private final SlowQuerySampleRepository sampleRepository;
     private final AnalysisService analysisService;
+    private final ParameterProfiler parameterProfiler;
 
     /**
      * 分页查询慢查询报表
@@ -97,13 +99,17 @@ public class ReportService {
         Map<String, Object> result = new HashMap<>();
         result.put("id", template.getId());
         result.put("fingerprint", template.getSqlFingerprint());
+        result.put("instanceId", template.getInstanceId());
         result.put("dbName", template.getDbName() != null ? template.getDbName() : "");
         result.put("tableName", template.getTableName() != null ? template.getTableName() : "");
+        result.put("tableNames", template.getTableNames() != null ? template.getTableNames() : "");
         result.put("sqlTemplate", template.getSqlTemplate() != null ? template.getSqlTemplate() : "");
         result.put("sqlFingerprint", template.getSqlFingerprint());
         result.put("avgQueryTime", template.getAvgQueryTime() != null ? template.getAvgQueryTime() : 0.0);
         result.put("maxQueryTime", template.getMaxQueryTime() != null ? template.getMaxQueryTime() : 0.0);
         result.put("lockTime", 0.0);
+        putPercentiles(result, "queryTime", template.queryTimePercentiles());
+        putPercentiles(result, "lockTime", template.lockTimePercentiles());
         result.put("rowsExamined", 0);
         result.put("rowsSent", 0);
         result.put("occurrenceCount", template.getOccurrenceCount() != null ? template.getOccurrenceCount() : 0L);
@@ -113,6 +119,7 @@ public class ReportService {
                 ? template.getLastSeenTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
                 : "");
         result.put("aiAnalysisReport", template.getAiAnalysisReport() != null ? template.getAiAnalysisReport() : "暂无分析报告");
+        result.put("reportSourceFingerprint", template.getReportSourceFingerprint() != null ? template.getReportSourceFingerprint() : "");
 
         return result;
     }
@@ -124,8 +131,10 @@ public class ReportService {
         Map<String, Object> dto = new HashMap<>();
         dto.put("id", template.getId());
         dto.put("fingerprint", template.getSqlFingerprint());
+        dto.put("instanceId", template.getInstanceId());
         dto.put("dbName", template.getDbName() != null ? template.getDbName() : "");
         dto.put("tableName", template.getTableName() != null ? template.getTableName() : "");
+        dto.put("tableNames", template.getTableNames() != null ? template.getTableNames() : "");
         dto.put("sqlTemplate", template.getSqlTemplate() != null ? template.getSqlTemplate() : "");
         dto.put("avgQueryTime", template.getAvgQueryTime() != null ? template.getAvgQueryTime() : 0.0);
         dto.put("maxQueryTime", template.getMaxQueryTime() != null ? template.getMaxQueryTime() : 0.0);
@@ -160,17 +169,20 @@ public class ReportService {
         // 清空旧的分析报告（可选）
         template.setAiAnalysisReport(null);
 
-        // ✅ 更新最后发现时间为当前时间（确保会被 PendingTaskRetryService 处理）
-        template.setLastSeenTime(java.time.LocalDateTime.now());
-
         // 保存
         templateRepository.save(template);
 
+        // ✅ 更新最后发现时间为当前时间（确保会被 PendingTaskRetryService 处理）
+        // lastSeenTime 与统计列一样不随整行保存写入，单独更新
+        java.time.LocalDateTime now = java.time.LocalDateTime.now();
+        templateRepository.updateLastSeenTime(template.getSqlFingerprint(), now);
+        template.setLastSeenTime(now);
+
         log.info("慢查询已重新提交分析: id={}, fingerprint={}", id, template.getSqlFingerprint());
 
         // ✅ 立即触发异步分析（不等待定时任务）
         log.info("🚀 立即触发 AI 分析: id={}, fingerprint={}", id, template.getSqlFingerprint());
-        analysisService.generateReportAndNotify(template);
+        analysisService.generateReportAndNotify(template, false);
     }
 
     /**
@@ -216,6 +228,30 @@ public class ReportService {
         );
     }
 
+    /**
+     * 获取模板的参数画像（哪些参数值主导了耗时）
+     *
+     * @param templateId 模板 ID
+     * @return 参数画像；自本次启动以来没有带参数的样本时 positions 为空
+     */
+    public Map<String, Object> getParameterProfile(Long templateId) {
+        SlowQueryTemplate template = templateRepository.findById(templateId)
+                .orElseThrow(() -> new IllegalArgumentException("慢查询模板不存在: " + templateId));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", template.getId());
+        result.put("sqlTemplate", template.getSqlTemplate() != null ? template.getSqlTemplate() : "");
+
+        Map<String, Object> profile = parameterProfiler.snapshot(template.getSqlFingerprint());
+        if (profile != null) {
+            result.putAll(profile);
+        } else {
+            result.put("executions", 0L);
+            result.put("positions", List.of());
+        }
+        return result;
+    }
+
     /**
      * 转换样本实体为 DTO
      */
@@ -307,17 +343,21 @@ public class ReportService {
         Page<SlowQueryTemplate> result = templateRepository.findAll(pageable);
 
         var records = result.getContent().stream()
-                .map(template -> Map.of(
-                        "id", template.getId(),
-                        "fingerprint", template.getSqlFingerprint(),
-                        "dbName", template.getDbName() != null ? template.getDbName() : "",
-                        "tableName", template.getTableName() != null ? template.getTableName() : "",
-                        "sqlTemplate", template.getSqlTemplate() != null ? template.getSqlTemplate() : "",
-                        "maxQueryTime", template.getMaxQueryTime() != null ? template.getMaxQueryTime() : 0.0,
-                        "avgQueryTime", template.getAvgQueryTime() != null ? template.getAvgQueryTime() : 0.0,
-                        "occurrenceCount", template.getOccurrenceCount() != null ? template.getOccurrenceCount() : 0L,
-                        "severityLevel", template.getSeverityLevel() != null ? template.getSeverityLevel().getDisplayName() : "🟢 正常"
-                ))
+                .map(template -> {
+                    // 分位数没有数据时为 null，不能用 Map.of
+                    Map<String, Object> record = new HashMap<>();
+                    record.put("id", template.getId());
+                    record.put("fingerprint", template.getSqlFingerprint());
+                    record.put("dbName", template.getDbName() != null ? template.getDbName() : "");
+                    record.put("tableName", template.getTableName() != null ? template.getTableName() : "");
+                    record.put("sqlTemplate", template.getSqlTemplate() != null ? template.getSqlTemplate() : "");
+                    record.put("maxQueryTime", template.getMaxQueryTime() != null ? template.getMaxQueryTime() : 0.0);
+                    record.put("avgQueryTime", template.getAvgQueryTime() != null ? template.getAvgQueryTime() : 0.0);
+                    putPercentiles(record, "queryTime", template.queryTimePercentiles());
+                    record.put("occurrenceCount", template.getOccurrenceCount() != null ? template.getOccurrenceCount() : 0L);
+                    record.put("severityLevel", template.getSeverityLevel() != null ? template.getSeverityLevel().getDisplayName() : "🟢 正常");
+                    return record;
+                })
                 .toList();
 
         return Map.of(
@@ -325,4 +365,13 @@ public class ReportService {
                 "total", result.getTotalElements()
         );
     }
+
+    /**
+     * 写入 p50 / p95 / p99（升级前的模板在有新样本前没有分布数据，值为 null）
+     */
+    private static void putPercentiles(Map<String, Object> target, String prefix, LatencySketch.Percentiles percentiles) {
+        target.put(prefix + "P50", percentiles.p50());
+        target.put(prefix + "P95", percentiles.p95());
+        target.put(prefix + "P99", percentiles.p99());
+    }
 }
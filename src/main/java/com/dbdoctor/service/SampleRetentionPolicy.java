@@ -0,0 +1,334 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.SlowQuerySample;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter;
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter.RetentionRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+/**
+ * 样本保留策略（按指纹限制 slow_query_sample 的行数）
+ *
+ * 每个指纹只保留三类样本，其余样本在写入时增量清理（不是夜间批量清理）：
+ * 1. 均匀蓄水池：reservoir-size 个槽位，按执行次数加权的蓄水池抽样（Chao 算法，单条日志即 Algorithm R），
+ *    槽位记录在 reservoir_slot 列，被新样本替换的旧样本置空槽位
+ * 2. 耗时最长的 slowest 条
+ * 3. 最近的 recent 条
+ *
+ * 某指纹新增的样本数达到 prune-slack 时清理一次：只读取 (id, query_time, captured_at, reservoir_slot)，
+ * 在内存中选出要删除的主键后批量删除，启用后写入的样本每个指纹最多保留 reservoir-size + slowest + recent + prune-slack 行
+ *
+ * 精确统计不受影响：次数、总和、最大值在写入样本前已计入模板增量
+ *
+ * 注意：
+ * - 蓄水池状态（已见执行次数、已占用槽位）在内存中，首次遇到某指纹时从模板统计和 reservoir_slot 列恢复
+ * - 写入事务回滚时丢弃涉及指纹的状态，下次重新恢复
+ * - 清理不可恢复，默认关闭；启用前写入的历史样本（retention_managed 为空）默认不参与清理，
+ *   只有开启 prune-legacy-samples 才会一并清理
+ * - 历史样本没有槽位，空槽位由新样本填充；恢复后第一次写入即清理一次上次运行未清理的余量
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+public class SampleRetentionPolicy {
+
+    private final SlowQuerySampleBatchWriter sampleWriter;
+    private final TemplateStatsAccumulator statsAccumulator;
+    private final boolean enabled;
+    private final int reservoirSize;
+    private final int slowest;
+    private final int recent;
+    private final int pruneSlack;
+    private final boolean pruneLegacy;
+
+    private final ConcurrentHashMap<String, Reservoir> reservoirs = new ConcurrentHashMap<>();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+    private final LongAdder pruneRuns = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+
+    public SampleRetentionPolicy(SlowQuerySampleBatchWriter sampleWriter,
+                                 TemplateStatsAccumulator statsAccumulator,
+                                 SlowLogMonitorProperties properties) {
+        SlowLogMonitorProperties.SampleRetention config = properties.getSampleRetention();
+        this.sampleWriter = sampleWriter;
+        this.statsAccumulator = statsAccumulator;
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.reservoirSize = Math.max(1, config.getReservoirSize());
+        this.slowest = Math.max(0, config.getSlowest());
+        this.recent = Math.max(1, config.getRecent());
+        this.pruneSlack = Math.max(1, config.getPruneSlack());
+        this.pruneLegacy = Boolean.TRUE.equals(config.getPruneLegacySamples());
+    }
+
+    /**
+     * 开始一个写入批次（在写入事务内调用）
+     *
+     * @return 批次
+     */
+    public Batch newBatch() {
+        Batch batch = new Batch();
+        if (enabled && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        batch.touched.forEach(reservoirs::remove);
+                    }
+                }
+            });
+        }
+        return batch;
+    }
+
+    /**
+     * 一个写入批次：先为每条样本分配槽位，写入前释放被替换的槽位，写入后按需清理
+     */
+    public final class Batch {
+
+        /**
+         * 本批次内占用槽位的样本（同一槽位在批次内被再次替换时直接置空）
+         */
+        private final Map<String, Map<Integer, SlowQuerySample>> holders = new HashMap<>();
+        private final List<Map.Entry<String, Integer>> released = new ArrayList<>();
+        private final Set<String> touched = new LinkedHashSet<>();
+
+        private Batch() {
+        }
+
+        /**
+         * 为样本分配蓄水池槽位（样本尚未写入）
+         *
+         * @param sample     样本
+         * @param executions 样本代表的执行次数（预聚合记录大于 1）
+         * @param template   样本所属模板（首次遇到该指纹时用于恢复已见执行次数）
+         */
+        public void offer(SlowQuerySample sample, long executions, SlowQueryTemplate template) {
+            if (!enabled) {
+                return;
+            }
+            sample.setRetentionManaged(true);
+            String fingerprint = sample.getSqlFingerprint();
+            Reservoir reservoir = reservoirs.computeIfAbsent(fingerprint, key -> load(key, template, released));
+            touched.add(fingerprint);
+
+            Admission admission;
+            synchronized (reservoir) {
+                admission = reservoir.offer(executions, ThreadLocalRandom.current());
+            }
+            if (admission.slot() < 0) {
+                return;
+            }
+            admitted.increment();
+            Map<Integer, SlowQuerySample> slots = holders.computeIfAbsent(fingerprint, key -> new HashMap<>());
+            if (admission.replacing()) {
+                replaced.increment();
+                SlowQuerySample previous = slots.get(admission.slot());
+                if (previous != null) {
+                    previous.setReservoirSlot(null);
+                } else {
+                    released.add(Map.entry(fingerprint, admission.slot()));
+                }
+            }
+            sample.setReservoirSlot(admission.slot());
+            slots.put(admission.slot(), sample);
+        }
+
+        /**
+         * 写入样本前调用：释放被替换的槽位
+         */
+        public void beforeInsert() {
+            sampleWriter.releaseReservoirSlots(released);
+        }
+
+        /**
+         * 写入样本后调用：新增样本数达到清理余量的指纹清理一次
+         */
+        public void afterInsert() {
+            for (String fingerprint : touched) {
+                Reservoir reservoir = reservoirs.get(fingerprint);
+                if (reservoir == null) {
+                    continue;
+                }
+                boolean due;
+                synchronized (reservoir) {
+                    due = reservoir.pruneDue(pruneSlack);
+                }
+                if (due) {
+                    prune(fingerprint);
+                }
+            }
+        }
+    }
+
+    private Reservoir load(String fingerprint, SlowQueryTemplate template, List<Map.Entry<String, Integer>> released) {
+        long seen = (template != null && template.getOccurrenceCount() != null ? template.getOccurrenceCount() : 0L)
+                + statsAccumulator.pendingCount(fingerprint);
+        List<Integer> slots = seen > 0 ? sampleWriter.findReservoirSlots(fingerprint) : List.of();
+        for (Integer slot : slots) {
+            if (slot >= reservoirSize) {
+                // 蓄水池调小后多出的槽位
+                released.add(Map.entry(fingerprint, slot));
+            }
+        }
+        return new Reservoir(reservoirSize, seen, slots);
+    }
+
+    private void prune(String fingerprint) {
+        List<Long> evictions = selectEvictions(sampleWriter.findRetentionRows(fingerprint, pruneLegacy),
+                slowest, recent);
+        pruneRuns.increment();
+        if (!evictions.isEmpty()) {
+            pruned.add(sampleWriter.deleteByIds(evictions));
+            log.debug("🧹 样本保留策略清理: fingerprint={}, 删除 {} 条", fingerprint, evictions.size());
+        }
+    }
+
+    /**
+     * 选出要删除的样本：不在蓄水池中、不属于耗时最长的 slowest 条、也不属于最近的 recent 条
+     *
+     * @param rows    指纹的全部样本
+     * @param slowest 保留耗时最长的条数
+     * @param recent  保留最近的条数
+     * @return 要删除的主键
+     */
+    static List<Long> selectEvictions(List<RetentionRow> rows, int slowest, int recent) {
+        if (rows.size() <= slowest + recent) {
+            return List.of();
+        }
+        Set<Long> keep = new HashSet<>();
+        for (RetentionRow row : rows) {
+            if (row.reservoirSlot() != null) {
+                keep.add(row.id());
+            }
+        }
+        rows.stream()
+                .sorted(Comparator.comparingDouble(RetentionRow::queryTime).reversed())
+                .limit(slowest)
+                .forEach(row -> keep.add(row.id()));
+        rows.stream()
+                .sorted(Comparator.comparing(RetentionRow::capturedAt)
+                        .thenComparingLong(RetentionRow::id)
+                        .reversed())
+                .limit(recent)
+                .forEach(row -> keep.add(row.id()));
+
+        List<Long> evictions = new ArrayList<>();
+        for (RetentionRow row : rows) {
+            if (!keep.contains(row.id())) {
+                evictions.add(row.id());
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * 保留策略指标
+     *
+     * @return 跟踪的模板数、进入蓄水池/替换的样本数、清理次数和删除的样本数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("trackedTemplates", reservoirs.size());
+        metrics.put("admitted", admitted.sum());
+        metrics.put("replaced", replaced.sum());
+        metrics.put("pruneRuns", pruneRuns.sum());
+        metrics.put("pruned", pruned.sum());
+        return metrics;
+    }
+
+    /**
+     * 蓄水池分配结果
+     *
+     * @param slot      槽位（-1 表示不进入蓄水池）
+     * @param replacing 是否替换了已占用的槽位
+     */
+    record Admission(int slot, boolean replacing) {
+        static final Admission REJECTED = new Admission(-1, false);
+    }
+
+    /**
+     * 单个指纹的蓄水池状态
+     */
+    static final class Reservoir {
+        private final int size;
+        private final BitSet occupied;
+        private long seen;
+        private int sincePrune;
+        private boolean pruneOnNextBatch;
+
+        Reservoir(int size, long seen, Collection<Integer> slots) {
+            this.size = size;
+            this.occupied = new BitSet(size);
+            this.seen = seen;
+            for (Integer slot : slots) {
+                if (slot >= 0 && slot < size) {
+                    occupied.set(slot);
+                }
+            }
+            // 恢复已有指纹的状态后先清理一次（上次运行未清理的余量；历史样本是否参与由 prune-legacy-samples 决定）
+            this.pruneOnNextBatch = seen > 0;
+        }
+
+        /**
+         * 加权蓄水池抽样：有空槽位时直接占用，否则以 size * weight / seen 的概率随机替换一个槽位
+         *
+         * @param weight 执行次数
+         * @param random 随机数
+         * @return 分配结果
+         */
+        Admission offer(long weight, RandomGenerator random) {
+            long w = Math.max(1L, weight);
+            seen += w;
+            sincePrune++;
+
+            int empty = occupied.nextClearBit(0);
+            if (empty < size) {
+                occupied.set(empty);
+                return new Admission(empty, false);
+            }
+            double probability = Math.min(1.0, (double) size * w / seen);
+            if (random.nextDouble() < probability) {
+                return new Admission(random.nextInt(size), true);
+            }
+            return Admission.REJECTED;
+        }
+
+        /**
+         * 是否需要清理（需要时重置计数）
+         */
+        boolean pruneDue(int slack) {
+            if (pruneOnNextBatch || sincePrune >= slack) {
+                pruneOnNextBatch = false;
+                sincePrune = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+}
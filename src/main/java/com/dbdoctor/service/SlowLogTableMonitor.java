@@ -3,10 +3,16 @@ package com.dbdoctor.service;
 import com.dbdoctor.check.MySqlEnvChecker;
 import com.dbdoctor.config.DataSourceStatusHolder;
 import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.ingest.AdaptivePollController;
+import com.dbdoctor.ingest.IngestCheckpoint;
+import com.dbdoctor.ingest.IngestPipeline;
+import com.dbdoctor.ingest.SlowLogCursorStore;
+import com.dbdoctor.ingest.SlowLogTableMaintenance;
+import com.dbdoctor.ingest.SlowLogTableReader;
 import com.dbdoctor.lifecycle.ShutdownManager;
 import com.dbdoctor.model.SlowQueryLog;
-import com.dbdoctor.repository.SlowQueryTemplateRepository;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -16,35 +22,47 @@ import org.springframework.stereotype.Service;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 慢查询日志表监控服务（自适应轮询版本）
  *
  * 核心机制：
- * 1. 使用 lastCheckTime 作为游标，记录上一次读取到的最后一条日志的时间
- * 2. 启动时初始化为当前时间，避免处理历史旧数据
- * 3. 每次轮询查询 start_time > lastCheckTime 的记录
- * 4. 处理完更新 lastCheckTime 为最新记录的时间
+ * 1. 使用 (lastCheckTime, lastThreadId) 作为键集游标，记录上一次读取到的最后一条日志
+ * 2. 每次轮询查询 (start_time, thread_id) 大于游标的记录，同一微秒内的记录被 LIMIT 切开时不会漏读
+ * 3. 游标持久化到 ingest_cursor 表：只有流水线已写入 H2 的位置才会被保存（见 IngestCheckpoint）
+ * 4. 首次启动从当前时间开始；重启或目标库故障恢复后进入追赶模式，以最大批量连续读取，排空积压后回到自适应轮询
  *
- * 自适应轮询（V2.1 优化）：
- * - 根据慢查询数量自动调整轮询频率
- * - 高负载（>100条/10分钟）：5秒轮询
- * - 中负载（10-100条/10分钟）：15秒轮询
- * - 低负载（<10条/10分钟）：60秒轮询
- * - 避免用户配置错误导致性能问题
+ * 自适应轮询（V3.3 优化，见 AdaptivePollController）：
+ * - 按每次轮询的行数估算到达速率（EWMA），连续计算轮询间隔和批量大小
+ * - 上一页读满（命中 LIMIT）时在专用轮询线程上立即继续读取，积压以最快速度排空，不占用共享的调度线程
+ * - 分析侧积压（采集流水线、analysisExecutor 队列）越高，间隔越长
+ * - 纯内存计算，不再在轮询热路径上查询 H2
+ *
+ * 收割模式（harvest.enabled=true）：
+ * - 定期用 CREATE TABLE ... LIKE + RENAME TABLE 原子轮转 mysql.slow_log，对轮转出来的旧表只做一次流式读取
+ * - 旧表中的数据全部写入 H2 后 DROP，每行只读取一次，表也不会无限增长（无需自动清理）
+ * - 权限不足时自动回退到轮询模式
  *
  * 优化点（V2.0）：
  * 1. 停机感知：检测到 ShutdownManager.isShuttingDown 时停止扫描
  * 2. 环境感知：动态检查 MySQL 配置，环境不达标时跳过扫描并自动恢复
  * 3. 分批拉取：每次最多读取 maxRecordsPerPoll 条，防止 OOM
- * 4. 设计理念：不补发历史数据，游标始终从"当前时间"开始
+ * 4. 设计理念：首次启动不补发历史数据；重启不丢失停机窗口内的数据
  *
  * 数据源说明：
  * - 使用 targetJdbcTemplate（连接用户的 MySQL）
- * - 只读访问，零侵入
+ * - 轮询模式（默认）：只读访问 mysql.slow_log，需要 SELECT 权限
+ * - 收割模式：会在目标库执行 DDL —— DROP TABLE IF EXISTS mysql.slow_log_new、CREATE TABLE mysql.slow_log_new LIKE
+ *   mysql.slow_log、RENAME TABLE mysql.slow_log TO mysql.slow_log_harvest, mysql.slow_log_new TO mysql.slow_log、
+ *   DROP TABLE mysql.slow_log_harvest，需要对 mysql 库的 CREATE、DROP、ALTER 权限（见 SlowLogTableMaintenance.HARVEST_GRANT）
+ * - 自动清理（默认关闭）：DELETE FROM mysql.slow_log（InnoDB），或在允许时 TRUNCATE TABLE mysql.slow_log（CSV），
+ *   需要对 mysql.slow_log 的 DELETE 权限（TRUNCATE 需要 DROP 权限）
  *
  * @author DB-Doctor
  * @version 2.1.0
@@ -53,46 +71,28 @@ import java.util.concurrent.atomic.AtomicLong;
 @Slf4j
 public class SlowLogTableMonitor {
 
-    // ==================== 自适应轮询参数（常量，写死在代码中） ====================
-
-    /**
-     * 基础检查间隔：5秒
-     * 用于检查是否需要执行轮询
-     */
-    private static final long BASE_CHECK_INTERVAL_MS = 5000L;
-
-    /**
-     * 高负载轮询间隔：5秒
-     * 条件：最近10分钟慢查询 > 100条
-     */
-    private static final long HIGH_LOAD_INTERVAL_MS = 5000L;
-
-    /**
-     * 中负载轮询间隔：15秒
-     * 条件：最近10分钟慢查询 10-100条
-     */
-    private static final long MEDIUM_LOAD_INTERVAL_MS = 15000L;
+    // ==================== 自适应轮询参数 ====================
 
     /**
-     * 低负载轮询间隔：60秒
-     * 条件：最近10分钟慢查询 < 10条
+     * 基础检查间隔：1秒
+     * 用于检查是否到达自适应控制器给出的下一次轮询时间
      */
-    private static final long LOW_LOAD_INTERVAL_MS = 60000L;
+    private static final long BASE_CHECK_INTERVAL_MS = 1000L;
 
     /**
-     * 负载统计时间窗口：10分钟
+     * 追赶进度日志的间隔：10秒
      */
-    private static final int LOAD_STATISTICS_WINDOW_MINUTES = 10;
+    private static final long PROGRESS_LOG_INTERVAL_MS = 10000L;
 
     /**
-     * 高负载阈值：10分钟内超过此数量视为高负载
+     * 持久化游标的最短间隔：5秒
      */
-    private static final int HIGH_LOAD_THRESHOLD = 100;
+    private static final long CHECKPOINT_INTERVAL_MS = 5000L;
 
     /**
-     * 低负载阈值：10分钟内低于此数量视为低负载
+     * 停机时等待流水线写完已读取数据的最长时间：5秒
      */
-    private static final int LOW_LOAD_THRESHOLD = 10;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 5000L;
 
     // ==================== 依赖注入 ====================
 
@@ -104,17 +104,26 @@ public class SlowLogTableMonitor {
     @Autowired
     private JdbcTemplate targetJdbcTemplate;
 
+    /**
+     * 采集流水线（预处理和持久化在流水线中并行完成，轮询线程只负责读取）
+     */
     @Autowired
-    private AnalysisService analysisService;
+    private IngestPipeline ingestPipeline;
 
+    /**
+     * slow_log 表流式读取器
+     */
     @Autowired
-    private SlowLogMonitorProperties properties;
+    private SlowLogTableReader slowLogTableReader;
 
     /**
-     * 慢查询模板Repository（用于统计负载）
+     * 游标持久化存储
      */
     @Autowired
-    private SlowQueryTemplateRepository templateRepo;
+    private SlowLogCursorStore cursorStore;
+
+    @Autowired
+    private SlowLogMonitorProperties properties;
 
     /**
      * MySQL 环境检查器（可选）
@@ -141,14 +150,79 @@ public class SlowLogTableMonitor {
 
     /**
      * 游标：记录上一次读取到的最后一条日志的时间
-     * 初始值设为当前时间，避免应用重启后处理历史旧数据
+     * 初始值设为当前时间；存在持久化游标时，首次轮询前替换为持久化的位置
      */
     private Timestamp lastCheckTime;
 
     /**
-     * 上次轮询时间（用于自适应轮询）
+     * 游标：上一次读取到的最后一条日志的 thread_id（-1 表示 lastCheckTime 时刻之前）
+     */
+    private long lastThreadId = -1L;
+
+    /**
+     * 当前游标对应的采集来源标识（首次轮询时根据目标库 URL 确定）
+     */
+    private String sourceKey;
+
+    /**
+     * 采集检查点：追踪已读取的数据是否已写入 H2
+     */
+    private final IngestCheckpoint<SlowLogTableReader.Position> checkpoint = new IngestCheckpoint<>();
+
+    private SlowLogTableReader.Position lastSavedPosition;
+    private long lastCheckpointAt;
+
+    /**
+     * 追赶模式：重启或故障恢复后以最大批量连续读取，直到读不满一页
+     */
+    private boolean catchingUp;
+    private long catchUpRows;
+    private long catchUpStartedAt;
+    private long lastProgressLogAt;
+
+    /**
+     * 收割模式：旧表已读完，等待流水线写完后删除
      */
-    private final AtomicLong lastPollTime = new AtomicLong(System.currentTimeMillis());
+    private boolean harvestPendingDrop;
+
+    /**
+     * 收割模式：正在分页读取收割表
+     */
+    private boolean harvestReading;
+
+    /**
+     * 收割模式不可用（权限不足等），已回退到轮询模式
+     */
+    private boolean harvestUnsupported;
+
+    /**
+     * 下一次轮询时间（由自适应控制器计算）
+     */
+    private final AtomicLong nextPollTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * 下一次轮询的批量大小（由自适应控制器计算）
+     */
+    private int nextBatchSize;
+
+    /**
+     * 自适应轮询控制器
+     */
+    private AdaptivePollController pollController;
+
+    /**
+     * 专用轮询线程：读取、追赶和清理都在该线程上串行执行，不占用共享的调度线程
+     */
+    private final ExecutorService pollExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "slow-log-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 轮询线程上是否有正在进行的连续读取
+     */
+    private final AtomicBoolean polling = new AtomicBoolean(false);
 
     /**
      * 初始化方法
@@ -159,16 +233,22 @@ public class SlowLogTableMonitor {
         // ✅ 游标初始化为当前时间（不补发历史数据）
         this.lastCheckTime = Timestamp.valueOf(LocalDateTime.now());
 
+        SlowLogMonitorProperties.Adaptive adaptive = properties.getAdaptive();
+        this.pollController = new AdaptivePollController(
+                adaptive.getMinIntervalMs(), adaptive.getMaxIntervalMs(), properties.getMaxRecordsPerPoll(),
+                adaptive.getEwmaAlpha(), adaptive.getTargetFill());
+        this.nextBatchSize = properties.getMaxRecordsPerPoll();
+
         log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         log.info("🔍 DB-Doctor 慢查询表监控已启动");
         log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         log.info("   📢 设计理念：实时监控，不补发历史数据");
-        log.info("   ⏰ 监听起始时间: {}", lastCheckTime);
-        log.info("   🔄 自适应轮询：已启用");
-        log.info("      ├─ 高负载（>100条/10分钟）: {} 秒", HIGH_LOAD_INTERVAL_MS / 1000);
-        log.info("      ├─ 中负载（10-100条/10分钟）: {} 秒", MEDIUM_LOAD_INTERVAL_MS / 1000);
-        log.info("      └─ 低负载（<10条/10分钟）: {} 秒", LOW_LOAD_INTERVAL_MS / 1000);
+        log.info("   ⏰ 监听起始时间: {}（存在持久化游标时从游标继续）", lastCheckTime);
+        log.info("   🔄 自适应轮询：已启用（到达速率 EWMA）");
+        log.info("      ├─ 间隔范围: {} - {} 毫秒", properties.getAdaptive().getMinIntervalMs(), properties.getAdaptive().getMaxIntervalMs());
+        log.info("      └─ 读满一页时立即继续读取");
         log.info("   📦 每次最大记录数: {}", properties.getMaxRecordsPerPoll());
+        log.info("   🌾 收割模式: {}", Boolean.TRUE.equals(properties.getHarvest().getEnabled()) ? "启用（轮转 slow_log 表，每行只读一次）" : "禁用");
         log.info("   🧹 自动清理: {}", properties.getAutoCleanup().getEnabled() ? "启用 (cron=" + properties.getAutoCleanup().getCronExpression() + ")" : "禁用");
         log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
     }
@@ -176,11 +256,16 @@ public class SlowLogTableMonitor {
     /**
      * 自适应轮询：基础检查任务
      *
-     * 每5秒检查一次是否需要执行轮询
-     * 根据慢查询数量动态决定是否真正执行轮询
+     * 每秒检查一次，把轮询交给专用的轮询线程（调度线程池只有一个线程，由所有定时任务共享，不能被连续读取占用）
      */
     @Scheduled(fixedDelay = BASE_CHECK_INTERVAL_MS)
     public void adaptivePoll() {
+        // 0. 采集来源检查（非 TABLE 来源由对应的采集器负责；多实例模式由 MultiInstanceMonitor 负责）
+        if (properties.getSource() != SlowLogMonitorProperties.Source.TABLE
+                || Boolean.TRUE.equals(properties.getMultiInstance().getEnabled())) {
+            return;
+        }
+
         // 1. 停机感知逻辑
         if (ShutdownManager.isShuttingDown) {
             log.debug("正在停机中，跳过本次慢日志扫描");
@@ -203,58 +288,351 @@ public class SlowLogTableMonitor {
         //     }
         // }
 
-        // 4. 计算当前应该使用的轮询间隔
-        long interval = calculateAdaptiveInterval();
+        // 4. 上一次的连续读取还没结束时跳过
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            pollExecutor.execute(this::pollLoop);
+        } catch (RejectedExecutionException e) {
+            polling.set(false);
+        }
+    }
+
+    /**
+     * 轮询线程：每次只读取一页，追赶模式或读满一页时立即读取下一页，直到读不满、分析侧积压过高或停机
+     */
+    private void pollLoop() {
+        try {
+            while (pollOnce() && !ShutdownManager.isShuttingDown) {
+                logCatchUpProgress();
+            }
+        } catch (Exception e) {
+            log.error("❌ 轮询 mysql.slow_log 表异常", e);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    /**
+     * 读取一页
+     *
+     * @return 是否应立即读取下一页
+     */
+    private boolean pollOnce() {
+        // 1. 加载持久化游标（首次轮询或切换目标库后）
+        loadCursor();
+
+        // 2. 收割模式：上一轮读完的旧表写入完成后立即删除
+        if (isHarvestMode() && harvestPendingDrop) {
+            dropHarvestedTable();
+        }
 
-        // 5. 判断是否需要执行轮询
-        long elapsed = System.currentTimeMillis() - lastPollTime.get();
-        if (elapsed >= interval) {
-            // 执行轮询
-            pollSlowLog();
+        // 3. 判断是否到达下一次轮询时间
+        long now = System.currentTimeMillis();
+        if (now < nextPollTime.get()) {
+            log.trace("跳过轮询：需等待 {}ms", nextPollTime.get() - now);
+            saveCheckpoint(false);
+            return false;
+        }
 
-            // 更新上次轮询时间
-            lastPollTime.set(System.currentTimeMillis());
+        // 4. 收割模式：轮转表后分页读取旧表
+        if (isHarvestMode()) {
+            boolean more = harvest();
+            saveCheckpoint(false);
+            return more;
+        }
+
+        // 5. 流式读取期间回调不能阻塞：LIMIT 不超过流水线剩余容量，队列已满时下一次调度再读
+        int capacity = ingestPipeline.getRemainingCapacity();
+        if (capacity <= 0) {
+            log.debug("采集流水线队列已满，稍后从游标继续读取");
+            return false;
+        }
+        int batchSize = Math.min(catchingUp ? properties.getMaxRecordsPerPoll() : nextBatchSize, capacity);
+        int rows = pollSlowLog(batchSize);
+        if (rows < 0) {
+            // 轮询失败：按最长间隔重试，恢复后追赶故障期间的积压
+            startCatchUp("目标库故障恢复");
+            nextPollTime.set(System.currentTimeMillis() + properties.getAdaptive().getMaxIntervalMs());
+            return false;
+        }
+        if (catchingUp) {
+            onCatchUpPage(rows, batchSize);
         } else {
-            // 跳过本次轮询
-            log.trace("跳过轮询：距上次 {}ms，需等待 {}ms",
-                elapsed, interval - elapsed);
+            scheduleNextPoll(rows, batchSize);
         }
+        saveCheckpoint(false);
+        return (catchingUp || pollController.isLastPageFull())
+                && nextPollTime.get() <= System.currentTimeMillis();
     }
 
     /**
-     * 计算自适应轮询间隔
+     * 追赶进度日志（每 10 秒一次）
+     */
+    private void logCatchUpProgress() {
+        long now = System.currentTimeMillis();
+        if (catchingUp && now - lastProgressLogAt >= PROGRESS_LOG_INTERVAL_MS) {
+            lastProgressLogAt = now;
+            log.info("⏩ 追赶中：已读取 {} 条，当前游标: {}", catchUpRows, lastCheckTime);
+        }
+    }
+
+    /**
+     * 是否使用收割模式
+     */
+    private boolean isHarvestMode() {
+        return Boolean.TRUE.equals(properties.getHarvest().getEnabled()) && !harvestUnsupported;
+    }
+
+    /**
+     * 收割一次 mysql.slow_log
+     *
+     * 1. 收割表不存在时原子轮转：新建空表并与 mysql.slow_log 互换（RENAME TABLE 对日志表是原子的，日志写入不中断）
+     * 2. 收割表已存在（上次停机前没有读完或没有删除）：直接重新读取，游标之前的行被过滤
+     * 3. 按流水线剩余容量分页流式读取收割表，读完后等待流水线写完再 DROP（见 dropHarvestedTable）
      *
-     * @return 应该使用的轮询间隔（毫秒）
+     * @return 收割表还没读完、应立即读取下一页
      */
-    private long calculateAdaptiveInterval() {
-        // 统计最近10分钟的慢查询数量
-        int recentCount = countRecentSlowQueries(LOAD_STATISTICS_WINDOW_MINUTES);
+    private boolean harvest() {
+        if (harvestPendingDrop) {
+            // 上一轮的旧表还没写完，暂不轮转
+            return false;
+        }
+        int capacity = ingestPipeline.getRemainingCapacity();
+        if (capacity <= 0) {
+            log.debug("采集流水线队列已满，稍后继续收割");
+            return false;
+        }
 
-        // 根据负载返回对应的间隔
-        if (recentCount > HIGH_LOAD_THRESHOLD) {
-            return HIGH_LOAD_INTERVAL_MS;
-        } else if (recentCount >= LOW_LOAD_THRESHOLD) {
-            return MEDIUM_LOAD_INTERVAL_MS;
-        } else {
-            return LOW_LOAD_INTERVAL_MS;
+        try {
+            if (SlowLogTableMaintenance.harvestTableExists(targetJdbcTemplate)) {
+                if (!harvestReading) {
+                    log.info("📦 发现未删除的收割表 {}，重新读取", SlowLogTableReader.HARVEST_TABLE);
+                }
+            } else if (!rotateSlowLogTable()) {
+                return false;
+            }
+            harvestReading = true;
+
+            SlowLogTableReader.ReadResult result;
+            try {
+                result = slowLogTableReader.readHarvest(targetJdbcTemplate, currentPosition(), capacity, this::publish);
+            } finally {
+                checkpoint.seal(currentPosition());
+            }
+            dataSourceStatusHolder.updateSuccess();
+
+            if (result.last() != null) {
+                this.lastCheckTime = result.last().startTime();
+                this.lastThreadId = result.last().threadId();
+            }
+            if (result.rows() > 0) {
+                log.info("🔍 收割到 {} 条新的慢查询日志", result.rows());
+            }
+
+            if (result.rows() >= capacity || result.accepted() < result.rows()) {
+                // 收割表还没读完（或队列已满）：保留收割表，从游标继续（队列已满时等下一次调度）
+                nextPollTime.set(System.currentTimeMillis());
+                return result.accepted() == result.rows();
+            }
+
+            harvestReading = false;
+            harvestPendingDrop = true;
+            catchingUp = false;
+
+            // 收割间隔：与轮询相同的自适应策略（期望每次收割 max-records-per-poll × target-fill 条）
+            long now = System.currentTimeMillis();
+            pollController.onPoll(result.rows(), Integer.MAX_VALUE, now);
+            nextPollTime.set(now + pollController.nextIntervalMs(ingestPipeline.getPressure()));
+            return false;
+
+        } catch (Exception e) {
+            if (!ShutdownManager.isShuttingDown) {
+                log.error("❌ 收割 mysql.slow_log 表失败", e);
+                if (isConnectionError(e)) {
+                    dataSourceStatusHolder.updateFailure(e.getMessage());
+                }
+            }
+            harvestReading = false;
+            nextPollTime.set(System.currentTimeMillis() + properties.getAdaptive().getMaxIntervalMs());
+            return false;
         }
     }
 
     /**
-     * 统计最近 N 分钟的慢查询数量
+     * 原子轮转 mysql.slow_log
      *
-     * @param minutes 时间窗口（分钟）
-     * @return 慢查询数量
+     * @return true-轮转成功；false-权限不足等原因无法轮转（已回退到轮询模式）
      */
-    private int countRecentSlowQueries(int minutes) {
+    private boolean rotateSlowLogTable() {
         try {
-            LocalDateTime cutoff = LocalDateTime.now().minusMinutes(minutes);
-            Long count = templateRepo.countByLastSeenTimeAfter(cutoff);
-            return count != null ? count.intValue() : 0;
+            SlowLogTableMaintenance.rotate(targetJdbcTemplate);
+            return true;
+        } catch (RuntimeException e) {
+            if (isConnectionError(e)) {
+                throw e;
+            }
+            harvestUnsupported = true;
+            log.warn("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            log.warn("⚠️ 无法轮转 mysql.slow_log 表，已回退到轮询模式: {}", e.getMessage());
+            log.warn("💡 收割模式需要目标库账号对 mysql 库有 CREATE、DROP、ALTER 权限：");
+            log.warn("   {}", SlowLogTableMaintenance.HARVEST_GRANT);
+            log.warn("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            return false;
+        }
+    }
+
+    /**
+     * 删除已读完的收割表
+     * 必须等流水线把这张表中的数据全部写入 H2（检查点全部回执）后才能删除，否则停机会丢数据
+     */
+    private void dropHarvestedTable() {
+        if (!checkpoint.isDrained()) {
+            return;
+        }
+        saveCheckpoint(true);
+        try {
+            SlowLogTableMaintenance.dropHarvestTable(targetJdbcTemplate);
+            harvestPendingDrop = false;
         } catch (Exception e) {
-            log.warn("统计慢查询数量失败: {}", e.getMessage());
-            return 0;  // 查询失败时返回0，使用低负载策略
+            log.warn("⚠️ 删除收割表 {} 失败，稍后重试: {}", SlowLogTableReader.HARVEST_TABLE, e.getMessage());
+        }
+    }
+
+    /**
+     * 加载持久化游标
+     * 采集来源按目标库 URL 区分：首次轮询、或目标库被切换后重新加载
+     */
+    private void loadCursor() {
+        var dataSource = dynamicDataSourceManager.getTargetDataSource();
+        String key = SlowLogCursorStore.tableSourceKey(dataSource != null ? dataSource.getJdbcUrl() : null);
+        if (key.equals(sourceKey)) {
+            return;
+        }
+
+        boolean switched = sourceKey != null;
+        sourceKey = key;
+        checkpoint.reset();
+        lastSavedPosition = null;
+
+        var saved = cursorStore.load(key);
+        if (saved.isPresent()) {
+            lastCheckTime = saved.get().startTime();
+            lastThreadId = saved.get().threadId();
+            lastSavedPosition = saved.get();
+            log.info("📍 已恢复持久化游标: sourceKey={}, start_time={}, thread_id={}", key, lastCheckTime, lastThreadId);
+            startCatchUp("重启恢复");
+        } else {
+            if (switched) {
+                // 切换到新的目标库：从当前时间开始（不补发历史数据）
+                lastCheckTime = Timestamp.valueOf(LocalDateTime.now());
+                lastThreadId = -1L;
+            }
+            SlowLogTableReader.Position position = currentPosition();
+            cursorStore.save(key, position);
+            lastSavedPosition = position;
+            log.info("📍 首次采集，游标从 {} 开始: sourceKey={}", lastCheckTime, key);
+        }
+    }
+
+    /**
+     * 进入追赶模式
+     */
+    private void startCatchUp(String reason) {
+        if (catchingUp) {
+            return;
+        }
+        catchingUp = true;
+        catchUpRows = 0;
+        catchUpStartedAt = System.currentTimeMillis();
+        nextPollTime.set(Math.min(nextPollTime.get(), System.currentTimeMillis()));
+        log.info("⏩ 进入追赶模式（{}）：以最大批量 {} 连续读取，直到排空积压", reason, properties.getMaxRecordsPerPoll());
+    }
+
+    /**
+     * 追赶模式下处理一页的结果：读不满一页说明积压已排空，回到自适应轮询
+     */
+    private void onCatchUpPage(int rows, int batchSize) {
+        catchUpRows += rows;
+        long now = System.currentTimeMillis();
+        if (rows >= batchSize) {
+            nextPollTime.set(now);
+            return;
         }
+
+        catchingUp = false;
+        nextBatchSize = properties.getMaxRecordsPerPoll();
+        nextPollTime.set(now + properties.getAdaptive().getMinIntervalMs());
+        log.info("✅ 追赶完成：共读取 {} 条，耗时 {} ms，回到自适应轮询", catchUpRows, now - catchUpStartedAt);
+        saveCheckpoint(true);
+    }
+
+    /**
+     * 持久化已写入 H2 的游标位置
+     *
+     * @param force 是否忽略最短间隔
+     */
+    private void saveCheckpoint(boolean force) {
+        if (sourceKey == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && now - lastCheckpointAt < CHECKPOINT_INTERVAL_MS) {
+            return;
+        }
+        SlowLogTableReader.Position done = checkpoint.completed();
+        if (done == null || done.equals(lastSavedPosition)) {
+            return;
+        }
+        cursorStore.save(sourceKey, done);
+        lastSavedPosition = done;
+        lastCheckpointAt = now;
+    }
+
+    /**
+     * 停机时等待流水线写完已读取的数据，再持久化游标
+     * （本 Bean 依赖 IngestPipeline，会先于流水线销毁，此时流水线仍在运行）
+     */
+    @PreDestroy
+    public void flushCursor() {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_TIMEOUT_MS;
+        pollExecutor.shutdownNow();
+        if (sourceKey == null) {
+            return;
+        }
+        try {
+            pollExecutor.awaitTermination(SHUTDOWN_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            while (!checkpoint.isDrained() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveCheckpoint(true);
+        log.info("📍 停机前已保存游标: {}", lastSavedPosition);
+    }
+
+    private SlowLogTableReader.Position currentPosition() {
+        return new SlowLogTableReader.Position(lastCheckTime, lastThreadId);
+    }
+
+    /**
+     * 根据本次轮询结果计算下一次轮询的时间和批量大小
+     *
+     * @param rows      本次读取的行数
+     * @param batchSize 本次使用的 LIMIT
+     */
+    private void scheduleNextPoll(int rows, int batchSize) {
+        long now = System.currentTimeMillis();
+        pollController.onPoll(rows, batchSize, now);
+
+        long interval = pollController.nextIntervalMs(ingestPipeline.getPressure());
+        nextBatchSize = pollController.nextBatchSize(interval);
+        nextPollTime.set(now + interval);
+
+        log.debug("自适应轮询: rows={}, ewmaRate={}/s, 下次间隔={}ms, 下次批量={}",
+                rows, String.format("%.2f", pollController.getEwmaRate()), interval, nextBatchSize);
     }
 
     /**
@@ -263,20 +641,17 @@ public class SlowLogTableMonitor {
      * 查询优化：
      * 1. TIME_TO_SEC()：直接将时间转换为秒数
      * 2. CONVERT(sql_text USING utf8)：解决 BLOB 乱码问题
-     * 3. WHERE start_time > ?：只查新数据（使用游标）
-     * 4. ORDER BY start_time ASC：按时间升序
-     * 5. LIMIT：从配置文件读取，防止一次查太多导致内存溢出
+     * 3. WHERE (start_time, thread_id) > 游标：只查新数据（键集分页）
+     * 4. ORDER BY start_time, thread_id：按键集升序
+     * 5. LIMIT：由自适应控制器按到达速率计算（不超过 max-records-per-poll）
+     * 6. 流式读取 + 超长 SQL 截断（见 SlowLogTableReader），不会一次性加载整批结果
+     *
+     * @param batchSize 本次 LIMIT（由自适应控制器计算）
+     * @return 读取的行数，-1 表示轮询失败
      */
-    private void pollSlowLog() {
-        // 统计当前负载并记录日志
-        int recentCount = countRecentSlowQueries(LOAD_STATISTICS_WINDOW_MINUTES);
-        long interval = calculateAdaptiveInterval();
-
-        log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        log.info("🔄 开始轮询 mysql.slow_log 表");
-        log.info("   📊 最近10分钟慢查询: {} 条", recentCount);
-        log.info("   ⏱️  当前轮询间隔: {} 秒", interval / 1000);
-        log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+    private int pollSlowLog(int batchSize) {
+        log.debug("🔄 开始轮询 mysql.slow_log 表: 批量={}, 到达速率≈{}/s",
+                batchSize, String.format("%.2f", pollController.getEwmaRate()));
 
         // 2. 环境感知逻辑（动态门禁）
         // ⚠️ 已禁用自动环境检查，改为用户手动触发
@@ -298,89 +673,27 @@ public class SlowLogTableMonitor {
         //     log.debug("✅ 环境检查通过，开始扫描慢查询日志");
         // }
 
-        // 3. 执行慢查询日志扫描
+        // 3. 执行慢查询日志扫描（流式读取，逐行发布到采集流水线）
         try {
-            String sql = String.format("""
-                SELECT
-                    start_time,
-                    user_host,
-                    TIME_TO_SEC(query_time) + MICROSECOND(query_time)/1000000.0 as query_time_sec,
-                    TIME_TO_SEC(lock_time) + MICROSECOND(lock_time)/1000000.0 as lock_time_sec,
-                    rows_sent,
-                    rows_examined,
-                    db,
-                    CONVERT(sql_text USING utf8) AS sql_content
-                FROM mysql.slow_log
-                WHERE start_time > ?
-                ORDER BY start_time ASC
-                LIMIT %d
-                """, properties.getMaxRecordsPerPoll());
-
-            List<Map<String, Object>> logs = targetJdbcTemplate.queryForList(sql, lastCheckTime);
+            SlowLogTableReader.ReadResult result = slowLogTableReader.read(
+                    targetJdbcTemplate, currentPosition(), batchSize, this::publish);
 
             // ✅ 查询成功：更新数据源状态为已连接
             dataSourceStatusHolder.updateSuccess();
 
-            if (logs.isEmpty()) {
-                return; // 没有新日志，直接返回
+            // 更新游标（最关键的一步！）
+            if (result.last() != null) {
+                this.lastCheckTime = result.last().startTime();
+                this.lastThreadId = result.last().threadId();
             }
 
-            log.info("🔍 捕获到 {} 条新的慢查询日志", logs.size());
-
-            // 遍历处理每条慢查询日志
-            for (Map<String, Object> logEntry : logs) {
-                try {
-                    // 提取关键字段
-                    Timestamp startTime = (Timestamp) logEntry.get("start_time");
-                    String dbName = (String) logEntry.get("db");
-                    String sqlContent = (String) logEntry.get("sql_content");
-                    String userHost = (String) logEntry.get("user_host");
-
-                    // ⚠️ 跨库查询处理：如果 db 字段为空，尝试从 SQL 中提取数据库名
-                    if ((dbName == null || dbName.trim().isEmpty()) && sqlContent != null && !sqlContent.isBlank()) {
-                        dbName = extractDatabaseFromSql(sqlContent);
-                        if (dbName != null && !dbName.trim().isEmpty()) {
-                            log.debug("🔍 [跨库查询] 从 SQL 中提取数据库名: {}", dbName);
-                        }
-                    }
-
-                    // 提取数值类型字段
-                    double queryTime = ((Number) logEntry.get("query_time_sec")).doubleValue();
-                    double lockTime = ((Number) logEntry.get("lock_time_sec")).doubleValue();
-                    long rowsSent = ((Number) logEntry.get("rows_sent")).longValue();
-                    long rowsExamined = ((Number) logEntry.get("rows_examined")).longValue();
-
-                    // 更新游标（最关键的一步！）
-                    if (startTime.after(lastCheckTime)) {
-                        this.lastCheckTime = startTime;
-                    }
-
-                    // 数据清洗：如果 SQL 为空，跳过
-                    if (sqlContent == null || sqlContent.isBlank()) {
-                        log.warn("发现空 SQL 记录，跳过处理。start_time: {}", startTime);
-                        continue;
-                    }
-
-                    // 构造慢查询日志对象
-                    SlowQueryLog slowLog = SlowQueryLog.builder()
-                            .startTime(startTime.toLocalDateTime())
-                            .userHost(userHost)
-                            .dbName(dbName)
-                            .sqlText(sqlContent)
-                            .queryTime(queryTime)
-                            .lockTime(lockTime)
-                            .rowsSent(rowsSent)
-                            .rowsExamined(rowsExamined)
-                            .build();
-
-                    // 交给分析服务处理（包含去重逻辑）
-                    analysisService.processSlowQuery(slowLog);
-
-                } catch (Exception e) {
-                    log.error("处理单条慢查询日志失败", e);
-                    // 继续处理下一条，不中断整个流程
-                }
+            if (result.rows() > 0) {
+                log.info("🔍 捕获到 {} 条新的慢查询日志", result.rows());
             }
+            if (result.accepted() < result.rows()) {
+                log.debug("采集流水线队列已满，本页有 {} 条未接收，下次从游标继续读取", result.rows() - result.accepted());
+            }
+            return result.rows();
 
         } catch (Exception e) {
             // 如果不在停机阶段，才记录错误日志
@@ -392,7 +705,31 @@ public class SlowLogTableMonitor {
                     dataSourceStatusHolder.updateFailure(e.getMessage());
                 }
             }
+            return -1;
+        } finally {
+            // 本页读取结束：用读到的位置封口，等流水线写完后才会被持久化
+            checkpoint.seal(currentPosition());
+        }
+    }
+
+    /**
+     * 发布单条慢查询到采集流水线
+     *
+     * @param slowLog 慢查询日志
+     * @return false 表示队列已满或流水线已停止
+     */
+    private boolean publish(SlowQueryLog slowLog) {
+        // 跨库查询（db 字段为空）由 AnalysisService.prepare 从 SQL 分析结果中补全数据库名
+        // 流式结果集仍在读取：队列满时不等待，停止接收，下次从游标继续（不丢弃数据）
+        checkpoint.track(slowLog);
+        if (!ingestPipeline.offer(slowLog)) {
+            return false;
         }
+
+        // 逐行推进游标（读取中途失败时，已发布的行不会被重复读取）
+        this.lastCheckTime = Timestamp.valueOf(slowLog.getStartTime());
+        this.lastThreadId = slowLog.getThreadId() != null ? slowLog.getThreadId() : -1L;
+        return true;
     }
 
     /**
@@ -402,18 +739,7 @@ public class SlowLogTableMonitor {
      * @return 是否为连接错误
      */
     private boolean isConnectionError(Exception e) {
-        String message = e.getMessage();
-        if (message == null) {
-            return false;
-        }
-
-        return message.contains("CommunicationsException") ||
-               message.contains("UnknownHostException") ||
-               message.contains("Connection refused") ||
-               message.contains("Communications link failure") ||
-               message.contains("placeholder") ||
-               message.contains("could not create connection to database server") ||
-               message.contains("No operations allowed after connection closed");
+        return SlowLogTableMaintenance.isConnectionError(e);
     }
 
     /**
@@ -435,18 +761,43 @@ public class SlowLogTableMonitor {
      */
     @Scheduled(cron = "${db-doctor.slow-log-monitor.auto-cleanup.cron-expression:0 0 3 * * ?}")
     public void cleanUpSlowLogTable() {
+        // 非 TABLE 来源不读取 slow_log 表，也不负责清理
+        if (properties.getSource() != SlowLogMonitorProperties.Source.TABLE) {
+            return;
+        }
+
+        // 多实例模式：各实例按自己的游标清理（见 MultiInstanceMonitor），本监控的游标不对应任何实例
+        if (Boolean.TRUE.equals(properties.getMultiInstance().getEnabled())) {
+            return;
+        }
+
         // 检查数据源是否已初始化
         if (!dynamicDataSourceManager.isInitialized()) {
             log.debug("目标数据源未初始化，跳过慢日志表清理（请先配置数据库连接）");
             return;
         }
 
+        // 收割模式下表会被定期轮转，不会无限增长
+        if (isHarvestMode()) {
+            log.debug("收割模式已启用，mysql.slow_log 由轮转维护，跳过自动清理");
+            return;
+        }
+
         // 检查是否启用自动清理
         if (!properties.getAutoCleanup().getEnabled()) {
             log.debug("自动清理功能已禁用（默认关闭），如需启用请在配置文件中设置 db-doctor.slow-log-monitor.auto-cleanup.enabled=true");
             return;
         }
 
+        // 在轮询线程上执行：与读取串行（清理会读取和移动游标），也不占用共享的调度线程
+        try {
+            pollExecutor.execute(this::cleanUp);
+        } catch (RejectedExecutionException e) {
+            log.warn("⚠️ 轮询线程已关闭，跳过本次清理");
+        }
+    }
+
+    private void cleanUp() {
         log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         log.info("🧹 开始安全清理 mysql.slow_log 表...");
         log.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
@@ -496,22 +847,27 @@ public class SlowLogTableMonitor {
     }
 
     /**
-     * 安全删除（基于游标）
-     * 只删除游标之前的数据，保留游标之后的数据
+     * 安全删除（基于已持久化的游标）
+     * 只删除已写入 H2 并持久化的位置之前的数据：读游标（lastCheckTime）之前的数据可能仍在流水线队列中，
+     * 删除后一旦崩溃就会丢失
      *
-     * @return true-成功
+     * @return true-成功（尚无持久化游标时跳过，也返回 true，不回退到 TRUNCATE）
      */
     private boolean safeDeleteByCursor() {
-        log.info("📍 当前游标位置: {}", lastCheckTime);
+        // 与 saveCheckpoint 同在轮询线程上执行
+        SlowLogTableReader.Position done = lastSavedPosition;
+        if (done == null) {
+            log.info("📍 尚未持久化游标，跳过本次清理");
+            return true;
+        }
+        log.info("📍 已持久化的游标位置: {}（读取游标: {}）", done.startTime(), lastCheckTime);
 
-        // 使用 DELETE WHERE 删除游标之前的数据
-        String sql = "DELETE FROM mysql.slow_log WHERE start_time < ?";
-        int deleted = targetJdbcTemplate.update(sql, lastCheckTime);
+        // 使用 DELETE WHERE 删除已持久化游标之前的数据
+        int deleted = SlowLogTableMaintenance.deleteBefore(targetJdbcTemplate, done.startTime());
 
         log.info("✅ 安全清理完成");
         log.info("   🗑️  删除记录数: {}", deleted);
-        log.info("   📍 游标位置保持不变: {}", lastCheckTime);
-        log.info("   🛡️  安全保证: 未删除游标之后的数据");
+        log.info("   🛡️  安全保证: 未删除尚未写入 H2 的数据");
 
         return true;
     }
@@ -542,7 +898,7 @@ public class SlowLogTableMonitor {
             targetJdbcTemplate.execute("TRUNCATE TABLE mysql.slow_log");
 
             // 重置游标为当前时间
-            this.lastCheckTime = Timestamp.valueOf(LocalDateTime.now());
+            moveCursor(Timestamp.valueOf(LocalDateTime.now()));
 
             log.warn("✅ TRUNCATE 完成");
             log.warn("   🗑️  已清空整个表");
@@ -559,14 +915,7 @@ public class SlowLogTableMonitor {
      * @return 表引擎（InnoDB/CSV）
      */
     private String checkTableEngine() {
-        String sql = """
-            SELECT ENGINE
-            FROM information_schema.TABLES
-            WHERE TABLE_SCHEMA = 'mysql'
-            AND TABLE_NAME = 'slow_log'
-            """;
-
-        return targetJdbcTemplate.queryForObject(sql, String.class);
+        return SlowLogTableMaintenance.tableEngine(targetJdbcTemplate);
     }
 
     /**
@@ -576,88 +925,26 @@ public class SlowLogTableMonitor {
      */
     public void resetCursor(Timestamp timestamp) {
         log.info("🔄 手动重置游标: {} -> {}", lastCheckTime, timestamp);
-        this.lastCheckTime = timestamp;
+        moveCursor(timestamp);
     }
 
     /**
-     * 获取当前游标位置（用于监控）
+     * 移动游标到指定时间点并立即持久化（流水线中尚未写完的旧位置不再提交）
      */
-    public Timestamp getLastCheckTime() {
-        return lastCheckTime;
+    private void moveCursor(Timestamp timestamp) {
+        this.lastCheckTime = timestamp;
+        this.lastThreadId = -1L;
+        checkpoint.reset();
+        if (sourceKey != null) {
+            cursorStore.save(sourceKey, currentPosition());
+            lastSavedPosition = currentPosition();
+        }
     }
 
     /**
-     * 从 SQL 语句中提取数据库名
-     * 支持格式：database.table 或 `database`.`table`
-     *
-     * @param sql SQL 语句
-     * @return 数据库名，如果无法提取则返回 null
+     * 获取当前游标位置（用于监控）
      */
-    private String extractDatabaseFromSql(String sql) {
-        if (sql == null || sql.trim().isEmpty()) {
-            return null;
-        }
-
-        try {
-            // 转大写并移除多余空格，便于解析
-            String normalizedSql = sql.toUpperCase().replaceAll("\\s+", " ");
-
-            // 查找 FROM 子句的位置
-            int fromIndex = normalizedSql.indexOf(" FROM ");
-            if (fromIndex == -1) {
-                // 如果没有 FROM，尝试查找 UPDATE
-                fromIndex = normalizedSql.indexOf(" UPDATE ");
-                if (fromIndex == -1) {
-                    // 如果也没有 UPDATE，尝试查找 INSERT INTO
-                    fromIndex = normalizedSql.indexOf(" INTO ");
-                    if (fromIndex == -1) {
-                        return null;
-                    }
-                    fromIndex += 6; // " INTO ".length()
-                } else {
-                    fromIndex += 7; // " UPDATE ".length()
-                }
-            } else {
-                fromIndex += 6; // " FROM ".length()
-            }
-
-            // 提取 FROM/UPDATE/INTO 之后的部分（到下一个关键字之前）
-            String afterFrom = normalizedSql.substring(fromIndex).trim();
-
-            // 查找第一个表引用（可能带有数据库名前缀）
-            int spaceIndex = afterFrom.indexOf(' ');
-            int commaIndex = afterFrom.indexOf(',');
-            int joinIndex = afterFrom.indexOf(" JOIN ");
-
-            // 取最近的分隔符
-            int endIndex = afterFrom.length();
-            if (spaceIndex > 0 && spaceIndex < endIndex) endIndex = spaceIndex;
-            if (commaIndex > 0 && commaIndex < endIndex) endIndex = commaIndex;
-            if (joinIndex > 0 && joinIndex < endIndex) endIndex = joinIndex;
-
-            String firstTableRef = afterFrom.substring(0, endIndex).trim();
-
-            // 移除可能的别名（AS 或空格后的别名）
-            if (firstTableRef.contains(" AS ")) {
-                firstTableRef = firstTableRef.substring(0, firstTableRef.indexOf(" AS ")).trim();
-            }
-
-            // 提取数据库名（支持带反引号和不带反引号）
-            String dbName = null;
-
-            // 匹配 `database`.`table` 或 database.table
-            if (firstTableRef.contains(".")) {
-                String[] parts = firstTableRef.split("\\.");
-                if (parts.length >= 2) {
-                    dbName = parts[0].replaceAll("`", "").trim();
-                }
-            }
-
-            return dbName;
-
-        } catch (Exception e) {
-            log.warn("⚠️ [SQL解析] 提取数据库名失败: {}", e.getMessage());
-            return null;
-        }
+    public Timestamp getLastCheckTime() {
+        return lastCheckTime;
     }
 }
@@ -0,0 +1,259 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.SqlArtifact;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 原始 SQL → 预处理产物 缓存（W-TinyLFU 风格）
+ *
+ * 同一条原始 SQL 文本每小时会重复出现上千次，命中缓存时跳过词法分析、清洗和脱敏
+ *
+ * 结构：
+ * - 键：原始 SQL 的 64 位 Murmur3 哈希（不保存原文，碰撞概率可忽略）
+ * - 窗口区（约 1% 容量，LRU）：新条目先进入窗口区，吸收突发的一次性 SQL
+ * - 主区（LRU）：窗口区淘汰的候选与主区最久未使用的条目比较访问频率（Count-Min Sketch），频率高者留下
+ * - 同时受条目数和估算内存（字节）两个上限约束
+ *
+ * 预处理由流水线的多个 worker 并发调用，所有结构由一把锁保护（临界区只有哈希表操作）；
+ * 未命中时的计算在锁外进行
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+public class SqlArtifactCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxWeightBytes;
+    private final int windowCapacity;
+    private final int mainCapacity;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Long, SqlArtifact> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, SqlArtifact> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long weightBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long evictions;
+    private long admissionRejections;
+
+    public SqlArtifactCache(SlowLogMonitorProperties properties) {
+        SlowLogMonitorProperties.ArtifactCache config = properties.getArtifactCache();
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.maxEntries = Math.max(2, config.getMaxEntries());
+        this.maxWeightBytes = Math.max(1024L, config.getMaxWeightBytes());
+        this.windowCapacity = Math.max(1, maxEntries / 100);
+        this.mainCapacity = maxEntries - windowCapacity;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * 查询缓存，未命中时调用 SqlFingerprintUtil.analyze 计算并放入缓存
+     *
+     * @param rawSql 原始 SQL
+     * @return 预处理产物，SQL 为空时返回 null
+     */
+    public SqlArtifact get(String rawSql) {
+        return get(rawSql, SqlFingerprintUtil::analyze);
+    }
+
+    /**
+     * 查询缓存，未命中时调用 loader 计算并放入缓存
+     *
+     * @param rawSql 原始 SQL
+     * @param loader 计算函数（返回 null 时不缓存）
+     * @return 预处理产物
+     */
+    public SqlArtifact get(String rawSql, Function<String, SqlArtifact> loader) {
+        // 超长 SQL 几乎不会原样重复，哈希整段文本的代价却与长度成正比，直接计算且不占用缓存
+        if (!enabled || rawSql == null || SqlFingerprintUtil.isOversize(rawSql)) {
+            return loader.apply(rawSql);
+        }
+
+        Long key = SqlFingerprintUtil.rawHash64(rawSql);
+        synchronized (lock) {
+            sketch.increment(key);
+            SqlArtifact cached = window.get(key);
+            if (cached == null) {
+                cached = main.get(key);
+            }
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+        SqlArtifact artifact = loader.apply(rawSql);
+        if (artifact != null) {
+            put(key, artifact);
+        }
+        return artifact;
+    }
+
+    private void put(Long key, SqlArtifact artifact) {
+        synchronized (lock) {
+            if (window.containsKey(key) || main.containsKey(key)) {
+                // 并发计算的重复结果
+                return;
+            }
+            window.put(key, artifact);
+            weightBytes += artifact.weight();
+
+            // 窗口区溢出：候选者与主区最久未使用的条目竞争
+            while (window.size() > windowCapacity) {
+                Map.Entry<Long, SqlArtifact> candidate = eldest(window);
+                window.remove(candidate.getKey());
+
+                if (main.size() < mainCapacity) {
+                    main.put(candidate.getKey(), candidate.getValue());
+                    continue;
+                }
+                Map.Entry<Long, SqlArtifact> victim = eldest(main);
+                if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                    main.remove(victim.getKey());
+                    weightBytes -= victim.getValue().weight();
+                    main.put(candidate.getKey(), candidate.getValue());
+                    evictions++;
+                } else {
+                    weightBytes -= candidate.getValue().weight();
+                    admissionRejections++;
+                }
+            }
+
+            // 内存上限：优先淘汰主区最久未使用的条目
+            while (weightBytes > maxWeightBytes && (!main.isEmpty() || window.size() > 1)) {
+                LinkedHashMap<Long, SqlArtifact> region = !main.isEmpty() ? main : window;
+                Map.Entry<Long, SqlArtifact> victim = eldest(region);
+                region.remove(victim.getKey());
+                weightBytes -= victim.getValue().weight();
+                evictions++;
+            }
+        }
+    }
+
+    private static Map.Entry<Long, SqlArtifact> eldest(LinkedHashMap<Long, SqlArtifact> region) {
+        Iterator<Map.Entry<Long, SqlArtifact>> it = region.entrySet().iterator();
+        return it.next();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (lock) {
+            window.clear();
+            main.clear();
+            weightBytes = 0;
+        }
+    }
+
+    public long size() {
+        synchronized (lock) {
+            return window.size() + main.size();
+        }
+    }
+
+    /**
+     * 缓存命中率（0-1）
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total > 0 ? (double) hitCount / total : 0.0;
+    }
+
+    /**
+     * 缓存指标
+     *
+     * @return 条目数、内存占用、命中率、淘汰数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (lock) {
+            metrics.put("enabled", enabled);
+            metrics.put("size", window.size() + main.size());
+            metrics.put("maxEntries", maxEntries);
+            metrics.put("weightBytes", weightBytes);
+            metrics.put("maxWeightBytes", maxWeightBytes);
+            metrics.put("evictions", evictions);
+            metrics.put("admissionRejections", admissionRejections);
+        }
+        metrics.put("hits", hits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("hitRate", Math.round(getHitRate() * 10000) / 10000.0);
+        return metrics;
+    }
+
+    /**
+     * Count-Min Sketch（4 行，计数上限 15）
+     * 累计计数达到 10 倍容量后所有计数减半，使频率随时间衰减
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+        };
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(64, maxEntries * 2 - 1)) << 1;
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(10 * maxEntries, 64);
+        }
+
+        void increment(long key) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(key, row);
+                if (table[row][index] < 15) {
+                    table[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(long key) {
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++) {
+                min = Math.min(min, table[row][index(key, row)]);
+            }
+            return min;
+        }
+
+        private int index(long key, int row) {
+            long h = (key ^ SEEDS[row]) * 0xff51afd7ed558ccdL;
+            h ^= h >>> 32;
+            return (int) h & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
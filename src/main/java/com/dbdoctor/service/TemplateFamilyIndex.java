@@ -0,0 +1,369 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.util.SqlFingerprintUtil;
+import com.dbdoctor.config.DbDoctorProperties;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.repository.SlowQueryTemplateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 相似模板索引（模板家族）
+ *
+ * 很多模板只差列顺序、一个过滤条件或 LIMIT，却各自触发一次多 Agent 分析。这里对已分析的模板建立 MinHash + LSH 索引：
+ * - 签名：模板词集合（关键字、标识符、运算符、?）的 16 个 MinHash 值，两个签名相同位置相等的比例估算 Jaccard 相似度
+ * - LSH：签名分成 8 段（每段 2 个值），任意一段相同即为候选；每个桶最多保留 BUCKET_CAPACITY 个成员
+ * - 家族：同一实例、同一组表、相似度不低于阈值的模板；新模板命中最近分析过的家族成员时复用其报告
+ * - 时效按报告实际由 AI 生成的时间计算：复用来的报告沿用来源报告的分析时间，连续复用不会让旧报告一直"新鲜"
+ *
+ * 每次查询/登记只访问固定数量的桶（O(1)），成员数受 LRU 上限约束；启动时从最近分析过的模板预热
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+public class TemplateFamilyIndex {
+
+    private static final int HASHES = 16;
+    private static final int BANDS = 8;
+    private static final int ROWS = HASHES / BANDS;
+    private static final int BUCKET_CAPACITY = 16;
+
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + 0x632BE59BD9B4E019L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final SlowQueryTemplateRepository templateRepo;
+    private final boolean enabled;
+    private final double minSimilarity;
+    private final long reuseWindowMillis;
+    private final int maxMembers;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Member> members = new LinkedHashMap<>();
+    private final Map<Long, ArrayDeque<Member>> buckets = new HashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+
+    public TemplateFamilyIndex(SlowQueryTemplateRepository templateRepo, DbDoctorProperties properties) {
+        DbDoctorProperties.TemplateFamilyConfig config = properties.getAi().getTemplateFamily();
+        this.templateRepo = templateRepo;
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.minSimilarity = config.getMinSimilarity();
+        this.reuseWindowMillis = Math.max(1, config.getReuseWindowHours()) * 3_600_000L;
+        this.maxMembers = Math.max(16, config.getMaxMembers());
+    }
+
+    /**
+     * 启动时登记最近分析过的模板
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime since = LocalDateTime.now().minus(Duration.ofMillis(reuseWindowMillis));
+            List<SlowQueryTemplate> analyzed = templateRepo.findByStatusAndAnalyzedTimeAfter(
+                    SlowQueryTemplate.AnalysisStatus.SUCCESS, since);
+            for (SlowQueryTemplate template : analyzed) {
+                recordAnalysis(template);
+            }
+            log.info("🧬 相似模板索引预热完成: {} 个模板", analyzed.size());
+        } catch (Exception e) {
+            log.warn("相似模板索引预热失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查找可复用报告的家族成员
+     *
+     * @param template 待分析的模板
+     * @return 同一组表、相似度最高且在时效内分析过的成员
+     */
+    public Optional<Match> findReusable(SlowQueryTemplate template) {
+        if (!enabled || template.getSqlTemplate() == null) {
+            return Optional.empty();
+        }
+        lookups.increment();
+
+        long[] signature = signature(template.getSqlTemplate());
+        String tableKey = tableKey(template);
+        long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            Member best = null;
+            double bestSimilarity = 0;
+            Set<Member> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                ArrayDeque<Member> bucket = buckets.get(bandKey(signature, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Member member : bucket) {
+                    if (!seen.add(member) || member.fingerprint.equals(template.getSqlFingerprint())
+                            || !member.tableKey.equals(tableKey) || now - member.analyzedAt > reuseWindowMillis) {
+                        continue;
+                    }
+                    double similarity = similarity(signature, member.signature);
+                    if (similarity >= minSimilarity && similarity > bestSimilarity) {
+                        best = member;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (best == null) {
+                return Optional.empty();
+            }
+            matches.increment();
+            return Optional.of(new Match(best.fingerprint, best.reportFingerprint, bestSimilarity));
+        }
+    }
+
+    /**
+     * 登记分析完成的模板（AI 分析，或启动预热）
+     *
+     * @param template 已生成报告的模板（analyzedTime 为空时按当前时间）
+     */
+    public void recordAnalysis(SlowQueryTemplate template) {
+        recordAnalysis(template, template.getAnalyzedTime());
+    }
+
+    /**
+     * 登记分析完成的模板
+     *
+     * @param template           已生成报告的模板
+     * @param reportAnalyzedTime 报告由 AI 生成的时间（复用报告时为来源报告的分析时间，为空时按当前时间）
+     */
+    public void recordAnalysis(SlowQueryTemplate template, LocalDateTime reportAnalyzedTime) {
+        if (!enabled || template.getSqlTemplate() == null || template.getSqlFingerprint() == null) {
+            return;
+        }
+        long analyzedAt = reportAnalyzedTime != null
+                ? toEpochMilli(reportAnalyzedTime)
+                : System.currentTimeMillis();
+        String reportFingerprint = template.getReportSourceFingerprint() != null
+                ? template.getReportSourceFingerprint()
+                : template.getSqlFingerprint();
+        Member member = new Member(template.getSqlFingerprint(), reportFingerprint, tableKey(template),
+                signature(template.getSqlTemplate()), analyzedAt);
+
+        synchronized (lock) {
+            Member previous = members.remove(member.fingerprint);
+            if (previous != null) {
+                unlink(previous);
+            }
+            members.put(member.fingerprint, member);
+            for (int band = 0; band < BANDS; band++) {
+                ArrayDeque<Member> bucket = buckets.computeIfAbsent(bandKey(member.signature, band),
+                        k -> new ArrayDeque<>());
+                if (bucket.size() >= BUCKET_CAPACITY) {
+                    bucket.pollFirst();
+                }
+                bucket.addLast(member);
+            }
+            while (members.size() > maxMembers) {
+                Iterator<Member> eldest = members.values().iterator();
+                Member evicted = eldest.next();
+                eldest.remove();
+                unlink(evicted);
+            }
+        }
+    }
+
+    /**
+     * 报告是否仍在复用时效内
+     *
+     * @param reportAnalyzedTime 报告由 AI 生成的时间
+     * @return 在时效内时返回 true，时间为空时返回 false
+     */
+    public boolean isFresh(LocalDateTime reportAnalyzedTime) {
+        return reportAnalyzedTime != null
+                && System.currentTimeMillis() - toEpochMilli(reportAnalyzedTime) <= reuseWindowMillis;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void unlink(Member member) {
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(member.signature, band);
+            ArrayDeque<Member> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(member);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 索引指标
+     *
+     * @return 成员数、查询次数、命中次数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (lock) {
+            metrics.put("enabled", enabled);
+            metrics.put("members", members.size());
+            metrics.put("buckets", buckets.size());
+        }
+        metrics.put("lookups", lookups.sum());
+        metrics.put("matches", matches.sum());
+        return metrics;
+    }
+
+    // ==================== MinHash ====================
+
+    /**
+     * 模板词集合的 MinHash 签名
+     */
+    static long[] signature(String sqlTemplate) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String token : tokens(sqlTemplate)) {
+            long h = SqlFingerprintUtil.rawHash64(token);
+            for (int i = 0; i < HASHES; i++) {
+                long v = mix(h ^ SEEDS[i]);
+                if (v < signature[i]) {
+                    signature[i] = v;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 词集合：标识符/关键字（大写）、?、运算符；括号、逗号、点不计入
+     */
+    static Set<String> tokens(String sqlTemplate) {
+        Set<String> tokens = new HashSet<>();
+        int n = sqlTemplate.length();
+        int i = 0;
+        while (i < n) {
+            char c = sqlTemplate.charAt(i);
+            if (c <= ' ' || c == '(' || c == ')' || c == ',' || c == '.' || c == '`') {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (c == '?') {
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@') {
+                while (i < n && (Character.isLetterOrDigit(sqlTemplate.charAt(i))
+                        || sqlTemplate.charAt(i) == '_' || sqlTemplate.charAt(i) == '$' || sqlTemplate.charAt(i) == '@')) {
+                    i++;
+                }
+            } else {
+                while (i < n && !Character.isLetterOrDigit(sqlTemplate.charAt(i)) && sqlTemplate.charAt(i) > ' '
+                        && "(),.`_$@?".indexOf(sqlTemplate.charAt(i)) < 0) {
+                    i++;
+                }
+            }
+            tokens.add(sqlTemplate.substring(start, i).toUpperCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+
+    static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long h = band;
+        for (int r = 0; r < ROWS; r++) {
+            h = mix(h * 31 + signature[band * ROWS + r]);
+        }
+        return h;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * 同一实例、同一数据库、同一组表（忽略大小写和顺序）
+     */
+    static String tableKey(SlowQueryTemplate template) {
+        Set<String> tables = new TreeSet<>();
+        String names = template.getTableNames() != null && !template.getTableNames().isBlank()
+                ? template.getTableNames()
+                : template.getTableName();
+        if (names != null) {
+            for (String table : names.split(",")) {
+                if (!table.isBlank()) {
+                    tables.add(table.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return template.getInstanceId() + "|" + template.getDbName() + "|" + String.join(",", tables);
+    }
+
+    /**
+     * 可复用的家族成员
+     *
+     * @param fingerprint       相似成员的指纹
+     * @param reportFingerprint 报告实际来源的指纹（成员自身的报告也是复用来的时，指向最初分析的模板）
+     * @param similarity        估算的相似度（0-1）
+     */
+    public record Match(String fingerprint, String reportFingerprint, double similarity) {
+    }
+
+    private static final class Member {
+        private final String fingerprint;
+        private final String reportFingerprint;
+        private final String tableKey;
+        private final long[] signature;
+        private final long analyzedAt;
+
+        Member(String fingerprint, String reportFingerprint, String tableKey, long[] signature, long analyzedAt) {
+            this.fingerprint = fingerprint;
+            this.reportFingerprint = reportFingerprint;
+            this.tableKey = tableKey;
+            this.signature = signature;
+            this.analyzedAt = analyzedAt;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.repository.SlowQueryTemplateRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * 新模板插入器
+ *
+ * 新指纹的模板在独立事务中立即插入并提交：
+ * - 并发写入同一新指纹时，后到者在这里触发 idx_slowq_fingerprint 唯一约束冲突，只回滚这一条插入，
+ *   调用方改为读取已提交的模板并按老面孔合并统计，所在的批量写入事务不受影响
+ * - 插入的模板不带统计（次数为 0），统计统一通过原子增量更新累加，批量写入失败重试时不会重复计数
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Component
+@RequiredArgsConstructor
+public class TemplateInserter {
+
+    private final SlowQueryTemplateRepository templateRepo;
+
+    /**
+     * 在独立事务中插入模板
+     *
+     * @param template 新模板
+     * @return 已提交的模板
+     * @throws org.springframework.dao.DataIntegrityViolationException 同一指纹已被其他线程插入
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SlowQueryTemplate insert(SlowQueryTemplate template) {
+        return templateRepo.saveAndFlush(template);
+    }
+}
@@ -0,0 +1,684 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.enums.SeverityLevel;
+import com.dbdoctor.common.util.LatencySketch;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.IngestCursor;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.repository.IngestCursorRepository;
+import com.dbdoctor.repository.SlowQueryTemplateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 模板统计写后合并（write-behind）
+ *
+ * 老面孔的每条样本原本都要在写入事务里读出模板、在 Java 中重新计算平均值并整行保存，模板表的写入量与样本数成正比。
+ * 这里按指纹在内存中累加增量（次数、总和、最大值、最后出现时间、耗时分布草图），定时或待合并模板数达到上限时一次性合并到模板表：
+ * - 累加：ConcurrentHashMap.compute 只锁指纹所在的桶，不同指纹互不阻塞
+ * - 合并：一个事务内按指纹执行原子增量 UPDATE（SlowQueryTemplateRepository.addStatistics），不需要先读出模板，
+ *   写入量与窗口内的模板数成正比；多个采集线程、合并线程同时更新同一模板也不会丢失更新
+ * - 只在写入事务提交后累加：批量写入失败改为逐条重试时不会重复计数
+ * - 崩溃最多丢失一个合并窗口的统计；配置 wal-path 后增量先追加到预写日志，启动时重放
+ * - 每个日志段首行记录段序号，合并事务在同一事务内把段序号写入 ingest_cursor；
+ *   提交后、删除日志段前崩溃时，启动时跳过已提交的日志段，不会重复累加
+ *
+ * 统计读取（报告快照、通知判断）最多滞后一个合并窗口
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@Component
+public class TemplateStatsAccumulator {
+
+    /**
+     * 预写日志段首行（段序号）
+     */
+    private static final String EPOCH_HEADER = "#epoch\t";
+
+    /**
+     * ingest_cursor 中记录已提交段序号的来源标识前缀（filePosition 保存段序号）
+     */
+    private static final String WAL_SOURCE_KEY_PREFIX = "template-stats-wal:";
+
+    private final SlowQueryTemplateRepository templateRepo;
+    private final IngestCursorRepository cursorRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int maxPendingTemplates;
+    private final Path walPath;
+
+    private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 预写日志：追加 + 合并持读锁，切换日志段 + 取出增量持写锁，保证日志段与内存中的增量一一对应
+     */
+    private final ReentrantReadWriteLock walLock = new ReentrantReadWriteLock();
+    private BufferedWriter wal;
+
+    /**
+     * 当前日志段的序号（持写锁切换）
+     */
+    private long walEpoch;
+
+    /**
+     * 正在合并的日志段序号，-1 表示本次合并没有对应的日志段（持 flushLock 访问）
+     */
+    private long flushingEpoch = -1L;
+
+    private final Object flushLock = new Object();
+    private volatile long lastFlushAt = System.currentTimeMillis();
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedTemplates = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    public TemplateStatsAccumulator(SlowQueryTemplateRepository templateRepo,
+                                    IngestCursorRepository cursorRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    SlowLogMonitorProperties properties) {
+        SlowLogMonitorProperties.TemplateStats config = properties.getTemplateStats();
+        this.templateRepo = templateRepo;
+        this.cursorRepository = cursorRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.flushIntervalMs = Math.max(100L, config.getFlushIntervalMs());
+        this.maxPendingTemplates = Math.max(1, config.getMaxPendingTemplates());
+        this.walPath = enabled && config.getWalPath() != null && !config.getWalPath().isBlank()
+                ? Paths.get(config.getWalPath())
+                : null;
+    }
+
+    /**
+     * 启用预写日志时重放上次未合并的增量（跳过段序号不大于已提交序号的日志段）
+     */
+    @PostConstruct
+    public void init() {
+        if (walPath == null) {
+            return;
+        }
+        try {
+            if (walPath.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(walPath.toAbsolutePath().getParent());
+            }
+
+            long committed = committedEpoch();
+            Path flushing = flushingPath();
+            int replayed = replay(flushing, committed) + replay(walPath, committed);
+            walEpoch = Math.max(committed, Math.max(readEpoch(flushing), readEpoch(walPath))) + 1;
+
+            // 重放的增量写入新的日志段，旧日志段删除
+            Path tmp = walPath.resolveSibling(walPath.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(EPOCH_HEADER + walEpoch + '\n');
+                for (Map.Entry<String, Delta> entry : pending.entrySet()) {
+                    writer.write(entry.getValue().toWalLine(entry.getKey()));
+                }
+            }
+            Files.move(tmp, walPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(flushing);
+            wal = openWal();
+
+            if (replayed > 0) {
+                log.info("📼 模板统计预写日志重放完成: {} 条记录，{} 个模板待合并", replayed, pending.size());
+            }
+        } catch (IOException e) {
+            log.error("❌ 模板统计预写日志不可用，统计仅保存在内存中: {}", walPath, e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 指纹尚未合并到模板表的执行次数
+     *
+     * @param fingerprint SQL指纹
+     * @return 待合并的执行次数
+     */
+    public long pendingCount(String fingerprint) {
+        Delta delta = pending.get(fingerprint);
+        return delta != null ? delta.count : 0L;
+    }
+
+    /**
+     * 在当前写入事务提交后累加增量（没有事务时立即累加）
+     *
+     * @param deltas 指纹 → 本批次的增量
+     */
+    public void recordAfterCommit(Map<String, Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(deltas);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(deltas);
+            }
+        });
+    }
+
+    /**
+     * 累加增量
+     *
+     * @param deltas 指纹 → 增量
+     */
+    public void record(Map<String, Delta> deltas) {
+        if (walPath == null) {
+            deltas.forEach(this::merge);
+            return;
+        }
+        walLock.readLock().lock();
+        try {
+            if (wal != null) {
+                StringBuilder lines = new StringBuilder();
+                deltas.forEach((fingerprint, delta) -> lines.append(delta.toWalLine(fingerprint)));
+                wal.write(lines.toString());
+                wal.flush();
+            }
+        } catch (IOException e) {
+            // 预写日志不可用时仍然累加，只是失去崩溃保护
+            log.warn("写入模板统计预写日志失败: {}", e.getMessage());
+        } finally {
+            try {
+                deltas.forEach(this::merge);
+            } finally {
+                walLock.readLock().unlock();
+            }
+        }
+    }
+
+    private void merge(String fingerprint, Delta delta) {
+        pending.compute(fingerprint, (key, existing) -> existing == null ? delta.copy() : existing.merge(delta));
+        recorded.increment();
+    }
+
+    /**
+     * 定时检查：到达合并间隔或待合并模板数达到上限时合并
+     */
+    @Scheduled(fixedDelay = 200L)
+    public void scheduledFlush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pending.size() >= maxPendingTemplates || System.currentTimeMillis() - lastFlushAt >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    /**
+     * 停机前合并全部增量
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (wal != null) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.debug("关闭模板统计预写日志失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 把待合并的增量合并到模板表（一个事务）
+     *
+     * 失败时增量放回内存，下次重试
+     *
+     * @return 合并的模板数
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            lastFlushAt = System.currentTimeMillis();
+            Map<String, Delta> drained = drain();
+            if (drained.isEmpty()) {
+                deleteFlushingSegment();
+                return 0;
+            }
+
+            long epoch = flushingEpoch;
+            try {
+                Integer applied = transactionTemplate.execute(status -> {
+                    int count = apply(drained);
+                    markFlushed(epoch);
+                    return count;
+                });
+                int count = applied != null ? applied : 0;
+                flushes.increment();
+                flushedTemplates.add(count);
+                deleteFlushingSegment();
+                log.debug("📊 模板统计合并完成: {} 个模板", count);
+                return count;
+            } catch (Exception e) {
+                failedFlushes.increment();
+                log.warn("⚠️ 模板统计合并失败，{} 个模板的增量留待下次合并: {}", drained.size(), e.getMessage());
+                record(drained);
+                deleteFlushingSegment();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 取出全部增量；启用预写日志时同时切换日志段（当前段改名为 .flushing，合并提交后删除，新段序号加一）
+     */
+    private Map<String, Delta> drain() {
+        Map<String, Delta> drained = new HashMap<>();
+        flushingEpoch = -1L;
+        walLock.writeLock().lock();
+        try {
+            if (wal != null) {
+                try {
+                    wal.close();
+                    Files.move(walPath, flushingPath(), StandardCopyOption.REPLACE_EXISTING);
+                    flushingEpoch = walEpoch;
+                    walEpoch++;
+                } catch (IOException e) {
+                    log.warn("切换模板统计预写日志失败: {}", e.getMessage());
+                }
+                try {
+                    wal = openWal();
+                } catch (IOException e) {
+                    log.error("❌ 打开模板统计预写日志失败，停止写入预写日志", e);
+                    wal = null;
+                }
+            }
+            for (String fingerprint : pending.keySet()) {
+                Delta delta = pending.remove(fingerprint);
+                if (delta != null) {
+                    drained.put(fingerprint, delta);
+                }
+            }
+        } finally {
+            walLock.writeLock().unlock();
+        }
+        return drained;
+    }
+
+    /**
+     * 在当前事务内把增量原子累加到模板表（写后合并未启用时由写入事务直接调用）
+     *
+     * 按指纹排序后更新：并发事务以相同顺序加行锁，不会互相死锁
+     *
+     * @param deltas 指纹 → 增量
+     * @return 更新的模板数（模板已被清理的增量直接丢弃）
+     */
+    public int apply(Map<String, Delta> deltas) {
+        int applied = 0;
+        for (Map.Entry<String, Delta> entry : new TreeMap<>(deltas).entrySet()) {
+            Delta delta = entry.getValue();
+            if (delta.count <= 0) {
+                continue;
+            }
+            applied += templateRepo.addStatistics(entry.getKey(), delta.count,
+                    delta.sumQueryTime, delta.maxQueryTime,
+                    delta.sumLockTime, delta.maxLockTime,
+                    delta.sumRowsSent, delta.maxRowsSent,
+                    delta.sumRowsExamined, delta.maxRowsExamined,
+                    delta.lastSeenTime);
+            applySketches(entry.getKey(), delta);
+        }
+        return applied;
+    }
+
+    /**
+     * 合并耗时分布草图：草图无法在 SQL 中合并，读出、合并后写回
+     * addStatistics 已在本事务内持有该行的写锁，并发事务在此等待，读改写不会丢失更新
+     */
+    private void applySketches(String fingerprint, Delta delta) {
+        if (delta.queryTimes.isEmpty() && delta.lockTimes.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = templateRepo.findSketches(fingerprint);
+        if (rows.isEmpty()) {
+            return;
+        }
+        Object[] current = rows.get(0);
+        try {
+            templateRepo.updateSketches(fingerprint,
+                    LatencySketch.mergeEncoded((String) current[0], delta.queryTimes),
+                    LatencySketch.mergeEncoded((String) current[1], delta.lockTimes));
+        } catch (IllegalArgumentException e) {
+            // 已保存的草图损坏时用增量重新开始
+            log.warn("模板耗时分布草图无法解析，重新累计: fingerprint={}", fingerprint);
+            templateRepo.updateSketches(fingerprint, delta.queryTimes.encode(), delta.lockTimes.encode());
+        }
+    }
+
+    // ==================== 预写日志 ====================
+
+    private Path flushingPath() {
+        return walPath.resolveSibling(walPath.getFileName() + ".flushing");
+    }
+
+    /**
+     * 打开当前日志段（追加写入），新建的日志段先写入段序号
+     */
+    private BufferedWriter openWal() throws IOException {
+        boolean fresh = !Files.exists(walPath) || Files.size(walPath) == 0;
+        BufferedWriter writer = Files.newBufferedWriter(walPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (fresh) {
+            writer.write(EPOCH_HEADER + walEpoch + '\n');
+            writer.flush();
+        }
+        return writer;
+    }
+
+    private String walSourceKey() {
+        return WAL_SOURCE_KEY_PREFIX + walPath.toAbsolutePath();
+    }
+
+    /**
+     * 已合并提交的日志段序号（没有记录时为 0）
+     */
+    private long committedEpoch() {
+        if (cursorRepository == null) {
+            return 0L;
+        }
+        return cursorRepository.findBySourceKey(walSourceKey())
+                .map(IngestCursor::getFilePosition)
+                .orElse(0L);
+    }
+
+    /**
+     * 在合并事务内记录已提交的日志段序号（与模板统计的增量更新一起提交或回滚）
+     */
+    private void markFlushed(long epoch) {
+        if (epoch < 0 || cursorRepository == null) {
+            return;
+        }
+        IngestCursor cursor = cursorRepository.findBySourceKey(walSourceKey())
+                .orElseGet(() -> IngestCursor.builder().sourceKey(walSourceKey()).build());
+        cursor.setFilePosition(epoch);
+        cursor.setUpdatedAt(LocalDateTime.now());
+        cursorRepository.save(cursor);
+    }
+
+    /**
+     * 读取日志段序号
+     *
+     * @return 段序号，文件不存在或没有段序号（旧格式）时返回 -1
+     */
+    private static long readEpoch(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return -1L;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            if (first == null || !first.startsWith(EPOCH_HEADER)) {
+                return -1L;
+            }
+            try {
+                return Long.parseLong(first.substring(EPOCH_HEADER.length()).trim());
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+    }
+
+    private void deleteFlushingSegment() {
+        if (walPath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(flushingPath());
+        } catch (IOException e) {
+            log.warn("删除模板统计预写日志失败: {}", e.getMessage());
+        }
+    }
+
+    private int replay(Path file, long committed) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long epoch = readEpoch(file);
+        if (epoch >= 0 && epoch <= committed) {
+            // 合并事务已提交、日志段尚未删除时崩溃：增量已在模板表中
+            log.info("📼 模板统计预写日志段 {} 已合并提交，跳过重放: {}", epoch, file);
+            return 0;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(EPOCH_HEADER)) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 11 && fields.length != 13) {
+                    // 崩溃时写了一半的末行（11 列为不含耗时分布的旧格式）
+                    continue;
+                }
+                try {
+                    pending.merge(fields[0], Delta.fromWalFields(fields), Delta::merge);
+                    lines++;
+                } catch (RuntimeException e) {
+                    log.debug("跳过无法解析的预写日志记录: {}", line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    // ==================== 指标 ====================
+
+    /**
+     * 写后合并指标
+     *
+     * @return 待合并模板数、累加次数、合并次数等
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("wal", walPath != null ? walPath.toString() : null);
+        metrics.put("pendingTemplates", pending.size());
+        metrics.put("recorded", recorded.sum());
+        metrics.put("flushes", flushes.sum());
+        metrics.put("flushedTemplates", flushedTemplates.sum());
+        metrics.put("failedFlushes", failedFlushes.sum());
+        return metrics;
+    }
+
+    // ==================== 增量 ====================
+
+    /**
+     * 单个模板的统计增量（可合并）
+     */
+    public static final class Delta {
+        private long count;
+        private double sumQueryTime;
+        private double maxQueryTime;
+        private double sumLockTime;
+        private double maxLockTime;
+        private long sumRowsSent;
+        private long maxRowsSent;
+        private long sumRowsExamined;
+        private long maxRowsExamined;
+        private LocalDateTime lastSeenTime;
+        private final LatencySketch queryTimes = new LatencySketch();
+        private final LatencySketch lockTimes = new LatencySketch();
+
+        private Delta() {
+        }
+
+        /**
+         * 一条慢查询的增量（预聚合记录代表区间内的多次执行）
+         *
+         * @param slowLog 慢查询日志
+         * @return 增量
+         */
+        public static Delta of(SlowQueryLog slowLog) {
+            long n = slowLog.effectiveExecutionCount();
+            double queryTime = slowLog.getQueryTime() != null ? slowLog.getQueryTime() : 0.0;
+            double lockTime = slowLog.getLockTime() != null ? slowLog.getLockTime() : 0.0;
+            long rowsSent = slowLog.getRowsSent() != null ? slowLog.getRowsSent() : 0L;
+            long rowsExamined = slowLog.getRowsExamined() != null ? slowLog.getRowsExamined() : 0L;
+
+            Delta delta = new Delta();
+            delta.count = n;
+            delta.sumQueryTime = queryTime * n;
+            delta.maxQueryTime = slowLog.getMaxQueryTime() != null ? slowLog.getMaxQueryTime() : queryTime;
+            delta.sumLockTime = lockTime * n;
+            delta.maxLockTime = lockTime;
+            delta.sumRowsSent = rowsSent * n;
+            delta.maxRowsSent = rowsSent;
+            delta.sumRowsExamined = rowsExamined * n;
+            delta.maxRowsExamined = rowsExamined;
+            delta.lastSeenTime = LocalDateTime.now();
+            // 预聚合记录只有区间平均值，按 n 次相同耗时计入分布
+            delta.queryTimes.add(queryTime, n);
+            delta.lockTimes.add(lockTime, n);
+            return delta;
+        }
+
+        /**
+         * 合并另一个增量
+         *
+         * @param other 另一个增量
+         * @return 当前增量
+         */
+        public Delta merge(Delta other) {
+            count += other.count;
+            sumQueryTime += other.sumQueryTime;
+            maxQueryTime = Math.max(maxQueryTime, other.maxQueryTime);
+            sumLockTime += other.sumLockTime;
+            maxLockTime = Math.max(maxLockTime, other.maxLockTime);
+            sumRowsSent += other.sumRowsSent;
+            maxRowsSent = Math.max(maxRowsSent, other.maxRowsSent);
+            sumRowsExamined += other.sumRowsExamined;
+            maxRowsExamined = Math.max(maxRowsExamined, other.maxRowsExamined);
+            if (lastSeenTime == null || (other.lastSeenTime != null && other.lastSeenTime.isAfter(lastSeenTime))) {
+                lastSeenTime = other.lastSeenTime;
+            }
+            queryTimes.merge(other.queryTimes);
+            lockTimes.merge(other.lockTimes);
+            return this;
+        }
+
+        Delta copy() {
+            return new Delta().merge(this);
+        }
+
+        /**
+         * 应用到内存中的模板（与 addStatistics 的原子更新等价）：次数、总和累加，最大值取较大者
+         *
+         * 统计列不可更新，修改只影响内存中的对象（例如让本批次触发的报告看到最新统计），不会被整行保存写回
+         *
+         * @param template          模板记录
+         * @param severityThreshold 严重程度阈值（模板尚无严重程度时按新的平均耗时计算）
+         */
+        public void applyTo(SlowQueryTemplate template, double severityThreshold) {
+            if (count <= 0) {
+                return;
+            }
+            template.setOccurrenceCount(plus(template.getOccurrenceCount(), count));
+            template.setSumQueryTime(plus(template.getSumQueryTime(), sumQueryTime));
+            template.setMaxQueryTime(max(template.getMaxQueryTime(), maxQueryTime));
+            template.setSumLockTime(plus(template.getSumLockTime(), sumLockTime));
+            template.setMaxLockTime(max(template.getMaxLockTime(), maxLockTime));
+            template.setSumRowsSent(plus(template.getSumRowsSent(), sumRowsSent));
+            template.setMaxRowsSent(template.getMaxRowsSent() != null
+                    ? Math.max(template.getMaxRowsSent(), maxRowsSent) : maxRowsSent);
+            template.setSumRowsExamined(plus(template.getSumRowsExamined(), sumRowsExamined));
+            template.setMaxRowsExamined(template.getMaxRowsExamined() != null
+                    ? Math.max(template.getMaxRowsExamined(), maxRowsExamined) : maxRowsExamined);
+            if (template.getLastSeenTime() == null || lastSeenTime.isAfter(template.getLastSeenTime())) {
+                template.setLastSeenTime(lastSeenTime);
+            }
+            template.setQueryTimeSketch(mergeSketch(template.getQueryTimeSketch(), queryTimes));
+            template.setLockTimeSketch(mergeSketch(template.getLockTimeSketch(), lockTimes));
+
+            if (template.getSeverityLevel() == null && template.getAvgQueryTime() != null) {
+                template.setSeverityLevel(SeverityLevel.fromQueryTime(template.getAvgQueryTime(), severityThreshold));
+            }
+        }
+
+        private static String mergeSketch(String encoded, LatencySketch sketch) {
+            try {
+                return LatencySketch.mergeEncoded(encoded, sketch);
+            } catch (IllegalArgumentException e) {
+                return sketch.encode();
+            }
+        }
+
+        private static long plus(Long old, long value) {
+            return old != null ? old + value : value;
+        }
+
+        private static double plus(Double old, double value) {
+            return old != null ? old + value : value;
+        }
+
+        private static double max(Double old, double value) {
+            return old == null || value > old ? value : old;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        String toWalLine(String fingerprint) {
+            return fingerprint + '\t' + count + '\t' + sumQueryTime + '\t' + maxQueryTime + '\t'
+                    + sumLockTime + '\t' + maxLockTime + '\t' + sumRowsSent + '\t' + maxRowsSent + '\t'
+                    + sumRowsExamined + '\t' + maxRowsExamined + '\t' + lastSeenTime + '\t'
+                    + queryTimes.encode() + '\t' + lockTimes.encode() + '\n';
+        }
+
+        static Delta fromWalFields(String[] fields) {
+            Delta delta = new Delta();
+            delta.count = Long.parseLong(fields[1]);
+            delta.sumQueryTime = Double.parseDouble(fields[2]);
+            delta.maxQueryTime = Double.parseDouble(fields[3]);
+            delta.sumLockTime = Double.parseDouble(fields[4]);
+            delta.maxLockTime = Double.parseDouble(fields[5]);
+            delta.sumRowsSent = Long.parseLong(fields[6]);
+            delta.maxRowsSent = Long.parseLong(fields[7]);
+            delta.sumRowsExamined = Long.parseLong(fields[8]);
+            delta.maxRowsExamined = Long.parseLong(fields[9]);
+            delta.lastSeenTime = LocalDateTime.parse(fields[10]);
+            if (fields.length > 12) {
+                delta.queryTimes.merge(LatencySketch.decode(fields[11]));
+                delta.lockTimes.merge(LatencySketch.decode(fields[12]));
+            }
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.dbdoctor.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LatencySketch 单元测试
+ *
+ * 测试重点：
+ * - 双峰分布的分位数相对误差不超过 1%
+ * - 分别累加后合并与直接累加全部数据结果一致
+ * - 编码 / 解码往返不丢失数据
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class LatencySketchTest {
+
+    private static double exactQuantile(double[] sorted, double q) {
+        return sorted[(int) Math.floor(q * (sorted.length - 1))];
+    }
+
+    /**
+     * 大部分 10ms、少量 5s：平均值约 0.26 秒，p50 和 p99 仍能区分两个峰
+     */
+    @Test
+    void testBimodalAccuracy() {
+        Random random = new Random(42);
+        double[] values = new double[10_000];
+        LatencySketch sketch = new LatencySketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 20 == 0 ? 5.0 + random.nextDouble() : 0.01 + random.nextDouble() * 0.002;
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.50, 0.95, 0.99}) {
+            double exact = exactQuantile(values, q);
+            assertEquals(exact, sketch.quantile(q), exact * LatencySketch.RELATIVE_ACCURACY, "q=" + q);
+        }
+        assertTrue(sketch.percentiles().p50() < 0.02);
+        assertTrue(sketch.percentiles().p99() > 5.0);
+    }
+
+    /**
+     * 合并两个草图等价于直接累加全部数据
+     */
+    @Test
+    void testMergeEqualsCombined() {
+        LatencySketch first = new LatencySketch();
+        LatencySketch second = new LatencySketch();
+        LatencySketch combined = new LatencySketch();
+        for (int i = 1; i <= 1000; i++) {
+            double value = i * 0.003;
+            (i % 3 == 0 ? first : second).add(value);
+            combined.add(value);
+        }
+
+        LatencySketch merged = first.copy().merge(second);
+
+        assertEquals(combined.getCount(), merged.getCount());
+        assertEquals(combined.encode(), merged.encode());
+        assertEquals(combined.percentiles(), merged.percentiles());
+    }
+
+    /**
+     * 编码后解码得到相同的草图，空字符串解码为空草图
+     */
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        LatencySketch sketch = new LatencySketch();
+        sketch.add(0.0, 5);
+        sketch.add(0.0005);
+        sketch.add(12.5, 3);
+        sketch.add(3600.0);
+
+        LatencySketch decoded = LatencySketch.decode(sketch.encode());
+
+        assertEquals(10L, decoded.getCount());
+        assertEquals(sketch.encode(), decoded.encode());
+        assertEquals(sketch.percentiles(), decoded.percentiles());
+        assertTrue(LatencySketch.decode(null).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> LatencySketch.decode("AQ"));
+    }
+
+    /**
+     * 0 值（常见于锁等待时间）单独计数，没有数据时分位数为 null
+     */
+    @Test
+    void testZerosAndEmpty() {
+        LatencySketch sketch = new LatencySketch();
+        assertNull(sketch.quantile(0.5));
+        assertEquals(LatencySketch.Percentiles.EMPTY, sketch.percentiles());
+
+        sketch.add(0.0, 99);
+        sketch.add(2.0);
+
+        assertEquals(0.0, sketch.quantile(0.5));
+        assertEquals(2.0, sketch.quantile(1.0), 2.0 * LatencySketch.RELATIVE_ACCURACY);
+    }
+}
@@ -0,0 +1,207 @@
+package com.dbdoctor.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SqlFingerprintLexer 单元测试
+ *
+ * 测试重点：
+ * - 模板标准化（常量、注释、空白、反引号）
+ * - 指纹稳定性（大小写、格式差异不影响指纹）
+ * - 变长列表与 ORM 别名折叠
+ * - Murmur3 x64 128 实现正确性
+ * - 语句类型与表识别（JOIN、子查询、多表）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class SqlFingerprintLexerTest {
+
+    private final SqlFingerprintLexer lexer = new SqlFingerprintLexer();
+
+    /**
+     * 常量统一替换为 ?
+     */
+    @Test
+    void testTemplateReplacesLiterals() {
+        String sql = "SELECT * FROM t WHERE a IN (1, -2.5, 'x''y') AND b IS NULL AND c = 0xFF "
+                + "AND d = X'0A' AND e = \"s\" AND f >= 1e3 AND g = TRUE";
+        assertEquals("SELECT * FROM t WHERE a IN (?+) AND b IS ? AND c = ? AND d = ? AND e = ? "
+                + "AND f >= ? AND g = ?", lexer.template(sql));
+    }
+
+    /**
+     * 注释、反引号、多余空白和末尾分号被移除
+     */
+    @Test
+    void testTemplateStripsCommentsAndWhitespace() {
+        String sql = """
+            -- 查询用户
+            SELECT /* 字段 */ `id`,name
+            FROM   `users`   # 用户表
+            WHERE  id=1;
+            """;
+        assertEquals("SELECT id, name FROM users WHERE id = ?", lexer.template(sql));
+    }
+
+    /**
+     * 字符串中的注释符号不会被当作注释
+     */
+    @Test
+    void testCommentMarkersInsideStrings() {
+        assertEquals("SELECT * FROM users WHERE name = ? AND id = ?",
+                lexer.template("SELECT * FROM users WHERE name = '--not a comment' AND id = 1"));
+    }
+
+    /**
+     * 二元减号保留，一元负号并入常量；标识符中的数字保留
+     */
+    @Test
+    void testMinusAndIdentifiersWithDigits() {
+        assertEquals("UPDATE t1 SET v = v - ? WHERE id = ?", lexer.template("UPDATE t1 SET v = v - 1 WHERE id = -5"));
+        assertEquals("SELECT * FROM db1.t2 LIMIT ?, ?", lexer.template("SELECT * FROM db1.t2 LIMIT 10, 20"));
+    }
+
+    /**
+     * 大小写、格式、常量值不同的同一条 SQL 指纹相同
+     */
+    @Test
+    void testFingerprintIgnoresCaseAndFormatting() {
+        String fp1 = lexer.fingerprint("SELECT * FROM users WHERE id = 1");
+        String fp2 = lexer.fingerprint("select *\n  from `users`\n where id=42 -- 注释");
+        String fp3 = lexer.fingerprint("SELECT * FROM users WHERE id = 1 AND status = 2");
+
+        assertEquals(32, fp1.length());
+        assertEquals(fp1, fp2);
+        assertNotEquals(fp1, fp3);
+    }
+
+    /**
+     * IN 列表长度、VALUES 行数不同的 SQL 指纹相同；IN 子查询不折叠
+     */
+    @Test
+    void testVariadicListsCollapse() {
+        assertEquals(lexer.fingerprint("SELECT * FROM t WHERE id IN (1, 2, 3)"),
+                lexer.fingerprint("SELECT * FROM t WHERE id IN (7)"));
+        assertEquals("SELECT * FROM t WHERE (a, b) IN (?+) AND c IN (x, ?)",
+                lexer.template("SELECT * FROM t WHERE (a, b) IN ((1, 2), (3, 4)) AND c IN (x, 5)"));
+        assertEquals("SELECT * FROM t WHERE id IN (SELECT id FROM u WHERE k IN (?+))",
+                lexer.template("SELECT * FROM t WHERE id IN (SELECT id FROM u WHERE k IN (1, 2))"));
+
+        assertEquals("INSERT INTO t(a, b) VALUES (?, ?) ON DUPLICATE KEY UPDATE a = VALUES (a), b = VALUES (b)",
+                lexer.template("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, 'z') "
+                        + "ON DUPLICATE KEY UPDATE a = VALUES(a), b = VALUES(b)"));
+        assertEquals(lexer.fingerprint("INSERT INTO t (a) VALUES (1)"),
+                lexer.fingerprint("INSERT INTO t (a) VALUES (1), (2)"));
+    }
+
+    /**
+     * Hibernate 生成的别名去掉序号，普通标识符中的数字保留
+     */
+    @Test
+    void testOrmAliasNormalization() {
+        assertEquals("select user_.id as id_, user_.name as name_ from users user_ where user_.id = ?",
+                lexer.template("select user0_.id as id1_0_0_, user0_.name as name2_0_0_ from users user0_ where user0_.id=?"));
+        assertEquals(lexer.fingerprint("select u1_0.id from users u1_0 where u1_0.id = 5"),
+                lexer.fingerprint("select u2_0.id from users u2_0 where u2_0.id = 6"));
+        assertEquals("select * from sales_2024_01 t1 where log2 = ?",
+                lexer.template("select * from sales_2024_01 t1 where log2 = 1"));
+    }
+
+    /**
+     * 与 ORM 别名格式相同的真实表名、列名和 schema 不改写，也不会被合并到同一个模板
+     */
+    @Test
+    void testOrmPatternTableNamesAreKept() {
+        assertEquals("select * from t1_0", lexer.template("select * from t1_0"));
+        assertNotEquals(lexer.fingerprint("select * from t0_"), lexer.fingerprint("select * from t1_"));
+        assertNotEquals(lexer.fingerprint("select * from tbl1_2024"), lexer.fingerprint("select * from tbl2_2024"));
+        assertEquals("update db1_2024.t1_0 set c1_0 = ? where id = ?",
+                lexer.template("update db1_2024.t1_0 set c1_0 = 1 where id = 2"));
+
+        String sql = "select u1_0.id from users_1_0 u1_0 join db2_0.orders1_ o1_0 on o1_0.uid = u1_0.id";
+        SqlFingerprintLexer.Statement statement = lexer.analyze(sql);
+        assertEquals(List.of("users_1_0", "db2_0.orders1_"), statement.tables());
+        assertEquals("select u_.id from users_1_0 u_ join db2_0.orders1_ o_ on o_.uid = u_.id", statement.template());
+        assertEquals(lexer.fingerprint(sql), statement.fingerprint());
+    }
+
+    /**
+     * 参数提取：位置对应模板中的 ?，IN 列表对应同一位置，VALUES 折叠掉的行不提取
+     */
+    @Test
+    void testAnalyzeParameters() {
+        List<SqlFingerprintLexer.Parameter> parameters = lexer.analyze(
+                "SELECT * FROM t WHERE tenant_id = 42 AND status IN ('A', 'B') AND t.amount > -1.5 LIMIT ?").parameters();
+        assertEquals(List.of(
+                new SqlFingerprintLexer.Parameter(0, "tenant_id", "42"),
+                new SqlFingerprintLexer.Parameter(1, null, "'A'"),
+                new SqlFingerprintLexer.Parameter(1, null, "'B'"),
+                new SqlFingerprintLexer.Parameter(2, "amount", "-1.5")), parameters);
+
+        assertEquals(List.of(
+                new SqlFingerprintLexer.Parameter(0, null, "1"),
+                new SqlFingerprintLexer.Parameter(1, null, "'x'"),
+                new SqlFingerprintLexer.Parameter(2, "id", "9")),
+                lexer.analyze("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y') ON DUPLICATE KEY UPDATE id = 9").parameters());
+    }
+
+    /**
+     * 只有注释/空白时返回空字符串
+     */
+    @Test
+    void testEmptyAfterNormalization() {
+        assertEquals("", lexer.fingerprint("-- 只有注释\n/* 注释 */"));
+    }
+
+    /**
+     * Murmur3 x64 128 参考值（UTF-16LE 输入，与按字节实现的结果一致）
+     */
+    @Test
+    void testMurmur3ReferenceValues() {
+        assertEquals("96a698500b4e98bdb278c9bfc754677d", lexer.hashHex("a"));
+        assertEquals(lexer.hashHex("1/abc"), lexer.hashHex("1/abc"));
+        assertNotEquals(lexer.hashHex("1/abc"), lexer.hashHex("2/abc"));
+    }
+
+    /**
+     * JOIN 与子查询中的表全部识别，schema 保留
+     */
+    @Test
+    void testAnalyzeJoinAndSubqueryTables() {
+        SqlFingerprintLexer.Statement statement = lexer.analyze(
+                "SELECT c.name FROM crm.customers c JOIN crm.orders o ON o.cid = c.id "
+                        + "LEFT JOIN `hr`.`emp` e ON e.id = o.eid WHERE o.x IN (SELECT id FROM audit.log)");
+
+        assertEquals("SELECT", statement.type());
+        assertEquals(List.of("crm.customers", "crm.orders", "hr.emp", "audit.log"), statement.tables());
+        assertEquals(lexer.fingerprint("select c.name from crm.customers c join crm.orders o on o.cid=c.id "
+                + "left join hr.emp e on e.id=o.eid where o.x in (select id from audit.log)"), statement.fingerprint());
+    }
+
+    /**
+     * FROM 列表、派生表、多表 UPDATE、INSERT ... ON DUPLICATE KEY UPDATE
+     */
+    @Test
+    void testAnalyzeStatementShapes() {
+        assertEquals(List.of("inner_t", "b", "c"),
+                lexer.analyze("SELECT * FROM (SELECT * FROM inner_t) d, b FORCE INDEX (i1, i2), c ORDER BY x, y").tables());
+
+        SqlFingerprintLexer.Statement update = lexer.analyze("UPDATE a, b SET a.x = b.x WHERE a.id = b.id");
+        assertEquals("UPDATE", update.type());
+        assertEquals(List.of("a", "b"), update.tables());
+
+        SqlFingerprintLexer.Statement insert = lexer.analyze(
+                "INSERT IGNORE INTO shop.items (id, name) VALUES (1, 'a') ON DUPLICATE KEY UPDATE name = VALUES(name)");
+        assertEquals("INSERT", insert.type());
+        assertEquals(List.of("shop.items"), insert.tables());
+
+        SqlFingerprintLexer.Statement with = lexer.analyze("WITH r AS (SELECT 1) DELETE FROM logs WHERE id = 1");
+        assertEquals("DELETE", with.type());
+    }
+}
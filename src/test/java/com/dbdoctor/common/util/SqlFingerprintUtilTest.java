@@ -29,7 +29,7 @@ class SqlFingerprintUtilTest {
     }
 
     /**
-     * 测试 cleanSql() 方法 - 多行注释(/* */)
+     * 测试 cleanSql() 方法 - 多行注释
      */
     @Test
     void testCleanSqlWithMultiLineComment() {
@@ -272,4 +272,124 @@ class SqlFingerprintUtilTest {
         assertTrue(result.contains("LIMIT"), "应该保留 LIMIT");
         assertTrue(result.contains("enterprise_crm_system"), "应该保留数据库名");
     }
+
+    /**
+     * 测试兼容模式 - LEGACY 引擎仍使用 MD5 指纹，且注释不影响指纹
+     */
+    @Test
+    void testLegacyEngineCompatibility() {
+        SqlFingerprintUtil.Engine previous = SqlFingerprintUtil.getEngine();
+        try {
+            SqlFingerprintUtil.setEngine(SqlFingerprintUtil.Engine.LEGACY);
+            String fp1 = SqlFingerprintUtil.calculateFingerprint("SELECT * FROM users WHERE id = 1");
+            String fp2 = SqlFingerprintUtil.calculateFingerprint("-- 注释\nSELECT * FROM users WHERE id = 2");
+
+            assertEquals(SqlFingerprintUtil.calculateLegacyFingerprint("SELECT * FROM users WHERE id = 1"), fp1);
+            assertEquals(fp1, fp2, "兼容模式下仅常量不同的 SQL 应生成相同指纹");
+            assertEquals(32, fp1.length());
+        } finally {
+            SqlFingerprintUtil.setEngine(previous);
+        }
+    }
+
+    /**
+     * 测试超长 SQL（LEXER 引擎）- 批量 INSERT 截断在不同位置时归入同一模板，且与未超长的同结构 SQL 指纹一致
+     */
+    @Test
+    void testOversizeBatchInsertHasStableFingerprint() {
+        StringBuilder sql = new StringBuilder("INSERT INTO logs (id, msg, ts) VALUES ");
+        for (int i = 0; i < 2000; i++) {
+            sql.append(i > 0 ? ", " : "").append('(').append(i).append(", 'message (").append(i)
+                    .append(")', '2024-01-01 00:00:0").append(i % 10).append("')");
+        }
+        String full = sql.toString();
+        String small = "INSERT INTO logs (id, msg, ts) VALUES (1, 'a', 'b'), (2, 'c', 'd')";
+
+        SqlFingerprintUtil.Engine previous = SqlFingerprintUtil.getEngine();
+        try {
+            SqlFingerprintUtil.setEngine(SqlFingerprintUtil.Engine.LEXER);
+            SqlFingerprintUtil.setOversize(4096, 1000, 200);
+            String expected = SqlFingerprintUtil.analyze(small).getFingerprint();
+            for (int length : new int[]{5000, 5003, 5017, full.length()}) {
+                var artifact = SqlFingerprintUtil.analyze(full.substring(0, length));
+                assertTrue(artifact.isOversize());
+                assertEquals(expected, artifact.getFingerprint(), "截断位置不同不应影响指纹: " + length);
+                assertEquals("INSERT INTO logs(id, msg, ts) VALUES (?, ?, ?) …", artifact.getSqlTemplate());
+                assertEquals("logs", artifact.getTableName());
+                assertTrue(artifact.getMaskedSql().length() <= 200 + SqlFingerprintUtil.TRUNCATED_MARKER.length());
+                assertTrue(artifact.getMaskedSql().endsWith(SqlFingerprintUtil.TRUNCATED_MARKER));
+            }
+            assertFalse(SqlFingerprintUtil.analyze(small).isOversize());
+        } finally {
+            SqlFingerprintUtil.setOversize(16384, 8192, 2048);
+            SqlFingerprintUtil.setEngine(previous);
+        }
+    }
+
+    /**
+     * 测试超长 SQL（LEGACY 引擎）- 指纹和模板与稳定前缀走 LEGACY 路径的结果一致，不会重新解析折叠后的模板
+     */
+    @Test
+    void testOversizeLegacyEngine() {
+        StringBuilder sql = new StringBuilder("INSERT INTO orders(id, status) VALUES (0, 'PAID')");
+        for (int i = 1; i < 1000; i++) {
+            sql.append(", (").append(i).append(", 'PAID')");
+        }
+        String full = sql.toString();
+
+        SqlFingerprintUtil.Engine previous = SqlFingerprintUtil.getEngine();
+        try {
+            SqlFingerprintUtil.setEngine(SqlFingerprintUtil.Engine.LEGACY);
+            for (int prefixLength : new int[]{1000, 1003, 1007}) {
+                SqlFingerprintUtil.setOversize(4096, prefixLength, 200);
+                String prefix = full.substring(0, prefixLength);
+                String stable = SqlFingerprintUtil.cleanSql(SqlFingerprintUtil.stablePrefix(prefix));
+                var artifact = SqlFingerprintUtil.analyze(full);
+                assertTrue(artifact.isOversize());
+                assertEquals(SqlFingerprintUtil.calculateLegacyFingerprint(stable), artifact.getFingerprint());
+                assertEquals(SqlFingerprintUtil.extractTemplate(stable) + " …", artifact.getSqlTemplate());
+                assertFalse(artifact.getSqlTemplate().contains("? +"), "不应重新解析已折叠的模板");
+                assertEquals("orders", artifact.getTableName());
+            }
+        } finally {
+            SqlFingerprintUtil.setOversize(16384, 8192, 2048);
+            SqlFingerprintUtil.setEngine(previous);
+        }
+    }
+
+    /**
+     * 测试指纹限定到数据库：同一 digest 在不同库上得到不同指纹，未知库保持原样
+     */
+    @Test
+    void testScopeToSchema() {
+        String digest = "3c8d5a2f0e9b7c6d5a4f3e2d1c0b9a8f7e6d5c4b3a2f1e0d9c8b7a6f5e4d3c2b";
+        String shop = SqlFingerprintUtil.scopeToSchema(digest, "shop");
+
+        assertEquals(shop, SqlFingerprintUtil.scopeToSchema(digest, "shop"));
+        assertNotEquals(shop, SqlFingerprintUtil.scopeToSchema(digest, "crm"));
+        assertEquals(32, shop.length());
+        assertEquals(digest, SqlFingerprintUtil.scopeToSchema(digest, null));
+    }
+
+    /**
+     * 测试截断 SQL 的稳定前缀
+     */
+    @Test
+    void testStablePrefix() {
+        assertEquals("INSERT INTO t(a, b) VALUES (1, 'x')",
+                SqlFingerprintUtil.stablePrefix("INSERT INTO t(a, b) VALUES (1, 'x'), (2, 'y"));
+        assertEquals("SELECT * FROM t WHERE a = 1 AND id IN",
+                SqlFingerprintUtil.stablePrefix("SELECT * FROM t WHERE a = 1 AND id IN (1, 2, 3,"));
+        assertEquals("SELECT * FROM t WHERE a = 1 AND",
+                SqlFingerprintUtil.stablePrefix("SELECT * FROM t WHERE a = 1 AND b"));
+        assertEquals("SELECT * FROM `t(x` WHERE a =",
+                SqlFingerprintUtil.stablePrefix("SELECT * FROM `t(x` WHERE a = (1"));
+        // 字符串常量中的括号不计入，未闭合的字符串整体丢弃
+        assertEquals("INSERT INTO t(a) VALUES ('(')",
+                SqlFingerprintUtil.stablePrefix("INSERT INTO t(a) VALUES ('('), ('it''s (a"));
+        assertEquals("UPDATE t SET a =",
+                SqlFingerprintUtil.stablePrefix("UPDATE t SET a = 'abc (def"));
+        assertEquals("SELECT 1 FROM t",
+                SqlFingerprintUtil.stablePrefix("SELECT 1 FROM t /* 注释 ("));
+    }
 }
@@ -0,0 +1,90 @@
+package com.dbdoctor.common.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SqlMaskingUtil 单元测试
+ *
+ * 测试重点：
+ * - 内置规则（手机号、身份证、银行卡、固话、IP、邮箱、密码、host）
+ * - 只脱敏常量：表名、列名、注释中的数字不受影响
+ * - 自定义规则
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class SqlMaskingUtilTest {
+
+    @AfterEach
+    void resetRules() {
+        SqlMaskingUtil.setCustomRules(null);
+    }
+
+    /**
+     * 字符串常量中的内置规则
+     */
+    @Test
+    void testBuiltInRulesInStrings() {
+        assertEquals("SELECT * FROM users WHERE phone = '138****5678'",
+                SqlMaskingUtil.maskSensitiveData("SELECT * FROM users WHERE phone = '13812345678'"));
+        assertEquals("SELECT * FROM users WHERE id_card = '110101********123X'",
+                SqlMaskingUtil.maskSensitiveData("SELECT * FROM users WHERE id_card = '11010119900101123X'"));
+        assertEquals("SELECT * FROM orders WHERE card_no = '622202*********0123'",
+                SqlMaskingUtil.maskSensitiveData("SELECT * FROM orders WHERE card_no = '6222021234567890123'"));
+        assertEquals("INSERT INTO logs (ip, tel) VALUES ('192.168.1.***', '010-****5678')",
+                SqlMaskingUtil.maskSensitiveData("INSERT INTO logs (ip, tel) VALUES ('192.168.1.100', '010-12345678')"));
+        assertEquals("UPDATE users SET email = 't***@example.com' WHERE id = 1",
+                SqlMaskingUtil.maskSensitiveData("UPDATE users SET email = 'test.user@example.com' WHERE id = 1"));
+    }
+
+    /**
+     * 密码 / Token / host 字段的值整体替换
+     */
+    @Test
+    void testKeyedValues() {
+        assertEquals("SELECT * FROM config WHERE password = '******' AND `token`=\"******\"",
+                SqlMaskingUtil.maskSensitiveData("SELECT * FROM config WHERE password = '123456' AND `token`=\"abc\""));
+        assertEquals("UPDATE ds SET host = '***.***.**.*', port = 3306",
+                SqlMaskingUtil.maskSensitiveData("UPDATE ds SET host = '10.0.0.1', port = 3306"));
+    }
+
+    /**
+     * 数字常量脱敏，标识符和注释中的数字保留
+     */
+    @Test
+    void testOnlyLiteralsAreMasked() {
+        assertEquals("SELECT c13812345678 FROM t6222021234567890123 /* 13812345678 */ WHERE phone = 138****5678",
+                SqlMaskingUtil.maskSensitiveData(
+                        "SELECT c13812345678 FROM t6222021234567890123 /* 13812345678 */ WHERE phone = 13812345678"));
+        assertEquals("SELECT * FROM t WHERE id = 12345 AND v = 'order 12345'",
+                SqlMaskingUtil.maskSensitiveData("SELECT * FROM t WHERE id = 12345 AND v = 'order 12345'"));
+    }
+
+    /**
+     * 单个参数值按列名和内置规则脱敏
+     */
+    @Test
+    void testMaskParameter() {
+        assertEquals("'******'", SqlMaskingUtil.maskParameter("'abc123'", "password"));
+        assertEquals("'138****5678'", SqlMaskingUtil.maskParameter("'13812345678'", "phone"));
+        assertEquals("42", SqlMaskingUtil.maskParameter("42", null));
+    }
+
+    /**
+     * 自定义规则只作用于字符串常量
+     */
+    @Test
+    void testCustomRules() {
+        SqlMaskingUtil.setCustomRules(List.of(
+                SqlMaskingUtil.MaskingRule.of("order-no", "ORD\\d{6}(\\d{4})", "ORD******$1")));
+
+        assertEquals("SELECT ORD1234567890 FROM t WHERE no = 'ORD******7890'",
+                SqlMaskingUtil.maskSensitiveData("SELECT ORD1234567890 FROM t WHERE no = 'ORD1234567890'"));
+    }
+}
@@ -0,0 +1,421 @@
+package com.dbdoctor.harness;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import com.dbdoctor.config.DynamicDataSourceManager;
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter;
+import com.dbdoctor.repository.SlowQueryTemplateRepository;
+import com.dbdoctor.service.MultiAgentCoordinator;
+import com.dbdoctor.service.TemplateStatsAccumulator;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 端到端采集压测（mysql.slow_log → 样本写入 H2）
+ *
+ * <p>启动完整应用，目标库替换为 {@link SlowLogStandIn}，AI 分析替换为桩；按配置的速率和模板数回放负载，统计：</p>
+ * <ul>
+ *   <li>端到端延迟：样本 created_at - 慢日志 start_time（p50 / p95 / p99 / max）</li>
+ *   <li>吞吐：条/秒（第一条写入替身到最后一条样本落库）</li>
+ *   <li>H2 写放大：每条慢日志在 H2 中写入/更新/删除的行数、执行的写语句数（H2 QUERY_STATISTICS）</li>
+ *   <li>样本写入成本：平均每条样本的批量插入耗时（微秒，SlowQuerySampleBatchWriter）</li>
+ *   <li>堆内存：压测期间的堆峰值、结束后 GC 的堆占用</li>
+ * </ul>
+ *
+ * <p>结果写入 target/ingest-harness/result.json，并与提交在仓库中的基线 src/test/resources/harness/ingest-baseline.json
+ * 比较：吞吐低于基线 × (1 - 容差)、延迟/写放大/样本写入成本/堆峰值高于基线 × (1 + 容差) 即失败，没有基线也失败。
+ * 压测参数与基线不同时（自定义负载）只输出结果。只在 -Dingest.harness=true 时运行（mvn -Pingest-harness test），
+ * CI 以该 profile 作为采集性能的回归门禁</p>
+ *
+ * <p>压测环境与生产配置的差异：</p>
+ * <ul>
+ *   <li>最长轮询间隔 1 秒：第一次轮询时替身表为空，按默认配置会退避到 60 秒，测到的是空闲退避而不是采集链路</li>
+ *   <li>AI 桩固定耗时 {@value #STUB_ANALYSIS_MS} 毫秒：立即返回的桩会让分析线程池连续重分析、与写入线程争抢 H2，
+ *   生产中分析受 AI 调用耗时限制，不会出现这种负载</li>
+ * </ul>
+ *
+ * <p>参数（系统属性）：</p>
+ * <ul>
+ *   <li>ingest.harness.rate：每秒写入条数，默认 1000；0 表示一次性写入</li>
+ *   <li>ingest.harness.duration-seconds：回放时长，默认 15</li>
+ *   <li>ingest.harness.fingerprints：合成负载的模板数，默认 200</li>
+ *   <li>ingest.harness.workload：录制的 MySQL 慢日志文件（指定后代替合成负载）</li>
+ *   <li>ingest.harness.baseline：基线文件，默认使用仓库中的 src/test/resources/harness/ingest-baseline.json</li>
+ *   <li>ingest.harness.tolerance：与基线比较的容差，默认使用基线文件中的 tolerance</li>
+ *   <li>ingest.harness.update-baseline：为 true 时用本次结果覆盖基线文件（保留原容差），确认后提交</li>
+ * </ul>
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Slf4j
+@SpringBootTest(properties = {
+        "db-doctor.slow-log-monitor.source=TABLE",
+        "db-doctor.slow-log-monitor.max-records-per-poll=5000",
+        "db-doctor.slow-log-monitor.adaptive.min-interval-ms=100",
+        "db-doctor.slow-log-monitor.adaptive.max-interval-ms=1000",
+        "db-doctor.slow-log-monitor.multi-instance.enabled=false",
+        "db-doctor.slow-log-monitor.harvest.enabled=false",
+        "db-doctor.slow-log-monitor.auto-cleanup.enabled=false",
+        "logging.level.com.dbdoctor=INFO"
+})
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "ingest.harness", matches = "true")
+@DisplayName("端到端采集压测")
+class IngestThroughputHarnessTest {
+
+    private static final Path BASELINE_FILE = Path.of(
+            System.getProperty("ingest.harness.baseline", "src/test/resources/harness/ingest-baseline.json"));
+    private static final Path RESULT_FILE = Path.of("target/ingest-harness/result.json");
+
+    private static final long TICK_MS = 100L;
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(120);
+
+    /**
+     * AI 桩的耗时（毫秒）
+     */
+    private static final long STUB_ANALYSIS_MS = 2000L;
+
+    /**
+     * 基线文件中没有 tolerance 时使用的容差
+     */
+    private static final double DEFAULT_TOLERANCE = 0.25;
+
+    @Autowired
+    private SlowLogStandIn standIn;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    private SlowQueryTemplateRepository templateRepository;
+
+    @Autowired
+    private TemplateStatsAccumulator statsAccumulator;
+
+    @Autowired
+    private SlowQuerySampleBatchWriter sampleBatchWriter;
+
+    @MockBean
+    private MultiAgentCoordinator multiAgentCoordinator;
+
+    private JdbcTemplate primaryJdbc;
+
+    /**
+     * 目标库替换为 mysql.slow_log 替身
+     */
+    @TestConfiguration
+    static class StandInConfig {
+
+        @Bean
+        SlowLogStandIn slowLogStandIn() {
+            return SlowLogStandIn.start();
+        }
+
+        @Bean
+        @Primary
+        DynamicDataSourceManager standInDataSourceManager(SlowLogStandIn standIn) {
+            return new DynamicDataSourceManager(null, null, null, null) {
+                @Override
+                public JdbcTemplate initializeTargetDataSource() {
+                    return standIn.getJdbcTemplate();
+                }
+
+                @Override
+                public HikariDataSource getTargetDataSource() {
+                    return standIn.getDataSource();
+                }
+
+                @Override
+                public JdbcTemplate getTargetJdbcTemplate() {
+                    return standIn.getJdbcTemplate();
+                }
+
+                @Override
+                public boolean isInitialized() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(multiAgentCoordinator.analyze(any())).thenAnswer(invocation -> {
+            Thread.sleep(STUB_ANALYSIS_MS);
+            return "# 压测桩报告\n\n（AI 调用已替换为桩）";
+        });
+        primaryJdbc = new JdbcTemplate(primaryDataSource);
+    }
+
+    @Test
+    @DisplayName("回放负载并与基线比较")
+    void replayWorkload() throws Exception {
+        int rate = Integer.getInteger("ingest.harness.rate", 1000);
+        int durationSeconds = Integer.getInteger("ingest.harness.duration-seconds", 15);
+        String workloadFile = System.getProperty("ingest.harness.workload");
+        SlowLogWorkload workload = workloadFile != null
+                ? SlowLogWorkload.recorded(Path.of(workloadFile))
+                : SlowLogWorkload.synthetic(Integer.getInteger("ingest.harness.fingerprints", 200));
+
+        // 1. 只统计压测期间的 H2 写入和堆内存
+        primaryJdbc.execute("SET QUERY_STATISTICS_MAX_ENTRIES 10000");
+        primaryJdbc.execute("SET QUERY_STATISTICS FALSE");
+        primaryJdbc.execute("SET QUERY_STATISTICS TRUE");
+        long samplesBefore = writtenSamples();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        // 2. 按速率回放
+        long inserted = replay(workload, rate, durationSeconds);
+
+        // 3. 等待全部样本落库（按写入的行数计，保留策略清理的样本不影响判断）
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT.toMillis();
+        while (writtenSamples() - samplesBefore < inserted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(TICK_MS);
+        }
+        long persisted = writtenSamples() - samplesBefore;
+        // 写后合并的模板统计计入本次写入量
+        statsAccumulator.flush();
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+        // 4. 汇总指标
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("rate", rate);
+        params.put("durationSeconds", durationSeconds);
+        params.put("fingerprints", workload.getDistinctFingerprints());
+        params.put("workload", workloadFile != null ? Path.of(workloadFile).getFileName().toString() : "synthetic");
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("inserted", inserted);
+        metrics.put("persisted", persisted);
+        metrics.put("templates", templateRepository.count());
+        metrics.putAll(latencyAndThroughput(persisted));
+        metrics.putAll(writeAmplification(persisted));
+        metrics.put("sampleInsertMicrosPerRow", sampleBatchWriter.getMetrics().get("avgMicrosPerSample"));
+        metrics.put("peakHeapMb", peakHeap / (1024 * 1024));
+        System.gc();
+        metrics.put("heapAfterGcMb", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("params", params);
+        result.put("metrics", metrics);
+        String json = JSON.toJSONString(result, JSONWriter.Feature.PrettyFormat);
+        Files.createDirectories(RESULT_FILE.getParent());
+        Files.writeString(RESULT_FILE, json, StandardCharsets.UTF_8);
+        log.info("📊 采集压测结果:\n{}", json);
+
+        assertThat(persisted).as("全部慢日志都应写入样本表").isEqualTo(inserted);
+        if (workloadFile == null) {
+            assertThat(templateRepository.count()).as("合成负载的模板数").isEqualTo(workload.getDistinctFingerprints());
+        }
+
+        // 5. 更新或比较基线
+        if (Boolean.getBoolean("ingest.harness.update-baseline")) {
+            updateBaseline(result);
+            return;
+        }
+        compareWithBaseline(params, metrics);
+    }
+
+    /**
+     * 已写入的样本行数（样本表行数会被保留策略清理，不能用 count()）
+     */
+    private long writtenSamples() {
+        return ((Number) sampleBatchWriter.getMetrics().get("samples")).longValue();
+    }
+
+    /**
+     * 按速率写入替身；rate <= 0 时一次性写入 rate × duration 条
+     *
+     * @return 写入的总条数
+     */
+    private long replay(SlowLogWorkload workload, int rate, int durationSeconds) throws InterruptedException {
+        if (rate <= 0) {
+            int total = 1000 * durationSeconds;
+            for (int written = 0; written < total; written += 1000) {
+                standIn.insert(workload.next(Math.min(1000, total - written)));
+            }
+            return total;
+        }
+
+        long inserted = 0;
+        long start = System.currentTimeMillis();
+        long end = start + durationSeconds * 1000L;
+        for (long tick = start; tick < end; tick += TICK_MS) {
+            long sleep = tick - System.currentTimeMillis();
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+            // 按经过的时间补足应写入的条数（写入变慢时下一拍追上）
+            long due = (tick + TICK_MS - start) * rate / 1000L;
+            int count = (int) (due - inserted);
+            if (count > 0) {
+                standIn.insert(workload.next(count));
+                inserted += count;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * 端到端延迟和吞吐
+     */
+    private Map<String, Object> latencyAndThroughput(long persisted) {
+        List<Long> latencies = new ArrayList<>();
+        LocalDateTime[] range = new LocalDateTime[2];
+        primaryJdbc.query("SELECT captured_at, created_at FROM slow_query_sample", rs -> {
+            LocalDateTime captured = rs.getTimestamp(1).toLocalDateTime();
+            LocalDateTime created = rs.getTimestamp(2).toLocalDateTime();
+            latencies.add(Duration.between(captured, created).toMillis());
+            if (range[0] == null || captured.isBefore(range[0])) {
+                range[0] = captured;
+            }
+            if (range[1] == null || created.isAfter(range[1])) {
+                range[1] = created;
+            }
+        });
+        Collections.sort(latencies);
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        double seconds = range[0] != null ? Math.max(0.001, Duration.between(range[0], range[1]).toMillis() / 1000.0) : 0;
+        metrics.put("rowsPerSecond", seconds > 0 ? Math.round(persisted / seconds) : 0);
+        metrics.put("latencyP50Ms", percentile(latencies, 0.50));
+        metrics.put("latencyP95Ms", percentile(latencies, 0.95));
+        metrics.put("latencyP99Ms", percentile(latencies, 0.99));
+        metrics.put("latencyMaxMs", latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1));
+        return metrics;
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    /**
+     * H2 写放大：压测期间写语句影响的行数、执行次数与慢日志条数之比
+     */
+    private Map<String, Object> writeAmplification(long persisted) {
+        long[] totals = new long[2];
+        primaryJdbc.query("SELECT SQL_STATEMENT, EXECUTION_COUNT, CUMULATIVE_ROW_COUNT FROM INFORMATION_SCHEMA.QUERY_STATISTICS",
+                rs -> {
+                    String sql = rs.getString(1).stripLeading().toUpperCase();
+                    if (sql.startsWith("INSERT") || sql.startsWith("UPDATE")
+                            || sql.startsWith("DELETE") || sql.startsWith("MERGE")) {
+                        totals[0] += rs.getLong(3);
+                        totals[1] += rs.getLong(2);
+                    }
+                });
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("h2RowsWritten", totals[0]);
+        metrics.put("h2WriteStatements", totals[1]);
+        metrics.put("writeAmplification", persisted > 0 ? round((double) totals[0] / persisted) : 0.0);
+        metrics.put("statementsPerRow", persisted > 0 ? round((double) totals[1] / persisted) : 0.0);
+        return metrics;
+    }
+
+    /**
+     * 用本次结果覆盖基线（保留原容差）
+     */
+    private void updateBaseline(Map<String, Object> result) throws IOException {
+        double tolerance = DEFAULT_TOLERANCE;
+        if (Files.exists(BASELINE_FILE)) {
+            JSONObject previous = readBaseline();
+            if (previous.containsKey("tolerance")) {
+                tolerance = previous.getDoubleValue("tolerance");
+            }
+        }
+        Map<String, Object> baseline = new LinkedHashMap<>();
+        baseline.put("tolerance", tolerance);
+        baseline.putAll(result);
+        Files.createDirectories(BASELINE_FILE.toAbsolutePath().getParent());
+        Files.writeString(BASELINE_FILE, JSON.toJSONString(baseline, JSONWriter.Feature.PrettyFormat) + "\n",
+                StandardCharsets.UTF_8);
+        log.info("📝 已更新基线: {}", BASELINE_FILE.toAbsolutePath());
+    }
+
+    /**
+     * 与基线比较：吞吐不低于基线、延迟/写放大/样本写入成本/堆峰值不高于基线（各留容差）
+     * 压测参数与基线不同时只输出结果，不比较
+     */
+    private void compareWithBaseline(Map<String, Object> params, Map<String, Object> metrics) throws IOException {
+        assertThat(BASELINE_FILE).as("基线文件（-Dingest.harness.update-baseline=true 生成）").exists();
+        JSONObject baseline = readBaseline();
+        if (!baseline.getJSONObject("params").equals(JSON.parseObject(JSON.toJSONString(params)))) {
+            log.warn("⚠️ 压测参数与基线不同，跳过比较: baseline={}", baseline.getJSONObject("params"));
+            return;
+        }
+
+        double tolerance = readTolerance(baseline);
+        JSONObject expected = baseline.getJSONObject("metrics");
+        assertThat(((Number) metrics.get("rowsPerSecond")).doubleValue())
+                .as("吞吐（条/秒）").isGreaterThanOrEqualTo(expected.getDoubleValue("rowsPerSecond") * (1 - tolerance));
+        for (String key : List.of("latencyP95Ms", "writeAmplification", "statementsPerRow",
+                "sampleInsertMicrosPerRow", "peakHeapMb")) {
+            assertThat(((Number) metrics.get(key)).doubleValue())
+                    .as(key).isLessThanOrEqualTo(expected.getDoubleValue(key) * (1 + tolerance));
+        }
+    }
+
+    private JSONObject readBaseline() throws IOException {
+        return JSON.parseObject(Files.readString(BASELINE_FILE, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 容差：系统属性优先，其次基线文件
+     */
+    private static double readTolerance(JSONObject baseline) {
+        String override = System.getProperty("ingest.harness.tolerance");
+        if (override != null) {
+            return Double.parseDouble(override);
+        }
+        return baseline.containsKey("tolerance") ? baseline.getDoubleValue("tolerance") : DEFAULT_TOLERANCE;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
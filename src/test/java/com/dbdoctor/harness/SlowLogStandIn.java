@@ -0,0 +1,210 @@
+package com.dbdoctor.harness;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * mysql.slow_log 替身
+ *
+ * H2 内存库（MySQL 模式），表结构与 MySQL 8.0 的 mysql.slow_log 一致（sql_text 为 BLOB），
+ * 并以 Java 函数补齐读取语句用到的 TIME_TO_SEC / MICROSECOND；不需要真实 MySQL 和网络
+ *
+ * 生产代码的读取语句只面向 MySQL，H2 不支持的部分在连接层转换（见 MySqlDialectDataSource）：
+ * CONVERT(... USING utf8) 改为 UTF8TOSTRING(...)，流式读取的 fetchSize = Integer.MIN_VALUE 被忽略
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SlowLogStandIn implements AutoCloseable {
+
+    public static final String URL = "jdbc:h2:mem:slow-log-stand-in;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO mysql.slow_log
+                (start_time, user_host, query_time, lock_time, rows_sent, rows_examined,
+                 db, last_insert_id, insert_id, server_id, sql_text, thread_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, 0, 0, 1, ?, ?)
+            """;
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    private SlowLogStandIn(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(new MySqlDialectDataSource(dataSource));
+    }
+
+    /**
+     * 创建替身库和 mysql.slow_log 表
+     *
+     * @return 替身
+     */
+    public static SlowLogStandIn start() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(4);
+
+        SlowLogStandIn standIn = new SlowLogStandIn(dataSource);
+        JdbcTemplate jdbc = standIn.jdbcTemplate;
+        jdbc.execute("CREATE SCHEMA IF NOT EXISTS mysql");
+        jdbc.execute("DROP TABLE IF EXISTS mysql.slow_log");
+        jdbc.execute("""
+                CREATE TABLE mysql.slow_log (
+                    start_time     TIMESTAMP(6) NOT NULL,
+                    user_host      VARCHAR(512) NOT NULL,
+                    query_time     TIME(6)      NOT NULL,
+                    lock_time      TIME(6)      NOT NULL,
+                    rows_sent      INT          NOT NULL,
+                    rows_examined  INT          NOT NULL,
+                    db             VARCHAR(512) NOT NULL,
+                    last_insert_id INT          NOT NULL,
+                    insert_id      INT          NOT NULL,
+                    server_id      INT          NOT NULL,
+                    sql_text       BLOB         NOT NULL,
+                    thread_id      BIGINT       NOT NULL
+                )
+                """);
+        jdbc.execute("CREATE ALIAS IF NOT EXISTS TIME_TO_SEC FOR '" + SlowLogStandIn.class.getName() + ".timeToSec'");
+        jdbc.execute("CREATE ALIAS IF NOT EXISTS MICROSECOND FOR '" + SlowLogStandIn.class.getName() + ".microsecond'");
+        return standIn;
+    }
+
+    /**
+     * 批量写入慢查询日志
+     *
+     * @param rows 日志行
+     */
+    public void insert(List<Row> rows) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(row.startTime()));
+            ps.setString(2, row.userHost());
+            ps.setObject(3, toTime(row.queryTime()));
+            ps.setObject(4, toTime(row.lockTime()));
+            ps.setLong(5, row.rowsSent());
+            ps.setLong(6, row.rowsExamined());
+            ps.setString(7, row.db());
+            ps.setBytes(8, row.sql().getBytes(StandardCharsets.UTF_8));
+            ps.setLong(9, row.threadId());
+        });
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM mysql.slow_log", Long.class);
+        return count != null ? count : 0L;
+    }
+
+    public HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    @Override
+    public void close() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.close();
+    }
+
+    private static LocalTime toTime(double seconds) {
+        return LocalTime.ofNanoOfDay(Math.round(seconds * 1_000_000L) * 1_000L);
+    }
+
+    // ==================== MySQL 方言转换 ====================
+
+    /**
+     * 把 SlowLogTableReader 的 MySQL 语句转换为 H2 能执行的形式
+     */
+    static final class MySqlDialectDataSource extends DelegatingDataSource {
+
+        private static final String MYSQL_SQL_TEXT = "CONVERT(SUBSTRING(sql_text, 1, ?) USING utf8)";
+        private static final String H2_SQL_TEXT = "UTF8TOSTRING(SUBSTRING(sql_text, 1, ?))";
+
+        MySqlDialectDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrap(super.getConnection(username, password));
+        }
+
+        private static Connection wrap(Connection connection) {
+            return proxy(Connection.class, connection, (method, args) -> {
+                if ("prepareStatement".equals(method.getName()) && args != null && args[0] instanceof String sql) {
+                    args[0] = sql.replace(MYSQL_SQL_TEXT, H2_SQL_TEXT);
+                    return wrap((PreparedStatement) invoke(method, connection, args));
+                }
+                return invoke(method, connection, args);
+            });
+        }
+
+        private static PreparedStatement wrap(PreparedStatement statement) {
+            return proxy(PreparedStatement.class, statement, (method, args) -> {
+                // MySQL Connector/J 的流式读取标记，H2 不接受负数
+                if ("setFetchSize".equals(method.getName()) && (Integer) args[0] < 0) {
+                    return null;
+                }
+                return invoke(method, statement, args);
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, T target, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(SlowLogStandIn.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> handler.handle(method, args)));
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @FunctionalInterface
+        private interface Handler {
+            Object handle(Method method, Object[] args) throws Throwable;
+        }
+    }
+
+    // ==================== H2 函数（与 MySQL 语义一致） ====================
+
+    public static long timeToSec(LocalTime time) {
+        return time.toSecondOfDay();
+    }
+
+    public static int microsecond(LocalTime time) {
+        return time.getNano() / 1_000;
+    }
+
+    /**
+     * 一行慢查询日志
+     */
+    public record Row(LocalDateTime startTime, String userHost, double queryTime, double lockTime,
+                      long rowsSent, long rowsExamined, String db, String sql, long threadId) {
+    }
+}
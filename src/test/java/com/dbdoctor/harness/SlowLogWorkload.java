@@ -0,0 +1,130 @@
+package com.dbdoctor.harness;
+
+import com.dbdoctor.ingest.SlowLogFileParser;
+import com.dbdoctor.model.SlowQueryLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 压测负载
+ *
+ * - 合成负载：distinctFingerprints 个不同模板（表名 + 条件列数不同），常量随机；
+ *   每 20 个模板有 1 个多表 JOIN、每 25 个模板有 1 个带中文常量，每 50 条日志有 1 条带注释
+ * - 录制负载：从 MySQL 慢日志文件读取 SQL，按顺序循环回放
+ *
+ * 每行的 start_time 取写入替身时的当前时间，用于计算端到端延迟
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SlowLogWorkload {
+
+    private static final int TABLES = 64;
+    private static final String[] COLUMNS = {"status", "tenant_id", "created_at", "amount", "channel", "region"};
+
+    private final int distinctFingerprints;
+    private final List<String> recorded;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private long sequence;
+
+    private SlowLogWorkload(int distinctFingerprints, List<String> recorded) {
+        this.distinctFingerprints = Math.max(1, distinctFingerprints);
+        this.recorded = recorded;
+    }
+
+    /**
+     * 合成负载
+     *
+     * @param distinctFingerprints 不同模板数（最多 TABLES × (COLUMNS + 1) 个）
+     */
+    public static SlowLogWorkload synthetic(int distinctFingerprints) {
+        return new SlowLogWorkload(Math.min(distinctFingerprints, TABLES * (COLUMNS.length + 1)), null);
+    }
+
+    /**
+     * 录制负载
+     *
+     * @param slowLogFile MySQL 慢日志文件
+     */
+    public static SlowLogWorkload recorded(Path slowLogFile) throws IOException {
+        SlowLogFileParser parser = new SlowLogFileParser();
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(slowLogFile));
+        List<String> sqls = new ArrayList<>();
+        for (SlowQueryLog entry : parser.parse(buf, true).entries()) {
+            sqls.add(entry.getSqlText());
+        }
+        if (sqls.isEmpty()) {
+            throw new IllegalArgumentException("慢日志文件中没有可回放的 SQL: " + slowLogFile);
+        }
+        return new SlowLogWorkload(sqls.size(), sqls);
+    }
+
+    public int getDistinctFingerprints() {
+        return distinctFingerprints;
+    }
+
+    /**
+     * 生成下一批日志行
+     *
+     * @param count 行数
+     * @return 日志行（start_time 为当前时间）
+     */
+    public List<SlowLogStandIn.Row> next(int count) {
+        List<SlowLogStandIn.Row> rows = new ArrayList<>(count);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < count; i++) {
+            long seq = sequence++;
+            String sql = recorded != null
+                    ? recorded.get((int) (seq % recorded.size()))
+                    : synthesize((int) (seq % distinctFingerprints), seq);
+            rows.add(new SlowLogStandIn.Row(now, "app[app] @ 10.0.0." + (seq % 16) + " []",
+                    1.0 + random.nextDouble() * 4.0, random.nextDouble() * 0.01,
+                    random.nextInt(100), 1_000 + random.nextInt(1_000_000), "harness", sql, seq));
+        }
+        return rows;
+    }
+
+    private String synthesize(int fingerprint, long seq) {
+        String table = "orders_" + alpha(fingerprint % TABLES);
+        int predicates = fingerprint / TABLES;
+
+        StringBuilder sb = new StringBuilder(256);
+        if (seq % 50 == 0) {
+            sb.append("/* 对账任务 ").append(seq).append(" */ ");
+        }
+        sb.append("SELECT o.id, o.user_id, o.amount FROM ").append(table).append(" o");
+        if (fingerprint % 20 == 0) {
+            sb.append(" JOIN users u ON u.id = o.user_id");
+        }
+        sb.append(" WHERE o.user_id = ").append(random.nextInt(1_000_000));
+        for (int k = 0; k < predicates; k++) {
+            sb.append(" AND o.").append(COLUMNS[k]).append(" = '").append(alpha(random.nextInt(10_000))).append('\'');
+        }
+        if (fingerprint % 25 == 0) {
+            sb.append(" AND o.remark <> '测试数据'");
+        }
+        sb.append(" ORDER BY o.id DESC LIMIT ").append(10 + random.nextInt(90));
+        return sb.toString();
+    }
+
+    /**
+     * 非负整数转小写字母串（标识符中不出现数字，避免被指纹爆炸保护视为同一近似模板）
+     */
+    private static String alpha(int n) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.dbdoctor.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdaptivePollController 单元测试
+ *
+ * 测试重点：
+ * - 读满一页时立即轮询
+ * - 间隔随到达速率连续变化
+ * - 分析侧积压时拉长间隔
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ */
+class AdaptivePollControllerTest {
+
+    private AdaptivePollController newController() {
+        return new AdaptivePollController(1000L, 60000L, 1000, 0.3, 0.5);
+    }
+
+    @Test
+    void testNoTrafficUsesMaxInterval() {
+        AdaptivePollController controller = newController();
+        controller.onPoll(0, 1000, 1_000L);
+        controller.onPoll(0, 1000, 61_000L);
+
+        assertEquals(60000L, controller.nextIntervalMs(0.0));
+        assertFalse(controller.isLastPageFull());
+    }
+
+    @Test
+    void testFullPagePollsImmediately() {
+        AdaptivePollController controller = newController();
+        controller.onPoll(1000, 1000, 1_000L);
+
+        assertTrue(controller.isLastPageFull());
+        assertEquals(0L, controller.nextIntervalMs(0.0));
+        assertEquals(1000, controller.nextBatchSize(0L));
+    }
+
+    @Test
+    void testIntervalFollowsArrivalRate() {
+        AdaptivePollController controller = newController();
+        // 10 秒 100 条 = 10 条/秒，目标每页 500 条 → 50 秒
+        controller.onPoll(0, 1000, 1_000L);
+        controller.onPoll(100, 1000, 11_000L);
+        assertEquals(50000L, controller.nextIntervalMs(0.0));
+
+        // 速率升高到 100 条/秒后间隔缩短
+        for (int i = 0; i < 20; i++) {
+            controller.onPoll(1000 - 1, 1000, 21_000L + i * 10_000L);
+        }
+        long interval = controller.nextIntervalMs(0.0);
+        assertTrue(interval >= 1000L && interval < 10000L, "interval=" + interval);
+    }
+
+    @Test
+    void testPressureSlowsDown() {
+        AdaptivePollController controller = newController();
+        controller.onPoll(1000, 1000, 1_000L);
+
+        // 积压超过 50% 时即使读满一页也不立即轮询
+        assertTrue(controller.nextIntervalMs(0.9) >= 1000L);
+
+        controller.onPoll(100, 1000, 11_000L);
+        long relaxed = controller.nextIntervalMs(0.0);
+        long pressured = controller.nextIntervalMs(1.0);
+        assertTrue(pressured > relaxed, "pressured=" + pressured + ", relaxed=" + relaxed);
+    }
+}
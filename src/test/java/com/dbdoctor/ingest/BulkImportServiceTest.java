@@ -0,0 +1,99 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BulkImportService 分块边界和导入路径校验单元测试
+ *
+ * 测试重点：
+ * - 在最后一个 "# Time:" 行处切分
+ * - 没有 Time 行时在 "# User@Host:" 行处切分
+ * - 只有一个日志块时不切分
+ * - 未配置 allowed-directory 时拒绝 REST 导入，目录外（含符号链接指向目录外）的文件被拒绝
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ */
+class BulkImportServiceTest {
+
+    private static final String ENTRY_1 = """
+            # Time: 2024-01-15T10:23:45.123456Z
+            # User@Host: app[app] @ 10.0.0.5 [10.0.0.5]  Id:    42
+            # Query_time: 3.000234  Lock_time: 0.000012 Rows_sent: 1  Rows_examined: 1000000
+            SET timestamp=1705314225;
+            SELECT 1;
+            """;
+
+    private static final String ENTRY_2 = """
+            # Time: 2024-01-15T10:23:46.000000Z
+            # User@Host: app[app] @ 10.0.0.5 [10.0.0.5]  Id:    43
+            # Query_time: 2.000000  Lock_time: 0.000000 Rows_sent: 1  Rows_examined: 10
+            SET timestamp=1705314226;
+            SELECT 2;
+            """;
+
+    @Test
+    void testSplitsAtLastTimeLine() {
+        byte[] buf = (ENTRY_1 + ENTRY_2 + "# Time: 2024-01-15T10:23:47").getBytes(StandardCharsets.UTF_8);
+
+        int cut = BulkImportService.lastEntryBoundary(buf, buf.length);
+
+        // 最后一行 "# Time:" 后面没有 User@Host，切分点是第二个日志块的开头
+        assertEquals(ENTRY_1.length(), cut);
+    }
+
+    @Test
+    void testSplitsAtUserHostWithoutTimeLine() {
+        String withoutTime = ENTRY_2.substring(ENTRY_2.indexOf("# User@Host:"));
+        byte[] buf = (ENTRY_1 + withoutTime).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(ENTRY_1.length(), BulkImportService.lastEntryBoundary(buf, buf.length));
+    }
+
+    @Test
+    void testSingleEntryHasNoBoundary() {
+        byte[] buf = ENTRY_1.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(-1, BulkImportService.lastEntryBoundary(buf, buf.length));
+    }
+
+    @Test
+    void testRestImportRequiresAllowedDirectory(@TempDir Path dir) throws Exception {
+        Path file = Files.writeString(dir.resolve("slow.log"), ENTRY_1);
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        BulkImportService service = new BulkImportService(null, properties);
+
+        assertThrows(IllegalStateException.class, () -> service.resolve(List.of(file.toString()), true),
+                "未配置目录时应拒绝 REST 导入");
+        assertEquals(List.of(file), service.resolve(List.of(file.toString()), false), "命令行导入不受限制");
+    }
+
+    @Test
+    void testRestImportStaysInsideAllowedDirectory(@TempDir Path dir) throws Exception {
+        Path allowed = Files.createDirectory(dir.resolve("import"));
+        Path inside = Files.writeString(allowed.resolve("slow.log"), ENTRY_1);
+        Path outside = Files.writeString(dir.resolve("secret.log"), ENTRY_2);
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getBulkImport().setAllowedDirectory(allowed.toString());
+        BulkImportService service = new BulkImportService(null, properties);
+
+        assertEquals(List.of(inside), service.resolve(List.of(inside.toString()), true));
+        assertThrows(IllegalArgumentException.class, () -> service.resolve(List.of(outside.toString()), true));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.resolve(List.of(allowed.resolve("../secret.log").toString()), true));
+
+        Path link = allowed.resolve("link.log");
+        Files.createSymbolicLink(link, outside);
+        assertThrows(IllegalArgumentException.class, () -> service.resolve(List.of(link.toString()), true),
+                "符号链接不能指向目录之外");
+    }
+}
@@ -0,0 +1,78 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.model.SlowQueryLog;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IngestCheckpoint 单元测试
+ *
+ * 测试重点：
+ * - 只有流水线回执后的位置才会被提交
+ * - 后面的页先完成时，不会越过前面未完成的页
+ * - 空页直接提交
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ */
+class IngestCheckpointTest {
+
+    @Test
+    void testCommitsOnlyAfterAcknowledge() {
+        IngestCheckpoint<Integer> checkpoint = new IngestCheckpoint<>();
+        SlowQueryLog first = new SlowQueryLog();
+        SlowQueryLog second = new SlowQueryLog();
+
+        checkpoint.track(first);
+        checkpoint.track(second);
+        checkpoint.seal(10);
+        assertNull(checkpoint.completed());
+
+        first.acknowledge();
+        assertNull(checkpoint.completed());
+
+        second.acknowledge();
+        assertEquals(Integer.valueOf(10), checkpoint.completed());
+        assertTrue(checkpoint.isDrained());
+    }
+
+    @Test
+    void testDoesNotSkipUnfinishedPage() {
+        IngestCheckpoint<Integer> checkpoint = new IngestCheckpoint<>();
+        SlowQueryLog page1 = new SlowQueryLog();
+        SlowQueryLog page2 = new SlowQueryLog();
+
+        checkpoint.track(page1);
+        checkpoint.seal(1);
+        checkpoint.track(page2);
+        checkpoint.seal(2);
+
+        page2.acknowledge();
+        assertNull(checkpoint.completed());
+
+        page1.acknowledge();
+        assertEquals(Integer.valueOf(2), checkpoint.completed());
+    }
+
+    @Test
+    void testEmptyPageAndDoubleAcknowledge() {
+        IngestCheckpoint<Integer> checkpoint = new IngestCheckpoint<>();
+        checkpoint.seal(5);
+        assertEquals(Integer.valueOf(5), checkpoint.completed());
+
+        SlowQueryLog slowLog = new SlowQueryLog();
+        SlowQueryLog other = new SlowQueryLog();
+        checkpoint.track(slowLog);
+        checkpoint.track(other);
+        checkpoint.seal(6);
+
+        // 重复回执不会多次释放计数
+        slowLog.acknowledge();
+        slowLog.acknowledge();
+        assertEquals(Integer.valueOf(5), checkpoint.completed());
+
+        checkpoint.reset();
+        assertNull(checkpoint.completed());
+    }
+}
@@ -0,0 +1,69 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PushIngestService 单元测试
+ *
+ * 测试重点：
+ * - 单批事件数超过队列总容量时返回 413（永远无法整批准入，不能返回 429 让采集器无限重试）
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class PushIngestServiceTest {
+
+    private static final int QUEUE_CAPACITY = 8;
+
+    private IngestPipeline pipeline;
+    private PushIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getPipeline().setQueueCapacity(QUEUE_CAPACITY);
+        properties.getPipeline().setWorkerThreads(1);
+        // 单批上限大于队列容量：按队列容量生效
+        properties.getPush().setMaxEventsPerRequest(10_000);
+
+        pipeline = new IngestPipeline(null, properties, null);
+        pipeline.start();
+        service = new PushIngestService(pipeline, properties, new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+    }
+
+    private static InputStream events(int count) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append("{\"sql\": \"SELECT 1\", \"query_time\": 1.5}\n");
+        }
+        return new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 超过队列总容量的批次返回 413
+     */
+    @Test
+    void testBatchLargerThanQueueIsTooLarge() throws Exception {
+        PushIngestService.PushResult result = service.ingest(events(QUEUE_CAPACITY + 1), false);
+
+        assertEquals(PushIngestService.Outcome.TOO_LARGE, result.outcome());
+        assertEquals(0, result.accepted());
+        assertEquals(0L, service.getRejectedRequests(), "413 不计入背压拒绝");
+    }
+}
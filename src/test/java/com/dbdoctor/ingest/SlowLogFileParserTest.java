@@ -0,0 +1,218 @@
+package com.dbdoctor.ingest;
+
+import com.dbdoctor.model.SlowQueryLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SlowLogFileParser 单元测试
+ *
+ * 测试重点：
+ * - 日志块字段解析
+ * - 未写完的日志块不消费
+ * - use 语句在日志块之间延续
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ */
+class SlowLogFileParserTest {
+
+    private static final String BANNER = """
+            /usr/sbin/mysqld, Version: 8.0.35 (MySQL Community Server - GPL). started with:
+            Tcp port: 3306  Unix socket: /var/run/mysqld/mysqld.sock
+            Time                 Id Command    Argument
+            """;
+
+    private static final String ENTRY_1 = """
+            # Time: 2024-01-15T10:23:45.123456Z
+            # User@Host: app[app] @ 10.0.0.5 [10.0.0.5]  Id:    42
+            # Query_time: 3.000234  Lock_time: 0.000012 Rows_sent: 1  Rows_examined: 1000000
+            use shop;
+            SET timestamp=1705314225;
+            SELECT * FROM orders
+            WHERE user_id = 1;
+            """;
+
+    private static final String ENTRY_2 = """
+            # Time: 2024-01-15T10:23:50.000001Z
+            # User@Host: app[app] @ 10.0.0.6 [10.0.0.6]  Id:    43
+            # Query_time: 1.5  Lock_time: 0.000100 Rows_sent: 0  Rows_examined: 500
+            SET timestamp=1705314230;
+            UPDATE orders SET status = 'PAID' WHERE id = 7;
+            """;
+
+    private SlowLogFileParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new SlowLogFileParser();
+    }
+
+    /**
+     * 测试完整日志块的字段解析
+     */
+    @Test
+    void testParseCompleteEntries() {
+        String content = BANNER + ENTRY_1 + ENTRY_2;
+        SlowLogFileParser.ParseResult result = parser.parse(buffer(content), false);
+
+        assertEquals(2, result.entries().size());
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, result.consumed(), "应该消费全部内容");
+
+        SlowQueryLog first = result.entries().get(0);
+        assertEquals("app[app] @ 10.0.0.5 [10.0.0.5]", first.getUserHost());
+        assertEquals("shop", first.getDbName());
+        assertEquals("SELECT * FROM orders\nWHERE user_id = 1", first.getSqlText());
+        assertEquals(3.000234, first.getQueryTime(), 1e-9);
+        assertEquals(0.000012, first.getLockTime(), 1e-9);
+        assertEquals(1L, first.getRowsSent().longValue());
+        assertEquals(1000000L, first.getRowsExamined().longValue());
+        assertEquals(LocalDateTime.ofInstant(java.time.Instant.ofEpochSecond(1705314225), ZoneId.systemDefault()),
+                first.getStartTime());
+
+        // 第二条没有 use 语句，沿用上一个数据库
+        SlowQueryLog second = result.entries().get(1);
+        assertEquals("shop", second.getDbName());
+        assertEquals("UPDATE orders SET status = 'PAID' WHERE id = 7", second.getSqlText());
+        assertEquals(500L, second.getRowsExamined().longValue());
+    }
+
+    /**
+     * 测试末尾未写完的日志块不会被消费
+     */
+    @Test
+    void testIncompleteTrailingEntryIsNotConsumed() {
+        String partial = "# Time: 2024-01-15T10:23:50.000001Z\n# User@Host: app[app] @ 10.0.0.6 [10.0.0.6]  Id:    43\n# Query_ti";
+        SlowLogFileParser.ParseResult result = parser.parse(buffer(ENTRY_1 + partial), false);
+
+        assertEquals(1, result.entries().size());
+        assertEquals(ENTRY_1.getBytes(StandardCharsets.UTF_8).length, result.consumed(),
+                "应该只消费第一个完整的日志块");
+    }
+
+    /**
+     * 测试每条日志结束处的字节数（只发布了部分日志时游标据此推进）
+     */
+    @Test
+    void testEntryEndsTrackEachEntry() {
+        int first = ENTRY_1.getBytes(StandardCharsets.UTF_8).length;
+        int second = ENTRY_2.getBytes(StandardCharsets.UTF_8).length;
+        SlowLogFileParser.ParseResult result = parser.parse(buffer(ENTRY_1 + ENTRY_2), false);
+
+        assertEquals(2, result.entries().size());
+        assertEquals(0, result.consumedThrough(0));
+        assertEquals(first, result.consumedThrough(1), "第一条日志之后应停在第二个日志块开头");
+        assertEquals(first + second, result.consumedThrough(2));
+        assertEquals(result.consumed(), result.consumedThrough(2));
+    }
+
+    /**
+     * 测试 SQL 尚未以分号结尾时等待后续内容
+     */
+    @Test
+    void testUnterminatedSqlWaitsForMoreData() {
+        String partial = "# Time: 2024-01-15T10:23:50.000001Z\n# Query_time: 1.0  Lock_time: 0.0 Rows_sent: 0  Rows_examined: 0\nSELECT *\n";
+        SlowLogFileParser.ParseResult result = parser.parse(buffer(partial), false);
+
+        assertTrue(result.entries().isEmpty());
+        assertEquals(0, result.consumed());
+
+        SlowLogFileParser.ParseResult forced = parser.parse(buffer(partial), true);
+        assertEquals(1, forced.entries().size(), "强制输出时应该返回不完整的日志块");
+        assertEquals("SELECT *", forced.entries().get(0).getSqlText());
+    }
+
+    /**
+     * 测试读取窗口已满时，跨越窗口边界的最后一个日志块不会被截断输出，留给下一次读取
+     */
+    @Test
+    void testFullWindowLeavesEntryCrossingBoundary() {
+        String entry3 = """
+                # Time: 2024-01-15T10:23:55.000001Z
+                # Query_time: 2.0  Lock_time: 0.0 Rows_sent: 0  Rows_examined: 10
+                SET timestamp=1705314235;
+                SELECT * FROM orders
+                WHERE id IN (1, 2, 3)
+                AND status = 'PAID';
+                """;
+        String content = ENTRY_1 + ENTRY_2 + entry3;
+        int complete = (ENTRY_1 + ENTRY_2).getBytes(StandardCharsets.UTF_8).length;
+        // 窗口在第三个日志块的 SQL 中间结束（"WHERE id IN (1, 2, 3)" 这一行之后）
+        int window = complete + entry3.indexOf("AND status");
+        ByteBuffer buf = buffer(content);
+        buf.limit(window);
+
+        SlowLogFileParser.ParseResult result = parser.parse(buf, true);
+
+        assertEquals(2, result.entries().size(), "跨越窗口边界的日志块不应输出");
+        assertEquals(complete, result.consumed(), "应停在最后一个完整日志块之后");
+
+        ByteBuffer rest = buffer(content);
+        rest.position(complete);
+        SlowLogFileParser.ParseResult next = parser.parse(rest, false);
+        assertEquals(1, next.entries().size());
+        assertEquals("SELECT * FROM orders\nWHERE id IN (1, 2, 3)\nAND status = 'PAID'",
+                next.entries().get(0).getSqlText());
+    }
+
+    /**
+     * 测试完整输入（批量导入的块）末尾的日志块直接输出
+     */
+    @Test
+    void testParseAllEmitsTrailingEntry() {
+        String unterminated = ENTRY_1 + "# Time: 2024-01-15T10:23:50.000001Z\n"
+                + "# Query_time: 1.0  Lock_time: 0.0 Rows_sent: 0  Rows_examined: 0\nSELECT 2\n";
+
+        SlowLogFileParser.ParseResult result = parser.parseAll(buffer(unterminated));
+
+        assertEquals(2, result.entries().size());
+        assertEquals("SELECT 2", result.entries().get(1).getSqlText());
+    }
+
+    /**
+     * 测试从缓冲区中间位置开始解析（consumed 相对于 position）
+     */
+    @Test
+    void testParseFromBufferOffset() {
+        ByteBuffer buf = buffer(ENTRY_1 + ENTRY_2);
+        buf.position(ENTRY_1.getBytes(StandardCharsets.UTF_8).length);
+
+        SlowLogFileParser.ParseResult result = parser.parse(buf, false);
+
+        assertEquals(1, result.entries().size());
+        assertEquals(ENTRY_2.getBytes(StandardCharsets.UTF_8).length, result.consumed());
+        assertNull(result.entries().get(0).getDbName(), "没有 use 语句时数据库为空");
+    }
+
+    /**
+     * 测试超长 SQL 按 maxSqlLength 截断（在 UTF-8 字符边界处解码），并记录原始字节长度
+     */
+    @Test
+    void testOversizeSqlIsTruncated() {
+        String sql = "SELECT * FROM orders WHERE remark = '" + "中文".repeat(5000) + "'";
+        String entry = "# Time: 2024-01-15T10:23:50.000001Z\n"
+                + "# Query_time: 1.0  Lock_time: 0.0 Rows_sent: 0  Rows_examined: 0\n"
+                + sql + ";\n";
+
+        SlowQueryLog log = new SlowLogFileParser(1001).parse(buffer(entry), false).entries().get(0);
+
+        assertEquals(sql.substring(0, 1001), log.getSqlText());
+        assertTrue(log.isSqlTruncated());
+        assertEquals(sql.getBytes(StandardCharsets.UTF_8).length, log.getSqlLength().intValue());
+
+        SlowQueryLog full = parser.parse(buffer(entry), false).entries().get(0);
+        assertEquals(sql, full.getSqlText());
+        assertFalse(full.isSqlTruncated());
+    }
+
+    private static ByteBuffer buffer(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.PreparedSlowQuery;
+import com.dbdoctor.model.SlowQueryLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FingerprintExplosionGuard 单元测试
+ *
+ * 测试重点：
+ * - 未触发保护时不合并
+ * - 每分钟新指纹超过阈值后合并近似模板
+ * - 保护到期后恢复
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class FingerprintExplosionGuardTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private FingerprintExplosionGuard guard(int maxNewPerMinute) {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getFingerprint().getExplosionGuard().setMaxNewPerMinute(maxNewPerMinute);
+        properties.getFingerprint().getExplosionGuard().setCooldownMinutes(1);
+        return new FingerprintExplosionGuard(properties, now::get);
+    }
+
+    private static PreparedSlowQuery query(String fingerprint, String template) {
+        return PreparedSlowQuery.builder()
+                .slowLog(SlowQueryLog.builder().instanceId(1L).build())
+                .fingerprint(fingerprint)
+                .sqlTemplate(template)
+                .tableName("orders")
+                .build();
+    }
+
+    /**
+     * 近似模板键忽略标识符中的数字和常量个数
+     */
+    @Test
+    void testCoarseKey() {
+        assertEquals(FingerprintExplosionGuard.coarseKey(1L, "SELECT c1, c2 FROM orders WHERE a = ? LIMIT ?, ?"),
+                FingerprintExplosionGuard.coarseKey(1L, "select c7, c9 from orders where a = ? limit ?"));
+        assertNotEquals(FingerprintExplosionGuard.coarseKey(1L, "SELECT a FROM orders"),
+                FingerprintExplosionGuard.coarseKey(2L, "SELECT a FROM orders"));
+    }
+
+    /**
+     * 阈值以内不合并，超过后合并到最早的模板，保护到期后恢复
+     */
+    @Test
+    void testMergesOnlyWhileTripped() {
+        FingerprintExplosionGuard guard = guard(2);
+
+        assertEquals("fp1", guard.resolve(query("fp1", "SELECT c1 FROM orders WHERE id = ?")));
+        assertEquals("fp2", guard.resolve(query("fp2", "SELECT c2 FROM orders WHERE id = ?")));
+
+        // 第 3 个新指纹超过阈值，触发保护
+        assertEquals("fp1", guard.resolve(query("fp3", "SELECT c3 FROM orders WHERE id = ?")));
+        assertEquals("fp4", guard.resolve(query("fp4", "SELECT other FROM orders WHERE id = ?")));
+        assertEquals(1L, guard.getMetrics().get("mergedTotal"));
+
+        // 保护持续 1 分钟，之后恢复正常
+        now.set(3 * 60_000L);
+        assertEquals("fp5", guard.resolve(query("fp5", "SELECT c5 FROM orders WHERE id = ?")));
+    }
+}
@@ -0,0 +1,111 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.common.util.SqlFingerprintLexer;
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ParameterProfiler 单元测试
+ *
+ * 测试重点：
+ * - 主导耗时的参数值排在最前，倾斜系数大于 1
+ * - 计数器个数有上限（Space-Saving），高频值不会被低频值挤掉
+ * - 只在事务提交后记录，回滚的批次不计入
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class ParameterProfilerTest {
+
+    private static ParameterProfiler profiler(int heavyHitters) {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getParameterProfile().setHeavyHitters(heavyHitters);
+        return new ParameterProfiler(properties);
+    }
+
+    private static List<SqlFingerprintLexer.Parameter> tenant(String value) {
+        return List.of(new SqlFingerprintLexer.Parameter(0, "tenant_id", value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> topValues(Map<String, Object> snapshot) {
+        List<Map<String, Object>> positions = (List<Map<String, Object>>) snapshot.get("positions");
+        return (List<Map<String, Object>>) positions.get(0).get("topValues");
+    }
+
+    /**
+     * 少数慢租户主导耗时
+     */
+    @Test
+    void testSkewedValueRanksFirst() {
+        ParameterProfiler profiler = profiler(8);
+        for (int i = 0; i < 50; i++) {
+            profiler.record("fp", tenant(String.valueOf(i % 5)), 0.05);
+        }
+        for (int i = 0; i < 5; i++) {
+            profiler.record("fp", tenant("'big'"), 30.0);
+        }
+
+        Map<String, Object> top = topValues(profiler.snapshot("fp")).get(0);
+        assertEquals("'big'", top.get("value"));
+        assertEquals(5L, top.get("count"));
+        assertTrue((Double) top.get("queryTimeShare") > 0.9);
+        assertTrue((Double) top.get("skew") > 5);
+        assertNull(profiler.snapshot("unknown"));
+    }
+
+    /**
+     * 大量不同的一次性值不会挤掉高频值
+     */
+    @Test
+    void testHeavyHitterSurvivesLongTail() {
+        ParameterProfiler profiler = profiler(4);
+        for (int i = 0; i < 1000; i++) {
+            profiler.record("fp", tenant(i % 2 == 0 ? "7" : "u" + i), 1.0);
+        }
+
+        List<Map<String, Object>> values = topValues(profiler.snapshot("fp"));
+        assertEquals(4, values.size());
+        Map<String, Object> hot = values.stream().filter(v -> "7".equals(v.get("value"))).findFirst().orElseThrow();
+        assertTrue((Long) hot.get("count") >= 500);
+    }
+
+    /**
+     * 事务回滚时不记录，提交后才记录
+     */
+    @Test
+    void testRecordsOnlyAfterCommit() {
+        ParameterProfiler profiler = profiler(8);
+        List<ParameterProfiler.Observation> observations =
+                List.of(new ParameterProfiler.Observation("fp", tenant("7"), 1.0));
+
+        for (int status : new int[]{TransactionSynchronization.STATUS_ROLLED_BACK, TransactionSynchronization.STATUS_COMMITTED}) {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                profiler.recordAfterCommit(observations);
+                assertNull(profiler.snapshot("fp"), "事务结束前不应记录");
+                for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        synchronization.afterCommit();
+                    }
+                    synchronization.afterCompletion(status);
+                }
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+            if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                assertNull(profiler.snapshot("fp"), "回滚的批次不应记录");
+            }
+        }
+
+        assertEquals(1L, topValues(profiler.snapshot("fp")).get(0).get("count"));
+    }
+}
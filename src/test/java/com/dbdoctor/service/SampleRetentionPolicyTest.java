@@ -0,0 +1,123 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.repository.SlowQuerySampleBatchWriter.RetentionRow;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SampleRetentionPolicy 单元测试
+ *
+ * 测试重点：
+ * - 蓄水池先填空槽位，满后按概率替换，保留的样本在整个流上均匀分布
+ * - 清理时保留蓄水池样本、耗时最长的 K 条和最近的 N 条
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class SampleRetentionPolicyTest {
+
+    /**
+     * 恢复的状态中已占用的槽位不会被再次分配
+     */
+    @Test
+    void testEmptySlotsAreFilledFirst() {
+        SampleRetentionPolicy.Reservoir reservoir = new SampleRetentionPolicy.Reservoir(5, 100, List.of(1, 3));
+        Random random = new Random(7);
+
+        assertEquals(new SampleRetentionPolicy.Admission(0, false), reservoir.offer(1, random));
+        assertEquals(new SampleRetentionPolicy.Admission(2, false), reservoir.offer(1, random));
+        assertEquals(new SampleRetentionPolicy.Admission(4, false), reservoir.offer(1, random));
+
+        // 槽位已满：要么不进入蓄水池，要么替换已占用的槽位
+        SampleRetentionPolicy.Admission admission = reservoir.offer(1, random);
+        assertTrue(admission.slot() < 0 || admission.replacing());
+    }
+
+    /**
+     * 保留的样本在整个流上均匀分布（不偏向早期或近期）
+     */
+    @Test
+    void testReservoirIsUniform() {
+        int size = 200;
+        int stream = 20_000;
+        Random random = new Random(42);
+        SampleRetentionPolicy.Reservoir reservoir = new SampleRetentionPolicy.Reservoir(size, 0, List.of());
+
+        int[] holders = new int[size];
+        for (int i = 0; i < stream; i++) {
+            SampleRetentionPolicy.Admission admission = reservoir.offer(1, random);
+            if (admission.slot() >= 0) {
+                holders[admission.slot()] = i;
+            }
+        }
+
+        int firstHalf = 0;
+        long sum = 0;
+        for (int holder : holders) {
+            sum += holder;
+            if (holder < stream / 2) {
+                firstHalf++;
+            }
+        }
+        double mean = (double) sum / size;
+        assertEquals(stream / 2.0, mean, stream * 0.08);
+        assertTrue(firstHalf > size * 0.35 && firstHalf < size * 0.65, "前半段样本数: " + firstHalf);
+    }
+
+    /**
+     * 预聚合记录按执行次数加权：代表大量执行的记录必然进入蓄水池
+     */
+    @Test
+    void testHeavyRecordIsAlwaysAdmitted() {
+        SampleRetentionPolicy.Reservoir reservoir = new SampleRetentionPolicy.Reservoir(2, 0, List.of());
+        Random random = new Random(1);
+        reservoir.offer(1, random);
+        reservoir.offer(1, random);
+
+        SampleRetentionPolicy.Admission admission = reservoir.offer(1_000, random);
+        assertTrue(admission.replacing());
+    }
+
+    /**
+     * 清理时保留蓄水池样本、最慢的 K 条和最近的 N 条
+     */
+    @Test
+    void testSelectEvictions() {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<RetentionRow> rows = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            rows.add(new RetentionRow(id, 1.0, base.plusMinutes(id), null));
+        }
+        rows.set(2, new RetentionRow(3, 9.0, base.plusMinutes(3), null));   // 最慢
+        rows.set(4, new RetentionRow(5, 1.0, base.plusMinutes(5), 0));     // 蓄水池
+
+        List<Long> evictions = SampleRetentionPolicy.selectEvictions(rows, 1, 2);
+
+        assertEquals(16, evictions.size());
+        assertFalse(evictions.contains(3L));
+        assertFalse(evictions.contains(5L));
+        assertFalse(evictions.contains(19L));
+        assertFalse(evictions.contains(20L));
+        assertTrue(evictions.contains(1L));
+    }
+
+    /**
+     * 样本数不超过 K + N 时不清理
+     */
+    @Test
+    void testNoEvictionBelowBudget() {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<RetentionRow> rows = List.of(
+                new RetentionRow(1, 1.0, base, null),
+                new RetentionRow(2, 2.0, base.plusMinutes(1), null));
+
+        assertTrue(SampleRetentionPolicy.selectEvictions(rows, 1, 1).isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.model.SqlArtifact;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SqlArtifactCache 单元测试
+ *
+ * 测试重点：
+ * - 命中时不再调用计算函数
+ * - 高频 SQL 不会被一次性 SQL 的扫描挤出
+ * - 条目数和内存上限
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class SqlArtifactCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, SqlArtifact> loader = sql -> {
+        loads.incrementAndGet();
+        return SqlArtifact.builder().cleanedSql(sql).fingerprint("fp-" + sql).build();
+    };
+
+    private static SqlArtifactCache cache(int maxEntries, long maxWeightBytes) {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getArtifactCache().setMaxEntries(maxEntries);
+        properties.getArtifactCache().setMaxWeightBytes(maxWeightBytes);
+        return new SqlArtifactCache(properties);
+    }
+
+    /**
+     * 相同原始 SQL 只计算一次
+     */
+    @Test
+    void testHitSkipsLoader() {
+        SqlArtifactCache cache = cache(100, 1024 * 1024);
+
+        SqlArtifact first = cache.get("SELECT * FROM users WHERE id = 1", loader);
+        SqlArtifact second = cache.get("SELECT * FROM users WHERE id = 1", loader);
+        cache.get("SELECT * FROM users WHERE id = 2", loader);
+
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertEquals(0.3333, cache.getHitRate(), 0.001);
+    }
+
+    /**
+     * 大量一次性 SQL 不会挤出高频 SQL（TinyLFU 准入）
+     */
+    @Test
+    void testFrequentEntrySurvivesScan() {
+        SqlArtifactCache cache = cache(100, 64L * 1024 * 1024);
+        String hot = "SELECT * FROM hot WHERE id = 1";
+        for (int i = 0; i < 5; i++) {
+            cache.get(hot, loader);
+        }
+        for (int i = 0; i < 200; i++) {
+            cache.get("SELECT * FROM cold WHERE id = " + i, loader);
+        }
+
+        int before = loads.get();
+        cache.get(hot, loader);
+        assertEquals(before, loads.get(), "高频 SQL 应仍在缓存中");
+        assertTrue(cache.size() <= 100);
+    }
+
+    /**
+     * 内存上限
+     */
+    @Test
+    void testWeightBound() {
+        SqlArtifactCache cache = cache(1000, 4096);
+        for (int i = 0; i < 200; i++) {
+            cache.get("SELECT * FROM t WHERE id = " + i, loader);
+        }
+        long weight = ((Number) cache.getMetrics().get("weightBytes")).longValue();
+        assertTrue(weight <= 4096, "估算内存不应超过上限: " + weight);
+        assertTrue(cache.size() > 0);
+    }
+}
@@ -0,0 +1,120 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.config.DbDoctorProperties;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TemplateFamilyIndex 单元测试
+ *
+ * 测试重点：
+ * - 只差列顺序 / 多一个 LIMIT 的模板命中同一家族
+ * - 表集合不同、超过复用时效的模板不命中
+ * - 复用来的报告继续指向最初分析的模板，时效按最初的分析时间计算
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class TemplateFamilyIndexTest {
+
+    private static final String BASE =
+            "SELECT id, name, status, created_at FROM orders WHERE user_id = ? AND status = ? ORDER BY created_at DESC";
+
+    private final TemplateFamilyIndex index = new TemplateFamilyIndex(null, new DbDoctorProperties());
+
+    private static SlowQueryTemplate template(String fingerprint, String table, String sql) {
+        return SlowQueryTemplate.builder()
+                .sqlFingerprint(fingerprint)
+                .instanceId(1L)
+                .dbName("shop")
+                .tableName(table)
+                .tableNames(table)
+                .sqlTemplate(sql)
+                .analyzedTime(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 列顺序不同、多一个 LIMIT 仍视为同一家族
+     */
+    @Test
+    void testNearDuplicatesMatch() {
+        index.recordAnalysis(template("a", "orders", BASE));
+
+        Optional<TemplateFamilyIndex.Match> reordered = index.findReusable(template("b", "orders",
+                "SELECT status, id, created_at, name FROM orders WHERE status = ? AND user_id = ? ORDER BY created_at DESC"));
+        assertTrue(reordered.isPresent());
+        assertEquals("a", reordered.get().reportFingerprint());
+
+        assertTrue(index.findReusable(template("c", "orders", BASE + " LIMIT ?")).isPresent());
+    }
+
+    /**
+     * 表集合不同或已超过复用时效时不复用
+     */
+    @Test
+    void testDifferentTablesOrExpired() {
+        SlowQueryTemplate old = template("a", "orders", BASE);
+        old.setAnalyzedTime(LocalDateTime.now().minusDays(2));
+        index.recordAnalysis(old);
+        assertTrue(index.findReusable(template("b", "orders", BASE + " LIMIT ?")).isEmpty());
+
+        index.recordAnalysis(template("a", "orders", BASE));
+        assertTrue(index.findReusable(template("c", "order_archive", BASE.replace("orders", "order_archive"))).isEmpty());
+    }
+
+    /**
+     * 复用报告的成员登记后，下一个相似模板指向最初的报告来源
+     */
+    @Test
+    void testReusedReportKeepsSource() {
+        index.recordAnalysis(template("a", "orders", BASE));
+        SlowQueryTemplate reused = template("b", "orders", BASE + " LIMIT ?");
+        reused.setReportSourceFingerprint("a");
+        index.recordAnalysis(reused);
+
+        Optional<TemplateFamilyIndex.Match> match = index.findReusable(template("c", "orders", BASE + " LIMIT ?"));
+        assertTrue(match.isPresent());
+        assertEquals("a", match.get().reportFingerprint());
+    }
+
+    /**
+     * 连续复用不会延长报告时效：复用者按来源报告的分析时间登记，来源超过时效后整条复用链都不再命中
+     */
+    @Test
+    void testReuseChainExpiresWithSourceReport() {
+        // a 的报告由 AI 生成于 25 小时前（超过 24 小时时效）
+        LocalDateTime sourceAnalyzed = LocalDateTime.now().minusHours(25);
+        SlowQueryTemplate source = template("a", "orders", BASE);
+        source.setAnalyzedTime(sourceAnalyzed);
+        index.recordAnalysis(source);
+
+        // b 在时效内复用了 a 的报告，b 自身的 analyzedTime 为当前时间
+        SlowQueryTemplate reused = template("b", "orders", BASE + " LIMIT ?");
+        reused.setReportSourceFingerprint("a");
+        index.recordAnalysis(reused, sourceAnalyzed);
+
+        assertTrue(index.findReusable(template("c", "orders", BASE + " LIMIT ?")).isEmpty(),
+                "复用链不应让超过时效的报告继续被复用");
+        assertFalse(index.isFresh(sourceAnalyzed));
+        assertTrue(index.isFresh(LocalDateTime.now().minusHours(1)));
+    }
+
+    /**
+     * 相同词集合的签名完全一致
+     */
+    @Test
+    void testSignatureSimilarity() {
+        long[] a = TemplateFamilyIndex.signature("SELECT a, b FROM t WHERE c = ?");
+        long[] b = TemplateFamilyIndex.signature("select b,a from T where c=?");
+        assertEquals(1.0, TemplateFamilyIndex.similarity(a, b));
+        assertTrue(TemplateFamilyIndex.similarity(a,
+                TemplateFamilyIndex.signature("DELETE FROM x WHERE y IN (?+)")) < 0.75);
+    }
+}
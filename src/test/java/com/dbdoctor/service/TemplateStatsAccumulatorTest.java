@@ -0,0 +1,252 @@
+package com.dbdoctor.service;
+
+import com.dbdoctor.config.SlowLogMonitorProperties;
+import com.dbdoctor.entity.IngestCursor;
+import com.dbdoctor.entity.SlowQueryTemplate;
+import com.dbdoctor.model.SlowQueryLog;
+import com.dbdoctor.repository.IngestCursorRepository;
+import com.dbdoctor.repository.SlowQueryTemplateRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TemplateStatsAccumulator 单元测试
+ *
+ * 测试重点：
+ * - 合并后的增量与逐条更新得到相同的统计
+ * - 平均值由总和 / 次数得出，新模板从零开始累加第一条样本
+ * - 预写日志在重启后重放未合并的增量，已提交的日志段不再重放
+ *
+ * @author DB-Doctor
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+class TemplateStatsAccumulatorTest {
+
+    private static SlowQueryLog slowLog(double queryTime, double lockTime, long rowsExamined) {
+        return SlowQueryLog.builder()
+                .queryTime(queryTime)
+                .lockTime(lockTime)
+                .rowsSent(1L)
+                .rowsExamined(rowsExamined)
+                .build();
+    }
+
+    private static SlowQueryTemplate template() {
+        return SlowQueryTemplate.builder()
+                .sqlFingerprint("fp")
+                .occurrenceCount(2L)
+                .sumQueryTime(2.0)
+                .maxQueryTime(1.5)
+                .sumLockTime(0.0)
+                .maxLockTime(0.0)
+                .sumRowsSent(2L)
+                .maxRowsSent(1L)
+                .sumRowsExamined(200L)
+                .maxRowsExamined(150L)
+                .build();
+    }
+
+    /**
+     * 一次合并等价于逐条更新
+     */
+    @Test
+    void testMergedDeltaMatchesSequentialUpdates() {
+        SlowQueryLog[] logs = {slowLog(3.0, 0.1, 1000), slowLog(0.5, 0.0, 10), slowLog(2.0, 0.3, 500)};
+
+        SlowQueryTemplate sequential = template();
+        for (SlowQueryLog log : logs) {
+            TemplateStatsAccumulator.Delta.of(log).applyTo(sequential, 1.0);
+        }
+
+        TemplateStatsAccumulator.Delta merged = TemplateStatsAccumulator.Delta.of(logs[0]);
+        merged.merge(TemplateStatsAccumulator.Delta.of(logs[1])).merge(TemplateStatsAccumulator.Delta.of(logs[2]));
+        SlowQueryTemplate batched = template();
+        merged.applyTo(batched, 1.0);
+
+        assertEquals(5L, batched.getOccurrenceCount().longValue());
+        assertEquals(sequential.getAvgQueryTime(), batched.getAvgQueryTime(), 1e-9);
+        assertEquals((1.0 * 2 + 3.0 + 0.5 + 2.0) / 5, batched.getAvgQueryTime(), 1e-9);
+        assertEquals(3.0, batched.getMaxQueryTime());
+        assertEquals(sequential.getAvgLockTime(), batched.getAvgLockTime(), 1e-9);
+        assertEquals(0.3, batched.getMaxLockTime());
+        assertEquals(sequential.getAvgRowsExamined(), batched.getAvgRowsExamined(), 1e-9);
+        assertEquals(1000L, batched.getMaxRowsExamined().longValue());
+        assertNotNull(batched.getLastSeenTime());
+        assertNotNull(batched.getSeverityLevel());
+    }
+
+    /**
+     * 不带统计插入的新模板累加第一条样本后与样本一致
+     */
+    @Test
+    void testFirstSightingStartsFromZero() {
+        SlowQueryTemplate template = SlowQueryTemplate.builder()
+                .sqlFingerprint("fp")
+                .occurrenceCount(0L)
+                .sumQueryTime(0.0)
+                .sumLockTime(0.0)
+                .sumRowsSent(0L)
+                .sumRowsExamined(0L)
+                .build();
+        assertNull(template.getAvgQueryTime());
+
+        TemplateStatsAccumulator.Delta.of(slowLog(2.5, 0.2, 300)).applyTo(template, 1.0);
+
+        assertEquals(1L, template.getOccurrenceCount().longValue());
+        assertEquals(2.5, template.getAvgQueryTime(), 1e-9);
+        assertEquals(2.5, template.getMaxQueryTime());
+        assertEquals(0.2, template.getAvgLockTime(), 1e-9);
+        assertEquals(300.0, template.getAvgRowsExamined(), 1e-9);
+        assertEquals(300L, template.getMaxRowsExamined().longValue());
+    }
+
+    /**
+     * 预聚合记录按执行次数加权
+     */
+    @Test
+    void testAggregatedRecordIsWeighted() {
+        SlowQueryLog digest = slowLog(2.0, 0.0, 10);
+        digest.setExecutionCount(8L);
+        digest.setMaxQueryTime(6.0);
+
+        SlowQueryTemplate template = template();
+        TemplateStatsAccumulator.Delta.of(digest).applyTo(template, 1.0);
+
+        assertEquals(10L, template.getOccurrenceCount().longValue());
+        assertEquals((1.0 * 2 + 2.0 * 8) / 10, template.getAvgQueryTime(), 1e-9);
+        assertEquals(6.0, template.getMaxQueryTime());
+    }
+
+    /**
+     * 耗时分布随增量合并，并在预写日志中往返
+     */
+    @Test
+    void testSketchTravelsWithDelta() {
+        TemplateStatsAccumulator.Delta delta = TemplateStatsAccumulator.Delta.of(slowLog(0.01, 0.0, 1));
+        for (int i = 1; i < 100; i++) {
+            delta.merge(TemplateStatsAccumulator.Delta.of(slowLog(i % 20 == 0 ? 5.0 : 0.01, 0.0, 1)));
+        }
+
+        String line = delta.toWalLine("fp");
+        TemplateStatsAccumulator.Delta replayed =
+                TemplateStatsAccumulator.Delta.fromWalFields(line.substring(0, line.length() - 1).split("\t"));
+        SlowQueryTemplate template = SlowQueryTemplate.builder().sqlFingerprint("fp").occurrenceCount(0L).build();
+        replayed.applyTo(template, 1.0);
+
+        assertEquals(0.01, template.queryTimePercentiles().p50(), 0.01 * 0.01);
+        assertEquals(5.0, template.queryTimePercentiles().p99(), 5.0 * 0.01);
+        assertEquals(0.0, template.lockTimePercentiles().p99());
+    }
+
+    /**
+     * 未合并的增量在重启后从预写日志重放
+     */
+    @Test
+    void testWalReplay(@TempDir Path dir) {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        properties.getTemplateStats().setWalPath(dir.resolve("template-stats.wal").toString());
+
+        TemplateStatsAccumulator first = new TemplateStatsAccumulator(null, null, null, properties);
+        first.init();
+        first.record(Map.of("a", TemplateStatsAccumulator.Delta.of(slowLog(1.0, 0.0, 1))));
+        first.record(Map.of(
+                "a", TemplateStatsAccumulator.Delta.of(slowLog(2.0, 0.0, 1)),
+                "b", TemplateStatsAccumulator.Delta.of(slowLog(3.0, 0.0, 1))));
+        assertEquals(2, first.getMetrics().get("pendingTemplates"));
+
+        // 模拟崩溃：不合并直接丢弃实例
+        TemplateStatsAccumulator second = new TemplateStatsAccumulator(null, null, null, properties);
+        second.init();
+        assertEquals(2, second.getMetrics().get("pendingTemplates"));
+
+        // 重放后的增量写入了新的日志段，再次重启仍然可以恢复
+        TemplateStatsAccumulator third = new TemplateStatsAccumulator(null, null, null, properties);
+        third.init();
+        assertEquals(2, third.getMetrics().get("pendingTemplates"));
+    }
+
+    /**
+     * 合并事务已提交、日志段尚未删除时崩溃：重启后不再重放该日志段
+     */
+    @Test
+    void testCommittedSegmentIsNotReplayed(@TempDir Path dir) throws Exception {
+        SlowLogMonitorProperties properties = new SlowLogMonitorProperties();
+        Path walPath = dir.resolve("template-stats.wal");
+        properties.getTemplateStats().setWalPath(walPath.toString());
+        Map<String, IngestCursor> cursors = new HashMap<>();
+        IngestCursorRepository cursorRepository = cursorRepository(cursors);
+
+        TemplateStatsAccumulator first = new TemplateStatsAccumulator(templateRepository(), cursorRepository,
+                transactionManager(), properties);
+        first.init();
+        first.record(Map.of("a", TemplateStatsAccumulator.Delta.of(slowLog(1.0, 0.0, 1))));
+        Path committedSegment = dir.resolve("committed-segment");
+        Files.copy(walPath, committedSegment);
+        assertEquals(1, first.flush());
+        assertEquals(1, cursors.size(), "合并事务应记录已提交的日志段序号");
+
+        // 模拟在删除 .flushing 之前崩溃，且新日志段中还有未合并的增量
+        Files.copy(committedSegment, walPath.resolveSibling(walPath.getFileName() + ".flushing"));
+        first.record(Map.of("b", TemplateStatsAccumulator.Delta.of(slowLog(2.0, 0.0, 1))));
+
+        TemplateStatsAccumulator second = new TemplateStatsAccumulator(templateRepository(), cursorRepository,
+                transactionManager(), properties);
+        second.init();
+        assertEquals(0L, second.pendingCount("a"), "已提交的日志段不应重复累加");
+        assertEquals(1L, second.pendingCount("b"));
+    }
+
+    private static IngestCursorRepository cursorRepository(Map<String, IngestCursor> cursors) {
+        return (IngestCursorRepository) Proxy.newProxyInstance(IngestCursorRepository.class.getClassLoader(),
+                new Class<?>[]{IngestCursorRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findBySourceKey" -> Optional.ofNullable(cursors.get((String) args[0]));
+                    case "save" -> {
+                        IngestCursor cursor = (IngestCursor) args[0];
+                        cursors.put(cursor.getSourceKey(), cursor);
+                        yield cursor;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static SlowQueryTemplateRepository templateRepository() {
+        return (SlowQueryTemplateRepository) Proxy.newProxyInstance(SlowQueryTemplateRepository.class.getClassLoader(),
+                new Class<?>[]{SlowQueryTemplateRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "addStatistics" -> 1;
+                    case "findSketches" -> List.of();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+}